@@ -9,6 +9,7 @@ BEGIN;
 
 CREATE EXTENSION IF NOT EXISTS vector;
 CREATE EXTENSION IF NOT EXISTS pgcrypto;
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
 
 -- ---------------------------------------------------------
 -- 1) 当前项目兼容表：conversation_memory_store
@@ -26,6 +27,29 @@ CREATE INDEX IF NOT EXISTS idx_conversation_memory_store_embedding_hnsw
 CREATE INDEX IF NOT EXISTS idx_conversation_memory_store_metadata_gin
     ON conversation_memory_store USING gin ((metadata::jsonb));
 
+-- 按会话分区检索（app.memory.vector.search-mode=partitioned）：conversation_id 列由触发器从 metadata 填充
+ALTER TABLE conversation_memory_store ADD COLUMN IF NOT EXISTS conversation_id text;
+
+CREATE INDEX IF NOT EXISTS idx_conversation_memory_store_conversation_id
+    ON conversation_memory_store (conversation_id);
+
+-- 只覆盖待回填行的部分索引：分批回填 / 启动时确认回填完成都走这里
+CREATE INDEX IF NOT EXISTS idx_conversation_memory_store_conversation_id_pending
+    ON conversation_memory_store (id)
+    WHERE conversation_id IS NULL AND (metadata::jsonb ->> 'conversation_id') IS NOT NULL;
+
+CREATE OR REPLACE FUNCTION conversation_memory_store_fill_conversation_id() RETURNS trigger
+    LANGUAGE plpgsql AS $fn$
+BEGIN
+    NEW.conversation_id := NEW.metadata::jsonb ->> 'conversation_id';
+    RETURN NEW;
+END $fn$;
+
+DROP TRIGGER IF EXISTS trg_conversation_memory_store_conversation_id ON conversation_memory_store;
+CREATE TRIGGER trg_conversation_memory_store_conversation_id
+    BEFORE INSERT OR UPDATE OF metadata ON conversation_memory_store
+    FOR EACH ROW EXECUTE FUNCTION conversation_memory_store_fill_conversation_id();
+
 -- ---------------------------------------------------------
 -- 2) 结构化记忆主表：memory_record_v2
 -- ---------------------------------------------------------
@@ -57,6 +81,16 @@ CREATE INDEX IF NOT EXISTS idx_memory_record_v2_conversation
     ON memory_record_v2 (conversation_id, created_at DESC)
     WHERE is_deleted = false;
 
+-- 关键词检索（StructuredMidMemoryService）：trigram 只对 3 个字符及以上的 ILIKE 词生效（二字汉字词用不上），
+-- tsvector('simple') 不做中文分词，只覆盖空格分词文本；中文查询主要依靠上面的会话索引过滤
+CREATE INDEX IF NOT EXISTS idx_memory_record_v2_content_trgm
+    ON memory_record_v2 USING gin (content gin_trgm_ops)
+    WHERE is_deleted = false;
+
+CREATE INDEX IF NOT EXISTS idx_memory_record_v2_content_tsv
+    ON memory_record_v2 USING gin (to_tsvector('simple', content))
+    WHERE is_deleted = false;
+
 -- ---------------------------------------------------------
 -- 3) 结构化记忆向量表：memory_embedding_v2
 -- ---------------------------------------------------------
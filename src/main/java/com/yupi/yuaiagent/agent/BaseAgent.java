@@ -2,6 +2,7 @@ package com.yupi.yuaiagent.agent;
 
 import cn.hutool.core.util.StrUtil;
 import com.yupi.yuaiagent.agent.model.AgentState;
+import com.yupi.yuaiagent.orchestration.core.OrchestrationExecutor;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
@@ -12,7 +13,6 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
 
 /**
  * 抽象基础代理类，用于管理代理状态和执行流程。
@@ -44,6 +44,9 @@ public abstract class BaseAgent {
     // Memory 记忆（需要自主维护会话上下文）
     private List<Message> messageList = new ArrayList<>();
 
+    // 流式执行使用的执行器（由调用方注入 Spring 管理的实例；未设置时使用进程级共享实例）
+    private OrchestrationExecutor streamExecutor = OrchestrationExecutor.defaults();
+
     /**
      * 运行代理
      *
@@ -100,8 +103,8 @@ public abstract class BaseAgent {
     public SseEmitter runStream(String userPrompt) {
         // 创建一个超时时间较长的 SseEmitter
         SseEmitter sseEmitter = new SseEmitter(300000L); // 5 分钟超时
-        // 使用线程异步处理，避免阻塞主线程
-        CompletableFuture.runAsync(() -> {
+        // 在虚拟线程中异步处理，避免阻塞主线程
+        streamExecutor.execute(() -> {
             // 1、基础校验
             try {
                 if (this.state != AgentState.IDLE) {
@@ -157,6 +160,13 @@ public abstract class BaseAgent {
                 // 3、清理资源
                 this.cleanup();
             }
+        }, () -> {
+            try {
+                sseEmitter.send("错误：当前进行中的会话过多，请稍后重试");
+                sseEmitter.complete();
+            } catch (IOException e) {
+                sseEmitter.completeWithError(e);
+            }
         });
 
         // 设置超时回调
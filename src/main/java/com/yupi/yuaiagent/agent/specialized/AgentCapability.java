@@ -41,4 +41,19 @@ public @interface AgentCapability {
      * 是否为必需 Agent（如 SafetyAgent 必须执行）
      */
     boolean required() default false;
+
+    /**
+     * 执行前需要读取的 sharedState 键（由其他 Agent 的 produces 产出），编排 DAG 据此推导依赖
+     */
+    String[] consumes() default {};
+
+    /**
+     * 执行结果写入 sharedState 的键，为空时使用 AgentType 的小写名
+     */
+    String produces() default "";
+
+    /**
+     * 在编排 DAG 中的单次执行超时（毫秒），<=0 时使用编排默认值
+     */
+    long timeoutMs() default 0;
 }
@@ -16,7 +16,8 @@ import java.util.Map;
     supportedIntents = {"EMOTION_SUPPORT", "CHITCHAT", "CONFLICT_RESOLUTION"},
     estimatedTokens = 80,
     inputSchema = "{\"message\": \"string\"}",
-    outputSchema = "{\"label\": \"string\", \"confidence\": \"number\"}"
+    outputSchema = "{\"label\": \"string\", \"confidence\": \"number\"}",
+    produces = "emotion"
 )
 @Component
 public class EmotionAgent implements SpecializedAgent {
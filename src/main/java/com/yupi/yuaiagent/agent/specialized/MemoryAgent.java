@@ -22,7 +22,8 @@ import java.util.Map;
     supportedIntents = {"EMOTION_SUPPORT", "DATE_PLANNING", "CONFLICT_RESOLUTION"},
     estimatedTokens = 150,
     inputSchema = "{\"conversationId\": \"string\", \"query\": \"string\"}",
-    outputSchema = "{\"count\": \"number\", \"snippets\": \"array\"}"
+    outputSchema = "{\"count\": \"number\", \"snippets\": \"array\"}",
+    produces = "memory"
 )
 @Component
 public class MemoryAgent implements SpecializedAgent {
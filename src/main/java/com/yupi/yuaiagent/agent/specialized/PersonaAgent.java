@@ -19,7 +19,8 @@ import java.util.Map;
     supportedIntents = {"*"},
     estimatedTokens = 100,
     inputSchema = "{\"personaId\": \"string\"}",
-    outputSchema = "{\"personaId\": \"string\", \"name\": \"string\", \"systemPrompt\": \"string\"}"
+    outputSchema = "{\"personaId\": \"string\", \"name\": \"string\", \"systemPrompt\": \"string\"}",
+    produces = "persona"
 )
 @Component
 public class PersonaAgent implements SpecializedAgent {
@@ -6,10 +6,16 @@ import com.yupi.yuaiagent.orchestration.core.AgentContext;
 import com.yupi.yuaiagent.orchestration.core.AgentOutput;
 import com.yupi.yuaiagent.orchestration.core.AgentType;
 import com.yupi.yuaiagent.orchestration.v3.ExecutionPlan;
+import com.yupi.yuaiagent.orchestration.v3.PlanSignature;
+import com.yupi.yuaiagent.orchestration.v3.PlanTemplate;
+import com.yupi.yuaiagent.orchestration.v3.PlanTemplateCache;
+import com.yupi.yuaiagent.orchestration.v3.RuleBasedPlanner;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
@@ -17,13 +23,18 @@ import org.springframework.stereotype.Component;
 import jakarta.annotation.PostConstruct;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Map;
+import java.util.Optional;
 
 import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
 
 /**
  * 执行计划生成 Agent（V3 动态编排核心）。
  * 分析用户意图，决定调用哪些 SubAgent 及其执行顺序。
+ * <p>
+ * 计划来源依次为：规则规划器（问候 / 情感支持等固定计划）-> 计划模板缓存（按消息签名）-> LLM，
+ * 只有前两者都未命中时才调用 LLM，LLM 生成的计划写回缓存。
  */
 @Slf4j
 @AgentCapability(
@@ -37,8 +48,15 @@ import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
 @Component
 public class PlanAgent implements SpecializedAgent {
 
+    public static final String SOURCE_RULE = "rule";
+    public static final String SOURCE_CACHE = "cache";
+    public static final String SOURCE_LLM = "llm";
+
     private final ChatModel chatModel;
     private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final RuleBasedPlanner ruleBasedPlanner = new RuleBasedPlanner();
+    private final BeanOutputConverter<ExecutionPlan> outputConverter = new BeanOutputConverter<>(ExecutionPlan.class);
 
     @Value("classpath:prompts/plan-agent-system.txt")
     private Resource systemPromptResource;
@@ -49,12 +67,32 @@ public class PlanAgent implements SpecializedAgent {
     @Value("${app.orchestration.v3.plan-agent.max-tokens:500}")
     private int maxTokens;
 
+    @Value("${app.orchestration.v3.plan-agent.rule-enabled:true}")
+    private boolean ruleEnabled = true;
+
+    @Value("${app.orchestration.v3.plan-agent.cache-enabled:true}")
+    private boolean cacheEnabled = true;
+
+    @Value("${app.orchestration.v3.plan-agent.cache-ttl-seconds:3600}")
+    private long cacheTtlSeconds = 3600;
+
+    @Value("${app.orchestration.v3.plan-agent.cache-max-size:1000}")
+    private long cacheMaxSize = 1000;
+
     private String systemPrompt;
     private ChatClient chatClient;
+    private PlanTemplateCache planCache;
 
-    public PlanAgent(ChatModel chatModel, ObjectMapper objectMapper) {
+    public PlanAgent(ChatModel chatModel, ObjectMapper objectMapper, ObjectProvider<MeterRegistry> meterRegistryProvider) {
         this.chatModel = chatModel;
         this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistryProvider.getIfAvailable();
+    }
+
+    /**
+     * 一次计划生成的结果及其来源（rule / cache / llm）。
+     */
+    public record PlanResult(ExecutionPlan plan, String source) {
     }
 
     @PostConstruct
@@ -62,7 +100,11 @@ public class PlanAgent implements SpecializedAgent {
         try {
             this.systemPrompt = systemPromptResource.getContentAsString(StandardCharsets.UTF_8);
             this.chatClient = ChatClient.builder(chatModel).build();
-            log.info("[PlanAgent-init] Initialized successfully");
+            if (cacheEnabled) {
+                this.planCache = new PlanTemplateCache(cacheMaxSize, Duration.ofSeconds(Math.max(1, cacheTtlSeconds)), meterRegistry);
+            }
+            log.info("[PlanAgent-init] {}", kv("status", "initialized", "ruleEnabled", ruleEnabled,
+                    "cacheEnabled", cacheEnabled, "cacheTtlSeconds", cacheTtlSeconds, "cacheMaxSize", cacheMaxSize));
         } catch (IOException e) {
             log.error("[PlanAgent-init] Failed to load system prompt", e);
             throw new RuntimeException("Failed to initialize PlanAgent", e);
@@ -88,8 +130,9 @@ public class PlanAgent implements SpecializedAgent {
         log.info("[PlanAgent-execute] {}", kv("message", message, "conversationId", conversationId, "personaId", personaId));
 
         try {
-            ExecutionPlan plan = generatePlan(message, conversationId, personaId);
-            log.info("[PlanAgent-execute] Plan generated: {}", kv("intent", plan.getIntent(), "agentCount", plan.getRequiredAgents().size(), "estimatedTokens", plan.getEstimatedTokens()));
+            PlanResult result = plan(message, conversationId, personaId, context.getSceneId());
+            ExecutionPlan plan = result.plan();
+            log.info("[PlanAgent-execute] Plan generated: {}", kv("intent", plan.getIntent(), "agentCount", plan.getRequiredAgents().size(), "estimatedTokens", plan.getEstimatedTokens(), "source", result.source()));
 
             return AgentOutput.builder()
                 .agentType(getAgentType())
@@ -99,7 +142,8 @@ public class PlanAgent implements SpecializedAgent {
                     "plan", plan,
                     "intent", plan.getIntent(),
                     "agentCount", plan.getRequiredAgents().size(),
-                    "estimatedTokens", plan.getEstimatedTokens()
+                    "estimatedTokens", plan.getEstimatedTokens(),
+                    "source", result.source()
                 ))
                 .build();
         } catch (Exception e) {
@@ -112,8 +156,38 @@ public class PlanAgent implements SpecializedAgent {
      * 生成执行计划（核心方法）
      */
     public ExecutionPlan generatePlan(String message, String conversationId, String personaId) {
-        BeanOutputConverter<ExecutionPlan> outputConverter = new BeanOutputConverter<>(ExecutionPlan.class);
+        return plan(message, conversationId, personaId, null).plan();
+    }
 
+    /**
+     * 依次尝试规则规划器、计划模板缓存，都未命中时调用 LLM 并把结果写回缓存。
+     */
+    public PlanResult plan(String message, String conversationId, String personaId, String sceneId) {
+        PlanSignature signature = PlanSignature.of(message, personaId, sceneId);
+
+        if (ruleEnabled) {
+            Optional<ExecutionPlan> template = ruleBasedPlanner.plan(signature);
+            if (template.isPresent()) {
+                return new PlanResult(PlanTemplate.bind(template.get(), message, conversationId, personaId), SOURCE_RULE);
+            }
+        }
+        if (planCache != null) {
+            Optional<ExecutionPlan> cached = planCache.get(signature, message, conversationId, personaId);
+            if (cached.isPresent()) {
+                return new PlanResult(cached.get(), SOURCE_CACHE);
+            }
+        }
+
+        ExecutionPlan plan = callLlm(message, conversationId, personaId);
+        if (planCache != null && plan != null) {
+            boolean cached = planCache.put(plan, signature, message, conversationId, personaId);
+            log.debug("[PlanAgent-plan] {}", kv("signature", signature.key(), "cached", cached, "cacheSize", planCache.size()));
+        }
+        // 替换占位符
+        return new PlanResult(PlanTemplate.bind(plan, message, conversationId, personaId), SOURCE_LLM);
+    }
+
+    private ExecutionPlan callLlm(String message, String conversationId, String personaId) {
         String userPrompt = buildUserPrompt(message, conversationId, personaId);
 
         String response = chatClient.prompt()
@@ -122,33 +196,10 @@ public class PlanAgent implements SpecializedAgent {
             .call()
             .content();
 
-        log.debug("[PlanAgent-generatePlan] LLM response: {}", response);
+        log.debug("[PlanAgent-callLlm] LLM response: {}", response);
 
         // 解析 JSON 响应
-        ExecutionPlan plan = outputConverter.convert(response);
-
-        // 替换占位符
-        if (plan != null && plan.getRequiredAgents() != null) {
-            plan.getRequiredAgents().forEach(task -> {
-                if (task.getInputContext() != null) {
-                    Map<String, Object> inputContext = task.getInputContext();
-                    inputContext.replaceAll((key, value) -> {
-                        if (value instanceof String) {
-                            String strValue = (String) value;
-                            if ("{conversationId}".equals(strValue)) {
-                                return conversationId;
-                            }
-                            if ("{personaId}".equals(strValue)) {
-                                return personaId;
-                            }
-                        }
-                        return value;
-                    });
-                }
-            });
-        }
-
-        return plan;
+        return outputConverter.convert(response);
     }
 
     private String buildUserPrompt(String message, String conversationId, String personaId) {
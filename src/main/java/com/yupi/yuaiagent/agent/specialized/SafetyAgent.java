@@ -18,7 +18,8 @@ import java.util.regex.Pattern;
     required = true,
     estimatedTokens = 50,
     inputSchema = "{\"message\": \"string\"}",
-    outputSchema = "{\"safe\": \"boolean\", \"code\": \"string\", \"level\": \"string\"}"
+    outputSchema = "{\"safe\": \"boolean\", \"code\": \"string\", \"level\": \"string\"}",
+    produces = "safety"
 )
 @Component
 public class SafetyAgent implements SpecializedAgent {
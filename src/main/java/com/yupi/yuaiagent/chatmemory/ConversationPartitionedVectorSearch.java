@@ -0,0 +1,187 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.StringUtils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * pgvector 长期记忆的按会话分区检索。
+ * <p>
+ * 全局 HNSW 检索 + conversation_id 过滤是“先 ANN 后过滤”：表越大，热点会话的召回越差、越慢。
+ * 这里给 conversation_memory_store 增加 conversation_id 列（B-Tree 索引，插入时由触发器从 metadata 填充），
+ * 检索时先用 MATERIALIZED CTE 取出该会话的行，再在会话内按余弦距离精确排序，
+ * 代价只与单个会话的历史量相关，且召回是精确的。
+ * <p>
+ * {@link #ensureSchema()} 与 {@link #backfill(int)} 为存量数据迁移工具：幂等建列 / 索引 / 触发器，
+ * 再按批回填已有行的 conversation_id（每批一个短事务，不长时间锁表）。
+ */
+@Slf4j
+public class ConversationPartitionedVectorSearch {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    /**
+     * 待回填的行：metadata 带 conversation_id 但分区列仍为空（回填条件与部分索引的谓词保持一致）
+     */
+    private static final String PENDING_BACKFILL = "conversation_id IS NULL AND (metadata::jsonb ->> 'conversation_id') IS NOT NULL";
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String tableName;
+    private final String qualifiedTable;
+
+    public ConversationPartitionedVectorSearch(JdbcTemplate jdbcTemplate,
+                                               EmbeddingModel embeddingModel,
+                                               String schemaName,
+                                               String tableName) {
+        if (!IDENTIFIER.matcher(schemaName).matches() || !IDENTIFIER.matcher(tableName).matches()) {
+            throw new IllegalArgumentException("非法的表名: " + schemaName + "." + tableName);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.embeddingModel = embeddingModel;
+        this.tableName = tableName;
+        this.qualifiedTable = schemaName + "." + tableName;
+    }
+
+    /**
+     * 在单个会话内做精确的余弦距离检索。
+     *
+     * @param minSimilarity 相似度下限（距离上限 = 1 - minSimilarity）
+     */
+    public List<Document> search(String conversationId, String memoryType, String query, int topK, double minSimilarity) {
+        String vector = toVectorLiteral(embeddingModel.embed(query));
+        String sql = "WITH conversation_rows AS MATERIALIZED ("
+                + " SELECT id, content, metadata, embedding FROM " + qualifiedTable
+                + " WHERE conversation_id = ? AND metadata::jsonb ->> 'memory_type' = ?"
+                + ") SELECT id, content, metadata, distance FROM ("
+                + " SELECT id::text AS id, content, metadata::text AS metadata, embedding <=> ?::vector AS distance"
+                + " FROM conversation_rows"
+                + ") scored WHERE distance <= ? ORDER BY distance LIMIT ?";
+        return jdbcTemplate.query(sql,
+                (rs, rowNum) -> toDocument(rs.getString("id"), rs.getString("content"),
+                        rs.getString("metadata"), rs.getDouble("distance")),
+                conversationId, memoryType, vector, 1.0 - minSimilarity, topK);
+    }
+
+    /**
+     * 该会话在分区列上是否有任何记忆（只走 conversation_id 索引，不计算距离）。
+     */
+    public boolean hasMemories(String conversationId, String memoryType) {
+        String sql = "SELECT EXISTS (SELECT 1 FROM " + qualifiedTable
+                + " WHERE conversation_id = ? AND metadata::jsonb ->> 'memory_type' = ?)";
+        return !Boolean.FALSE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, conversationId, memoryType));
+    }
+
+    /**
+     * 幂等创建分区列、索引以及插入时填充 conversation_id 的触发器。
+     * 另建只覆盖待回填行的部分索引，分批回填每批都能直接定位剩余行，不必反复扫描已回填的部分。
+     */
+    public void ensureSchema() {
+        String function = qualifiedTable + "_fill_conversation_id";
+        String trigger = triggerName();
+        jdbcTemplate.execute("ALTER TABLE " + qualifiedTable + " ADD COLUMN IF NOT EXISTS conversation_id text");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_" + tableName + "_conversation_id ON "
+                + qualifiedTable + " (conversation_id)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_" + tableName + "_conversation_id_pending ON "
+                + qualifiedTable + " (id) WHERE " + PENDING_BACKFILL);
+        jdbcTemplate.execute("CREATE OR REPLACE FUNCTION " + function + "() RETURNS trigger LANGUAGE plpgsql AS $fn$"
+                + " BEGIN NEW.conversation_id := NEW.metadata::jsonb ->> 'conversation_id'; RETURN NEW; END $fn$");
+        jdbcTemplate.execute("DROP TRIGGER IF EXISTS " + trigger + " ON " + qualifiedTable);
+        jdbcTemplate.execute("CREATE TRIGGER " + trigger + " BEFORE INSERT OR UPDATE OF metadata ON " + qualifiedTable
+                + " FOR EACH ROW EXECUTE FUNCTION " + function + "()");
+    }
+
+    /**
+     * 按批回填存量行的 conversation_id，直到没有待回填的行。
+     *
+     * @return 本次回填的行数
+     */
+    public long backfill(int batchSize) {
+        int limit = Math.max(1, batchSize);
+        String sql = "UPDATE " + qualifiedTable + " SET conversation_id = metadata::jsonb ->> 'conversation_id'"
+                + " WHERE id IN (SELECT id FROM " + qualifiedTable
+                + " WHERE " + PENDING_BACKFILL + " LIMIT ?)";
+        long total = 0;
+        long startMs = System.currentTimeMillis();
+        int updated;
+        do {
+            updated = jdbcTemplate.update(sql, limit);
+            total += updated;
+            if (updated > 0) {
+                log.info("向量记忆分区回填中, table={}, batch={}, total={}", qualifiedTable, updated, total);
+            }
+        } while (updated >= limit);
+        log.info("向量记忆分区回填完成, table={}, total={}, costMs={}", qualifiedTable, total,
+                System.currentTimeMillis() - startMs);
+        return total;
+    }
+
+    /**
+     * 分区列是否已可用于检索：插入触发器存在，且没有待回填的存量行。
+     * 列 / 触发器尚未创建或查询失败时返回 false（调用方继续走全局检索，避免存量记忆被当成不存在）。
+     */
+    public boolean isMigrated() {
+        try {
+            Boolean hasTrigger = jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM pg_trigger WHERE tgrelid = ?::regclass AND tgname = ?)",
+                    Boolean.class, qualifiedTable, triggerName());
+            if (!Boolean.TRUE.equals(hasTrigger)) {
+                return false;
+            }
+            Boolean pending = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + qualifiedTable
+                    + " WHERE " + PENDING_BACKFILL + ")", Boolean.class);
+            return Boolean.FALSE.equals(pending);
+        } catch (DataAccessException e) {
+            log.warn("检查向量记忆分区列状态失败, table={}", qualifiedTable, e);
+            return false;
+        }
+    }
+
+    private String triggerName() {
+        return "trg_" + tableName + "_conversation_id";
+    }
+
+    Document toDocument(String id, String content, String metadataJson, double distance) {
+        Map<String, Object> metadata = new HashMap<>();
+        if (StringUtils.hasText(metadataJson)) {
+            try {
+                metadata.putAll(objectMapper.readValue(metadataJson, METADATA_TYPE));
+            } catch (Exception e) {
+                log.debug("解析向量记忆 metadata 失败, id={}", id, e);
+            }
+        }
+        metadata.values().removeIf(Objects::isNull);
+        metadata.put("distance", distance);
+        return Document.builder()
+                .id(id)
+                .text(content == null ? "" : content)
+                .metadata(new LinkedHashMap<>(metadata))
+                .score(1.0 - distance)
+                .build();
+    }
+
+    static String toVectorLiteral(float[] vector) {
+        StringBuilder sb = new StringBuilder(vector.length * 10).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(vector[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
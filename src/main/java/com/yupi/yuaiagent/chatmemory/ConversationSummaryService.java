@@ -8,6 +8,7 @@ import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
@@ -15,15 +16,55 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 对话摘要服务：将被滑动窗口淘汰的历史消息压缩为摘要（Redis 优先，内存兜底）。
+ * <p>
+ * 摘要带版本号，写入时做 compare-and-set：读取摘要后若已被其他实例/线程更新，则基于最新摘要重新合并，
+ * 避免并发更新互相覆盖丢失内容。
+ * <p>
+ * 每一轮“读取 + CAS”只使用一个存储：从 Redis 读到的版本只和 Redis 比较，Redis 读取失败时整轮改用本地缓存。
+ * Redis CAS 本身出错时放弃本次合并（不回退本地、不重复调用 LLM）。Redis 不可用期间写入本地的摘要在
+ * Redis 恢复后的下一次更新中并入 Redis 摘要，并入成功后才从本地移除。
  */
 @Slf4j
 @Service
 public class ConversationSummaryService {
 
     private static final String SUMMARY_KEY_PREFIX = "love_master:summary:";
+    /**
+     * 版本号使用与摘要 key 不相交的前缀，避免 conversationId 以 "ver:" 开头时与其他会话的摘要 key 冲突
+     */
+    private static final String SUMMARY_VERSION_KEY_PREFIX = "love_master:summary_ver:";
+
+    private static final int MAX_CAS_ATTEMPTS = 3;
+
+    private enum CasResult {
+        SWAPPED,
+        CONFLICT,
+        STORE_FAILED
+    }
+
+    /**
+     * KEYS[1]=摘要 key, KEYS[2]=版本 key, ARGV[1]=期望版本, ARGV[2]=新摘要, ARGV[3]=TTL 秒（<=0 不过期）
+     * 版本一致时写入并返回新版本，否则返回 -1。
+     */
+    private static final DefaultRedisScript<Long> CAS_SCRIPT = new DefaultRedisScript<>("""
+            local current = tonumber(redis.call('GET', KEYS[2]) or '0')
+            if current ~= tonumber(ARGV[1]) then
+                return -1
+            end
+            local ttl = tonumber(ARGV[3])
+            if ttl > 0 then
+                redis.call('SET', KEYS[1], ARGV[2], 'EX', ttl)
+                redis.call('SET', KEYS[2], current + 1, 'EX', ttl)
+            else
+                redis.call('SET', KEYS[1], ARGV[2])
+                redis.call('SET', KEYS[2], current + 1)
+            end
+            return current + 1
+            """, Long.class);
 
     private final ChatModel chatModel;
 
@@ -47,7 +88,7 @@ public class ConversationSummaryService {
     /**
      * Redis 不可用时的兜底存储。
      */
-    private final Map<String, String> localSummaryCache = new ConcurrentHashMap<>();
+    private final Map<String, VersionedSummary> localSummaryCache = new ConcurrentHashMap<>();
 
     @Value("${app.memory.summary.ttl-days:7}")
     private long summaryTtlDays;
@@ -64,17 +105,12 @@ public class ConversationSummaryService {
         if (!StringUtils.hasText(conversationId)) {
             return "";
         }
-        String key = SUMMARY_KEY_PREFIX + conversationId;
-
-        if (redisEnabled && stringRedisTemplate != null) {
-            try {
-                String v = stringRedisTemplate.opsForValue().get(key);
-                return v == null ? "" : v;
-            } catch (Exception e) {
-                log.debug("读取 Redis 摘要失败，回退本地缓存 conversationId={}", conversationId, e);
-            }
+        VersionedSummary current = readVersioned(conversationId);
+        VersionedSummary pending = pendingLocal(current, conversationId);
+        if (pending == null) {
+            return current.text();
         }
-        return localSummaryCache.getOrDefault(conversationId, "");
+        return StringUtils.hasText(current.text()) ? current.text() + "\n" + pending.text() : pending.text();
     }
 
     /**
@@ -87,11 +123,6 @@ public class ConversationSummaryService {
             return getSummary(conversationId);
         }
 
-        String existingSummary = getSummary(conversationId);
-        if (!StringUtils.hasText(existingSummary)) {
-            existingSummary = "暂无历史摘要";
-        }
-
         StringBuilder messagesText = new StringBuilder();
         for (Message msg : evictedMessages) {
             String role = (msg instanceof UserMessage) ? "用户" : "AI助手";
@@ -103,9 +134,49 @@ public class ConversationSummaryService {
         }
 
         if (!StringUtils.hasText(messagesText)) {
-            return existingSummary;
+            return getSummary(conversationId);
         }
 
+        VersionedSummary current = readVersioned(conversationId);
+        for (int attempt = 1; attempt <= MAX_CAS_ATTEMPTS; attempt++) {
+            // Redis 不可用期间写在本地的摘要一并合并进 Redis
+            VersionedSummary pending = pendingLocal(current, conversationId);
+            String toMerge = pending == null ? messagesText.toString()
+                    : "（此前一段对话的摘要）" + pending.text() + "\n" + messagesText;
+            String newSummary = mergeSummary(conversationId, current.text(), toMerge);
+            if (!StringUtils.hasText(newSummary)) {
+                return current.text();
+            }
+            CasResult result = compareAndSet(conversationId, current, newSummary);
+            if (result == CasResult.SWAPPED) {
+                if (pending != null) {
+                    localSummaryCache.remove(conversationId, pending);
+                }
+                log.info("对话摘要已更新, conversationId={}, len={}, version={}, attempt={}, redis={}, costMs={}",
+                        conversationId, newSummary.length(), current.version() + 1, attempt, current.redis(),
+                        System.currentTimeMillis() - startMs);
+                return newSummary;
+            }
+            if (result == CasResult.STORE_FAILED) {
+                log.warn("写入 Redis 摘要失败，放弃本次合并 conversationId={}, evicted={}",
+                        conversationId, evictedMessages.size());
+                return current.text();
+            }
+            // 摘要已被并发更新：基于最新摘要重新合并
+            log.info("摘要版本冲突，重新合并 conversationId={}, expectedVersion={}, attempt={}",
+                    conversationId, current.version(), attempt);
+            current = readVersioned(conversationId);
+        }
+        log.warn("摘要更新多次版本冲突，放弃本次合并 conversationId={}, evicted={}",
+                conversationId, evictedMessages.size());
+        return current.text();
+    }
+
+    /**
+     * 将新增对话合并到已有摘要；失败时返回 null。
+     */
+    private String mergeSummary(String conversationId, String summary, String messagesText) {
+        String existingSummary = StringUtils.hasText(summary) ? summary : "暂无历史摘要";
         try {
             String newSummary;
 
@@ -135,50 +206,91 @@ public class ConversationSummaryService {
                         %s
 
                         请输出更新后的完整摘要：
-                        """.formatted(existingSummary, messagesText.toString());
+                        """.formatted(existingSummary, messagesText);
 
                 newSummary = chatModel.call(new Prompt(summaryPrompt)).getResult().getOutput().getText();
             }
+            return newSummary;
+        } catch (Exception e) {
+            log.error("摘要更新失败, conversationId={}", conversationId, e);
+            return null;
+        }
+    }
 
-            if (!StringUtils.hasText(newSummary)) {
-                return existingSummary;
-            }
-
-            String key = SUMMARY_KEY_PREFIX + conversationId;
-            boolean stored = false;
-            if (redisEnabled && stringRedisTemplate != null) {
-                try {
-                    stringRedisTemplate.opsForValue().set(key, newSummary, summaryTtlDays, TimeUnit.DAYS);
-                    stored = true;
-                } catch (Exception e) {
-                    log.warn("写入 Redis 摘要失败，回退本地缓存 conversationId={}", conversationId, e);
+    private VersionedSummary readVersioned(String conversationId) {
+        if (redisEnabled && stringRedisTemplate != null) {
+            try {
+                List<String> values = stringRedisTemplate.opsForValue().multiGet(List.of(
+                        SUMMARY_KEY_PREFIX + conversationId, SUMMARY_VERSION_KEY_PREFIX + conversationId));
+                if (values != null && values.size() == 2) {
+                    String text = values.get(0);
+                    String version = values.get(1);
+                    return new VersionedSummary(text == null ? "" : text, version == null ? 0L : Long.parseLong(version), true);
                 }
+            } catch (Exception e) {
+                log.debug("读取 Redis 摘要失败，回退本地缓存 conversationId={}", conversationId, e);
             }
-            if (!stored) {
-                localSummaryCache.put(conversationId, newSummary);
-            }
+        }
+        return localSummaryCache.getOrDefault(conversationId, VersionedSummary.EMPTY);
+    }
 
-            log.info("对话摘要已更新, conversationId={}, len={}, costMs={}",
-                    conversationId, newSummary.length(), System.currentTimeMillis() - startMs);
-            return newSummary;
-        } catch (Exception e) {
-            log.error("摘要更新失败, conversationId={}", conversationId, e);
-            return existingSummary;
+    /**
+     * Redis 读取成功时，本地缓存中残留的是 Redis 不可用期间写入、尚未并入 Redis 的摘要。
+     */
+    private VersionedSummary pendingLocal(VersionedSummary current, String conversationId) {
+        if (!current.redis()) {
+            return null;
         }
+        VersionedSummary pending = localSummaryCache.get(conversationId);
+        return pending != null && StringUtils.hasText(pending.text()) ? pending : null;
+    }
+
+    /**
+     * 在读取 expected 的同一个存储上，版本一致时写入新摘要。
+     */
+    private CasResult compareAndSet(String conversationId, VersionedSummary expected, String newSummary) {
+        if (expected.redis()) {
+            try {
+                Long version = stringRedisTemplate.execute(CAS_SCRIPT,
+                        List.of(SUMMARY_KEY_PREFIX + conversationId, SUMMARY_VERSION_KEY_PREFIX + conversationId),
+                        String.valueOf(expected.version()), newSummary, String.valueOf(TimeUnit.DAYS.toSeconds(summaryTtlDays)));
+                return version != null && version >= 0 ? CasResult.SWAPPED : CasResult.CONFLICT;
+            } catch (Exception e) {
+                log.warn("Redis 摘要 CAS 执行失败 conversationId={}", conversationId, e);
+                return CasResult.STORE_FAILED;
+            }
+        }
+        AtomicBoolean swapped = new AtomicBoolean(false);
+        localSummaryCache.compute(conversationId, (k, current) -> {
+            long currentVersion = current == null ? 0L : current.version();
+            if (currentVersion != expected.version()) {
+                return current;
+            }
+            swapped.set(true);
+            return new VersionedSummary(newSummary, currentVersion + 1, false);
+        });
+        return swapped.get() ? CasResult.SWAPPED : CasResult.CONFLICT;
     }
 
     public void clearSummary(String conversationId) {
         if (!StringUtils.hasText(conversationId)) {
             return;
         }
-        String key = SUMMARY_KEY_PREFIX + conversationId;
         localSummaryCache.remove(conversationId);
         if (redisEnabled && stringRedisTemplate != null) {
             try {
-                stringRedisTemplate.delete(key);
+                stringRedisTemplate.delete(List.of(SUMMARY_KEY_PREFIX + conversationId,
+                        SUMMARY_VERSION_KEY_PREFIX + conversationId));
             } catch (Exception e) {
                 log.debug("清除 Redis 摘要失败 conversationId={}", conversationId, e);
             }
         }
     }
+
+    /**
+     * @param redis 是否读自 Redis；CAS 只在同一个存储上进行
+     */
+    private record VersionedSummary(String text, long version, boolean redis) {
+        private static final VersionedSummary EMPTY = new VersionedSummary("", 0L, false);
+    }
 }
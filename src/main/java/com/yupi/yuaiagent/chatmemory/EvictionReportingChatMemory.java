@@ -0,0 +1,17 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 能在写入时直接返回被窗口淘汰消息的 ChatMemory，调用方无需写入前后各读一次再比对。
+ */
+public interface EvictionReportingChatMemory extends ChatMemory {
+
+    /**
+     * 追加消息并返回本次被淘汰的消息（按时间顺序，不含 System 消息）。
+     */
+    List<Message> addAndReturnEvicted(String conversationId, List<Message> messages);
+}
@@ -0,0 +1,74 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import com.yupi.yuaiagent.chatmemory.model.MemoryCandidate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
+
+/**
+ * 带回退的重排：优先使用 primary（如本地特征模型），超出预算或出错时改用 fallback（线性公式），保证召回不失败。
+ */
+@Slf4j
+public class FallbackReranker implements Reranker {
+
+    private final Reranker primary;
+    private final Reranker fallback;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * @param meterRegistry 可为 null
+     */
+    public FallbackReranker(Reranker primary, Reranker fallback, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.fallback = fallback;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public String name() {
+        return primary.name() + "+" + fallback.name();
+    }
+
+    @Override
+    public List<MemoryCandidate> rerank(String query, List<MemoryCandidate> candidates, int topK) {
+        long startNs = System.nanoTime();
+        try {
+            List<MemoryCandidate> ranked = primary.rerank(query, candidates, topK);
+            record(primary.name(), startNs);
+            return ranked;
+        } catch (Exception e) {
+            String reason = e instanceof FeatureModelReranker.BudgetExceededException ? "budget" : "error";
+            if (meterRegistry != null) {
+                Counter.builder("memory_rerank_fallbacks")
+                        .description("重排回退到线性实现的次数")
+                        .tag("reranker", primary.name())
+                        .tag("reason", reason)
+                        .register(meterRegistry)
+                        .increment();
+            }
+            log.warn("[FallbackReranker-rerank] {}", kv("primary", primary.name(), "reason", reason,
+                    "candidates", candidates == null ? 0 : candidates.size(), "error", e.getMessage()));
+            long fallbackStartNs = System.nanoTime();
+            List<MemoryCandidate> ranked = fallback.rerank(query, candidates, topK);
+            record(fallback.name(), fallbackStartNs);
+            return ranked;
+        }
+    }
+
+    private void record(String reranker, long startNs) {
+        if (meterRegistry == null) {
+            return;
+        }
+        Timer.builder("memory_rerank_latency")
+                .description("记忆重排耗时")
+                .tag("reranker", reranker)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNs, TimeUnit.NANOSECONDS);
+    }
+}
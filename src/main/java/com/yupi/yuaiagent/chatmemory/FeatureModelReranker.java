@@ -0,0 +1,204 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yupi.yuaiagent.chatmemory.model.MemoryCandidate;
+import com.yupi.yuaiagent.util.TextTokenizer;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 本地特征模型重排：对 (query, candidate) 抽取交互特征，按逻辑回归形式打分，无远程调用。
+ * <p>
+ * 注意：内置的 memory/rerank-feature-model.json（version=untrained-default-v1）是手工设定的占位权重，
+ * 没有经过训练，也没有离线评测结果，排序效果未验证；因此默认策略为 linear，本实现只能显式开启。
+ * 上线前应通过 app.memory.rerank.feature-model.weights 指向基于标注数据训练并评测过的权重文件。
+ * <p>
+ * 特征除线性公式的四项外，还包括 bigram Jaccard、整句命中、来源 / 记忆类型、长度以及相似度×关键词交叉项。
+ * 候选按 batchSize 分批打分，每批结束检查时延预算，超出时抛出 {@link BudgetExceededException}，
+ * 由 {@link FallbackReranker} 回退到线性实现。
+ */
+public class FeatureModelReranker implements Reranker {
+
+    /**
+     * 特征顺序与权重文件 weights 中的 key 一一对应
+     */
+    static final String[] FEATURES = {
+            "similarity",
+            "recency",
+            "importance",
+            "keyword_hit",
+            "bigram_jaccard",
+            "exact_phrase",
+            "source_structured",
+            "type_constraint_or_preference",
+            "length",
+            "similarity_x_keyword"
+    };
+
+    private static final double LENGTH_NORM = Math.log1p(200);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final String version;
+    private final double bias;
+    private final double[] weights;
+    private final int batchSize;
+    private final long budgetNanos;
+
+    public FeatureModelReranker(String version, double bias, double[] weights, int batchSize, Duration budget) {
+        if (weights == null || weights.length != FEATURES.length) {
+            throw new IllegalArgumentException("特征模型权重数量不匹配: expected=" + FEATURES.length);
+        }
+        this.version = version;
+        this.bias = bias;
+        this.weights = weights.clone();
+        this.batchSize = Math.max(1, batchSize);
+        this.budgetNanos = budget.toNanos();
+    }
+
+    /**
+     * 从权重文件加载：{"version": "...", "bias": -2.1, "weights": {"similarity": 2.4, ...}}，缺失的特征权重按 0 处理。
+     */
+    public static FeatureModelReranker load(Resource resource, int batchSize, Duration budget) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            JsonNode root = new ObjectMapper().readTree(in);
+            JsonNode weightNode = root.path("weights");
+            double[] weights = new double[FEATURES.length];
+            for (int i = 0; i < FEATURES.length; i++) {
+                weights[i] = weightNode.path(FEATURES[i]).asDouble(0.0);
+            }
+            return new FeatureModelReranker(root.path("version").asText("unknown"), root.path("bias").asDouble(0.0),
+                    weights, batchSize, budget);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "feature-model";
+    }
+
+    public String version() {
+        return version;
+    }
+
+    /**
+     * 是否为未训练的占位权重（version 以 untrained 开头）。
+     */
+    public boolean untrained() {
+        return version != null && version.startsWith("untrained");
+    }
+
+    @Override
+    public List<MemoryCandidate> rerank(String query, List<MemoryCandidate> candidates, int topK) {
+        if (candidates == null || candidates.isEmpty()) {
+            return List.of();
+        }
+        long deadline = System.nanoTime() + budgetNanos;
+        int safeTopK = topK <= 0 ? 5 : topK;
+        long now = System.currentTimeMillis();
+        String loweredQuery = query == null ? "" : WHITESPACE.matcher(query.toLowerCase()).replaceAll("");
+        List<String> queryTokens = TextTokenizer.tokenize(query);
+        Set<String> querySet = new HashSet<>(queryTokens);
+
+        int n = candidates.size();
+        double[] scores = new double[n];
+        long[] sortTimestamps = new long[n];
+        double[] features = new double[FEATURES.length];
+        RerankTopK topKSelector = new RerankTopK(scores, sortTimestamps, safeTopK);
+
+        for (int i = 0; i < n; i++) {
+            if (i > 0 && i % batchSize == 0 && System.nanoTime() > deadline) {
+                throw new BudgetExceededException(i, n);
+            }
+            MemoryCandidate candidate = candidates.get(i);
+            if (candidate == null || !StringUtils.hasText(candidate.getContent())) {
+                continue;
+            }
+            extractFeatures(candidate, loweredQuery, queryTokens, querySet, now, features);
+            scores[i] = Math.round(sigmoid(dot(features)) * 1000D) / 1000D;
+            sortTimestamps[i] = candidate.getTimestampMs() == null ? 0L : candidate.getTimestampMs();
+            topKSelector.offer(i);
+        }
+        if (System.nanoTime() > deadline) {
+            throw new BudgetExceededException(n, n);
+        }
+
+        int[] selected = topKSelector.drainDescending();
+        MemoryCandidate[] ordered = new MemoryCandidate[selected.length];
+        for (int rank = 0; rank < selected.length; rank++) {
+            MemoryCandidate candidate = candidates.get(selected[rank]);
+            candidate.setFinalScore(scores[selected[rank]]);
+            ordered[rank] = candidate;
+        }
+        return List.of(ordered);
+    }
+
+    void extractFeatures(MemoryCandidate candidate, String loweredQuery, List<String> queryTokens, Set<String> querySet,
+                         long now, double[] out) {
+        String content = candidate.getContent();
+        String lowered = content.toLowerCase();
+        double similarity = clamp01(candidate.getSimilarity() == null ? 0.5 : candidate.getSimilarity());
+        double keyword = TextTokenizer.hitRatio(lowered, queryTokens);
+        long timestamp = candidate.getTimestampMs() == null ? now : candidate.getTimestampMs();
+        double days = Math.max(0L, now - timestamp) / 86_400_000D;
+        String memoryType = candidate.getMemoryType();
+
+        out[0] = similarity;
+        out[1] = clamp01(1.0 / (1.0 + days / 7.0));
+        out[2] = clamp01(candidate.getImportance() == null ? 0.5 : candidate.getImportance());
+        out[3] = keyword;
+        out[4] = jaccard(querySet, TextTokenizer.tokenize(content));
+        out[5] = !loweredQuery.isEmpty() && WHITESPACE.matcher(lowered).replaceAll("").contains(loweredQuery) ? 1.0 : 0.0;
+        out[6] = "structured".equals(candidate.getSource()) ? 1.0 : 0.0;
+        out[7] = "constraint".equals(memoryType) || "preference".equals(memoryType) ? 1.0 : 0.0;
+        out[8] = Math.min(1.0, Math.log1p(content.length()) / LENGTH_NORM);
+        out[9] = similarity * keyword;
+    }
+
+    private double dot(double[] features) {
+        double z = bias;
+        for (int i = 0; i < features.length; i++) {
+            z += weights[i] * features[i];
+        }
+        return z;
+    }
+
+    private static double jaccard(Set<String> querySet, List<String> contentTokens) {
+        if (querySet.isEmpty() || contentTokens.isEmpty()) {
+            return 0.0;
+        }
+        int intersection = 0;
+        for (String token : contentTokens) {
+            if (querySet.contains(token)) {
+                intersection++;
+            }
+        }
+        return (double) intersection / (querySet.size() + contentTokens.size() - intersection);
+    }
+
+    private static double sigmoid(double z) {
+        return 1.0 / (1.0 + Math.exp(-z));
+    }
+
+    private static double clamp01(double value) {
+        return value < 0 ? 0 : Math.min(1, value);
+    }
+
+    /**
+     * 打分超出时延预算
+     */
+    public static class BudgetExceededException extends RuntimeException {
+
+        public BudgetExceededException(int scored, int total) {
+            super("特征模型重排超出时延预算: scored=" + scored + ", total=" + total);
+        }
+    }
+}
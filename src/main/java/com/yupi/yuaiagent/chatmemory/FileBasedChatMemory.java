@@ -1,16 +1,10 @@
 package com.yupi.yuaiagent.chatmemory;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
 import lombok.extern.slf4j.Slf4j;
-import org.objenesis.strategy.StdInstantiatorStrategy;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.Message;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -24,13 +18,6 @@ import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
 public class FileBasedChatMemory implements ChatMemory {
 
     private final String BASE_DIR;
-    private static final Kryo kryo = new Kryo();
-
-    static {
-        kryo.setRegistrationRequired(false);
-        // 设置实例化策略
-        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
-    }
 
     // 构造对象时，指定文件保存目录
     public FileBasedChatMemory(String dir) {
@@ -75,8 +62,8 @@ public class FileBasedChatMemory implements ChatMemory {
         File file = getConversationFile(conversationId);
         List<Message> messages = new ArrayList<>();
         if (file.exists()) {
-            try (Input input = new Input(new FileInputStream(file))) {
-                messages = kryo.readObject(input, ArrayList.class);
+            try {
+                messages = MessageFileCodec.readAll(file);
             } catch (IOException e) {
                 log.error("[FileBasedChatMemory-getOrCreateConversation] {}",
                         kv("conversationId", conversationId, "filePath", file.getAbsolutePath(), "status", "read_error"), e);
@@ -87,8 +74,8 @@ public class FileBasedChatMemory implements ChatMemory {
 
     private void saveConversation(String conversationId, List<Message> messages) {
         File file = getConversationFile(conversationId);
-        try (Output output = new Output(new FileOutputStream(file))) {
-            kryo.writeObject(output, messages);
+        try {
+            MessageFileCodec.writeSnapshot(file, messages);
         } catch (IOException e) {
             log.error("[FileBasedChatMemory-saveConversation] {}",
                     kv("conversationId", conversationId,
@@ -1,16 +1,9 @@
 package com.yupi.yuaiagent.chatmemory;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
 import lombok.extern.slf4j.Slf4j;
-import org.objenesis.strategy.StdInstantiatorStrategy;
-import org.springframework.ai.chat.memory.ChatMemoryRepository;
 import org.springframework.ai.chat.messages.Message;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -23,18 +16,13 @@ import java.util.List;
  * 基于文件持久化的对话记忆仓库（用于 Spring AI MessageWindowChatMemory）。
  * <p>
  * - 每个 conversationId 对应一个文件
- * - 使用 Kryo 序列化 Message 列表（与 FileBasedChatMemory 的实现保持一致）
+ * - 使用 Kryo 序列化 Message 列表（与 FileBasedChatMemory 的实现保持一致，见 MessageFileCodec）
+ * - 文件尾带偏移 footer，findLastN 通过 mmap 只解码最后 N 条
  */
 @Slf4j
-public class FileChatMemoryRepository implements ChatMemoryRepository {
+public class FileChatMemoryRepository implements WindowedChatMemoryRepository {
 
     private final File baseDir;
-    private static final Kryo KRYO = new Kryo();
-
-    static {
-        KRYO.setRegistrationRequired(false);
-        KRYO.setInstantiatorStrategy(new StdInstantiatorStrategy());
-    }
 
     public FileChatMemoryRepository(String dir) {
         this.baseDir = new File(dir);
@@ -62,9 +50,25 @@ public class FileChatMemoryRepository implements ChatMemoryRepository {
         if (!file.exists()) {
             return new ArrayList<>();
         }
-        try (Input input = new Input(new FileInputStream(file))) {
-            //noinspection unchecked
-            return KRYO.readObject(input, ArrayList.class);
+        try {
+            return MessageFileCodec.readAll(file);
+        } catch (Exception e) {
+            log.warn("读取对话记忆失败，conversationId={} file={}", conversationId, file.getAbsolutePath(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public synchronized List<Message> findLastN(String conversationId, int n) {
+        if (conversationId == null || conversationId.isBlank() || n <= 0) {
+            return new ArrayList<>();
+        }
+        File file = getConversationFile(conversationId);
+        if (!file.exists()) {
+            return new ArrayList<>();
+        }
+        try {
+            return MessageFileCodec.readLastN(file, n);
         } catch (Exception e) {
             log.warn("读取对话记忆失败，conversationId={} file={}", conversationId, file.getAbsolutePath(), e);
             return new ArrayList<>();
@@ -109,8 +113,8 @@ public class FileChatMemoryRepository implements ChatMemoryRepository {
 
     private void saveConversation(String conversationId, List<Message> messages) {
         File file = getConversationFile(conversationId);
-        try (Output output = new Output(new FileOutputStream(file))) {
-            KRYO.writeObject(output, messages);
+        try {
+            MessageFileCodec.writeSnapshot(file, messages);
         } catch (IOException e) {
             log.warn("保存对话记忆失败，conversationId={} file={}", conversationId, file.getAbsolutePath(), e);
         }
@@ -1,34 +1,91 @@
 package com.yupi.yuaiagent.chatmemory;
 
 import com.yupi.yuaiagent.chatmemory.model.MemoryCandidate;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
 
 /**
  * 混合记忆召回服务：结构化中期记忆 + 向量长期记忆 + rerank。
+ * <p>
+ * 两个来源并发查询并共享同一个截止时间；结构化记忆先返回且高置信候选已够 topK 时，
+ * 不再等待向量检索（embedding + pgvector），直接进入 rerank。
  */
 @Slf4j
 @Service
 public class HybridMemoryRecallService implements MemoryRecallFacade {
 
+    static final String SOURCE_STRUCTURED = "structured";
+    static final String SOURCE_VECTOR = "vector";
+
+    private static final Executor DEFAULT_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
     private final StructuredMidMemoryService structuredMidMemoryService;
     private final VectorMemoryService vectorMemoryService;
-    private final MemoryRerankService memoryRerankService;
+    private final Reranker reranker;
+    private final Executor executor;
+    private final MeterRegistry meterRegistry;
 
     @Value("${app.memory.recall.candidate-limit:20}")
     private int candidateLimit = 20;
 
+    /**
+     * 两个来源共享的召回截止时间
+     */
+    @Value("${app.memory.recall.deadline-ms:800}")
+    private long deadlineMs = 800;
+
+    /**
+     * 结构化候选相似度达到该值视为高置信，高置信候选数 >= topK 时提前结束等待
+     */
+    @Value("${app.memory.recall.early-confidence:0.75}")
+    private double earlyConfidence = 0.75;
+
+    public HybridMemoryRecallService(StructuredMidMemoryService structuredMidMemoryService,
+                                     VectorMemoryService vectorMemoryService,
+                                     Reranker reranker) {
+        this(structuredMidMemoryService, vectorMemoryService, reranker, DEFAULT_EXECUTOR, null);
+    }
+
+    @Autowired
     public HybridMemoryRecallService(StructuredMidMemoryService structuredMidMemoryService,
                                      VectorMemoryService vectorMemoryService,
-                                     MemoryRerankService memoryRerankService) {
+                                     Reranker reranker,
+                                     @Qualifier("memoryReadExecutor") ObjectProvider<ExecutorService> executorProvider,
+                                     ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this(structuredMidMemoryService, vectorMemoryService, reranker,
+                executorProvider.getIfAvailable(), meterRegistryProvider.getIfAvailable());
+    }
+
+    HybridMemoryRecallService(StructuredMidMemoryService structuredMidMemoryService,
+                              VectorMemoryService vectorMemoryService,
+                              Reranker reranker,
+                              Executor executor,
+                              MeterRegistry meterRegistry) {
         this.structuredMidMemoryService = structuredMidMemoryService;
         this.vectorMemoryService = vectorMemoryService;
-        this.memoryRerankService = memoryRerankService;
+        this.reranker = reranker;
+        this.executor = executor == null ? DEFAULT_EXECUTOR : executor;
+        this.meterRegistry = meterRegistry;
     }
 
     @Override
@@ -40,31 +97,103 @@ public class HybridMemoryRecallService implements MemoryRecallFacade {
         int safeCandidateLimit = Math.max(safeTopK, candidateLimit);
 
         long startMs = System.currentTimeMillis();
-        List<MemoryCandidate> mergedCandidates = new ArrayList<>();
+        long deadlineNs = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(1, deadlineMs));
 
-        List<MemoryCandidate> structuredCandidates = structuredMidMemoryService.search(conversationId, query, safeCandidateLimit);
-        if (structuredCandidates != null && !structuredCandidates.isEmpty()) {
-            mergedCandidates.addAll(structuredCandidates);
-        }
+        CompletableFuture<List<MemoryCandidate>> structuredFuture = fetch(SOURCE_STRUCTURED, conversationId,
+                () -> structuredMidMemoryService.search(conversationId, query, safeCandidateLimit));
+        CompletableFuture<List<MemoryCandidate>> vectorFuture = fetch(SOURCE_VECTOR, conversationId,
+                () -> vectorMemoryService.searchCandidates(conversationId, query, safeCandidateLimit));
 
-        List<MemoryCandidate> vectorCandidates = vectorMemoryService.searchCandidates(conversationId, query, safeCandidateLimit);
-        if (vectorCandidates != null && !vectorCandidates.isEmpty()) {
-            mergedCandidates.addAll(vectorCandidates);
-        }
+        List<MemoryCandidate> structuredCandidates = await(structuredFuture, deadlineNs);
+        boolean earlyTerminated = !vectorFuture.isDone() && highConfidenceCount(structuredCandidates) >= safeTopK;
+        List<MemoryCandidate> vectorCandidates = earlyTerminated
+                ? vectorFuture.getNow(List.of())
+                : await(vectorFuture, deadlineNs);
 
+        List<MemoryCandidate> mergedCandidates = new ArrayList<>(structuredCandidates.size() + vectorCandidates.size());
+        mergedCandidates.addAll(structuredCandidates);
+        mergedCandidates.addAll(vectorCandidates);
         if (mergedCandidates.isEmpty()) {
             return List.of();
         }
-        List<MemoryCandidate> ranked = memoryRerankService.rerank(query, mergedCandidates, safeTopK);
+        List<MemoryCandidate> ranked = reranker.rerank(query, mergedCandidates, safeTopK);
 
-        log.info("[HybridMemoryRecallService-recall] conversationId={}, queryLength={}, structuredCount={}, vectorCount={}, mergedCount={}, rankedCount={}, costMs={}",
+        log.info("[HybridMemoryRecallService-recall] conversationId={}, queryLength={}, structuredCount={}, vectorCount={}, mergedCount={}, rankedCount={}, earlyTerminated={}, costMs={}",
                 conversationId,
                 query.length(),
-                structuredCandidates == null ? 0 : structuredCandidates.size(),
-                vectorCandidates == null ? 0 : vectorCandidates.size(),
+                structuredCandidates.size(),
+                vectorCandidates.size(),
                 mergedCandidates.size(),
                 ranked.size(),
+                earlyTerminated,
                 System.currentTimeMillis() - startMs);
         return ranked;
     }
+
+    private CompletableFuture<List<MemoryCandidate>> fetch(String source, String conversationId,
+                                                           Supplier<List<MemoryCandidate>> supplier) {
+        long startNs = System.nanoTime();
+        CompletableFuture<List<MemoryCandidate>> task;
+        try {
+            task = CompletableFuture.supplyAsync(supplier, executor);
+        } catch (Exception e) {
+            task = CompletableFuture.failedFuture(e);
+        }
+        return task.handle((result, error) -> {
+            List<MemoryCandidate> candidates = result == null ? List.of() : result;
+            if (error != null) {
+                log.warn("[HybridMemoryRecallService-fetch] {}",
+                        kv("conversationId", conversationId, "source", source, "outcome", "error"), error);
+            }
+            record(source, error == null ? "success" : "error", System.nanoTime() - startNs, candidates.size());
+            return candidates;
+        });
+    }
+
+    /**
+     * 在共享截止时间内等待来源结果；超时返回空列表（后台任务完成后仍会记录耗时指标）。
+     */
+    private List<MemoryCandidate> await(CompletableFuture<List<MemoryCandidate>> future, long deadlineNs) {
+        try {
+            long remainingNs = deadlineNs - System.nanoTime();
+            return remainingNs > 0 ? future.get(remainingNs, TimeUnit.NANOSECONDS) : future.getNow(List.of());
+        } catch (TimeoutException e) {
+            log.warn("[HybridMemoryRecallService-await] {}", kv("outcome", "deadline_exceeded", "deadlineMs", deadlineMs));
+            return List.of();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return List.of();
+        } catch (Exception e) {
+            return List.of();
+        }
+    }
+
+    private int highConfidenceCount(List<MemoryCandidate> candidates) {
+        int count = 0;
+        for (MemoryCandidate candidate : candidates) {
+            if (candidate != null && candidate.getSimilarity() != null && candidate.getSimilarity() >= earlyConfidence) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void record(String source, String outcome, long elapsedNs, int candidateCount) {
+        if (meterRegistry == null) {
+            return;
+        }
+        Timer.builder("memory_recall_source_latency")
+                .description("混合召回各来源查询耗时")
+                .tag("source", source)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(elapsedNs, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("memory_recall_source_candidates")
+                .description("混合召回各来源返回的候选数")
+                .tag("source", source)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(candidateCount);
+    }
 }
@@ -0,0 +1,237 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
+
+/**
+ * 回复后的记忆维护任务执行器（摘要更新 / 向量写入 / 结构化中期记忆）。
+ * <p>
+ * - 每类任务一个独立的有界线程池，慢的 LLM 摘要不会占满其他任务或公共 ForkJoinPool
+ * - 同一会话同一类任务串行执行；排队中的任务会把新消息合并进去（coalesce），队列里每个会话最多一个任务
+ * - 线程池队列满时丢弃该会话的待处理消息并计数，不阻塞请求线程
+ */
+@Slf4j
+public class MemoryMaintenanceExecutor implements AutoCloseable {
+
+    public enum TaskClass {
+        SUMMARY("summary"),
+        VECTOR("vector"),
+        STRUCTURED("structured");
+
+        private final String tag;
+
+        TaskClass(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    /**
+     * @param threads       线程数
+     * @param queueCapacity 排队任务上限（每个会话至多占一个）
+     */
+    public record PoolSettings(int threads, int queueCapacity) {
+    }
+
+    private final Map<TaskClass, Lane> lanes = new EnumMap<>(TaskClass.class);
+
+    public MemoryMaintenanceExecutor(PoolSettings summary,
+                                     PoolSettings vector,
+                                     PoolSettings structured,
+                                     MeterRegistry meterRegistry) {
+        lanes.put(TaskClass.SUMMARY, new Lane(TaskClass.SUMMARY, summary, meterRegistry));
+        lanes.put(TaskClass.VECTOR, new Lane(TaskClass.VECTOR, vector, meterRegistry));
+        lanes.put(TaskClass.STRUCTURED, new Lane(TaskClass.STRUCTURED, structured, meterRegistry));
+    }
+
+    /**
+     * 默认配置：摘要 1 线程（LLM 调用慢，且按会话串行即可），向量与结构化各 2 线程。
+     */
+    public static MemoryMaintenanceExecutor withDefaults() {
+        return new MemoryMaintenanceExecutor(
+                new PoolSettings(1, 200),
+                new PoolSettings(2, 500),
+                new PoolSettings(2, 500),
+                null);
+    }
+
+    /**
+     * 提交一个按会话串行、可合并的维护任务。
+     *
+     * @param messages 本次需要处理的消息；与同会话尚未开始的任务合并后一起交给 action
+     */
+    public void submit(TaskClass taskClass, String conversationId, List<Message> messages,
+                       BiConsumer<String, List<Message>> action) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        lanes.get(taskClass).submit(conversationId, messages, action);
+    }
+
+    @Override
+    public void close() {
+        for (Lane lane : lanes.values()) {
+            lane.pool.shutdown();
+        }
+        for (Lane lane : lanes.values()) {
+            try {
+                if (!lane.pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                    log.warn("[MemoryMaintenanceExecutor-close] {}",
+                            kv("pool", lane.taskClass.tag, "queued", lane.pool.getQueue().size()));
+                    lane.pool.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lane.pool.shutdownNow();
+            }
+        }
+    }
+
+    private static final class PendingWork {
+        private List<Message> messages;
+        private BiConsumer<String, List<Message>> action;
+        private boolean running;
+    }
+
+    private static final class Lane {
+        private final TaskClass taskClass;
+        private final ThreadPoolExecutor pool;
+        private final ConcurrentHashMap<String, PendingWork> pending = new ConcurrentHashMap<>();
+        private final Counter submitted;
+        private final Counter coalesced;
+        private final Counter dropped;
+        private final Counter failed;
+
+        private Lane(TaskClass taskClass, PoolSettings settings, MeterRegistry meterRegistry) {
+            this.taskClass = taskClass;
+            int threads = Math.max(1, settings.threads());
+            this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, settings.queueCapacity())),
+                    daemonThreadFactory("memory-" + taskClass.tag + "-"),
+                    new ThreadPoolExecutor.AbortPolicy());
+            this.pool.allowCoreThreadTimeOut(true);
+            if (meterRegistry != null) {
+                Gauge.builder("memory_maintenance_queue_size", pool, p -> p.getQueue().size())
+                        .tag("pool", taskClass.tag)
+                        .register(meterRegistry);
+                Gauge.builder("memory_maintenance_active_threads", pool, ThreadPoolExecutor::getActiveCount)
+                        .tag("pool", taskClass.tag)
+                        .register(meterRegistry);
+                Gauge.builder("memory_maintenance_pending_conversations", pending, ConcurrentHashMap::size)
+                        .tag("pool", taskClass.tag)
+                        .register(meterRegistry);
+            }
+            this.submitted = counter(meterRegistry, "submitted");
+            this.coalesced = counter(meterRegistry, "coalesced");
+            this.dropped = counter(meterRegistry, "dropped");
+            this.failed = counter(meterRegistry, "failed");
+        }
+
+        private void submit(String conversationId, List<Message> messages, BiConsumer<String, List<Message>> action) {
+            boolean[] schedule = {false};
+            pending.compute(conversationId, (k, work) -> {
+                if (work == null) {
+                    work = new PendingWork();
+                }
+                if (work.messages == null) {
+                    work.messages = new ArrayList<>(messages);
+                } else {
+                    work.messages.addAll(messages);
+                    increment(coalesced);
+                }
+                work.action = action;
+                if (!work.running) {
+                    work.running = true;
+                    schedule[0] = true;
+                }
+                return work;
+            });
+            increment(submitted);
+            if (!schedule[0]) {
+                return;
+            }
+            try {
+                pool.execute(() -> drain(conversationId));
+            } catch (RejectedExecutionException e) {
+                PendingWork droppedWork = pending.remove(conversationId);
+                increment(dropped);
+                log.warn("[MemoryMaintenanceExecutor-submit] {}",
+                        kv("pool", taskClass.tag, "conversationId", conversationId,
+                                "droppedMessages", droppedWork == null || droppedWork.messages == null ? 0 : droppedWork.messages.size(),
+                                "queued", pool.getQueue().size()));
+            }
+        }
+
+        private void drain(String conversationId) {
+            while (true) {
+                Object[] next = new Object[2];
+                pending.compute(conversationId, (k, work) -> {
+                    if (work == null || work.messages == null) {
+                        // 没有新任务，结束本会话的串行链
+                        return null;
+                    }
+                    next[0] = work.messages;
+                    next[1] = work.action;
+                    work.messages = null;
+                    return work;
+                });
+                if (next[0] == null) {
+                    return;
+                }
+                @SuppressWarnings("unchecked")
+                List<Message> batch = (List<Message>) next[0];
+                @SuppressWarnings("unchecked")
+                BiConsumer<String, List<Message>> action = (BiConsumer<String, List<Message>>) next[1];
+                try {
+                    action.accept(conversationId, batch);
+                } catch (Exception e) {
+                    increment(failed);
+                    log.warn("[MemoryMaintenanceExecutor-drain] {}",
+                            kv("pool", taskClass.tag, "conversationId", conversationId, "messages", batch.size()), e);
+                }
+            }
+        }
+
+        private Counter counter(MeterRegistry meterRegistry, String outcome) {
+            if (meterRegistry == null) {
+                return null;
+            }
+            return Counter.builder("memory_maintenance_tasks")
+                    .tag("pool", taskClass.tag)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+
+        private static void increment(Counter counter) {
+            if (counter != null) {
+                counter.increment();
+            }
+        }
+
+        private static ThreadFactory daemonThreadFactory(String prefix) {
+            AtomicInteger seq = new AtomicInteger();
+            return runnable -> {
+                Thread thread = new Thread(runnable, prefix + seq.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+}
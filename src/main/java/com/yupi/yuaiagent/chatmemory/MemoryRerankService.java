@@ -1,26 +1,25 @@
 package com.yupi.yuaiagent.chatmemory;
 
 import com.yupi.yuaiagent.chatmemory.model.MemoryCandidate;
+import com.yupi.yuaiagent.util.TextTokenizer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * 记忆候选重排服务：
  * 融合语义相似度、时间新鲜度、重要度、关键词命中率进行 rerank。
+ * 作为 {@link Reranker} 的默认实现，也是特征模型重排的回退实现。
  */
 @Slf4j
 @Service
-public class MemoryRerankService {
+public class MemoryRerankService implements Reranker {
 
     @Value("${app.memory.rerank.weight-similarity:0.45}")
     private double weightSimilarity = 0.45;
@@ -34,16 +33,38 @@ public class MemoryRerankService {
     @Value("${app.memory.rerank.weight-keyword:0.15}")
     private double weightKeyword = 0.15;
 
+    /**
+     * 为 true 时在返回的候选 metadata 中写入各分项得分（rerank_similarity 等），仅用于排查
+     */
+    @Value("${app.memory.rerank.debug:false}")
+    private boolean debug = false;
+
+    @Override
+    public String name() {
+        return "linear";
+    }
+
+    /**
+     * 打分内核：各分项与总分写入原始 double 数组，用大小为 topK 的最小堆（{@link RerankTopK}）选出前 K 个，
+     * 只对入选候选装箱 finalScore；debug 关闭时不复制 metadata。
+     */
+    @Override
     public List<MemoryCandidate> rerank(String query, List<MemoryCandidate> candidates, int topK) {
         if (candidates == null || candidates.isEmpty()) {
             return List.of();
         }
         int safeTopK = topK <= 0 ? 5 : topK;
         long now = System.currentTimeMillis();
-        List<String> tokens = splitTokens(query);
-        List<MemoryCandidate> scored = new ArrayList<>();
+        List<String> tokens = TextTokenizer.tokenize(query);
+        int n = candidates.size();
+
+        double[] scores = new double[n];
+        long[] sortTimestamps = new long[n];
+        double[][] components = debug ? new double[4][n] : null;
+        RerankTopK topKSelector = new RerankTopK(scores, sortTimestamps, safeTopK);
 
-        for (MemoryCandidate candidate : candidates) {
+        for (int i = 0; i < n; i++) {
+            MemoryCandidate candidate = candidates.get(i);
             if (candidate == null || !StringUtils.hasText(candidate.getContent())) {
                 continue;
             }
@@ -52,65 +73,60 @@ public class MemoryRerankService {
             double recency = recencyScore(defaultValue(candidate.getTimestampMs(), now), now);
             double keyword = keywordScore(tokens, candidate.getContent());
 
-            double finalScore = similarity * weightSimilarity
+            scores[i] = round(similarity * weightSimilarity
                     + recency * weightRecency
                     + importance * weightImportance
-                    + keyword * weightKeyword;
-
-            candidate.setFinalScore(round(finalScore));
-            Map<String, Object> metadata = candidate.getMetadata() == null ? new HashMap<>() : new HashMap<>(candidate.getMetadata());
-            metadata.put("rerank_similarity", round(similarity));
-            metadata.put("rerank_recency", round(recency));
-            metadata.put("rerank_importance", round(importance));
-            metadata.put("rerank_keyword", round(keyword));
-            metadata.put("rerank_formula", "sim*ws + rec*wr + imp*wi + key*wk");
-            candidate.setMetadata(metadata);
-            scored.add(candidate);
+                    + keyword * weightKeyword);
+            sortTimestamps[i] = defaultValue(candidate.getTimestampMs(), 0L);
+            if (components != null) {
+                components[0][i] = similarity;
+                components[1][i] = recency;
+                components[2][i] = importance;
+                components[3][i] = keyword;
+            }
+            topKSelector.offer(i);
         }
 
-        scored.sort(Comparator
-                .comparing((MemoryCandidate c) -> defaultValue(c.getFinalScore(), 0.0)).reversed()
-                .thenComparing(c -> defaultValue(c.getTimestampMs(), 0L), Comparator.reverseOrder()));
-
-        List<MemoryCandidate> result = scored.size() > safeTopK
-                ? new ArrayList<>(scored.subList(0, safeTopK))
-                : scored;
-
-        log.info("[MemoryRerankService-rerank] queryLength={}, candidateCount={}, outputCount={}, weights={}",
-                query == null ? 0 : query.length(),
-                candidates.size(),
-                result.size(),
-                "sim=" + round(weightSimilarity) + ",rec=" + round(weightRecency)
-                        + ",imp=" + round(weightImportance) + ",key=" + round(weightKeyword));
+        int[] selected = topKSelector.drainDescending();
+        MemoryCandidate[] ordered = new MemoryCandidate[selected.length];
+        for (int rank = 0; rank < selected.length; rank++) {
+            int index = selected[rank];
+            MemoryCandidate candidate = candidates.get(index);
+            candidate.setFinalScore(scores[index]);
+            if (components != null) {
+                attachDebugMetadata(candidate, components, index);
+            }
+            ordered[rank] = candidate;
+        }
+        List<MemoryCandidate> result = Arrays.asList(ordered);
+
+        // 每次召回都会调用，HybridMemoryRecallService 已输出 info 级汇总日志，这里降为 debug
+        if (log.isDebugEnabled()) {
+            log.debug("[MemoryRerankService-rerank] queryLength={}, candidateCount={}, outputCount={}, weights={}",
+                    query == null ? 0 : query.length(),
+                    candidates.size(),
+                    result.size(),
+                    "sim=" + round(weightSimilarity) + ",rec=" + round(weightRecency)
+                            + ",imp=" + round(weightImportance) + ",key=" + round(weightKeyword));
+        }
         return result;
     }
 
-    private List<String> splitTokens(String query) {
-        if (!StringUtils.hasText(query)) {
-            return List.of();
-        }
-        String[] parts = query.toLowerCase().split("[\\s,，。；;!?！？和与及]+");
-        Set<String> tokens = new LinkedHashSet<>();
-        for (String part : parts) {
-            if (part != null && !part.isBlank()) {
-                tokens.add(part);
-            }
-        }
-        return new ArrayList<>(tokens);
+    private void attachDebugMetadata(MemoryCandidate candidate, double[][] components, int index) {
+        Map<String, Object> metadata = candidate.getMetadata() == null ? new HashMap<>() : new HashMap<>(candidate.getMetadata());
+        metadata.put("rerank_similarity", round(components[0][index]));
+        metadata.put("rerank_recency", round(components[1][index]));
+        metadata.put("rerank_importance", round(components[2][index]));
+        metadata.put("rerank_keyword", round(components[3][index]));
+        metadata.put("rerank_formula", "sim*ws + rec*wr + imp*wi + key*wk");
+        candidate.setMetadata(metadata);
     }
 
     private double keywordScore(List<String> tokens, String content) {
         if (tokens == null || tokens.isEmpty() || !StringUtils.hasText(content)) {
             return 0.0;
         }
-        String lowered = content.toLowerCase();
-        int hit = 0;
-        for (String token : tokens) {
-            if (lowered.contains(token)) {
-                hit++;
-            }
-        }
-        return clamp01((double) hit / tokens.size());
+        return clamp01(TextTokenizer.hitRatio(content.toLowerCase(), tokens));
     }
 
     private double recencyScore(long timestampMs, long nowMs) {
@@ -0,0 +1,108 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 单个记忆来源（pgvector、结构化记忆库等）的熔断器。
+ * <p>
+ * CLOSED 时正常放行；连续失败达到 failureThreshold 次后转为 OPEN，openDurationMs 内的调用直接拒绝；
+ * 到期后转为 HALF_OPEN 只放行一次探测请求，探测成功恢复 CLOSED，失败则重新 OPEN。
+ * 探测请求迟迟不回报结果时，超过 openDurationMs 会再放行一次，避免卡死在半开状态。
+ */
+public class MemorySourceCircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * @param lastErrorType 最近一次失败的异常类名（不含异常消息，避免经监控端点暴露连接串 / SQL 等内部信息）
+     */
+    public record Snapshot(String source,
+                           State state,
+                           int consecutiveFailures,
+                           long totalFailures,
+                           long rejectedCalls,
+                           long openedAtMs,
+                           String lastErrorType) {
+    }
+
+    private final String source;
+    private final int failureThreshold;
+    private final long openDurationMs;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long totalFailures;
+    private long rejectedCalls;
+    private long openedAtMs;
+    private long probeStartedAtMs;
+    private String lastErrorType;
+
+    public MemorySourceCircuitBreaker(String source, int failureThreshold, long openDurationMs, LongSupplier clock) {
+        this.source = source;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDurationMs = Math.max(0, openDurationMs);
+        this.clock = clock;
+    }
+
+    /**
+     * @return true 表示允许本次调用，调用方必须随后回报 {@link #onSuccess()} 或 {@link #onFailure(Throwable)}
+     */
+    public synchronized boolean tryAcquire() {
+        long now = clock.getAsLong();
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now - openedAtMs >= openDurationMs) {
+                    state = State.HALF_OPEN;
+                    probeStartedAtMs = now;
+                    return true;
+                }
+                break;
+            case HALF_OPEN:
+                if (now - probeStartedAtMs >= openDurationMs) {
+                    probeStartedAtMs = now;
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        rejectedCalls++;
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void onFailure(Throwable error) {
+        consecutiveFailures++;
+        totalFailures++;
+        lastErrorType = error == null ? null : error.getClass().getName();
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtMs = clock.getAsLong();
+        }
+    }
+
+    public synchronized void reset() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(source, state, consecutiveFailures, totalFailures, rejectedCalls,
+                state == State.CLOSED ? 0 : openedAtMs, lastErrorType);
+    }
+}
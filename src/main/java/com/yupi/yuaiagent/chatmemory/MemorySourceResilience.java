@@ -0,0 +1,250 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
+
+/**
+ * 记忆来源的共享容错层：按来源熔断 + 空结果负缓存。
+ * <p>
+ * 熔断：来源连续失败后在一段时间内直接拒绝调用（调用方按已有逻辑降级），到期放行探测请求自动恢复，
+ * 既不让故障给每一轮对话增加超时等待，也不会像一次失败就永久关闭那样再也不恢复。
+ * <p>
+ * 负缓存：来源确认某会话没有任何记忆后，在 TTL 内跳过该会话的检索；该会话有新记忆写入时立即失效。
+ * 只有能确认“没有记忆”的来源才写入负缓存，单次检索结果为空（可能只是不相关）不算。
+ * 检索开始前取 {@link #writeEpoch}，标记时带上该值：检索期间有写入（epoch 变化）则不标记，
+ * 避免基于写入前的 EXISTS 结果把刚写入记忆的会话标记为空。
+ */
+@Slf4j
+@Component
+public class MemorySourceResilience {
+
+    public static final String SOURCE_VECTOR = "vector";
+    public static final String SOURCE_STRUCTURED_DB = "structured_db";
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    private static final long DEFAULT_OPEN_DURATION_MS = 30_000;
+    private static final long DEFAULT_NEGATIVE_TTL_MS = 60_000;
+    private static final long DEFAULT_NEGATIVE_MAX_SIZE = 10_000;
+
+    /**
+     * 写入 epoch 按 key 的哈希分槽，内存固定；不同会话落到同一槽只会多跳过几次标记，不会误标记
+     */
+    private static final int WRITE_EPOCH_SLOTS = 4096;
+
+    /**
+     * 熔断打开时抛出，调用方与其他调用失败一样走降级逻辑
+     */
+    public static class SourceUnavailableException extends RuntimeException {
+
+        public SourceUnavailableException(String source) {
+            super("记忆来源已熔断: " + source);
+        }
+    }
+
+    private final int failureThreshold;
+    private final long openDurationMs;
+    private final LongSupplier clock;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, MemorySourceCircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Cache<String, Boolean> knownEmpty;
+    private final AtomicLongArray writeEpochs = new AtomicLongArray(WRITE_EPOCH_SLOTS);
+
+    @Autowired
+    public MemorySourceResilience(@Value("${app.memory.resilience.failure-threshold:3}") int failureThreshold,
+                                  @Value("${app.memory.resilience.open-duration-ms:30000}") long openDurationMs,
+                                  @Value("${app.memory.resilience.negative-cache-ttl-ms:60000}") long negativeCacheTtlMs,
+                                  @Value("${app.memory.resilience.negative-cache-max-size:10000}") long negativeCacheMaxSize,
+                                  ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this(failureThreshold, openDurationMs, negativeCacheTtlMs, negativeCacheMaxSize,
+                meterRegistryProvider.getIfAvailable(), System::currentTimeMillis);
+    }
+
+    MemorySourceResilience(int failureThreshold,
+                           long openDurationMs,
+                           long negativeCacheTtlMs,
+                           long negativeCacheMaxSize,
+                           MeterRegistry meterRegistry,
+                           LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = openDurationMs;
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        this.knownEmpty = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, negativeCacheMaxSize))
+                .expireAfterWrite(Duration.ofMillis(Math.max(1, negativeCacheTtlMs)))
+                .ticker(() -> clock.getAsLong() * 1_000_000L)
+                .build();
+    }
+
+    /**
+     * 未注入 Spring Bean 时（单元测试 / 手动构造的服务）使用的默认配置实例
+     */
+    public static MemorySourceResilience defaults() {
+        return new MemorySourceResilience(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION_MS,
+                DEFAULT_NEGATIVE_TTL_MS, DEFAULT_NEGATIVE_MAX_SIZE, null, System::currentTimeMillis);
+    }
+
+    /**
+     * 经熔断器执行一次来源调用；熔断打开时抛出 {@link SourceUnavailableException}，调用异常原样抛出。
+     */
+    public <T> T execute(String source, Supplier<T> call) {
+        MemorySourceCircuitBreaker breaker = breaker(source);
+        if (!breaker.tryAcquire()) {
+            increment(source, "rejected");
+            throw new SourceUnavailableException(source);
+        }
+        MemorySourceCircuitBreaker.State before = breaker.state();
+        try {
+            T result = call.get();
+            breaker.onSuccess();
+            increment(source, "success");
+            if (before != MemorySourceCircuitBreaker.State.CLOSED) {
+                log.info("[MemorySourceResilience-execute] {}", kv("source", source, "state", "closed", "from", before));
+            }
+            return result;
+        } catch (RuntimeException e) {
+            breaker.onFailure(e);
+            increment(source, "failure");
+            if (breaker.state() == MemorySourceCircuitBreaker.State.OPEN && before != MemorySourceCircuitBreaker.State.OPEN) {
+                log.warn("[MemorySourceResilience-execute] {}",
+                        kv("source", source, "state", "open", "from", before, "openDurationMs", openDurationMs,
+                                "error", e.toString()));
+            }
+            throw e;
+        }
+    }
+
+    public boolean isKnownEmpty(String source, String conversationId) {
+        if (knownEmpty.getIfPresent(key(source, conversationId)) == null) {
+            return false;
+        }
+        increment(source, "negative_cache_hit");
+        return true;
+    }
+
+    /**
+     * 该会话在此来源中的写入 epoch，检索开始前读取，传给 {@link #markEmpty}。
+     */
+    public long writeEpoch(String source, String conversationId) {
+        return writeEpochs.get(slot(key(source, conversationId)));
+    }
+
+    /**
+     * 标记该会话在此来源中没有任何记忆（须由来源确认，而不是单次检索为空）。
+     * <p>
+     * 检索期间有写入（epoch 已不是 expectedEpoch）时不标记。先写入再复查 epoch，与 {@link #invalidate}
+     * 的“先递增 epoch 再失效”配合，无论两者如何交错都不会留下过期的空标记。
+     *
+     * @return 是否标记成功
+     */
+    public boolean markEmpty(String source, String conversationId, long expectedEpoch) {
+        String key = key(source, conversationId);
+        int slot = slot(key);
+        if (writeEpochs.get(slot) != expectedEpoch) {
+            return false;
+        }
+        knownEmpty.put(key, Boolean.TRUE);
+        if (writeEpochs.get(slot) != expectedEpoch) {
+            knownEmpty.invalidate(key);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 该会话有新记忆写入时调用。
+     */
+    public void invalidate(String source, String conversationId) {
+        String key = key(source, conversationId);
+        writeEpochs.incrementAndGet(slot(key));
+        knownEmpty.invalidate(key);
+    }
+
+    public void reset(String source) {
+        MemorySourceCircuitBreaker breaker = breakers.get(source);
+        if (breaker != null) {
+            breaker.reset();
+        }
+        knownEmpty.asMap().keySet().removeIf(key -> key.startsWith(source + "|"));
+    }
+
+    public List<MemorySourceCircuitBreaker.Snapshot> snapshots() {
+        List<MemorySourceCircuitBreaker.Snapshot> snapshots = new ArrayList<>();
+        breakers.values().forEach(breaker -> snapshots.add(breaker.snapshot()));
+        return snapshots;
+    }
+
+    public Map<String, Object> describe() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        Map<String, Object> sources = new LinkedHashMap<>();
+        for (MemorySourceCircuitBreaker.Snapshot snapshot : snapshots()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("state", snapshot.state());
+            item.put("consecutiveFailures", snapshot.consecutiveFailures());
+            item.put("totalFailures", snapshot.totalFailures());
+            item.put("rejectedCalls", snapshot.rejectedCalls());
+            item.put("openedAtMs", snapshot.openedAtMs());
+            item.put("lastErrorType", snapshot.lastErrorType());
+            sources.put(snapshot.source(), item);
+        }
+        result.put("failureThreshold", failureThreshold);
+        result.put("openDurationMs", openDurationMs);
+        result.put("negativeCacheSize", knownEmpty.estimatedSize());
+        result.put("sources", sources);
+        return result;
+    }
+
+    MemorySourceCircuitBreaker breaker(String source) {
+        return breakers.computeIfAbsent(source, this::createBreaker);
+    }
+
+    private MemorySourceCircuitBreaker createBreaker(String source) {
+        MemorySourceCircuitBreaker breaker = new MemorySourceCircuitBreaker(source, failureThreshold, openDurationMs, clock);
+        if (meterRegistry != null) {
+            Gauge.builder("memory_source_circuit_state", breaker, b -> b.state().ordinal())
+                    .description("记忆来源熔断状态：0=closed, 1=open, 2=half_open")
+                    .tag("source", source)
+                    .register(meterRegistry);
+        }
+        return breaker;
+    }
+
+    private void increment(String source, String outcome) {
+        if (meterRegistry == null) {
+            return;
+        }
+        Counter.builder("memory_source_calls")
+                .tag("source", source)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static int slot(String key) {
+        return Math.floorMod(key.hashCode(), WRITE_EPOCH_SLOTS);
+    }
+
+    private static String key(String source, String conversationId) {
+        return source + "|" + conversationId;
+    }
+}
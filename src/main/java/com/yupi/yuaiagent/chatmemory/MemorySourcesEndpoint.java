@@ -0,0 +1,38 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Actuator 端点 /actuator/memorysources：查看各记忆来源的熔断状态与负缓存大小，
+ * DELETE /actuator/memorysources/{source} 手动关闭熔断并清空该来源的负缓存。
+ * <p>
+ * 端点未接入鉴权，application.yml 中默认 access=read-only，只开放查看；
+ * 重置操作需显式设置 management.endpoint.memorysources.access=unrestricted，且只应在受保护的管理端口上开放。
+ */
+@Component
+@Endpoint(id = "memorysources")
+public class MemorySourcesEndpoint {
+
+    private final MemorySourceResilience resilience;
+
+    public MemorySourcesEndpoint(MemorySourceResilience resilience) {
+        this.resilience = resilience;
+    }
+
+    @ReadOperation
+    public Map<String, Object> sources() {
+        return resilience.describe();
+    }
+
+    @DeleteOperation
+    public Map<String, Object> reset(@Selector String source) {
+        resilience.reset(source);
+        return resilience.describe();
+    }
+}
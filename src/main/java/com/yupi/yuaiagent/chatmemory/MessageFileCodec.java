@@ -0,0 +1,171 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.Pool;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.yupi.yuaiagent.util.MappedBufferUtil.unmap;
+
+/**
+ * 对话记忆文件的 Kryo 编解码（FileChatMemoryRepository / FileBasedChatMemory / SegmentedFileChatMemoryRepository 共用）。
+ * <p>
+ * 快照文件布局：[len:int][kryo message] * n + 偏移表 [offset:long] * n + [count:int][magic:int]。
+ * 读取时把文件 mmap 进来，先读文件尾的 footer，再按偏移表只解码需要的最后 N 条，不触碰更早的记录。
+ * 没有 footer 的旧文件（整个 ArrayList 一次性 Kryo 序列化）按旧方式整体读取。
+ */
+final class MessageFileCodec {
+
+    static final int FOOTER_MAGIC = 0x4B434D32; // "KCM2"
+
+    private static final int FOOTER_TAIL_BYTES = 8;
+
+    private static final Pool<Kryo> KRYO_POOL = new Pool<>(true, false, 32) {
+        @Override
+        protected Kryo create() {
+            Kryo kryo = new Kryo();
+            kryo.setRegistrationRequired(false);
+            kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+            return kryo;
+        }
+    };
+
+    private MessageFileCodec() {
+    }
+
+    static byte[] serialize(Message message) {
+        Kryo kryo = KRYO_POOL.obtain();
+        try (Output output = new Output(256, -1)) {
+            kryo.writeClassAndObject(output, message);
+            return output.toBytes();
+        } finally {
+            KRYO_POOL.free(kryo);
+        }
+    }
+
+    static Message deserialize(byte[] payload) {
+        Kryo kryo = KRYO_POOL.obtain();
+        try (Input input = new Input(payload)) {
+            return (Message) kryo.readClassAndObject(input);
+        } finally {
+            KRYO_POOL.free(kryo);
+        }
+    }
+
+    static Message deserialize(ByteBuffer buffer, int position, int length) {
+        byte[] payload = new byte[length];
+        buffer.get(position, payload);
+        return deserialize(payload);
+    }
+
+    /**
+     * 写入带偏移 footer 的快照文件（先写临时文件再原子替换）。
+     */
+    static void writeSnapshot(File file, List<Message> messages) throws IOException {
+        List<byte[]> payloads = new ArrayList<>(messages.size());
+        long bodyBytes = 0;
+        for (Message message : messages) {
+            if (message == null) {
+                continue;
+            }
+            byte[] payload = serialize(message);
+            payloads.add(payload);
+            bodyBytes += 4 + payload.length;
+        }
+        long totalBytes = bodyBytes + 8L * payloads.size() + FOOTER_TAIL_BYTES;
+        if (totalBytes > Integer.MAX_VALUE) {
+            throw new IOException("conversation file too large: " + totalBytes);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) totalBytes);
+        long[] offsets = new long[payloads.size()];
+        for (int i = 0; i < payloads.size(); i++) {
+            offsets[i] = buffer.position();
+            buffer.putInt(payloads.get(i).length);
+            buffer.put(payloads.get(i));
+        }
+        for (long offset : offsets) {
+            buffer.putLong(offset);
+        }
+        buffer.putInt(payloads.size());
+        buffer.putInt(FOOTER_MAGIC);
+        buffer.flip();
+
+        Path target = file.toPath();
+        Path tmp = target.resolveSibling(file.getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static List<Message> readAll(File file) throws IOException {
+        return readLastN(file, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 读取快照文件中的最后 n 条消息；n 大于总数时返回全部。
+     */
+    static List<Message> readLastN(File file, int n) throws IOException {
+        if (n <= 0) {
+            return new ArrayList<>();
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= FOOTER_TAIL_BYTES) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                try {
+                    int count = mapped.getInt((int) size - 8);
+                    int magic = mapped.getInt((int) size - 4);
+                    long tableStart = size - FOOTER_TAIL_BYTES - 8L * count;
+                    if (magic == FOOTER_MAGIC && count >= 0 && tableStart >= 0) {
+                        int from = Math.max(0, count - n);
+                        List<Message> messages = new ArrayList<>(count - from);
+                        for (int i = from; i < count; i++) {
+                            int offset = (int) mapped.getLong((int) tableStart + 8 * i);
+                            int length = mapped.getInt(offset);
+                            messages.add(deserialize(mapped, offset + 4, length));
+                        }
+                        return messages;
+                    }
+                } finally {
+                    // 解码时已把记录拷出映射区；立即解除映射，不等 GC，避免快照被替换 / 删除后仍占着文件句柄
+                    unmap(mapped);
+                }
+            }
+        }
+        List<Message> legacy = readLegacy(file);
+        if (legacy.size() <= n) {
+            return legacy;
+        }
+        return new ArrayList<>(legacy.subList(legacy.size() - n, legacy.size()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Message> readLegacy(File file) throws IOException {
+        Kryo kryo = KRYO_POOL.obtain();
+        try (Input input = new Input(new FileInputStream(file))) {
+            return kryo.readObject(input, ArrayList.class);
+        } finally {
+            KRYO_POOL.free(kryo);
+        }
+    }
+}
@@ -8,8 +8,11 @@ import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.MessageType;
 import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -18,24 +21,71 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * 基于 Redis 的对话记忆存储
+ * <p>
+ * - BLOB（默认）：整个会话序列化为一个 JSON 字符串，每次追加需 GET + SET
+ * - LIST：每条消息是 Redis List 的一个元素，追加通过 Lua 脚本原子执行 RPUSH + LTRIM + EXPIRE，读取用 LRANGE
  */
 @Slf4j
 public class RedisChatMemoryRepository implements ChatMemory {
 
     private static final String KEY_PREFIX = "chat:memory:";
 
+    /**
+     * LIST 模式使用独立前缀，避免与 BLOB 模式的字符串 key 类型冲突（WRONGTYPE）。
+     */
+    private static final String LIST_KEY_PREFIX = "chat:memory:list:";
+
+    /**
+     * KEYS[1]=list key, ARGV[1]=窗口大小（<=0 不截断）, ARGV[2]=TTL 秒（<=0 不设置）, ARGV[3..]=消息
+     */
+    private static final byte[] APPEND_SCRIPT = """
+            redis.call('RPUSH', KEYS[1], unpack(ARGV, 3))
+            local window = tonumber(ARGV[1])
+            if window > 0 then
+                redis.call('LTRIM', KEYS[1], -window, -1)
+            end
+            local ttl = tonumber(ARGV[2])
+            if ttl > 0 then
+                redis.call('EXPIRE', KEYS[1], ttl)
+            end
+            return redis.call('LLEN', KEYS[1])
+            """.getBytes(StandardCharsets.UTF_8);
+
+    public enum StorageMode {
+        BLOB,
+        LIST
+    }
+
     private final RedisTemplate<String, Object> redisTemplate;
     private final ObjectMapper objectMapper;
     private final long ttlMinutes;
+    private final StorageMode storageMode;
+    private final int maxMessages;
 
     public RedisChatMemoryRepository(RedisTemplate<String, Object> redisTemplate, long ttlMinutes) {
+        this(redisTemplate, ttlMinutes, StorageMode.BLOB, 0);
+    }
+
+    /**
+     * @param maxMessages LIST 模式下保留的最近消息数，<=0 表示不截断
+     */
+    public RedisChatMemoryRepository(RedisTemplate<String, Object> redisTemplate,
+                                     long ttlMinutes,
+                                     StorageMode storageMode,
+                                     int maxMessages) {
         this.redisTemplate = redisTemplate;
         this.objectMapper = new ObjectMapper();
         this.ttlMinutes = ttlMinutes;
+        this.storageMode = storageMode == null ? StorageMode.BLOB : storageMode;
+        this.maxMessages = maxMessages;
     }
 
     @Override
     public void add(String conversationId, List<Message> messages) {
+        if (storageMode == StorageMode.LIST) {
+            appendToList(conversationId, messages);
+            return;
+        }
         String key = KEY_PREFIX + conversationId;
         List<Message> existingMessages = get(conversationId);
         existingMessages.addAll(messages);
@@ -43,10 +93,7 @@ public class RedisChatMemoryRepository implements ChatMemory {
         try {
             List<Map<String, String>> serializedMessages = new ArrayList<>();
             for (Message msg : existingMessages) {
-                Map<String, String> msgMap = new HashMap<>();
-                msgMap.put("type", msg.getMessageType().name());
-                msgMap.put("content", msg.getText());
-                serializedMessages.add(msgMap);
+                serializedMessages.add(toMap(msg));
             }
             String json = objectMapper.writeValueAsString(serializedMessages);
             redisTemplate.opsForValue().set(key, json, ttlMinutes, TimeUnit.MINUTES);
@@ -57,6 +104,9 @@ public class RedisChatMemoryRepository implements ChatMemory {
 
     @Override
     public List<Message> get(String conversationId) {
+        if (storageMode == StorageMode.LIST) {
+            return readList(conversationId);
+        }
         String key = KEY_PREFIX + conversationId;
         Object value = redisTemplate.opsForValue().get(key);
         if (value == null) {
@@ -70,12 +120,9 @@ public class RedisChatMemoryRepository implements ChatMemory {
 
             List<Message> messages = new ArrayList<>();
             for (Map<String, String> msgMap : serializedMessages) {
-                String type = msgMap.get("type");
-                String content = msgMap.get("content");
-                if (MessageType.USER.name().equals(type)) {
-                    messages.add(new UserMessage(content));
-                } else if (MessageType.ASSISTANT.name().equals(type)) {
-                    messages.add(new AssistantMessage(content));
+                Message message = fromMap(msgMap);
+                if (message != null) {
+                    messages.add(message);
                 }
             }
             return messages;
@@ -87,7 +134,76 @@ public class RedisChatMemoryRepository implements ChatMemory {
 
     @Override
     public void clear(String conversationId) {
-        String key = KEY_PREFIX + conversationId;
+        String key = (storageMode == StorageMode.LIST ? LIST_KEY_PREFIX : KEY_PREFIX) + conversationId;
         redisTemplate.delete(key);
     }
+
+    private void appendToList(String conversationId, List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        List<byte[]> keysAndArgs = new ArrayList<>(messages.size() + 3);
+        keysAndArgs.add((LIST_KEY_PREFIX + conversationId).getBytes(StandardCharsets.UTF_8));
+        keysAndArgs.add(String.valueOf(maxMessages).getBytes(StandardCharsets.UTF_8));
+        keysAndArgs.add(String.valueOf(TimeUnit.MINUTES.toSeconds(ttlMinutes)).getBytes(StandardCharsets.UTF_8));
+        try {
+            for (Message msg : messages) {
+                if (msg == null) {
+                    continue;
+                }
+                keysAndArgs.add(objectMapper.writeValueAsBytes(toMap(msg)));
+            }
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize messages for conversation: {}", conversationId, e);
+            return;
+        }
+        if (keysAndArgs.size() <= 3) {
+            return;
+        }
+        byte[][] params = keysAndArgs.toArray(new byte[0][]);
+        redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.scriptingCommands().eval(APPEND_SCRIPT, ReturnType.INTEGER, 1, params));
+    }
+
+    private List<Message> readList(String conversationId) {
+        byte[] key = (LIST_KEY_PREFIX + conversationId).getBytes(StandardCharsets.UTF_8);
+        long start = maxMessages > 0 ? -maxMessages : 0;
+        List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.listCommands().lRange(key, start, -1));
+        List<Message> messages = new ArrayList<>(values == null ? 0 : values.size());
+        if (values == null) {
+            return messages;
+        }
+        for (byte[] value : values) {
+            try {
+                Map<String, String> msgMap = objectMapper.readValue(value,
+                        objectMapper.getTypeFactory().constructMapType(Map.class, String.class, String.class));
+                Message message = fromMap(msgMap);
+                if (message != null) {
+                    messages.add(message);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to deserialize list message for conversation: {}", conversationId, e);
+            }
+        }
+        return messages;
+    }
+
+    private Map<String, String> toMap(Message msg) {
+        Map<String, String> msgMap = new HashMap<>();
+        msgMap.put("type", msg.getMessageType().name());
+        msgMap.put("content", msg.getText());
+        return msgMap;
+    }
+
+    private Message fromMap(Map<String, String> msgMap) {
+        String type = msgMap.get("type");
+        String content = msgMap.get("content");
+        if (MessageType.USER.name().equals(type)) {
+            return new UserMessage(content);
+        } else if (MessageType.ASSISTANT.name().equals(type)) {
+            return new AssistantMessage(content);
+        }
+        return null;
+    }
 }
@@ -0,0 +1,97 @@
+package com.yupi.yuaiagent.chatmemory;
+
+/**
+ * 重排共用的 topK 选择：在原始分数数组上维护大小为 K 的最小堆，避免对全部候选装箱排序。
+ * <p>
+ * 排序规则：分数高者优先；同分时间新者优先；再相同时保持输入顺序（与稳定排序一致）。
+ */
+final class RerankTopK {
+
+    private final double[] scores;
+    private final long[] timestamps;
+    private final int[] heap;
+    private int size;
+
+    RerankTopK(double[] scores, long[] timestamps, int k) {
+        this.scores = scores;
+        this.timestamps = timestamps;
+        this.heap = new int[Math.max(0, Math.min(k, scores.length))];
+    }
+
+    /**
+     * 候选 index 的分数与时间戳须已写入数组
+     */
+    void offer(int index) {
+        if (heap.length == 0) {
+            return;
+        }
+        if (size < heap.length) {
+            heap[size] = index;
+            siftUp(size++);
+        } else if (isWorse(heap[0], index)) {
+            heap[0] = index;
+            siftDown(size);
+        }
+    }
+
+    /**
+     * 按从高到低的顺序返回入选下标（调用后堆被清空）
+     */
+    int[] drainDescending() {
+        int[] ordered = new int[size];
+        for (int remaining = size; remaining > 0; remaining--) {
+            ordered[remaining - 1] = heap[0];
+            heap[0] = heap[remaining - 1];
+            siftDown(remaining - 1);
+        }
+        size = 0;
+        return ordered;
+    }
+
+    private boolean isWorse(int a, int b) {
+        int byScore = Double.compare(scores[a], scores[b]);
+        if (byScore != 0) {
+            return byScore < 0;
+        }
+        int byTime = Long.compare(timestamps[a], timestamps[b]);
+        if (byTime != 0) {
+            return byTime < 0;
+        }
+        return a > b;
+    }
+
+    private void siftUp(int pos) {
+        int item = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!isWorse(item, heap[parent])) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = item;
+    }
+
+    private void siftDown(int heapSize) {
+        if (heapSize <= 0) {
+            return;
+        }
+        int item = heap[0];
+        int pos = 0;
+        int half = heapSize >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < heapSize && isWorse(heap[right], heap[child])) {
+                child = right;
+            }
+            if (!isWorse(heap[child], item)) {
+                break;
+            }
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = item;
+    }
+}
@@ -0,0 +1,21 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import com.yupi.yuaiagent.chatmemory.model.MemoryCandidate;
+
+import java.util.List;
+
+/**
+ * 记忆候选重排 SPI：对召回候选打分（写入 finalScore）并返回按分数从高到低的前 topK 个。
+ * <p>
+ * 默认实现为 {@link MemoryRerankService}（线性加权）；{@link FeatureModelReranker} 为本地特征模型，
+ * 通常经 {@link FallbackReranker} 包装，超出时延预算或出错时回退到线性实现。
+ */
+public interface Reranker {
+
+    /**
+     * 用于日志与指标的实现名
+     */
+    String name();
+
+    List<MemoryCandidate> rerank(String query, List<MemoryCandidate> candidates, int topK);
+}
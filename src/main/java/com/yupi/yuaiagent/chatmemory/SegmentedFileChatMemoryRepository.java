@@ -0,0 +1,776 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
+import static com.yupi.yuaiagent.util.MappedBufferUtil.unmap;
+
+/**
+ * 基于分段追加日志的对话记忆仓库（用于 Spring AI MessageWindowChatMemory）。
+ * <p>
+ * - 每个 conversationId 对应一个目录，目录内是若干只追加的 segment 文件
+ * - 记录格式：[payloadLength:int][crc32:int][type:byte][payload]，消息 payload 为 Kryo 序列化的 Message
+ * - saveAll 与当前窗口比对，只追加新增消息；窗口前移用 TRIM 记录表示，不重写历史
+ * - 内存维护窗口尾部索引（segment + offset），读取窗口时 mmap segment 并只解码可见记录；findLastN 只解码最后 N 条
+ * - 失效字节超过阈值时把可见记录压缩到新 segment
+ * - 按 conversationId 分段加锁，不同会话的读写互不阻塞
+ * - 窗口索引只缓存最近访问的会话（数量上限 + 闲置过期），被淘汰的会话下次访问时从磁盘重放
+ * - segment 的映射只在单次读取 / 重放期间存在，用完立即解除映射，压缩删除旧 segment 时不会被残留映射占住
+ * <p>
+ * 首次访问时会自动导入 FileChatMemoryRepository 遗留的 {@code <sha256>.kryo} 文件。
+ */
+@Slf4j
+public class SegmentedFileChatMemoryRepository implements WindowedChatMemoryRepository {
+
+    static final byte RECORD_HEADER = 1;
+    static final byte RECORD_MESSAGE = 2;
+    static final byte RECORD_TRIM = 3;
+
+    /**
+     * length(4) + crc(4) + type(1)
+     */
+    static final int RECORD_OVERHEAD = 9;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String LEGACY_SUFFIX = ".kryo";
+
+    private static final long DEFAULT_SEGMENT_MAX_BYTES = 4L * 1024 * 1024;
+    private static final long DEFAULT_COMPACTION_MIN_DEAD_BYTES = 256L * 1024;
+    private static final int DEFAULT_LOCK_STRIPES = 64;
+    private static final long DEFAULT_MAX_CACHED_CONVERSATIONS = 10_000;
+    private static final Duration DEFAULT_CACHE_EXPIRE_AFTER_ACCESS = Duration.ofMinutes(30);
+
+    private final File baseDir;
+    private final long segmentMaxBytes;
+    private final long compactionMinDeadBytes;
+    private final boolean fsync;
+    private final ReentrantLock[] stripes;
+    private final Cache<String, ConversationLog> logs;
+
+    public SegmentedFileChatMemoryRepository(String dir) {
+        this(dir, DEFAULT_SEGMENT_MAX_BYTES, DEFAULT_COMPACTION_MIN_DEAD_BYTES, false);
+    }
+
+    public SegmentedFileChatMemoryRepository(String dir, long segmentMaxBytes, long compactionMinDeadBytes, boolean fsync) {
+        this(dir, segmentMaxBytes, compactionMinDeadBytes, fsync,
+                DEFAULT_MAX_CACHED_CONVERSATIONS, DEFAULT_CACHE_EXPIRE_AFTER_ACCESS);
+    }
+
+    /**
+     * @param segmentMaxBytes        单个 segment 的滚动阈值
+     * @param compactionMinDeadBytes 失效字节达到该值（且超过存活字节）时触发压缩
+     * @param fsync                  每次追加后是否强制刷盘
+     * @param maxCachedConversations 内存中最多缓存多少个会话的窗口索引
+     * @param cacheExpireAfterAccess 会话窗口索引闲置多久后淘汰
+     */
+    public SegmentedFileChatMemoryRepository(String dir,
+                                             long segmentMaxBytes,
+                                             long compactionMinDeadBytes,
+                                             boolean fsync,
+                                             long maxCachedConversations,
+                                             Duration cacheExpireAfterAccess) {
+        this.baseDir = new File(dir);
+        this.segmentMaxBytes = Math.max(1024L, segmentMaxBytes);
+        this.compactionMinDeadBytes = Math.max(0L, compactionMinDeadBytes);
+        this.fsync = fsync;
+        // 窗口索引可随时从磁盘重放，且不持有文件句柄 / 映射，淘汰时无需额外释放
+        this.logs = Caffeine.newBuilder()
+                .maximumSize(Math.max(1L, maxCachedConversations))
+                .expireAfterAccess(cacheExpireAfterAccess)
+                .build();
+        this.stripes = new ReentrantLock[DEFAULT_LOCK_STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        if (!baseDir.exists() && !baseDir.mkdirs()) {
+            log.warn("无法创建对话记忆目录：{}", baseDir.getAbsolutePath());
+        }
+    }
+
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        if (conversationId == null || conversationId.isBlank() || messages == null || messages.isEmpty()) {
+            return;
+        }
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            ConversationLog conversationLog = loadLog(conversationId);
+            resolveFingerprints(conversationLog);
+            List<RecordPointer> visible = conversationLog.visible;
+            int drop = findDropCount(visible, messages);
+            int overlap = visible.size() - drop;
+            if (drop == 0 && overlap == messages.size()) {
+                return;
+            }
+
+            List<PendingRecord> pending = new ArrayList<>(messages.size() - overlap + 1);
+            if (drop > 0) {
+                pending.add(PendingRecord.trim(drop));
+            }
+            for (int i = overlap; i < messages.size(); i++) {
+                Message message = messages.get(i);
+                if (message != null) {
+                    pending.add(PendingRecord.message(message, MessageFileCodec.serialize(message)));
+                }
+            }
+            append(conversationLog, pending);
+            maybeCompact(conversationLog);
+        } catch (IOException e) {
+            log.warn("[SegmentedFileChatMemoryRepository-saveAll] {}",
+                    kv("conversationId", conversationId, "messageCount", messages.size(), "status", "write_error"), e);
+            // 内存索引可能与磁盘不一致，下次访问时从磁盘重建
+            logs.invalidate(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        if (conversationId == null || conversationId.isBlank()) {
+            return new ArrayList<>();
+        }
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            ConversationLog conversationLog = loadLog(conversationId);
+            return readMessages(conversationLog, conversationLog.visible);
+        } catch (Exception e) {
+            log.warn("[SegmentedFileChatMemoryRepository-find] {}",
+                    kv("conversationId", conversationId, "status", "read_error"), e);
+            return new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Message> findLastN(String conversationId, int n) {
+        if (conversationId == null || conversationId.isBlank() || n <= 0) {
+            return new ArrayList<>();
+        }
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            ConversationLog conversationLog = loadLog(conversationId);
+            List<RecordPointer> visible = conversationLog.visible;
+            List<RecordPointer> tail = visible.size() <= n ? visible : visible.subList(visible.size() - n, visible.size());
+            return readMessages(conversationLog, tail);
+        } catch (Exception e) {
+            log.warn("[SegmentedFileChatMemoryRepository-findLastN] {}",
+                    kv("conversationId", conversationId, "n", n, "status", "read_error"), e);
+            return new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        if (conversationId == null || conversationId.isBlank()) {
+            return;
+        }
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            logs.invalidate(conversationId);
+            deleteRecursively(conversationDir(conversationId));
+            File legacy = legacyFile(conversationId);
+            if (legacy.exists() && !legacy.delete()) {
+                log.warn("删除对话记忆文件失败：{}", legacy.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            log.warn("[SegmentedFileChatMemoryRepository-delete] {}",
+                    kv("conversationId", conversationId, "status", "delete_error"), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        File[] dirs = baseDir.listFiles(File::isDirectory);
+        if (dirs == null || dirs.length == 0) {
+            return List.of();
+        }
+        List<String> ids = new ArrayList<>(dirs.length);
+        for (File dir : dirs) {
+            List<Path> segments = listSegments(dir.toPath());
+            if (segments.isEmpty()) {
+                continue;
+            }
+            String id = readHeaderConversationId(segments.get(0));
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 找到最小的 drop，使得窗口去掉前 drop 条后恰好是 incoming 的前缀；找不到时返回窗口大小（整体替换）。
+     */
+    private int findDropCount(List<RecordPointer> visible, List<Message> incoming) {
+        int size = visible.size();
+        for (int drop = 0; drop < size; drop++) {
+            int overlap = size - drop;
+            if (overlap > incoming.size()) {
+                continue;
+            }
+            boolean matched = true;
+            for (int i = 0; i < overlap; i++) {
+                if (!visible.get(drop + i).sameAs(incoming.get(i))) {
+                    matched = false;
+                    break;
+                }
+            }
+            if (matched) {
+                return drop;
+            }
+        }
+        return size;
+    }
+
+    private void append(ConversationLog conversationLog, List<PendingRecord> pending) throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        int batchBytes = 0;
+        for (PendingRecord record : pending) {
+            batchBytes += RECORD_OVERHEAD + record.payload.length;
+        }
+        if (conversationLog.activeSegmentPath == null
+                || (conversationLog.activeSize + batchBytes > segmentMaxBytes && conversationLog.activeSize > conversationLog.headerBytes)) {
+            rollSegment(conversationLog);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(batchBytes);
+        long offset = conversationLog.activeSize;
+        List<RecordPointer> appended = new ArrayList<>(pending.size());
+        int trimCount = 0;
+        for (PendingRecord record : pending) {
+            writeRecord(buffer, record.type, record.payload);
+            if (record.type == RECORD_MESSAGE) {
+                appended.add(new RecordPointer(conversationLog.activeSegment, offset, record.payload.length,
+                        record.messageType, record.textHash));
+            } else if (record.type == RECORD_TRIM) {
+                trimCount += record.trimCount;
+            }
+            offset += RECORD_OVERHEAD + record.payload.length;
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(conversationLog.activeSegmentPath,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        }
+
+        conversationLog.activeSize += batchBytes;
+        conversationLog.totalBytes += batchBytes;
+        conversationLog.applyTrim(trimCount);
+        for (RecordPointer pointer : appended) {
+            conversationLog.addVisible(pointer);
+        }
+    }
+
+    private void rollSegment(ConversationLog conversationLog) throws IOException {
+        int next = conversationLog.activeSegmentPath == null ? conversationLog.activeSegment : conversationLog.activeSegment + 1;
+        Path path = segmentPath(conversationLog.dir, next);
+        byte[] header = conversationLog.conversationId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_OVERHEAD + header.length);
+        writeRecord(buffer, RECORD_HEADER, header);
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        conversationLog.activeSegment = next;
+        conversationLog.activeSegmentPath = path;
+        conversationLog.activeSize = RECORD_OVERHEAD + header.length;
+        conversationLog.headerBytes = RECORD_OVERHEAD + header.length;
+        conversationLog.totalBytes += conversationLog.headerBytes;
+        conversationLog.segments.add(next);
+    }
+
+    /**
+     * 失效字节（被 TRIM 掉的消息、TRIM 记录本身、旧 segment 头）超过阈值且超过存活字节时，
+     * 把可见记录原样拷贝到新 segment，然后删除旧 segment。
+     */
+    private void maybeCompact(ConversationLog conversationLog) throws IOException {
+        long liveBytes = conversationLog.liveBytes();
+        long deadBytes = conversationLog.totalBytes - liveBytes - conversationLog.headerBytes;
+        if (deadBytes < compactionMinDeadBytes || deadBytes <= liveBytes) {
+            return;
+        }
+        long startMs = System.currentTimeMillis();
+        int target = conversationLog.activeSegment + 1;
+        Path tmp = conversationLog.dir.resolve(SEGMENT_PREFIX + target + SEGMENT_SUFFIX + ".tmp");
+        byte[] header = conversationLog.conversationId.getBytes(StandardCharsets.UTF_8);
+
+        // 压缩后的 segment 以 TRIM(全部) 开头：若删除旧 segment 前进程退出，重放时也不会重复计入旧记录
+        PendingRecord reset = PendingRecord.trim(Integer.MAX_VALUE);
+        List<RecordPointer> compacted = new ArrayList<>(conversationLog.visible.size());
+        long offset;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer headerBuffer = ByteBuffer.allocate(RECORD_OVERHEAD * 2 + header.length + reset.payload.length);
+            writeRecord(headerBuffer, RECORD_HEADER, header);
+            writeRecord(headerBuffer, RECORD_TRIM, reset.payload);
+            headerBuffer.flip();
+            while (headerBuffer.hasRemaining()) {
+                out.write(headerBuffer);
+            }
+            offset = headerBuffer.limit();
+
+            Map<Integer, FileChannel> sources = new HashMap<>();
+            try {
+                for (RecordPointer pointer : conversationLog.visible) {
+                    FileChannel source = openSegment(sources, conversationLog.dir, pointer.segment);
+                    ByteBuffer raw = ByteBuffer.allocate(RECORD_OVERHEAD + pointer.length);
+                    readFully(source, raw, pointer.offset);
+                    raw.flip();
+                    while (raw.hasRemaining()) {
+                        out.write(raw);
+                    }
+                    compacted.add(new RecordPointer(target, offset, pointer.length, pointer.type, pointer.textHash));
+                    offset += RECORD_OVERHEAD + pointer.length;
+                }
+            } finally {
+                closeQuietly(sources);
+            }
+            out.force(false);
+        }
+
+        Path targetPath = segmentPath(conversationLog.dir, target);
+        Files.move(tmp, targetPath, StandardCopyOption.ATOMIC_MOVE);
+        // 读取 / 重放结束时已解除映射，这里删除的 segment 不会再有映射引用
+        for (Integer segment : conversationLog.segments) {
+            Files.deleteIfExists(segmentPath(conversationLog.dir, segment));
+        }
+
+        long beforeBytes = conversationLog.totalBytes;
+        conversationLog.segments.clear();
+        conversationLog.segments.add(target);
+        conversationLog.activeSegment = target;
+        conversationLog.activeSegmentPath = targetPath;
+        conversationLog.activeSize = offset;
+        conversationLog.headerBytes = RECORD_OVERHEAD + header.length;
+        conversationLog.totalBytes = offset;
+        conversationLog.visible.clear();
+        for (RecordPointer pointer : compacted) {
+            conversationLog.addVisible(pointer);
+        }
+        log.info("[SegmentedFileChatMemoryRepository-compact] {}",
+                kv("conversationId", conversationLog.conversationId,
+                        "beforeBytes", beforeBytes,
+                        "afterBytes", offset,
+                        "liveRecords", compacted.size(),
+                        "costMs", System.currentTimeMillis() - startMs));
+    }
+
+    private ConversationLog loadLog(String conversationId) throws IOException {
+        ConversationLog cached = logs.getIfPresent(conversationId);
+        if (cached != null) {
+            return cached;
+        }
+        Path dir = conversationDir(conversationId);
+        ConversationLog conversationLog = new ConversationLog(conversationId, dir);
+        List<Path> segments = Files.isDirectory(dir) ? listSegments(dir.toFile()) : List.of();
+        if (segments.isEmpty()) {
+            Files.createDirectories(dir);
+            importLegacy(conversationLog);
+        } else {
+            for (int i = 0; i < segments.size(); i++) {
+                replaySegment(conversationLog, segments.get(i), i == segments.size() - 1);
+            }
+        }
+        logs.put(conversationId, conversationLog);
+        return conversationLog;
+    }
+
+    /**
+     * 顺序扫描 segment 重建窗口索引；只读记录头与校验和，不反序列化消息（指纹在首次 saveAll 时按需补齐）。
+     * 最后一个 segment 末尾的半条记录（进程崩溃导致）会被截断。
+     */
+    private void replaySegment(ConversationLog conversationLog, Path path, boolean last) throws IOException {
+        int segment = parseSegmentNumber(path);
+        long validEnd;
+        long size;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int offset = 0;
+            try {
+                while (offset + RECORD_OVERHEAD <= size) {
+                    int length = mapped.getInt(offset);
+                    int crc = mapped.getInt(offset + 4);
+                    byte type = mapped.get(offset + 8);
+                    if (length < 0 || offset + RECORD_OVERHEAD + (long) length > size
+                            || crc(type, mapped.slice(offset + RECORD_OVERHEAD, length)) != crc) {
+                        break;
+                    }
+                    if (type == RECORD_MESSAGE) {
+                        conversationLog.addVisible(new RecordPointer(segment, offset, length, null, 0));
+                    } else if (type == RECORD_TRIM) {
+                        conversationLog.applyTrim(mapped.getInt(offset + RECORD_OVERHEAD));
+                    } else if (type == RECORD_HEADER) {
+                        conversationLog.headerBytes = RECORD_OVERHEAD + length;
+                    }
+                    offset += RECORD_OVERHEAD + length;
+                }
+            } finally {
+                // 下面可能截断 / 删除该文件，先解除映射
+                unmap(mapped);
+            }
+            validEnd = offset;
+        }
+        if (validEnd < size && validEnd > 0) {
+            log.warn("[SegmentedFileChatMemoryRepository-replay] {}",
+                    kv("conversationId", conversationLog.conversationId, "segment", path.getFileName(),
+                            "validBytes", validEnd, "fileBytes", size, "truncate", last));
+            if (last) {
+                try (FileChannel writable = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    writable.truncate(validEnd);
+                }
+            }
+        }
+        if (validEnd == 0) {
+            // 连 segment 头都没写完整，直接丢弃，后续追加时重新创建
+            Files.deleteIfExists(path);
+            if (last) {
+                conversationLog.activeSegment = segment;
+                conversationLog.activeSegmentPath = null;
+                conversationLog.activeSize = 0;
+            }
+            return;
+        }
+        conversationLog.segments.add(segment);
+        conversationLog.totalBytes += validEnd;
+        if (last) {
+            conversationLog.activeSegment = segment;
+            conversationLog.activeSegmentPath = path;
+            conversationLog.activeSize = validEnd;
+        }
+    }
+
+    private void importLegacy(ConversationLog conversationLog) throws IOException {
+        File legacy = legacyFile(conversationLog.conversationId);
+        if (!legacy.exists()) {
+            return;
+        }
+        List<Message> legacyMessages;
+        try {
+            legacyMessages = MessageFileCodec.readAll(legacy);
+        } catch (Exception e) {
+            log.warn("[SegmentedFileChatMemoryRepository-importLegacy] {}",
+                    kv("conversationId", conversationLog.conversationId, "file", legacy.getAbsolutePath(), "status", "read_error"), e);
+            return;
+        }
+        List<PendingRecord> pending = new ArrayList<>(legacyMessages.size());
+        for (Message message : legacyMessages) {
+            if (message != null) {
+                pending.add(PendingRecord.message(message, MessageFileCodec.serialize(message)));
+            }
+        }
+        append(conversationLog, pending);
+        File migrated = new File(legacy.getParentFile(), legacy.getName() + ".migrated");
+        if (!legacy.renameTo(migrated)) {
+            log.warn("重命名遗留对话记忆文件失败：{}", legacy.getAbsolutePath());
+        }
+        log.info("[SegmentedFileChatMemoryRepository-importLegacy] {}",
+                kv("conversationId", conversationLog.conversationId, "messageCount", pending.size()));
+    }
+
+    /**
+     * 按指针 mmap 对应 segment 并解码；连续落在同一 segment 的记录只映射一次。
+     */
+    private List<Message> readMessages(ConversationLog conversationLog, List<RecordPointer> pointers) throws IOException {
+        List<Message> messages = new ArrayList<>(pointers.size());
+        if (pointers.isEmpty()) {
+            return messages;
+        }
+        int mappedSegment = -1;
+        MappedByteBuffer mapped = null;
+        try {
+            for (RecordPointer pointer : pointers) {
+                if (mapped == null || pointer.segment != mappedSegment) {
+                    unmap(mapped);
+                    mapped = null;
+                    mapped = mapSegment(conversationLog.dir, pointer.segment);
+                    mappedSegment = pointer.segment;
+                }
+                // deserialize 会把 payload 拷贝到堆内，解除映射后消息不再引用映射内存
+                messages.add(MessageFileCodec.deserialize(mapped, (int) pointer.offset + RECORD_OVERHEAD, pointer.length));
+            }
+        } finally {
+            unmap(mapped);
+        }
+        return messages;
+    }
+
+    /**
+     * 重放得到的指针没有类型/文本指纹，saveAll 比对窗口前只对可见记录补齐（窗口大小有限，开销可控）。
+     */
+    private void resolveFingerprints(ConversationLog conversationLog) throws IOException {
+        List<RecordPointer> visible = conversationLog.visible;
+        for (int i = 0; i < visible.size(); i++) {
+            RecordPointer pointer = visible.get(i);
+            if (pointer.type != null) {
+                continue;
+            }
+            Message message = readMessages(conversationLog, List.of(pointer)).get(0);
+            visible.set(i, new RecordPointer(pointer.segment, pointer.offset, pointer.length,
+                    message.getMessageType(), textHash(message)));
+        }
+    }
+
+    private String readHeaderConversationId(Path segment) {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_OVERHEAD);
+            readFully(channel, header, 0);
+            header.flip();
+            int length = header.getInt();
+            header.getInt();
+            byte type = header.get();
+            if (type != RECORD_HEADER || length <= 0 || length > channel.size()) {
+                return null;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, RECORD_OVERHEAD);
+            return new String(payload.array(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.debug("读取 segment 头失败：{}", segment, e);
+            return null;
+        }
+    }
+
+    static void writeRecord(ByteBuffer buffer, byte type, byte[] payload) {
+        buffer.putInt(payload.length);
+        buffer.putInt(crc(type, payload));
+        buffer.put(type);
+        buffer.put(payload);
+    }
+
+    static int crc(byte type, byte[] payload) {
+        return crc(type, ByteBuffer.wrap(payload));
+    }
+
+    static int crc(byte type, ByteBuffer payload) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(type);
+        crc32.update(payload);
+        return (int) crc32.getValue();
+    }
+
+    static int textHash(Message message) {
+        String text = message.getText();
+        return text == null ? 0 : text.hashCode();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, pos);
+            if (read < 0) {
+                throw new IOException("unexpected end of segment at " + pos);
+            }
+            pos += read;
+        }
+    }
+
+    private static FileChannel openSegment(Map<Integer, FileChannel> channels, Path dir, int segment) throws IOException {
+        FileChannel channel = channels.get(segment);
+        if (channel == null) {
+            channel = FileChannel.open(segmentPath(dir, segment), StandardOpenOption.READ);
+            channels.put(segment, channel);
+        }
+        return channel;
+    }
+
+    private static MappedByteBuffer mapSegment(Path dir, int segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(dir, segment), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static void closeQuietly(Map<Integer, FileChannel> channels) {
+        for (FileChannel channel : channels.values()) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static Path segmentPath(Path dir, int segment) {
+        return dir.resolve(SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+    private static int parseSegmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static List<Path> listSegments(File dir) {
+        return listSegments(dir.toPath());
+    }
+
+    private static List<Path> listSegments(Path dir) {
+        File[] files = dir.toFile().listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null || files.length == 0) {
+            return List.of();
+        }
+        return Arrays.stream(files)
+                .map(File::toPath)
+                .sorted(Comparator.comparingInt(SegmentedFileChatMemoryRepository::parseSegmentNumber))
+                .toList();
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> stream = Files.walk(path)) {
+            for (Path p : stream.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private ReentrantLock lockFor(String conversationId) {
+        return stripes[(conversationId.hashCode() & 0x7fffffff) % stripes.length];
+    }
+
+    private Path conversationDir(String conversationId) {
+        return new File(baseDir, sha256Hex(conversationId)).toPath();
+    }
+
+    private File legacyFile(String conversationId) {
+        return new File(baseDir, sha256Hex(conversationId) + LEGACY_SUFFIX);
+    }
+
+    private static String sha256Hex(String input) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(input.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // 理论不会发生；退化为 hashCode
+            return Integer.toHexString(input.hashCode());
+        }
+    }
+
+    /**
+     * 单条消息记录在 segment 中的位置，附带类型与文本 hash 用于 saveAll 时比对窗口，无需回读磁盘。
+     * 从磁盘重放得到的指针 type 为 null，表示指纹尚未补齐。
+     */
+    record RecordPointer(int segment, long offset, int length, MessageType type, int textHash) {
+
+        boolean sameAs(Message message) {
+            return message != null && type == message.getMessageType() && textHash == SegmentedFileChatMemoryRepository.textHash(message);
+        }
+    }
+
+    private static final class PendingRecord {
+        private final byte type;
+        private final byte[] payload;
+        private final MessageType messageType;
+        private final int textHash;
+        private final int trimCount;
+
+        private PendingRecord(byte type, byte[] payload, MessageType messageType, int textHash, int trimCount) {
+            this.type = type;
+            this.payload = payload;
+            this.messageType = messageType;
+            this.textHash = textHash;
+            this.trimCount = trimCount;
+        }
+
+        static PendingRecord message(Message message, byte[] payload) {
+            return new PendingRecord(RECORD_MESSAGE, payload, message.getMessageType(), textHash(message), 0);
+        }
+
+        static PendingRecord trim(int count) {
+            return new PendingRecord(RECORD_TRIM, ByteBuffer.allocate(4).putInt(count).array(), null, 0, count);
+        }
+    }
+
+    /**
+     * 单个会话的日志状态（只在持有对应分段锁时读写）。
+     */
+    static final class ConversationLog {
+        private final String conversationId;
+        private final Path dir;
+        private final List<Integer> segments = new ArrayList<>();
+        private final List<RecordPointer> visible = new ArrayList<>();
+        private int activeSegment = 1;
+        private Path activeSegmentPath;
+        private long activeSize;
+        private long headerBytes;
+        private long totalBytes;
+
+        ConversationLog(String conversationId, Path dir) {
+            this.conversationId = Objects.requireNonNull(conversationId);
+            this.dir = dir;
+        }
+
+        void addVisible(RecordPointer pointer) {
+            visible.add(pointer);
+        }
+
+        void applyTrim(int count) {
+            int n = Math.min(Math.max(0, count), visible.size());
+            if (n > 0) {
+                visible.subList(0, n).clear();
+            }
+        }
+
+        long liveBytes() {
+            long bytes = 0;
+            for (RecordPointer pointer : visible) {
+                bytes += RECORD_OVERHEAD + pointer.length();
+            }
+            return bytes;
+        }
+    }
+}
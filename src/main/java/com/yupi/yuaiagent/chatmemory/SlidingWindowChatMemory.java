@@ -0,0 +1,117 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 滑动窗口对话记忆（淘汰语义与 Spring AI MessageWindowChatMemory 一致）。
+ * <p>
+ * 仓库实现 {@link WindowedChatMemoryRepository} 时，窗口读取走 findLastN，只解码最后 N 条消息；
+ * 否则退化为 findByConversationId 后截取尾部。
+ * <p>
+ * {@link #addAndReturnEvicted} 在写入时顺带返回被淘汰的消息，供摘要等下游使用。
+ */
+public class SlidingWindowChatMemory implements EvictionReportingChatMemory {
+
+    private final ChatMemoryRepository chatMemoryRepository;
+    private final int maxMessages;
+
+    public SlidingWindowChatMemory(ChatMemoryRepository chatMemoryRepository, int maxMessages) {
+        if (chatMemoryRepository == null) {
+            throw new IllegalArgumentException("chatMemoryRepository 不能为空");
+        }
+        if (maxMessages <= 0) {
+            throw new IllegalArgumentException("maxMessages 必须大于 0");
+        }
+        this.chatMemoryRepository = chatMemoryRepository;
+        this.maxMessages = maxMessages;
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        addAndReturnEvicted(conversationId, messages);
+    }
+
+    @Override
+    public List<Message> addAndReturnEvicted(String conversationId, List<Message> messages) {
+        if (conversationId == null || conversationId.isBlank() || messages == null || messages.isEmpty()) {
+            return List.of();
+        }
+        List<Message> memoryMessages = findLastN(conversationId, maxMessages);
+        List<Message> evicted = new ArrayList<>();
+        chatMemoryRepository.saveAll(conversationId, process(memoryMessages, messages, evicted));
+        return evicted;
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        return findLastN(conversationId, maxMessages);
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        chatMemoryRepository.deleteByConversationId(conversationId);
+    }
+
+    /**
+     * 读取会话最后 n 条消息（按时间顺序）。
+     */
+    public List<Message> findLastN(String conversationId, int n) {
+        if (conversationId == null || conversationId.isBlank() || n <= 0) {
+            return new ArrayList<>();
+        }
+        if (chatMemoryRepository instanceof WindowedChatMemoryRepository windowed) {
+            return windowed.findLastN(conversationId, n);
+        }
+        List<Message> all = chatMemoryRepository.findByConversationId(conversationId);
+        if (all == null) {
+            return new ArrayList<>();
+        }
+        return all.size() <= n ? new ArrayList<>(all) : new ArrayList<>(all.subList(all.size() - n, all.size()));
+    }
+
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    /**
+     * @param evicted 输出参数：收集被淘汰的非 System 消息
+     */
+    private List<Message> process(List<Message> memoryMessages, List<Message> newMessages, List<Message> evicted) {
+        Set<Message> memoryMessageSet = new HashSet<>(memoryMessages);
+        boolean hasNewSystemMessage = newMessages.stream()
+                .filter(SystemMessage.class::isInstance)
+                .anyMatch(message -> !memoryMessageSet.contains(message));
+
+        List<Message> processed = new ArrayList<>(memoryMessages.size() + newMessages.size());
+        for (Message message : memoryMessages) {
+            if (!(hasNewSystemMessage && message instanceof SystemMessage)) {
+                processed.add(message);
+            }
+        }
+        processed.addAll(newMessages);
+        if (processed.size() <= maxMessages) {
+            return processed;
+        }
+
+        // 从最旧的非 System 消息开始淘汰
+        int toRemove = processed.size() - maxMessages;
+        List<Message> trimmed = new ArrayList<>(maxMessages);
+        int removed = 0;
+        for (Message message : processed) {
+            if (message instanceof SystemMessage || removed >= toRemove) {
+                trimmed.add(message);
+            } else {
+                removed++;
+                evicted.add(message);
+            }
+        }
+        return trimmed;
+    }
+}
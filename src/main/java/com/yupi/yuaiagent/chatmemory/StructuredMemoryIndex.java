@@ -0,0 +1,176 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import com.yupi.yuaiagent.chatmemory.model.StructuredMidMemoryRecord;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 单个会话的结构化记忆倒排索引（本地模式）。
+ * <p>
+ * 中文没有空格分词，这里以单字 + 相邻二字（bigram）为索引词：posting list 记录 recordId -> 词频。
+ * 查询词先取其 gram 的 posting list 求交得到候选，再用 contains 校验，语义与逐条 contains 一致，
+ * 但只触达包含查询词的记录。超过 maxRecords 时淘汰最早写入的记录并同步删除 posting。
+ */
+class StructuredMemoryIndex {
+
+    /**
+     * 命中记录：score 为查询词命中比例，termFrequency 为命中词的 gram 词频之和（同分时优先高词频）。
+     */
+    record Hit(StructuredMidMemoryRecord record, double score, int termFrequency) {
+    }
+
+    private record Entry(StructuredMidMemoryRecord record, String loweredContent) {
+    }
+
+    private final int maxRecords;
+    private final LinkedHashMap<Long, Entry> records = new LinkedHashMap<>();
+    private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+    private long nextId;
+
+    StructuredMemoryIndex(int maxRecords) {
+        this.maxRecords = Math.max(1, maxRecords);
+    }
+
+    synchronized void addAll(List<StructuredMidMemoryRecord> newRecords) {
+        for (StructuredMidMemoryRecord record : newRecords) {
+            if (record == null || !StringUtils.hasText(record.getContent())) {
+                continue;
+            }
+            long id = nextId++;
+            String lowered = record.getContent().toLowerCase();
+            records.put(id, new Entry(record, lowered));
+            for (Map.Entry<String, Integer> gram : gramFrequencies(lowered).entrySet()) {
+                postings.computeIfAbsent(gram.getKey(), k -> new HashMap<>()).put(id, gram.getValue());
+            }
+        }
+        Iterator<Map.Entry<Long, Entry>> iterator = records.entrySet().iterator();
+        while (records.size() > maxRecords && iterator.hasNext()) {
+            Map.Entry<Long, Entry> eldest = iterator.next();
+            iterator.remove();
+            removePostings(eldest.getKey(), eldest.getValue().loweredContent());
+        }
+    }
+
+    synchronized int size() {
+        return records.size();
+    }
+
+    /**
+     * @param tokens 已小写的查询词；为空时按写入时间倒序返回最新的 limit 条
+     */
+    synchronized List<Hit> search(List<String> tokens, int limit) {
+        if (tokens == null || tokens.isEmpty()) {
+            List<Hit> latest = new ArrayList<>();
+            List<Entry> entries = new ArrayList<>(records.values());
+            for (int i = entries.size() - 1; i >= 0 && latest.size() < limit; i--) {
+                latest.add(new Hit(entries.get(i).record(), 0.0, 0));
+            }
+            return latest;
+        }
+
+        Map<Long, int[]> matched = new HashMap<>();
+        for (String token : tokens) {
+            for (Long id : candidatesOf(token)) {
+                Entry entry = records.get(id);
+                if (entry == null || !entry.loweredContent().contains(token)) {
+                    continue;
+                }
+                int[] stats = matched.computeIfAbsent(id, k -> new int[2]);
+                stats[0]++;
+                stats[1] += termFrequency(token, id);
+            }
+        }
+
+        List<Map.Entry<Long, int[]>> ranked = new ArrayList<>(matched.entrySet());
+        ranked.sort(Comparator
+                .comparingInt((Map.Entry<Long, int[]> e) -> e.getValue()[0]).reversed()
+                .thenComparing(e -> e.getValue()[1], Comparator.reverseOrder())
+                .thenComparing(Map.Entry::getKey, Comparator.reverseOrder()));
+        List<Hit> hits = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (Map.Entry<Long, int[]> e : ranked) {
+            if (hits.size() >= limit) {
+                break;
+            }
+            hits.add(new Hit(records.get(e.getKey()).record(), (double) e.getValue()[0] / tokens.size(), e.getValue()[1]));
+        }
+        return hits;
+    }
+
+    /**
+     * 取查询词所有 gram 的 posting list 求交（从最短的开始）。
+     */
+    private Set<Long> candidatesOf(String token) {
+        List<Map<Long, Integer>> lists = new ArrayList<>();
+        for (String gram : queryGrams(token)) {
+            Map<Long, Integer> posting = postings.get(gram);
+            if (posting == null) {
+                return Set.of();
+            }
+            lists.add(posting);
+        }
+        if (lists.isEmpty()) {
+            return Set.of();
+        }
+        lists.sort(Comparator.comparingInt(Map::size));
+        Set<Long> result = new LinkedHashSet<>(lists.get(0).keySet());
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i).keySet());
+        }
+        return result;
+    }
+
+    private int termFrequency(String token, long id) {
+        int tf = 0;
+        for (String gram : queryGrams(token)) {
+            Map<Long, Integer> posting = postings.get(gram);
+            tf += posting == null ? 0 : posting.getOrDefault(id, 0);
+        }
+        return tf;
+    }
+
+    private void removePostings(long id, String loweredContent) {
+        for (String gram : gramFrequencies(loweredContent).keySet()) {
+            Map<Long, Integer> posting = postings.get(gram);
+            if (posting != null) {
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static Set<String> queryGrams(String token) {
+        Set<String> grams = new LinkedHashSet<>();
+        int[] codePoints = token.codePoints().toArray();
+        if (codePoints.length == 1) {
+            grams.add(new String(codePoints, 0, 1));
+            return grams;
+        }
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            grams.add(new String(codePoints, i, 2));
+        }
+        return grams;
+    }
+
+    private static Map<String, Integer> gramFrequencies(String lowered) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        int[] codePoints = lowered.codePoints().toArray();
+        for (int i = 0; i < codePoints.length; i++) {
+            frequencies.merge(new String(codePoints, i, 1), 1, Integer::sum);
+            if (i + 1 < codePoints.length) {
+                frequencies.merge(new String(codePoints, i, 2), 1, Integer::sum);
+            }
+        }
+        return frequencies;
+    }
+}
@@ -4,20 +4,24 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yupi.yuaiagent.chatmemory.model.MemoryCandidate;
 import com.yupi.yuaiagent.chatmemory.model.StructuredMidMemoryRecord;
+import com.yupi.yuaiagent.util.TextTokenizer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -31,6 +35,12 @@ import java.util.regex.Pattern;
  * 结构化中期记忆服务：
  * - 从对话消息中抽取偏好/约束/事件等结构化片段
  * - 写入 memory_record_v2（可选）并提供检索
+ * <p>
+ * 检索：DB 模式按关键词在该会话全量历史上查询（会话索引过滤，pg_trgm / tsvector 索引只覆盖部分查询，见 V4 迁移），
+ * 本地模式使用按会话增量维护的倒排索引 {@link StructuredMemoryIndex}，均不再线性扫描最近 N 条。
+ * <p>
+ * DB 读写经 {@link MemorySourceResilience} 熔断：库不可用时降级到本地存储，熔断到期后自动探测恢复；
+ * 确认在库中没有记录的会话进入负缓存，短时间内不再查库。
  */
 @Slf4j
 @Service
@@ -46,10 +56,10 @@ public class StructuredMidMemoryService {
 
     private final JdbcTemplate jdbcTemplate;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Map<String, List<StructuredMidMemoryRecord>> localStore = new ConcurrentHashMap<>();
+    private final Map<String, StructuredMemoryIndex> localStore = new ConcurrentHashMap<>();
 
-    private volatile boolean dbWriteEnabled = true;
-    private volatile boolean dbReadEnabled = true;
+    @Autowired(required = false)
+    private MemorySourceResilience resilience = MemorySourceResilience.defaults();
 
     @Value("${app.memory.mid.enabled:true}")
     private boolean midMemoryEnabled = true;
@@ -63,6 +73,9 @@ public class StructuredMidMemoryService {
     @Value("${app.memory.mid.default-importance:0.70}")
     private double defaultImportance = 0.70;
 
+    @Value("${app.memory.mid.local-max-records:300}")
+    private int localMaxRecords = 300;
+
     public StructuredMidMemoryService(@Nullable JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
@@ -81,7 +94,7 @@ public class StructuredMidMemoryService {
         }
 
         boolean writtenToDb = false;
-        if (jdbcTemplate != null && dbWriteEnabled) {
+        if (jdbcTemplate != null) {
             writtenToDb = writeToDb(records);
         }
         if (!writtenToDb) {
@@ -102,15 +115,20 @@ public class StructuredMidMemoryService {
         int safeTopK = topK <= 0 ? DEFAULT_TOP_K : topK;
         int safeScanLimit = Math.max(safeTopK, searchScanLimit);
 
-        List<StructuredMidMemoryRecord> records = readFromDb(conversationId, safeScanLimit);
-        if (records.isEmpty()) {
-            records = new ArrayList<>(localStore.getOrDefault(conversationId, List.of()));
+        List<String> queryTokens = TextTokenizer.tokenize(query);
+        long writeEpoch = resilience.writeEpoch(MemorySourceResilience.SOURCE_STRUCTURED_DB, conversationId);
+        List<StructuredMidMemoryRecord> records;
+        if (jdbcTemplate == null || resilience.isKnownEmpty(MemorySourceResilience.SOURCE_STRUCTURED_DB, conversationId)) {
+            records = List.of();
+        } else if (queryTokens.isEmpty()) {
+            records = readFromDb(conversationId, safeScanLimit, writeEpoch);
+        } else {
+            records = searchDbByKeywords(conversationId, queryTokens, safeScanLimit, writeEpoch);
         }
         if (records.isEmpty()) {
-            return List.of();
+            return searchLocal(conversationId, queryTokens, safeTopK);
         }
 
-        List<String> queryTokens = splitTokens(query);
         List<MemoryCandidate> candidates = new ArrayList<>();
         for (StructuredMidMemoryRecord record : records) {
             if (record == null || !StringUtils.hasText(record.getContent())) {
@@ -141,6 +159,27 @@ public class StructuredMidMemoryService {
         return candidates;
     }
 
+    private List<MemoryCandidate> searchLocal(String conversationId, List<String> queryTokens, int topK) {
+        StructuredMemoryIndex index = localStore.get(conversationId);
+        if (index == null) {
+            return List.of();
+        }
+        List<MemoryCandidate> candidates = new ArrayList<>();
+        for (StructuredMemoryIndex.Hit hit : index.search(queryTokens, topK)) {
+            StructuredMidMemoryRecord record = hit.record();
+            candidates.add(MemoryCandidate.builder()
+                    .source("structured")
+                    .memoryType(record.getMemoryType())
+                    .content(record.getContent())
+                    .similarity(hit.score())
+                    .importance(record.getImportance())
+                    .timestampMs(record.getTimestampMs())
+                    .metadata(record.getMetadata())
+                    .build());
+        }
+        return candidates;
+    }
+
     private List<StructuredMidMemoryRecord> extractStructuredRecords(String conversationId, List<Message> messages) {
         Set<String> unique = new LinkedHashSet<>();
         List<StructuredMidMemoryRecord> records = new ArrayList<>();
@@ -234,21 +273,25 @@ public class StructuredMidMemoryService {
                 "(user_id, conversation_id, memory_type, content, importance, metadata, created_at, updated_at) " +
                 "values (?, ?, ?, ?, ?, ?::jsonb, now(), now())";
         try {
-            for (StructuredMidMemoryRecord record : records) {
-                String metadataJson = objectMapper.writeValueAsString(record.getMetadata() == null ? Map.of() : record.getMetadata());
-                String userId = record.getConversationId();
-                jdbcTemplate.update(sql,
-                        userId,
-                        record.getConversationId(),
-                        record.getMemoryType(),
-                        record.getContent(),
-                        safeDouble(record.getImportance(), defaultImportance),
-                        metadataJson
-                );
-            }
+            resilience.execute(MemorySourceResilience.SOURCE_STRUCTURED_DB, () -> {
+                for (StructuredMidMemoryRecord record : records) {
+                    jdbcTemplate.update(sql,
+                            record.getConversationId(),
+                            record.getConversationId(),
+                            record.getMemoryType(),
+                            record.getContent(),
+                            safeDouble(record.getImportance(), defaultImportance),
+                            toJson(record.getMetadata())
+                    );
+                }
+                return records.size();
+            });
+            resilience.invalidate(MemorySourceResilience.SOURCE_STRUCTURED_DB, records.get(0).getConversationId());
             return true;
+        } catch (MemorySourceResilience.SourceUnavailableException e) {
+            log.debug("[StructuredMidMemoryService-writeToDb] circuit open, fallback to local, size={}", records.size());
+            return false;
         } catch (Exception e) {
-            dbWriteEnabled = false;
             log.warn("[StructuredMidMemoryService-writeToDb] fail, fallback to local, size={}", records.size(), e);
             return false;
         }
@@ -259,44 +302,109 @@ public class StructuredMidMemoryService {
             return;
         }
         String conversationId = records.get(0).getConversationId();
-        List<StructuredMidMemoryRecord> current = new ArrayList<>(localStore.getOrDefault(conversationId, List.of()));
-        current.addAll(records);
-        current.sort(Comparator.comparing(StructuredMidMemoryRecord::getTimestampMs, Comparator.nullsLast(Comparator.reverseOrder())));
-        if (current.size() > 300) {
-            current = new ArrayList<>(current.subList(0, 300));
-        }
-        localStore.put(conversationId, current);
+        localStore.computeIfAbsent(conversationId, k -> new StructuredMemoryIndex(localMaxRecords)).addAll(records);
     }
 
-    private List<StructuredMidMemoryRecord> readFromDb(String conversationId, int limit) {
-        if (jdbcTemplate == null || !dbReadEnabled) {
+    /**
+     * DB 模式关键词检索：在该会话全部未删除记录中查找包含任一查询词的记录，按命中词数、时间倒序取前 limit 条。
+     * <p>
+     * 查询先按 conversation_id 走会话索引过滤，再在该会话的记录中匹配：
+     * - pg_trgm GIN 索引只对 3 个字符及以上的词生效；{@link TextTokenizer} 产出的二字汉字词提取不出 trigram，
+     *   只要查询中含有这类词，OR 条件整体就用不上该索引
+     * - tsvector 使用 'simple' 配置，不做中文分词，只覆盖空格分词的文本（英文等）
+     * 两个索引均由 V4 迁移创建，索引缺失或用不上时查询仍然正确，代价是该会话记录数量级的扫描。
+     */
+    private List<StructuredMidMemoryRecord> searchDbByKeywords(String conversationId, List<String> queryTokens, int limit,
+                                                               long writeEpoch) {
+        List<String> patterns = queryTokens.stream().map(this::likePattern).toList();
+        String hitExpr = String.join(" + ", Collections.nCopies(patterns.size(),
+                "(case when content ilike ? then 1 else 0 end)"));
+        String matchExpr = String.join(" or ", Collections.nCopies(patterns.size(), "content ilike ?"));
+        String sql = "select memory_type, content, importance, created_at, metadata, (" + hitExpr + ") as keyword_hits " +
+                "from " + DB_MEMORY_TABLE + " where conversation_id = ? and is_deleted = false " +
+                "and (to_tsvector('simple', content) @@ websearch_to_tsquery('simple', ?) or " + matchExpr + ") " +
+                "order by keyword_hits desc, created_at desc limit ?";
+        List<Object> args = new ArrayList<>(patterns);
+        args.add(conversationId);
+        args.add(String.join(" or ", queryTokens));
+        args.addAll(patterns);
+        args.add(limit);
+        try {
+            List<StructuredMidMemoryRecord> records = resilience.execute(MemorySourceResilience.SOURCE_STRUCTURED_DB,
+                    () -> jdbcTemplate.query(sql, (rs, rowNum) -> mapRecord(conversationId, rs), args.toArray()));
+            if (records.isEmpty() && !hasDbRecords(conversationId)) {
+                resilience.markEmpty(MemorySourceResilience.SOURCE_STRUCTURED_DB, conversationId, writeEpoch);
+            }
+            return records;
+        } catch (MemorySourceResilience.SourceUnavailableException e) {
             return List.of();
+        } catch (Exception e) {
+            log.warn("[StructuredMidMemoryService-searchDbByKeywords] fail, fallback to recent scan, conversationId={}, tokens={}",
+                    conversationId, queryTokens.size(), e);
+            return readFromDb(conversationId, limit, writeEpoch);
         }
+    }
+
+    private String likePattern(String token) {
+        String escaped = token.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+
+    private StructuredMidMemoryRecord mapRecord(String conversationId, ResultSet rs) throws SQLException {
+        Timestamp ts = rs.getTimestamp("created_at");
+        Map<String, Object> metadata = parseMetadata(rs.getString("metadata"));
+        return StructuredMidMemoryRecord.builder()
+                .conversationId(conversationId)
+                .memoryType(rs.getString("memory_type"))
+                .content(rs.getString("content"))
+                .importance(rs.getDouble("importance"))
+                .timestampMs(ts == null ? Instant.now().toEpochMilli() : ts.getTime())
+                .metadata(metadata)
+                .build();
+    }
+
+    /**
+     * 关键词未命中时确认该会话在库中是否有任何记录（走 conversation_id 索引，查询失败时按“有记录”处理）。
+     */
+    private boolean hasDbRecords(String conversationId) {
+        String sql = "select exists(select 1 from " + DB_MEMORY_TABLE
+                + " where conversation_id = ? and is_deleted = false)";
+        try {
+            return !Boolean.FALSE.equals(resilience.execute(MemorySourceResilience.SOURCE_STRUCTURED_DB,
+                    () -> jdbcTemplate.queryForObject(sql, Boolean.class, conversationId)));
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    private List<StructuredMidMemoryRecord> readFromDb(String conversationId, int limit, long writeEpoch) {
         String sql = "select memory_type, content, importance, created_at, metadata " +
                 "from " + DB_MEMORY_TABLE + " where conversation_id = ? and is_deleted = false " +
                 "order by created_at desc limit ?";
         try {
-            return jdbcTemplate.query(sql, (rs, rowNum) -> {
-                Timestamp ts = rs.getTimestamp("created_at");
-                String metadataJson = rs.getString("metadata");
-                Map<String, Object> metadata = parseMetadata(metadataJson);
-                return StructuredMidMemoryRecord.builder()
-                        .conversationId(conversationId)
-                        .memoryType(rs.getString("memory_type"))
-                        .content(rs.getString("content"))
-                        .importance(rs.getDouble("importance"))
-                        .timestampMs(ts == null ? Instant.now().toEpochMilli() : ts.getTime())
-                        .metadata(metadata)
-                        .build();
-            }, conversationId, limit);
+            List<StructuredMidMemoryRecord> records = resilience.execute(MemorySourceResilience.SOURCE_STRUCTURED_DB,
+                    () -> jdbcTemplate.query(sql, (rs, rowNum) -> mapRecord(conversationId, rs), conversationId, limit));
+            if (records.isEmpty()) {
+                resilience.markEmpty(MemorySourceResilience.SOURCE_STRUCTURED_DB, conversationId, writeEpoch);
+            }
+            return records;
+        } catch (MemorySourceResilience.SourceUnavailableException e) {
+            return List.of();
         } catch (Exception e) {
-            dbReadEnabled = false;
             log.warn("[StructuredMidMemoryService-readFromDb] fail, fallback to local, conversationId={}, limit={}",
                     conversationId, limit, e);
             return List.of();
         }
     }
 
+    private String toJson(Map<String, Object> metadata) {
+        try {
+            return objectMapper.writeValueAsString(metadata == null ? Map.of() : metadata);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("metadata 序列化失败", e);
+        }
+    }
+
     private Map<String, Object> parseMetadata(String metadataJson) {
         if (!StringUtils.hasText(metadataJson)) {
             return Map.of();
@@ -311,32 +419,11 @@ public class StructuredMidMemoryService {
         }
     }
 
-    private List<String> splitTokens(String query) {
-        if (!StringUtils.hasText(query)) {
-            return List.of();
-        }
-        String[] parts = query.toLowerCase().split("[\\s,，。；;!?！？和与及]+");
-        Set<String> tokens = new HashSet<>();
-        for (String part : parts) {
-            if (part != null && part.length() >= 1) {
-                tokens.add(part);
-            }
-        }
-        return new ArrayList<>(tokens);
-    }
-
     private double keywordOverlapScore(List<String> queryTokens, String content) {
         if (queryTokens == null || queryTokens.isEmpty() || !StringUtils.hasText(content)) {
             return 0.0;
         }
-        String lowered = content.toLowerCase();
-        int hit = 0;
-        for (String token : queryTokens) {
-            if (lowered.contains(token)) {
-                hit++;
-            }
-        }
-        return hit <= 0 ? 0.0 : ((double) hit / queryTokens.size());
+        return TextTokenizer.hitRatio(content.toLowerCase(), queryTokens);
     }
 
     private String normalizeText(String text) {
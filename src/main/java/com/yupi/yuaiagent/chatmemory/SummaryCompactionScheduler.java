@@ -0,0 +1,152 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
+
+/**
+ * 摘要压缩调度器：按会话累积被窗口淘汰的消息，防抖后合并为一次摘要更新。
+ * <p>
+ * - 每次淘汰重置防抖计时；累积消息数达到上限或距首条淘汰超过最大等待时间时立即触发
+ * - 触发后交给 {@link MemoryMaintenanceExecutor} 的摘要线程池执行，同一会话串行
+ */
+@Slf4j
+public class SummaryCompactionScheduler implements AutoCloseable {
+
+    private final ConversationSummaryService summaryService;
+    private final MemoryMaintenanceExecutor maintenanceExecutor;
+    private final long debounceMs;
+    private final long maxDelayMs;
+    private final int maxBatchMessages;
+    private final ScheduledExecutorService timer;
+    private final ConcurrentHashMap<String, Buffer> buffers = new ConcurrentHashMap<>();
+
+    private final Counter evictedCounter;
+    private final Counter flushCounter;
+
+    /**
+     * @param debounce         最后一次淘汰后等待多久再触发摘要
+     * @param maxDelay         首条淘汰消息最多等待多久（避免持续对话时一直被防抖推迟）
+     * @param maxBatchMessages 累积消息数达到该值时立即触发
+     * @param meterRegistry    可为 null；非空时导出 summary_compaction_* 计数
+     */
+    public SummaryCompactionScheduler(ConversationSummaryService summaryService,
+                                      MemoryMaintenanceExecutor maintenanceExecutor,
+                                      Duration debounce,
+                                      Duration maxDelay,
+                                      int maxBatchMessages,
+                                      MeterRegistry meterRegistry) {
+        this.summaryService = summaryService;
+        this.maintenanceExecutor = maintenanceExecutor;
+        this.debounceMs = Math.max(0, debounce.toMillis());
+        this.maxDelayMs = Math.max(this.debounceMs, maxDelay.toMillis());
+        this.maxBatchMessages = Math.max(1, maxBatchMessages);
+        ScheduledThreadPoolExecutor scheduled = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "summary-debounce");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduled.setRemoveOnCancelPolicy(true);
+        this.timer = scheduled;
+        if (meterRegistry != null) {
+            this.evictedCounter = Counter.builder("summary_compaction_evicted_messages")
+                    .description("进入摘要调度的淘汰消息数")
+                    .register(meterRegistry);
+            this.flushCounter = Counter.builder("summary_compaction_flushes")
+                    .description("实际触发的摘要更新次数")
+                    .register(meterRegistry);
+        } else {
+            this.evictedCounter = null;
+            this.flushCounter = null;
+        }
+    }
+
+    /**
+     * 记录一批被淘汰的消息，稍后合并触发摘要更新。
+     */
+    public void onEvicted(String conversationId, List<Message> evictedMessages) {
+        if (conversationId == null || evictedMessages == null || evictedMessages.isEmpty()) {
+            return;
+        }
+        if (evictedCounter != null) {
+            evictedCounter.increment(evictedMessages.size());
+        }
+        boolean[] flushNow = {false};
+        buffers.compute(conversationId, (k, buffer) -> {
+            long now = System.currentTimeMillis();
+            if (buffer == null) {
+                buffer = new Buffer(now);
+            }
+            buffer.messages.addAll(evictedMessages);
+            if (buffer.timer != null) {
+                buffer.timer.cancel(false);
+                buffer.timer = null;
+            }
+            long delay = Math.min(debounceMs, buffer.firstEvictedAtMs + maxDelayMs - now);
+            if (buffer.messages.size() >= maxBatchMessages || delay <= 0) {
+                flushNow[0] = true;
+            } else {
+                buffer.timer = timer.schedule(() -> flush(conversationId), delay, TimeUnit.MILLISECONDS);
+            }
+            return buffer;
+        });
+        if (flushNow[0]) {
+            flush(conversationId);
+        }
+    }
+
+    /**
+     * 立即触发所有会话的待合并摘要（用于停机）。
+     */
+    public void flushAll() {
+        for (String conversationId : new ArrayList<>(buffers.keySet())) {
+            flush(conversationId);
+        }
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        flushAll();
+    }
+
+    private void flush(String conversationId) {
+        Buffer buffer = buffers.remove(conversationId);
+        if (buffer == null || buffer.messages.isEmpty()) {
+            return;
+        }
+        if (buffer.timer != null) {
+            buffer.timer.cancel(false);
+        }
+        if (flushCounter != null) {
+            flushCounter.increment();
+        }
+        log.debug("[SummaryCompactionScheduler-flush] {}",
+                kv("conversationId", conversationId, "messages", buffer.messages.size(),
+                        "waitedMs", System.currentTimeMillis() - buffer.firstEvictedAtMs));
+        maintenanceExecutor.submit(MemoryMaintenanceExecutor.TaskClass.SUMMARY, conversationId, buffer.messages,
+                summaryService::updateSummary);
+    }
+
+    private static final class Buffer {
+        private final long firstEvictedAtMs;
+        private final List<Message> messages = new ArrayList<>();
+        private ScheduledFuture<?> timer;
+
+        private Buffer(long firstEvictedAtMs) {
+            this.firstEvictedAtMs = firstEvictedAtMs;
+        }
+    }
+}
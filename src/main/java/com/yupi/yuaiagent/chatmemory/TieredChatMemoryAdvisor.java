@@ -1,5 +1,7 @@
 package com.yupi.yuaiagent.chatmemory;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClientMessageAggregator;
 import org.springframework.ai.chat.client.ChatClientRequest;
@@ -17,17 +19,26 @@ import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
 
 /**
  * 三层记忆 Advisor：滑动窗口 + 摘要 + 向量检索（长期记忆）。
+ * <p>
+ * 调用模型前三路记忆并发读取，每路有独立的超时；超时或失败的一路降级为空，不阻塞本轮回复。
  */
 @Slf4j
 public class TieredChatMemoryAdvisor implements CallAdvisor, StreamAdvisor {
@@ -35,11 +46,32 @@ public class TieredChatMemoryAdvisor implements CallAdvisor, StreamAdvisor {
     private static final String CTX_CONVERSATION_ID = "tiered.conversation_id";
     private static final String CTX_USER_TEXT = "tiered.user_text";
 
+    private static final String SOURCE_LONG_TERM = "long_term";
+    private static final String SOURCE_SUMMARY = "summary";
+    private static final String SOURCE_WINDOW = "window";
+
+    /**
+     * 未指定读取线程池时共享的虚拟线程执行器（读取以 IO 等待为主）。
+     */
+    private static final Executor DEFAULT_READ_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * 未指定维护执行器时共享的默认实例（线程按需创建、空闲回收）。
+     */
+    private static final MemoryMaintenanceExecutor DEFAULT_MAINTENANCE_EXECUTOR = MemoryMaintenanceExecutor.withDefaults();
+
     private final ChatMemory chatMemory;
     private final ConversationSummaryService summaryService;
     private final VectorMemoryService vectorMemoryService;
     private final StructuredMidMemoryService structuredMidMemoryService;
     private final int vectorTopK;
+    private final Executor readExecutor;
+    private final Duration longTermTimeout;
+    private final Duration summaryTimeout;
+    private final Duration windowTimeout;
+    private final MeterRegistry meterRegistry;
+    private final MemoryMaintenanceExecutor maintenanceExecutor;
+    private final SummaryCompactionScheduler summaryScheduler;
 
     private TieredChatMemoryAdvisor(Builder builder) {
         this.chatMemory = builder.chatMemory;
@@ -47,6 +79,14 @@ public class TieredChatMemoryAdvisor implements CallAdvisor, StreamAdvisor {
         this.vectorMemoryService = builder.vectorMemoryService;
         this.structuredMidMemoryService = builder.structuredMidMemoryService;
         this.vectorTopK = builder.vectorTopK;
+        this.readExecutor = builder.readExecutor == null ? DEFAULT_READ_EXECUTOR : builder.readExecutor;
+        this.longTermTimeout = builder.longTermTimeout;
+        this.summaryTimeout = builder.summaryTimeout;
+        this.windowTimeout = builder.windowTimeout;
+        this.meterRegistry = builder.meterRegistry;
+        this.maintenanceExecutor = builder.maintenanceExecutor == null
+                ? DEFAULT_MAINTENANCE_EXECUTOR : builder.maintenanceExecutor;
+        this.summaryScheduler = builder.summaryScheduler;
     }
 
     public static Builder builder(ChatMemory chatMemory) {
@@ -59,6 +99,13 @@ public class TieredChatMemoryAdvisor implements CallAdvisor, StreamAdvisor {
         private VectorMemoryService vectorMemoryService;
         private StructuredMidMemoryService structuredMidMemoryService;
         private int vectorTopK = 5;
+        private Executor readExecutor;
+        private Duration longTermTimeout = Duration.ofMillis(800);
+        private Duration summaryTimeout = Duration.ofMillis(300);
+        private Duration windowTimeout = Duration.ofMillis(500);
+        private MeterRegistry meterRegistry;
+        private MemoryMaintenanceExecutor maintenanceExecutor;
+        private SummaryCompactionScheduler summaryScheduler;
 
         public Builder(ChatMemory chatMemory) {
             this.chatMemory = chatMemory;
@@ -84,6 +131,53 @@ public class TieredChatMemoryAdvisor implements CallAdvisor, StreamAdvisor {
             return this;
         }
 
+        /**
+         * 三路记忆读取使用的线程池，不设置时使用共享的虚拟线程执行器。
+         */
+        public Builder readExecutor(Executor readExecutor) {
+            this.readExecutor = readExecutor;
+            return this;
+        }
+
+        public Builder longTermTimeout(Duration longTermTimeout) {
+            this.longTermTimeout = longTermTimeout;
+            return this;
+        }
+
+        public Builder summaryTimeout(Duration summaryTimeout) {
+            this.summaryTimeout = summaryTimeout;
+            return this;
+        }
+
+        public Builder windowTimeout(Duration windowTimeout) {
+            this.windowTimeout = windowTimeout;
+            return this;
+        }
+
+        /**
+         * 可选；设置后按来源导出读取耗时（chat_memory_read，tag: source/outcome）。
+         */
+        public Builder meterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        /**
+         * 回复后摘要更新 / 向量写入 / 结构化记忆写入使用的执行器。
+         */
+        public Builder maintenanceExecutor(MemoryMaintenanceExecutor maintenanceExecutor) {
+            this.maintenanceExecutor = maintenanceExecutor;
+            return this;
+        }
+
+        /**
+         * 可选；设置后淘汰消息先经防抖合并再更新摘要，否则每次淘汰都直接提交摘要更新。
+         */
+        public Builder summaryScheduler(SummaryCompactionScheduler summaryScheduler) {
+            this.summaryScheduler = summaryScheduler;
+            return this;
+        }
+
         public TieredChatMemoryAdvisor build() {
             if (this.chatMemory == null) {
                 throw new IllegalArgumentException("chatMemory 不能为空");
@@ -94,8 +188,15 @@ public class TieredChatMemoryAdvisor implements CallAdvisor, StreamAdvisor {
             if (this.vectorMemoryService == null) {
                 throw new IllegalArgumentException("vectorMemoryService 不能为空");
             }
+            if (isNotPositive(this.longTermTimeout) || isNotPositive(this.summaryTimeout) || isNotPositive(this.windowTimeout)) {
+                throw new IllegalArgumentException("记忆读取超时必须大于 0");
+            }
             return new TieredChatMemoryAdvisor(this);
         }
+
+        private static boolean isNotPositive(Duration duration) {
+            return duration == null || duration.isZero() || duration.isNegative();
+        }
     }
 
     @Override
@@ -131,25 +232,29 @@ public class TieredChatMemoryAdvisor implements CallAdvisor, StreamAdvisor {
         UserMessage currentUserMessage = resolveCurrentUserMessage(req.prompt());
         String userText = currentUserMessage == null ? "" : currentUserMessage.getText();
 
-        // 1) 长期记忆（向量检索）
-        String longTerm = "";
-        if (StringUtils.hasText(userText)) {
-            longTerm = vectorMemoryService.retrieveRelevantMemories(conversationId, userText, vectorTopK);
-        }
-
-        // 2) 摘要
-        String summary = summaryService.getSummary(conversationId);
-
-        // 3) 窗口消息
-        List<Message> windowMessages = chatMemory.get(conversationId);
+        // 1) 并发读取：长期记忆（向量检索）、摘要、窗口消息（滑动窗口实现下只解码最后 N 条）
+        CompletableFuture<String> longTermFuture = StringUtils.hasText(userText)
+                ? fetch(SOURCE_LONG_TERM, conversationId, longTermTimeout, "",
+                () -> vectorMemoryService.retrieveRelevantMemories(conversationId, userText, vectorTopK))
+                : CompletableFuture.completedFuture("");
+        CompletableFuture<String> summaryFuture = fetch(SOURCE_SUMMARY, conversationId, summaryTimeout, "",
+                () -> summaryService.getSummary(conversationId));
+        CompletableFuture<List<Message>> windowFuture = fetch(SOURCE_WINDOW, conversationId, windowTimeout, List.of(),
+                () -> readWindow(conversationId));
+        CompletableFuture.allOf(longTermFuture, summaryFuture, windowFuture).join();
+
+        String longTerm = longTermFuture.join();
+        String summary = summaryFuture.join();
+        List<Message> windowMessages = windowFuture.join();
         List<Message> cleanedWindow = windowMessages == null ? List.of() : windowMessages.stream()
                 .filter(m -> m != null && !(m instanceof SystemMessage))
                 .toList();
 
+        // 2) 构建增强 System：原 System + 长期记忆 + 摘要
         String baseSystem = extractSystemText(req.prompt());
         String enhancedSystem = buildEnhancedSystem(baseSystem, longTerm, summary);
 
-        // 4) 组装新 Prompt：System + window + current user
+        // 3) 组装新 Prompt：System + window + current user
         List<Message> newMessages = new ArrayList<>();
         newMessages.add(new SystemMessage(enhancedSystem));
         newMessages.addAll(cleanedWindow);
@@ -159,7 +264,7 @@ public class TieredChatMemoryAdvisor implements CallAdvisor, StreamAdvisor {
 
         Prompt newPrompt = new Prompt(newMessages, req.prompt().getOptions());
 
-        // 5) 把 conversationId/userText 放到 context，供 observeAfter 使用
+        // 4) 把 conversationId/userText 放到 context，供 observeAfter 使用
         // 注意：req.context() 可能是不可变 Map，避免原地修改
         Map<String, Object> ctx = new HashMap<>(req.context());
         ctx.put(CTX_CONVERSATION_ID, conversationId);
@@ -183,60 +288,114 @@ public class TieredChatMemoryAdvisor implements CallAdvisor, StreamAdvisor {
             // 1) 取出 AI 回复
             AssistantMessage assistantMessage = resp.chatResponse().getResult().getOutput();
 
-            // 2) 加入滑动窗口前做快照，用于找出淘汰消息
-            List<Message> before = chatMemory.get(conversationId);
-            if (before == null) {
-                before = List.of();
-            }
-
-            // 3) 写入 window（user + assistant）
+            // 2) 写入 window（user + assistant），同时拿到被淘汰的消息
             List<Message> toAdd = new ArrayList<>();
             if (StringUtils.hasText(userText)) {
                 toAdd.add(new UserMessage(userText));
             }
             toAdd.add(assistantMessage);
-            if (!toAdd.isEmpty()) {
-                chatMemory.add(conversationId, toAdd);
+            List<Message> evicted = addAndCollectEvicted(conversationId, toAdd);
+
+            // 3) 淘汰消息 -> 异步更新摘要
+            if (!evicted.isEmpty() && summaryScheduler != null) {
+                summaryScheduler.onEvicted(conversationId, evicted);
+            } else if (!evicted.isEmpty()) {
+                maintenanceExecutor.submit(MemoryMaintenanceExecutor.TaskClass.SUMMARY, conversationId, evicted,
+                        summaryService::updateSummary);
             }
 
-            // 4) 找淘汰消息 -> 异步更新摘要
-            List<Message> after = chatMemory.get(conversationId);
-            List<Message> evicted = findEvictedMessages(before, after);
-            if (!evicted.isEmpty()) {
-                CompletableFuture.runAsync(() -> summaryService.updateSummary(conversationId, evicted));
-            }
+            // 4) 异步写入向量记忆
+            maintenanceExecutor.submit(MemoryMaintenanceExecutor.TaskClass.VECTOR, conversationId, toAdd,
+                    vectorMemoryService::saveMessages);
 
-            // 5) 异步写入向量记忆
-            CompletableFuture.runAsync(() -> vectorMemoryService.saveMessages(conversationId, toAdd));
-
-            // 6) 异步写入结构化中期记忆（可选）
+            // 5) 异步写入结构化中期记忆（可选）
             if (structuredMidMemoryService != null) {
-                CompletableFuture.runAsync(() -> structuredMidMemoryService.saveFromEvictedMessages(conversationId, toAdd));
+                maintenanceExecutor.submit(MemoryMaintenanceExecutor.TaskClass.STRUCTURED, conversationId, toAdd,
+                        structuredMidMemoryService::saveFromEvictedMessages);
             }
         } catch (Exception e) {
             log.debug("[TieredChatMemoryAdvisor] observeAfter failed, conversationId={}", conversationId, e);
         }
     }
 
-    private List<Message> findEvictedMessages(List<Message> before, List<Message> after) {
-        if (before == null || before.isEmpty()) {
-            return List.of();
+    /**
+     * 在读取线程池上执行一路记忆读取；超时或异常时返回 fallback。
+     */
+    private <T> CompletableFuture<T> fetch(String source, String conversationId, Duration timeout, T fallback, Supplier<T> supplier) {
+        long startNs = System.nanoTime();
+        CompletableFuture<T> task;
+        try {
+            task = CompletableFuture.supplyAsync(supplier, readExecutor);
+        } catch (Exception e) {
+            // 执行器拒绝时退化为当前线程读取
+            task = CompletableFuture.supplyAsync(supplier, Runnable::run);
         }
-        Set<String> afterSet = (after == null ? List.<Message>of() : after).stream()
-                .filter(m -> m != null && !(m instanceof SystemMessage))
-                .map(this::sig)
-                .collect(Collectors.toCollection(HashSet::new));
+        // 超时挂在派生阶段上：读取任务本身不会被超时异常完成，每次读取只在下面的终结处理中记录一次结果
+        return task.thenApply(Function.identity())
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .handle((value, error) -> {
+                    if (error == null) {
+                        recordRead(source, "success", System.nanoTime() - startNs);
+                        return value == null ? fallback : value;
+                    }
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    if (cause instanceof TimeoutException) {
+                        recordRead(source, "timeout", timeout.toNanos());
+                        log.warn("[TieredChatMemoryAdvisor-fetch] {}",
+                                kv("conversationId", conversationId, "source", source, "outcome", "timeout",
+                                        "timeoutMs", timeout.toMillis()));
+                    } else {
+                        recordRead(source, "error", System.nanoTime() - startNs);
+                        log.warn("[TieredChatMemoryAdvisor-fetch] {}",
+                                kv("conversationId", conversationId, "source", source, "outcome", "error"), cause);
+                    }
+                    return fallback;
+                });
+    }
 
-        return before.stream()
-                .filter(m -> m != null && !(m instanceof SystemMessage))
-                .filter(m -> !afterSet.contains(sig(m)))
-                .toList();
+    private void recordRead(String source, String outcome, long durationNs) {
+        if (meterRegistry == null) {
+            return;
+        }
+        Timer.builder("chat_memory_read")
+                .description("调用模型前各来源记忆读取耗时")
+                .tag("source", source)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(durationNs, TimeUnit.NANOSECONDS);
     }
 
-    private String sig(Message m) {
-        String type = m.getMessageType() == null ? "" : m.getMessageType().name();
-        String content = m.getText();
-        return type + ":" + (content == null ? "" : content);
+    private List<Message> readWindow(String conversationId) {
+        if (chatMemory instanceof SlidingWindowChatMemory slidingWindow) {
+            return slidingWindow.findLastN(conversationId, slidingWindow.getMaxMessages());
+        }
+        return chatMemory.get(conversationId);
+    }
+
+    /**
+     * 写入窗口并返回被淘汰的消息。
+     * <p>
+     * 窗口实现支持淘汰回报时零额外读取；否则按“窗口从最旧的非 System 消息开始淘汰”的语义，
+     * 用写入前后的消息数推算淘汰数量，不做内容比对。
+     */
+    private List<Message> addAndCollectEvicted(String conversationId, List<Message> toAdd) {
+        if (chatMemory instanceof EvictionReportingChatMemory reporting) {
+            return reporting.addAndReturnEvicted(conversationId, toAdd);
+        }
+        List<Message> before = nonSystem(chatMemory.get(conversationId));
+        chatMemory.add(conversationId, toAdd);
+        int afterSize = nonSystem(chatMemory.get(conversationId)).size();
+        int evictedCount = Math.min(before.size(), Math.max(0, before.size() + toAdd.size() - afterSize));
+        return evictedCount == 0 ? List.of() : List.copyOf(before.subList(0, evictedCount));
+    }
+
+    private static List<Message> nonSystem(List<Message> messages) {
+        if (messages == null) {
+            return List.of();
+        }
+        return messages.stream()
+                .filter(m -> m != null && !(m instanceof SystemMessage))
+                .toList();
     }
 
     private String resolveConversationId(ChatClientRequest req) {
@@ -1,13 +1,18 @@
 package com.yupi.yuaiagent.chatmemory;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.Message;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * 三层缓存架构的对话记忆存储
@@ -15,29 +20,92 @@ import java.util.concurrent.ConcurrentHashMap;
  * 层级：本地内存 -> Redis -> 文件持久化
  * <p>
  * 读取时：优先从本地内存读取，未命中则从 Redis 读取，再未命中则从文件读取
- * 写入时：同时写入所有层级
+ * 写入时：同时写入所有层级；配置回写线程池后，本地层同步更新，Redis/文件层异步按会话顺序批量回写
+ * （见 {@link WriteBehindChatMemoryPipeline}），读取优先返回尚未落盘的完整视图
+ * <p>
+ * 本地层为有界缓存（Caffeine W-TinyLFU），按消息字符数计权重、访问后过期；
+ * 缓存值是不可变列表，写入时整体替换（copy-on-write），并发读写无需额外加锁。
  */
 @Slf4j
-public class TieredChatMemoryRepository implements ChatMemory {
+public class TieredChatMemoryRepository implements ChatMemory, AutoCloseable {
+
+    /**
+     * 每条消息的固定权重（对象头、元数据等），避免大量短消息把权重算得过低。
+     */
+    private static final int MESSAGE_BASE_WEIGHT = 64;
+
+    private static final long DEFAULT_MAX_WEIGHT = 32L * 1024 * 1024;
+    private static final Duration DEFAULT_EXPIRE_AFTER_ACCESS = Duration.ofMinutes(30);
+    private static final Duration WRITE_BEHIND_OFFER_TIMEOUT = Duration.ofMillis(50);
+    private static final Duration CLOSE_FLUSH_TIMEOUT = Duration.ofSeconds(10);
 
-    private final Map<String, List<Message>> localCache = new ConcurrentHashMap<>();
+    private final Cache<String, List<Message>> localCache;
     private final ChatMemory redisMemory;
     private final ChatMemory fileMemory;
+    private final WriteBehindChatMemoryPipeline writeBehind;
 
     /**
      * @param redisMemory Redis 记忆层，可为 null（禁用 Redis 时）
      * @param fileMemory  文件持久化层
      */
     public TieredChatMemoryRepository(ChatMemory redisMemory, ChatMemory fileMemory) {
+        this(redisMemory, fileMemory, DEFAULT_MAX_WEIGHT, DEFAULT_EXPIRE_AFTER_ACCESS, null);
+    }
+
+    /**
+     * @param maxWeight         本地层总权重上限（约等于缓存的消息字符数）
+     * @param expireAfterAccess 会话多久未访问后从本地层淘汰
+     * @param meterRegistry     可为 null；非空时导出命中/未命中/淘汰等指标（cache=chat_memory_local）
+     */
+    public TieredChatMemoryRepository(ChatMemory redisMemory,
+                                      ChatMemory fileMemory,
+                                      long maxWeight,
+                                      Duration expireAfterAccess,
+                                      MeterRegistry meterRegistry) {
+        this(redisMemory, fileMemory, maxWeight, expireAfterAccess, meterRegistry, null, 0);
+    }
+
+    /**
+     * @param writeBehindExecutor 回写线程池，为 null 时保持同步写入所有层级
+     * @param writeBehindCapacity 未落盘消息数上限，超过后 add 阻塞等待（背压）
+     */
+    public TieredChatMemoryRepository(ChatMemory redisMemory,
+                                      ChatMemory fileMemory,
+                                      long maxWeight,
+                                      Duration expireAfterAccess,
+                                      MeterRegistry meterRegistry,
+                                      Executor writeBehindExecutor,
+                                      int writeBehindCapacity) {
         this.redisMemory = redisMemory;
         this.fileMemory = fileMemory;
+        this.localCache = Caffeine.newBuilder()
+                .maximumWeight(Math.max(1L, maxWeight))
+                .weigher((String conversationId, List<Message> messages) -> weigh(messages))
+                .expireAfterAccess(expireAfterAccess == null ? DEFAULT_EXPIRE_AFTER_ACCESS : expireAfterAccess)
+                .recordStats()
+                .build();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, localCache, "chat_memory_local");
+        }
+        this.writeBehind = writeBehindExecutor == null ? null : new WriteBehindChatMemoryPipeline(
+                Arrays.asList(redisMemory, fileMemory), writeBehindExecutor, writeBehindCapacity,
+                WRITE_BEHIND_OFFER_TIMEOUT, meterRegistry);
     }
 
     @Override
     public void add(String conversationId, List<Message> messages) {
-        // 1. 更新本地缓存
-        List<Message> localMessages = localCache.computeIfAbsent(conversationId, k -> new ArrayList<>());
-        localMessages.addAll(messages);
+        if (writeBehind != null) {
+            // 先以追加前的视图为基线入队（会话无未回写写入时才会加载），再更新本地缓存
+            writeBehind.append(conversationId, messages, () -> {
+                List<Message> cached = localCache.getIfPresent(conversationId);
+                return cached != null ? cached : readThrough(conversationId);
+            });
+            localCache.asMap().computeIfPresent(conversationId, (k, current) -> append(current, messages));
+            return;
+        }
+
+        // 1. 更新本地缓存（copy-on-write：只在已缓存时追加，未缓存时等读取回填，避免缓存不完整的窗口）
+        localCache.asMap().computeIfPresent(conversationId, (k, current) -> append(current, messages));
 
         // 2. 写入 Redis（如果启用）
         if (redisMemory != null) {
@@ -61,18 +129,32 @@ public class TieredChatMemoryRepository implements ChatMemory {
     @Override
     public List<Message> get(String conversationId) {
         // 1. 尝试从本地缓存读取
-        List<Message> localMessages = localCache.get(conversationId);
+        List<Message> localMessages = localCache.getIfPresent(conversationId);
         if (localMessages != null && !localMessages.isEmpty()) {
             return new ArrayList<>(localMessages);
         }
 
-        // 2. 尝试从 Redis 读取
+        // 2. 存在尚未回写的写入时，以管道中的完整视图为准
+        if (writeBehind != null) {
+            List<Message> pendingMessages = writeBehind.pendingView(conversationId);
+            if (pendingMessages != null) {
+                return pendingMessages;
+            }
+        }
+        return readThrough(conversationId);
+    }
+
+    /**
+     * 依次从 Redis、文件读取，并回填上层。
+     */
+    private List<Message> readThrough(String conversationId) {
+        // 3. 尝试从 Redis 读取
         if (redisMemory != null) {
             try {
                 List<Message> redisMessages = redisMemory.get(conversationId);
                 if (redisMessages != null && !redisMessages.isEmpty()) {
                     // 回填本地缓存
-                    localCache.put(conversationId, new ArrayList<>(redisMessages));
+                    localCache.put(conversationId, List.copyOf(redisMessages));
                     return redisMessages;
                 }
             } catch (Exception e) {
@@ -80,13 +162,13 @@ public class TieredChatMemoryRepository implements ChatMemory {
             }
         }
 
-        // 3. 尝试从文件读取
+        // 4. 尝试从文件读取
         if (fileMemory != null) {
             try {
                 List<Message> fileMessages = fileMemory.get(conversationId);
                 if (fileMessages != null && !fileMessages.isEmpty()) {
                     // 回填本地缓存和 Redis
-                    localCache.put(conversationId, new ArrayList<>(fileMessages));
+                    localCache.put(conversationId, List.copyOf(fileMessages));
                     if (redisMemory != null) {
                         try {
                             // 清空后重新添加，避免重复
@@ -109,7 +191,12 @@ public class TieredChatMemoryRepository implements ChatMemory {
     @Override
     public void clear(String conversationId) {
         // 清除所有层级
-        localCache.remove(conversationId);
+        localCache.invalidate(conversationId);
+
+        if (writeBehind != null) {
+            writeBehind.clear(conversationId);
+            return;
+        }
 
         if (redisMemory != null) {
             try {
@@ -127,4 +214,43 @@ public class TieredChatMemoryRepository implements ChatMemory {
             }
         }
     }
+
+    /**
+     * 等待所有未回写的写入落到 Redis/文件。
+     *
+     * @return 未启用回写，或超时前全部完成时返回 true
+     */
+    public boolean flush(Duration timeout) {
+        return writeBehind == null || writeBehind.flush(timeout);
+    }
+
+    @Override
+    public void close() {
+        if (writeBehind != null && !writeBehind.flush(CLOSE_FLUSH_TIMEOUT)) {
+            log.warn("Write-behind flush timed out on close, pendingMessages={}", writeBehind.pendingMessages());
+        }
+    }
+
+    private static List<Message> append(List<Message> current, List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return current;
+        }
+        List<Message> next = new ArrayList<>(current.size() + messages.size());
+        next.addAll(current);
+        for (Message message : messages) {
+            if (message != null) {
+                next.add(message);
+            }
+        }
+        return List.copyOf(next);
+    }
+
+    private static int weigh(List<Message> messages) {
+        long weight = 0;
+        for (Message message : messages) {
+            String text = message.getText();
+            weight += MESSAGE_BASE_WEIGHT + (text == null ? 0 : text.length());
+        }
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
 }
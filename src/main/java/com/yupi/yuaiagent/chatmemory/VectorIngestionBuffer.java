@@ -0,0 +1,243 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
+
+/**
+ * 向量记忆写入的微批缓冲：跨会话攒批，凑满 batchSize 条或等待 lingerMs 后一次性写入 VectorStore。
+ * <p>
+ * 一次 {@link VectorStore#add} 对应一次批量 embedding 请求和一次批量插入（PgVectorStore 内部使用 JDBC batch），
+ * 把“每条消息一次 embedding + 一次 insert”降为“每批一次”。写入失败按指数退避重试，缓冲区满时丢弃并计数。
+ */
+@Slf4j
+public class VectorIngestionBuffer implements AutoCloseable {
+
+    private static final long RETRY_BACKOFF_MS = 200;
+    private static final long CLOSE_TIMEOUT_MS = 10_000;
+
+    private final VectorStore vectorStore;
+    private final int batchSize;
+    private final long lingerMs;
+    private final int maxAttempts;
+    private final BlockingQueue<Document> queue;
+    private final Thread flusher;
+    private volatile boolean running = true;
+    private volatile Consumer<List<Document>> storedListener;
+    private volatile Consumer<List<Document>> droppedListener;
+
+    private final Counter storedCounter;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
+    private final DistributionSummary batchSizeSummary;
+
+    /**
+     * @param batchSize     单批最多文档数
+     * @param lingerMs      收到第一条文档后最多再等待多久凑批
+     * @param capacity      缓冲区上限
+     * @param maxAttempts   单批最多写入尝试次数
+     * @param meterRegistry 可为 null
+     */
+    public VectorIngestionBuffer(VectorStore vectorStore,
+                                 int batchSize,
+                                 long lingerMs,
+                                 int capacity,
+                                 int maxAttempts,
+                                 MeterRegistry meterRegistry) {
+        this.vectorStore = vectorStore;
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerMs = Math.max(0, lingerMs);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.queue = new ArrayBlockingQueue<>(Math.max(this.batchSize, capacity));
+        if (meterRegistry != null) {
+            Gauge.builder("vector_ingest_buffer_size", queue, BlockingQueue::size)
+                    .description("等待写入向量库的文档数")
+                    .register(meterRegistry);
+            this.storedCounter = documentCounter(meterRegistry, "stored");
+            this.droppedCounter = documentCounter(meterRegistry, "dropped");
+            this.failedCounter = documentCounter(meterRegistry, "failed");
+            this.batchSizeSummary = DistributionSummary.builder("vector_ingest_batch_size")
+                    .description("每次写入向量库的文档数")
+                    .register(meterRegistry);
+        } else {
+            this.storedCounter = null;
+            this.droppedCounter = null;
+            this.failedCounter = null;
+            this.batchSizeSummary = null;
+        }
+        this.flusher = new Thread(this::runLoop, "vector-ingest");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * 放入缓冲区；缓冲区已满时丢弃并返回丢弃条数。
+     */
+    public int offer(List<Document> documents) {
+        List<Document> dropped = null;
+        for (Document document : documents) {
+            if (!running || !queue.offer(document)) {
+                if (dropped == null) {
+                    dropped = new ArrayList<>();
+                }
+                dropped.add(document);
+            }
+        }
+        if (dropped == null) {
+            return 0;
+        }
+        increment(droppedCounter, dropped.size());
+        log.warn("[VectorIngestionBuffer-offer] {}", kv("dropped", dropped.size(), "buffered", queue.size()));
+        notifyListener(droppedListener, dropped);
+        return dropped.size();
+    }
+
+    /**
+     * 每批成功写入后在写入线程上回调（例如让该批会话的空结果负缓存失效）。
+     */
+    public void setStoredListener(Consumer<List<Document>> storedListener) {
+        this.storedListener = storedListener;
+    }
+
+    /**
+     * 文档未能写入时回调：放入时缓冲区已满（调用方线程），或该批重试次数耗尽（写入线程）。
+     */
+    public void setDroppedListener(Consumer<List<Document>> droppedListener) {
+        this.droppedListener = droppedListener;
+    }
+
+    int buffered() {
+        return queue.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.warn("[VectorIngestionBuffer-close] {}", kv("remaining", queue.size()));
+        }
+    }
+
+    private void runLoop() {
+        List<Document> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Document first = running ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < batchSize && running) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || !pollInto(batch, remaining)) {
+                        break;
+                    }
+                }
+                // 停机时不再等待凑批，直接把剩余的一并写出
+                queue.drainTo(batch, batchSize - batch.size());
+            } catch (InterruptedException e) {
+                if (running) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+    }
+
+    private boolean pollInto(List<Document> batch, long timeoutNanos) throws InterruptedException {
+        Document next = queue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+        if (next == null) {
+            return false;
+        }
+        batch.add(next);
+        return true;
+    }
+
+    private void write(List<Document> batch) {
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                vectorStore.add(batch);
+                increment(storedCounter, batch.size());
+                if (batchSizeSummary != null) {
+                    batchSizeSummary.record(batch.size());
+                }
+                log.debug("[VectorIngestionBuffer-write] {}", kv("documents", batch.size(), "attempt", attempt));
+                notifyListener(storedListener, batch);
+                return;
+            } catch (Exception e) {
+                if (attempt == maxAttempts) {
+                    increment(failedCounter, batch.size());
+                    log.warn("[VectorIngestionBuffer-write] {}",
+                            kv("documents", batch.size(), "attempts", attempt, "result", "give_up"), e);
+                    notifyListener(droppedListener, batch);
+                    return;
+                }
+                log.info("[VectorIngestionBuffer-write] {}",
+                        kv("documents", batch.size(), "attempt", attempt, "result", "retry", "error", e.getMessage()));
+                sleepQuietly(RETRY_BACKOFF_MS << (attempt - 1));
+            }
+        }
+    }
+
+    private void notifyListener(Consumer<List<Document>> listener, List<Document> documents) {
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.accept(documents);
+        } catch (Exception e) {
+            log.debug("[VectorIngestionBuffer-notifyListener] {}", kv("documents", documents.size()), e);
+        }
+    }
+
+    private void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // 停机中断：不再退避，继续尝试剩余次数
+            if (running) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static Counter documentCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("vector_ingest_documents")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static void increment(Counter counter, double amount) {
+        if (counter != null) {
+            counter.increment(amount);
+        }
+    }
+}
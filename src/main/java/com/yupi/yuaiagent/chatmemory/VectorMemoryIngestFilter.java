@@ -0,0 +1,233 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.yupi.yuaiagent.util.SimHash;
+import com.yupi.yuaiagent.util.TextTokenizer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 向量记忆写入前的过滤：在 embedding 之前丢弃低信息量消息、识别近似重复。
+ * <p>
+ * “嗯嗯”“好的”“哈哈哈”这类寒暄 / 应答既占向量库空间又会在检索时挤掉有效记忆，直接跳过；
+ * 其余消息计算 64 位 SimHash，与该会话最近 windowSize 条已写入记忆比较；只识别近乎原样的重复：
+ * 角色相同、数字完全一致（“预算500”与“预算5000”不是重复）且汉明距离不超过阈值（默认 1），
+ * 由调用方把重复合并到已有记忆（提升重要度、刷新时间戳）而不是再插入一条。
+ * SimHash 不带词权重，阈值放宽后改动含义的措辞也会被合并，而合并保留的是旧文本，因此阈值不宜调大。
+ * <p>
+ * 指纹窗口只保存在进程内（按会话有界缓存），重启后从空窗口开始，跨重启的重复不做识别。
+ * 写入被丢弃或失败的记忆需由调用方 {@link #forget} 撤销，否则之后相同的消息会被当作重复合并到一条不存在的记忆上。
+ */
+public class VectorMemoryIngestFilter {
+
+    /**
+     * 未显式设置 importance 的记忆在检索排序时按 0.5 计
+     */
+    static final double DEFAULT_IMPORTANCE = 0.5;
+
+    private static final int MAX_CONVERSATIONS = 10_000;
+    private static final Duration WINDOW_EXPIRE_AFTER_ACCESS = Duration.ofHours(24);
+
+    private static final Set<String> FILLER_PHRASES = Set.of(
+            "你好", "您好", "你好呀", "在吗", "在不在", "在么", "嗯嗯", "好的", "好的呢", "好滴", "好吧", "行吧",
+            "谢谢", "谢谢你", "多谢", "感谢", "哈哈", "嘿嘿", "收到", "知道了", "明白了", "没问题", "晚安", "早安",
+            "早上好", "晚上好", "拜拜", "再见", "ok", "okay", "hi", "hello", "thanks", "thankyou", "bye");
+
+    public enum Outcome {
+        STORED,
+        LOW_INFORMATION,
+        DUPLICATE
+    }
+
+    /**
+     * @param duplicateOfId  DUPLICATE 时为已有记忆的文档 id
+     * @param importance     DUPLICATE 时为合并后的重要度
+     * @param duplicateCount DUPLICATE 时为该记忆累计被重复的次数
+     */
+    public record Decision(Outcome outcome, String duplicateOfId, double importance, int duplicateCount) {
+    }
+
+    private static final class Entry {
+        private final String documentId;
+        private final String role;
+        private final List<String> numbers;
+        private final long fingerprint;
+        private double importance = DEFAULT_IMPORTANCE;
+        private int duplicates;
+
+        private Entry(String documentId, String role, List<String> numbers, long fingerprint) {
+            this.documentId = documentId;
+            this.role = role;
+            this.numbers = numbers;
+            this.fingerprint = fingerprint;
+        }
+
+        private boolean matches(String role, List<String> numbers, long fingerprint, int hammingThreshold) {
+            return Objects.equals(this.role, role) && this.numbers.equals(numbers)
+                    && SimHash.hammingDistance(this.fingerprint, fingerprint) <= hammingThreshold;
+        }
+    }
+
+    private final int minChars;
+    private final int hammingThreshold;
+    private final int windowSize;
+    private final double importanceStep;
+    private final Cache<String, Deque<Entry>> windows;
+
+    private final Counter storedCounter;
+    private final Counter lowInformationCounter;
+    private final Counter duplicateCounter;
+
+    /**
+     * @param minChars         去掉标点 / 空白后少于该字符数的消息视为低信息量
+     * @param hammingThreshold SimHash 汉明距离不超过该值视为重复
+     * @param windowSize       每个会话参与比较的最近记忆条数
+     * @param importanceStep   每次重复对重要度的提升（上限 1.0）
+     * @param meterRegistry    可为 null
+     */
+    public VectorMemoryIngestFilter(int minChars,
+                                    int hammingThreshold,
+                                    int windowSize,
+                                    double importanceStep,
+                                    MeterRegistry meterRegistry) {
+        this.minChars = Math.max(0, minChars);
+        this.hammingThreshold = Math.max(0, Math.min(64, hammingThreshold));
+        this.windowSize = Math.max(1, windowSize);
+        this.importanceStep = Math.max(0, importanceStep);
+        this.windows = Caffeine.newBuilder()
+                .maximumSize(MAX_CONVERSATIONS)
+                .expireAfterAccess(WINDOW_EXPIRE_AFTER_ACCESS)
+                .build();
+        if (meterRegistry != null) {
+            this.storedCounter = documentCounter(meterRegistry, "stored");
+            this.lowInformationCounter = documentCounter(meterRegistry, "skipped_low_information");
+            this.duplicateCounter = documentCounter(meterRegistry, "merged_duplicate");
+        } else {
+            this.storedCounter = null;
+            this.lowInformationCounter = null;
+            this.duplicateCounter = null;
+        }
+    }
+
+    /**
+     * 判断一条消息是否需要写入；STORED 时同时把 documentId 记入该会话的指纹窗口。
+     * <p>
+     * 记入发生在写入之前，这样同一批 / 同一攒批窗口内的重复也能识别；写入最终未成功时调用 {@link #forget}。
+     *
+     * @param role    消息角色（USER / ASSISTANT），不同角色的相同内容不算重复
+     * @param content 消息原文（不含“用户: ”等角色前缀）
+     */
+    public Decision inspect(String conversationId, String documentId, String role, String content) {
+        if (isLowInformation(content, minChars)) {
+            increment(lowInformationCounter);
+            return new Decision(Outcome.LOW_INFORMATION, null, 0, 0);
+        }
+        List<String> tokens = TextTokenizer.tokenize(content);
+        long fingerprint = SimHash.fingerprint(tokens);
+        List<String> numbers = numbers(tokens);
+        Deque<Entry> window = windows.get(conversationId, k -> new ArrayDeque<>());
+        synchronized (window) {
+            for (Entry entry : window) {
+                if (entry.matches(role, numbers, fingerprint, hammingThreshold)) {
+                    entry.importance = Math.min(1.0, entry.importance + importanceStep);
+                    entry.duplicates++;
+                    increment(duplicateCounter);
+                    return new Decision(Outcome.DUPLICATE, entry.documentId, entry.importance, entry.duplicates);
+                }
+            }
+            window.addFirst(new Entry(documentId, role, numbers, fingerprint));
+            if (window.size() > windowSize) {
+                window.removeLast();
+            }
+        }
+        increment(storedCounter);
+        return new Decision(Outcome.STORED, documentId, DEFAULT_IMPORTANCE, 0);
+    }
+
+    /**
+     * 撤销 {@link #inspect} 记入的指纹（写入被丢弃或重试耗尽时），之后相同的消息会重新写入。
+     */
+    public void forget(String conversationId, String documentId) {
+        Deque<Entry> window = windows.getIfPresent(conversationId);
+        if (window == null || documentId == null) {
+            return;
+        }
+        synchronized (window) {
+            window.removeIf(entry -> documentId.equals(entry.documentId));
+        }
+    }
+
+    /**
+     * 低信息量：去掉标点 / 空白 / 表情后过短、是常见寒暄应答，或是一两个字反复叠用的语气词（“哈哈哈”“hahaha”）。
+     * 二字短句（“分手”“想你”）和数字（“1000”）不算低信息量。
+     */
+    static boolean isLowInformation(String content, int minChars) {
+        if (content == null) {
+            return true;
+        }
+        StringBuilder normalized = new StringBuilder(content.length());
+        content.codePoints()
+                .filter(Character::isLetterOrDigit)
+                .map(Character::toLowerCase)
+                .forEach(normalized::appendCodePoint);
+        String text = normalized.toString().toLowerCase(Locale.ROOT);
+        if (text.codePointCount(0, text.length()) < minChars || FILLER_PHRASES.contains(text)) {
+            return true;
+        }
+        return isRepeatedInterjection(text);
+    }
+
+    /**
+     * 至少三个字符、不含数字，且由长度不超过 2 的片段重复构成
+     */
+    private static boolean isRepeatedInterjection(String text) {
+        int[] cps = text.codePoints().toArray();
+        if (cps.length < 3 || Arrays.stream(cps).anyMatch(Character::isDigit)) {
+            return false;
+        }
+        for (int unit = 1; unit <= 2; unit++) {
+            boolean repeated = cps.length % unit == 0;
+            for (int i = unit; repeated && i < cps.length; i++) {
+                repeated = cps[i] == cps[i - unit];
+            }
+            if (repeated) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> numbers(List<String> tokens) {
+        List<String> numbers = new ArrayList<>();
+        for (String token : tokens) {
+            if (token.chars().anyMatch(Character::isDigit)) {
+                numbers.add(token);
+            }
+        }
+        return numbers;
+    }
+
+    private static Counter documentCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("vector_memory_ingest_documents")
+                .description("向量记忆写入前过滤结果")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+}
@@ -1,17 +1,27 @@
 package com.yupi.yuaiagent.chatmemory;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yupi.yuaiagent.chatmemory.model.MemoryCandidate;
+import com.yupi.yuaiagent.rag.HnswVectorStore;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -20,6 +30,14 @@ import java.util.Map;
 
 /**
  * 向量长期记忆服务：将对话消息写入 VectorStore，并按语义检索召回。
+ * <p>
+ * 写入默认走 {@link VectorIngestionBuffer} 跨会话微批（一次 embedding 批量请求 + 一次批量插入）；
+ * ingest.batch-size <= 1 时退化为每次直接写入。写入前经 {@link VectorMemoryIngestFilter} 跳过低信息量消息，
+ * 近似重复的消息不再插入，而是提升已有记忆的 importance 并刷新 timestamp（pgvector / HnswVectorStore 支持原地更新）。
+ * <p>
+ * 检索默认为全局向量检索 + conversation_id 过滤；search-mode=partitioned 且使用 pgvector 时，
+ * 改为 {@link ConversationPartitionedVectorSearch} 在单个会话内精确检索，分区不可用时回退到全局检索。
+ * 检索经 {@link MemorySourceResilience} 熔断；能确认会话没有任何向量记忆时（分区检索 / HnswVectorStore）写入负缓存。
  */
 @Slf4j
 @Service
@@ -34,6 +52,160 @@ public class VectorMemoryService {
     @Value("${app.memory.vector.similarity-threshold:0.65}")
     private double similarityThreshold;
 
+    @Value("${app.memory.vector.ingest.batch-size:64}")
+    private int ingestBatchSize;
+
+    @Value("${app.memory.vector.ingest.linger-ms:500}")
+    private long ingestLingerMs;
+
+    @Value("${app.memory.vector.ingest.buffer-capacity:5000}")
+    private int ingestBufferCapacity;
+
+    @Value("${app.memory.vector.ingest.max-attempts:3}")
+    private int ingestMaxAttempts;
+
+    @Value("${app.memory.vector.dedup.enabled:true}")
+    private boolean dedupEnabled;
+
+    @Value("${app.memory.vector.dedup.min-chars:2}")
+    private int dedupMinChars;
+
+    @Value("${app.memory.vector.dedup.hamming-threshold:1}")
+    private int dedupHammingThreshold;
+
+    @Value("${app.memory.vector.dedup.window-size:200}")
+    private int dedupWindowSize;
+
+    @Value("${app.memory.vector.dedup.importance-step:0.1}")
+    private double dedupImportanceStep;
+
+    /**
+     * filter：全局检索 + 过滤；partitioned：按会话分区检索（仅 pgvector）
+     */
+    @Value("${app.memory.vector.search-mode:filter}")
+    private String searchMode;
+
+    @Value("${app.memory.vector.partition.migrate-on-startup:false}")
+    private boolean partitionMigrateOnStartup;
+
+    @Value("${app.memory.vector.partition.backfill-batch-size:5000}")
+    private int partitionBackfillBatchSize;
+
+    @Value("${app.memory.vector.pgvector.schema-name:public}")
+    private String pgvectorSchemaName;
+
+    @Value("${app.memory.vector.pgvector.table-name:conversation_memory_store}")
+    private String pgvectorTableName;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Autowired(required = false)
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired(required = false)
+    @Qualifier("embeddingModel")
+    private EmbeddingModel embeddingModel;
+
+    @Autowired(required = false)
+    private MemorySourceResilience resilience = MemorySourceResilience.defaults();
+
+    private VectorIngestionBuffer ingestionBuffer;
+
+    private ConversationPartitionedVectorSearch partitionedSearch;
+
+    private VectorMemoryIngestFilter ingestFilter;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 确认分区列回填完成（没有 conversation_id 为空的存量行）之前为 false，此时仍走全局检索
+     */
+    private volatile boolean partitionReady;
+
+    @PostConstruct
+    public void initIngestionBuffer() {
+        if (!vectorMemoryEnabled || ingestBatchSize <= 1 || vectorStore == null) {
+            return;
+        }
+        ingestionBuffer = new VectorIngestionBuffer(vectorStore, ingestBatchSize, ingestLingerMs,
+                ingestBufferCapacity, ingestMaxAttempts, meterRegistry);
+        // 负缓存可能在文档还在缓冲区时写入，落库后再失效一次
+        ingestionBuffer.setStoredListener(batch -> batch.forEach(doc -> resilience.invalidate(
+                MemorySourceResilience.SOURCE_VECTOR, String.valueOf(doc.getMetadata().get("conversation_id")))));
+        // 丢弃 / 写入失败的文档撤销去重指纹，之后相同的消息可以重新写入
+        ingestionBuffer.setDroppedListener(this::forgetFingerprints);
+        log.info("向量记忆写入启用微批, batchSize={}, lingerMs={}, capacity={}",
+                ingestBatchSize, ingestLingerMs, ingestBufferCapacity);
+    }
+
+    @PostConstruct
+    public void initIngestFilter() {
+        if (!vectorMemoryEnabled || !dedupEnabled) {
+            return;
+        }
+        ingestFilter = new VectorMemoryIngestFilter(dedupMinChars, dedupHammingThreshold, dedupWindowSize,
+                dedupImportanceStep, meterRegistry);
+        log.info("向量记忆写入启用去重, hammingThreshold={}, windowSize={}", dedupHammingThreshold, dedupWindowSize);
+    }
+
+    @PostConstruct
+    public void initPartitionedSearch() {
+        if (!vectorMemoryEnabled || !"partitioned".equalsIgnoreCase(searchMode)) {
+            return;
+        }
+        if (!(vectorStore instanceof PgVectorStore) || jdbcTemplate == null || embeddingModel == null) {
+            log.warn("search-mode=partitioned 仅支持 pgvector，当前回退为全局检索, vectorStore={}",
+                    vectorStore == null ? null : vectorStore.getClass().getSimpleName());
+            return;
+        }
+        partitionedSearch = new ConversationPartitionedVectorSearch(jdbcTemplate, embeddingModel,
+                pgvectorSchemaName, pgvectorTableName);
+        // 分区列回填完成前仍走全局检索：conversation_id 为空的存量行在分区检索中不可见，会被误判为会话没有记忆并写入负缓存
+        Thread.ofVirtual().name("vector-memory-partition-migrate").start(() -> {
+            try {
+                if (partitionMigrateOnStartup) {
+                    migratePartitions(partitionBackfillBatchSize);
+                } else if (partitionedSearch.isMigrated()) {
+                    partitionReady = true;
+                    log.info("向量记忆启用按会话分区检索, table={}.{}", pgvectorSchemaName, pgvectorTableName);
+                } else {
+                    log.warn("向量记忆分区列尚未回填完成，继续使用全局检索；请开启 migrate-on-startup "
+                            + "或调用 POST /debug/memory/vector/partition/migrate, table={}.{}", pgvectorSchemaName, pgvectorTableName);
+                }
+            } catch (Exception e) {
+                log.warn("向量记忆分区迁移失败，继续使用全局检索", e);
+            }
+        });
+    }
+
+    /**
+     * 建分区列 / 索引 / 触发器并回填存量行；确认没有待回填的行后切换为分区检索。
+     *
+     * @return 回填的行数
+     */
+    public long migratePartitions(int batchSize) {
+        if (partitionedSearch == null) {
+            throw new IllegalStateException("未启用按会话分区检索（需要 search-mode=partitioned 且使用 pgvector）");
+        }
+        partitionedSearch.ensureSchema();
+        long migrated = partitionedSearch.backfill(batchSize);
+        partitionReady = partitionedSearch.isMigrated();
+        if (partitionReady) {
+            log.info("向量记忆启用按会话分区检索, table={}.{}", pgvectorSchemaName, pgvectorTableName);
+        } else {
+            log.warn("向量记忆分区回填后仍有待回填的行，继续使用全局检索, table={}.{}", pgvectorSchemaName, pgvectorTableName);
+        }
+        return migrated;
+    }
+
+    @PreDestroy
+    public void closeIngestionBuffer() {
+        if (ingestionBuffer != null) {
+            ingestionBuffer.close();
+        }
+    }
+
     public void saveMessages(String conversationId, List<Message> messages) {
         if (!vectorMemoryEnabled) {
             return;
@@ -54,6 +226,17 @@ public class VectorMemoryService {
             }
 
             Document doc = new Document(role + ": " + content);
+            if (ingestFilter != null) {
+                VectorMemoryIngestFilter.Decision decision = ingestFilter.inspect(conversationId, doc.getId(),
+                        message instanceof UserMessage ? "USER" : "ASSISTANT", content);
+                if (decision.outcome() == VectorMemoryIngestFilter.Outcome.LOW_INFORMATION) {
+                    continue;
+                }
+                if (decision.outcome() == VectorMemoryIngestFilter.Outcome.DUPLICATE) {
+                    mergeDuplicate(conversationId, decision);
+                    continue;
+                }
+            }
             Map<String, Object> md = doc.getMetadata();
             md.put("conversation_id", conversationId);
             md.put("message_type", message instanceof UserMessage ? "USER" : "ASSISTANT");
@@ -65,12 +248,55 @@ public class VectorMemoryService {
         if (documents.isEmpty()) {
             return;
         }
+        resilience.invalidate(MemorySourceResilience.SOURCE_VECTOR, conversationId);
+
+        if (ingestionBuffer != null) {
+            ingestionBuffer.offer(documents);
+            return;
+        }
 
         try {
             vectorStore.add(documents);
+            // 写入期间开始的检索可能已看到“没有记忆”，落库后再递增一次 epoch 使其不能标记
+            resilience.invalidate(MemorySourceResilience.SOURCE_VECTOR, conversationId);
             log.debug("已存入 {} 条对话记忆到向量库, conversationId={}", documents.size(), conversationId);
         } catch (Exception e) {
             log.warn("写入向量记忆失败 conversationId={}", conversationId, e);
+            forgetFingerprints(documents);
+        }
+    }
+
+    private void forgetFingerprints(List<Document> documents) {
+        VectorMemoryIngestFilter filter = ingestFilter;
+        if (filter == null) {
+            return;
+        }
+        for (Document doc : documents) {
+            filter.forget(String.valueOf(doc.getMetadata().get("conversation_id")), doc.getId());
+        }
+    }
+
+    /**
+     * 把重复消息合并到已有记忆：提升 importance、刷新 timestamp、记录 duplicate_count。
+     * 已有记忆仍在写入缓冲中（尚未落库）或向量库不支持原地更新（如 SimpleVectorStore）时只跳过插入。
+     */
+    private void mergeDuplicate(String conversationId, VectorMemoryIngestFilter.Decision decision) {
+        Map<String, Object> patch = new HashMap<>();
+        patch.put("importance", decision.importance());
+        patch.put("timestamp", String.valueOf(System.currentTimeMillis()));
+        patch.put("duplicate_count", decision.duplicateCount());
+        try {
+            if (vectorStore instanceof HnswVectorStore hnswVectorStore) {
+                hnswVectorStore.mergeMetadata(decision.duplicateOfId(), patch);
+            } else if (vectorStore instanceof PgVectorStore && jdbcTemplate != null) {
+                jdbcTemplate.update("UPDATE " + pgvectorSchemaName + "." + pgvectorTableName
+                                + " SET metadata = (metadata::jsonb || ?::jsonb)::json WHERE id = ?::uuid",
+                        objectMapper.writeValueAsString(patch), decision.duplicateOfId());
+            }
+            log.debug("重复消息已合并到已有记忆, conversationId={}, documentId={}, duplicateCount={}",
+                    conversationId, decision.duplicateOfId(), decision.duplicateCount());
+        } catch (Exception e) {
+            log.debug("合并重复记忆失败 conversationId={}, documentId={}", conversationId, decision.duplicateOfId(), e);
         }
     }
 
@@ -99,6 +325,26 @@ public class VectorMemoryService {
         if (!StringUtils.hasText(conversationId) || !StringUtils.hasText(query) || topK <= 0) {
             return List.of();
         }
+        if (resilience.isKnownEmpty(MemorySourceResilience.SOURCE_VECTOR, conversationId)) {
+            return List.of();
+        }
+        long writeEpoch = resilience.writeEpoch(MemorySourceResilience.SOURCE_VECTOR, conversationId);
+
+        if (partitionedSearch != null && partitionReady) {
+            try {
+                List<MemoryCandidate> candidates = toCandidates(resilience.execute(MemorySourceResilience.SOURCE_VECTOR,
+                        () -> partitionedSearch.search(conversationId, "conversation", query, topK, similarityThreshold)));
+                if (candidates.isEmpty() && !partitionedSearch.hasMemories(conversationId, "conversation")) {
+                    resilience.markEmpty(MemorySourceResilience.SOURCE_VECTOR, conversationId, writeEpoch);
+                }
+                log.debug("分区检索到 {} 条长期记忆候选, conversationId={}", candidates.size(), conversationId);
+                return candidates;
+            } catch (MemorySourceResilience.SourceUnavailableException e) {
+                return List.of();
+            } catch (Exception e) {
+                log.warn("按会话分区检索失败，回退为全局检索 conversationId={}", conversationId, e);
+            }
+        }
 
         try {
             SearchRequest searchRequest = SearchRequest.builder()
@@ -108,30 +354,11 @@ public class VectorMemoryService {
                     .filterExpression("conversation_id == '" + escape(conversationId) + "' && memory_type == 'conversation'")
                     .build();
 
-            List<Document> results = vectorStore.similaritySearch(searchRequest);
-            if (results == null || results.isEmpty()) {
-                return List.of();
-            }
-
-            List<MemoryCandidate> candidates = new ArrayList<>();
-            for (Document doc : results) {
-                if (doc == null || !StringUtils.hasText(doc.getText())) {
-                    continue;
-                }
-                Map<String, Object> metadata = doc.getMetadata() == null ? new HashMap<>() : new HashMap<>(doc.getMetadata());
-                long timestampMs = parseLong(metadata.get("timestamp"), System.currentTimeMillis());
-                double similarity = parseSimilarity(metadata);
-                double importance = parseDouble(metadata.get("importance"), 0.5);
-
-                candidates.add(MemoryCandidate.builder()
-                        .source("vector")
-                        .memoryType(String.valueOf(metadata.getOrDefault("memory_type", "conversation")))
-                        .content(doc.getText())
-                        .similarity(similarity)
-                        .importance(importance)
-                        .timestampMs(timestampMs)
-                        .metadata(metadata)
-                        .build());
+            List<MemoryCandidate> candidates = toCandidates(resilience.execute(MemorySourceResilience.SOURCE_VECTOR,
+                    () -> vectorStore.similaritySearch(searchRequest)));
+            if (candidates.isEmpty() && vectorStore instanceof HnswVectorStore hnswVectorStore
+                    && !hnswVectorStore.containsConversation(conversationId)) {
+                resilience.markEmpty(MemorySourceResilience.SOURCE_VECTOR, conversationId, writeEpoch);
             }
             log.debug("检索到 {} 条长期记忆候选, conversationId={}", candidates.size(), conversationId);
             return candidates;
@@ -141,6 +368,33 @@ public class VectorMemoryService {
         }
     }
 
+    private List<MemoryCandidate> toCandidates(List<Document> results) {
+        if (results == null || results.isEmpty()) {
+            return List.of();
+        }
+        List<MemoryCandidate> candidates = new ArrayList<>();
+        for (Document doc : results) {
+            if (doc == null || !StringUtils.hasText(doc.getText())) {
+                continue;
+            }
+            Map<String, Object> metadata = doc.getMetadata() == null ? new HashMap<>() : new HashMap<>(doc.getMetadata());
+            long timestampMs = parseLong(metadata.get("timestamp"), System.currentTimeMillis());
+            double similarity = parseSimilarity(metadata);
+            double importance = parseDouble(metadata.get("importance"), 0.5);
+
+            candidates.add(MemoryCandidate.builder()
+                    .source("vector")
+                    .memoryType(String.valueOf(metadata.getOrDefault("memory_type", "conversation")))
+                    .content(doc.getText())
+                    .similarity(similarity)
+                    .importance(importance)
+                    .timestampMs(timestampMs)
+                    .metadata(metadata)
+                    .build());
+        }
+        return candidates;
+    }
+
     private double parseSimilarity(Map<String, Object> metadata) {
         if (metadata == null || metadata.isEmpty()) {
             return 0.5;
@@ -0,0 +1,17 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 支持只读取最近 N 条消息的对话记忆仓库，窗口读取时不必反序列化整段历史。
+ */
+public interface WindowedChatMemoryRepository extends ChatMemoryRepository {
+
+    /**
+     * 按时间顺序返回会话最后 n 条消息；不足 n 条时返回全部。
+     */
+    List<Message> findLastN(String conversationId, int n);
+}
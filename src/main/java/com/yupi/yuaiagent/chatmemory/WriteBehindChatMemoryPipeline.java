@@ -0,0 +1,298 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
+
+/**
+ * 对话记忆异步回写（write-behind）管道。
+ * <p>
+ * - 每个会话一个待写队列，同一会话同一时刻最多一个回写任务，保证写入顺序
+ * - 连续的 append 合并为一次下层写入；clear 会丢弃尚未落盘的 append
+ * - 全局按消息数限容，满时阻塞调用方（背压）
+ * - 会话存在未落盘写入时维护一份完整视图，读取直接返回该视图，保证读己之写
+ */
+@Slf4j
+final class WriteBehindChatMemoryPipeline {
+
+    private final List<ChatMemory> targets;
+    private final Executor executor;
+    private final int capacity;
+    private final Semaphore permits;
+    private final Duration offerTimeout;
+    private final ConcurrentHashMap<String, PendingConversation> pending = new ConcurrentHashMap<>();
+
+    private final Timer lagTimer;
+    private final Counter backpressureCounter;
+
+    WriteBehindChatMemoryPipeline(List<ChatMemory> targets,
+                                  Executor executor,
+                                  int capacity,
+                                  Duration offerTimeout,
+                                  MeterRegistry meterRegistry) {
+        this.targets = targets.stream().filter(Objects::nonNull).toList();
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.capacity = Math.max(1, capacity);
+        this.permits = new Semaphore(this.capacity);
+        this.offerTimeout = offerTimeout == null ? Duration.ofMillis(50) : offerTimeout;
+        if (meterRegistry != null) {
+            Gauge.builder("chat_memory_write_behind_pending_messages", this, WriteBehindChatMemoryPipeline::pendingMessages)
+                    .description("尚未回写到 Redis/文件的消息数")
+                    .register(meterRegistry);
+            Gauge.builder("chat_memory_write_behind_pending_conversations", pending, ConcurrentHashMap::size)
+                    .description("存在未回写消息的会话数")
+                    .register(meterRegistry);
+            this.lagTimer = Timer.builder("chat_memory_write_behind_lag")
+                    .description("写入从入队到落到下层存储的延迟")
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            this.backpressureCounter = Counter.builder("chat_memory_write_behind_backpressure")
+                    .description("队列已满导致调用方阻塞的次数")
+                    .register(meterRegistry);
+        } else {
+            this.lagTimer = null;
+            this.backpressureCounter = null;
+        }
+    }
+
+    /**
+     * 追加消息。会话此前没有未落盘写入时，通过 baseLoader 加载当前完整视图作为基线。
+     */
+    void append(String conversationId, List<Message> messages, Supplier<List<Message>> baseLoader) {
+        List<Message> toAppend = messages.stream().filter(Objects::nonNull).toList();
+        if (toAppend.isEmpty()) {
+            return;
+        }
+        int cost = Math.min(toAppend.size(), capacity);
+        acquire(conversationId, cost);
+        enqueue(conversationId, new Op(false, new ArrayList<>(toAppend), cost, System.nanoTime()), baseLoader);
+    }
+
+    void clear(String conversationId) {
+        acquire(conversationId, 1);
+        enqueue(conversationId, new Op(true, List.of(), 1, System.nanoTime()), List::of);
+    }
+
+    /**
+     * @return 会话存在未落盘写入时返回完整视图副本，否则返回 null
+     */
+    List<Message> pendingView(String conversationId) {
+        PendingConversation conversation = pending.get(conversationId);
+        if (conversation == null) {
+            return null;
+        }
+        synchronized (conversation) {
+            return conversation.closed || conversation.view == null ? null : new ArrayList<>(conversation.view);
+        }
+    }
+
+    /**
+     * 等待所有未落盘写入完成。
+     *
+     * @return 超时前全部完成返回 true
+     */
+    boolean flush(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!pending.isEmpty()) {
+            if (System.nanoTime() >= deadline) {
+                log.warn("[WriteBehindChatMemoryPipeline-flush] {}",
+                        kv("pendingConversations", pending.size(), "pendingMessages", pendingMessages()));
+                return false;
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int pendingMessages() {
+        return capacity - permits.availablePermits();
+    }
+
+    private void acquire(String conversationId, int cost) {
+        try {
+            if (permits.tryAcquire(cost, offerTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            if (backpressureCounter != null) {
+                backpressureCounter.increment();
+            }
+            log.warn("[WriteBehindChatMemoryPipeline-acquire] {}",
+                    kv("conversationId", conversationId, "cost", cost, "pendingMessages", pendingMessages()));
+            permits.acquire(cost);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待对话记忆回写队列时被中断", e);
+        }
+    }
+
+    private void enqueue(String conversationId, Op op, Supplier<List<Message>> baseLoader) {
+        // 基线在锁外加载（Redis / 文件读取可能很慢），避免阻塞该会话的其他读写；加锁后再确认是否仍需要
+        PendingConversation baseFor = null;
+        List<Message> base = null;
+        while (true) {
+            PendingConversation conversation = pending.computeIfAbsent(conversationId, PendingConversation::new);
+            boolean needsBase;
+            synchronized (conversation) {
+                if (conversation.closed) {
+                    // 回写任务刚好结束并移除了该会话，重新创建
+                    continue;
+                }
+                needsBase = !op.clear && conversation.view == null && baseFor != conversation;
+            }
+            if (needsBase) {
+                List<Message> loaded;
+                try {
+                    loaded = baseLoader.get();
+                } catch (RuntimeException e) {
+                    abandon(conversation, op);
+                    throw e;
+                }
+                base = loaded == null ? List.of() : loaded;
+                baseFor = conversation;
+                continue;
+            }
+            boolean schedule;
+            synchronized (conversation) {
+                if (conversation.closed) {
+                    continue;
+                }
+                if (conversation.view == null) {
+                    // 加载期间该条目没有任何写入（有写入就会建立视图），基线仍然有效
+                    conversation.view = op.clear || base == null ? new ArrayList<>() : new ArrayList<>(base);
+                }
+                if (op.clear) {
+                    int dropped = 0;
+                    for (Op queued : conversation.ops) {
+                        dropped += queued.cost;
+                    }
+                    conversation.ops.clear();
+                    permits.release(dropped);
+                    conversation.ops.add(op);
+                    conversation.view.clear();
+                } else {
+                    Op last = conversation.ops.peekLast();
+                    if (last != null && !last.clear) {
+                        last.messages.addAll(op.messages);
+                        last.cost += op.cost;
+                    } else {
+                        conversation.ops.add(op);
+                    }
+                    conversation.view.addAll(op.messages);
+                }
+                schedule = !conversation.scheduled;
+                conversation.scheduled = true;
+            }
+            if (schedule) {
+                try {
+                    executor.execute(() -> drain(conversation));
+                } catch (RejectedExecutionException e) {
+                    log.warn("[WriteBehindChatMemoryPipeline-enqueue] {}", kv("conversationId", conversationId, "fallback", "caller_runs"));
+                    drain(conversation);
+                }
+            }
+            return;
+        }
+    }
+
+    /**
+     * 基线加载失败：归还名额，并移除仍为空的会话条目（否则 flush 会一直等待它）。
+     */
+    private void abandon(PendingConversation conversation, Op op) {
+        permits.release(op.cost);
+        synchronized (conversation) {
+            if (!conversation.closed && conversation.view == null && conversation.ops.isEmpty() && !conversation.scheduled) {
+                conversation.closed = true;
+                pending.remove(conversation.conversationId, conversation);
+            }
+        }
+    }
+
+    private void drain(PendingConversation conversation) {
+        while (true) {
+            List<Op> batch;
+            synchronized (conversation) {
+                if (conversation.ops.isEmpty()) {
+                    conversation.scheduled = false;
+                    conversation.closed = true;
+                    pending.remove(conversation.conversationId, conversation);
+                    return;
+                }
+                batch = new ArrayList<>(conversation.ops);
+                conversation.ops.clear();
+            }
+            for (Op op : batch) {
+                apply(conversation.conversationId, op);
+                permits.release(op.cost);
+                if (lagTimer != null) {
+                    lagTimer.record(System.nanoTime() - op.enqueuedAtNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+
+    private void apply(String conversationId, Op op) {
+        for (ChatMemory target : targets) {
+            try {
+                if (op.clear) {
+                    target.clear(conversationId);
+                } else {
+                    target.add(conversationId, op.messages);
+                }
+            } catch (Exception e) {
+                log.warn("[WriteBehindChatMemoryPipeline-apply] {}",
+                        kv("conversationId", conversationId, "target", target.getClass().getSimpleName(),
+                                "clear", op.clear, "messages", op.messages.size()), e);
+            }
+        }
+    }
+
+    private static final class PendingConversation {
+        private final String conversationId;
+        private final Deque<Op> ops = new ArrayDeque<>();
+        private List<Message> view;
+        private boolean scheduled;
+        private boolean closed;
+
+        private PendingConversation(String conversationId) {
+            this.conversationId = conversationId;
+        }
+    }
+
+    private static final class Op {
+        private final boolean clear;
+        private final List<Message> messages;
+        private int cost;
+        private final long enqueuedAtNanos;
+
+        private Op(boolean clear, List<Message> messages, int cost, long enqueuedAtNanos) {
+            this.clear = clear;
+            this.messages = messages;
+            this.cost = cost;
+            this.enqueuedAtNanos = enqueuedAtNanos;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.yupi.yuaiagent.config;
 
+import com.yupi.yuaiagent.orchestration.core.OrchestrationExecutor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
@@ -24,4 +28,15 @@ public class AgentAsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    /**
+     * SSE 编排入口（v1 / v2 / v3 / Manus）的会话执行器：虚拟线程 + 全局并发上限。
+     */
+    @Bean(destroyMethod = "close")
+    public OrchestrationExecutor orchestrationExecutor(
+            ObjectProvider<MeterRegistry> meterRegistryProvider,
+            @Value("${app.orchestration.executor.max-concurrent:2000}") int maxConcurrent,
+            @Value("${app.orchestration.executor.acquire-timeout-ms:10000}") long acquireTimeoutMs) {
+        return new OrchestrationExecutor(maxConcurrent, acquireTimeoutMs, meterRegistryProvider.getIfAvailable());
+    }
 }
@@ -1,14 +1,22 @@
 package com.yupi.yuaiagent.config;
 
 import com.yupi.yuaiagent.chatmemory.ConversationSummaryService;
+import com.yupi.yuaiagent.chatmemory.FallbackReranker;
+import com.yupi.yuaiagent.chatmemory.FeatureModelReranker;
+import com.yupi.yuaiagent.chatmemory.MemoryRerankService;
+import com.yupi.yuaiagent.chatmemory.Reranker;
+import com.yupi.yuaiagent.chatmemory.MemoryMaintenanceExecutor;
+import com.yupi.yuaiagent.chatmemory.SlidingWindowChatMemory;
 import com.yupi.yuaiagent.chatmemory.StructuredMidMemoryService;
+import com.yupi.yuaiagent.chatmemory.SummaryCompactionScheduler;
 import com.yupi.yuaiagent.chatmemory.TieredChatMemoryAdvisor;
 import com.yupi.yuaiagent.chatmemory.VectorMemoryService;
+import com.yupi.yuaiagent.rag.HnswVectorStore;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.memory.ChatMemoryRepository;
 import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
-import org.springframework.ai.chat.memory.MessageWindowChatMemory;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
@@ -18,8 +26,15 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.Resource;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import static org.springframework.ai.vectorstore.pgvector.PgVectorStore.PgDistanceType.COSINE_DISTANCE;
 import static org.springframework.ai.vectorstore.pgvector.PgVectorStore.PgIndexType.HNSW;
 
@@ -37,11 +52,9 @@ public class ChatMemoryConfig {
         if (chatMemoryRepository == null) {
             chatMemoryRepository = new InMemoryChatMemoryRepository();
         }
-        log.info("Init MessageWindowChatMemory, maxMessages={}", maxMessages);
-        return MessageWindowChatMemory.builder()
-                .chatMemoryRepository(chatMemoryRepository)
-                .maxMessages(maxMessages)
-                .build();
+        log.info("Init SlidingWindowChatMemory, maxMessages={}, repository={}",
+                maxMessages, chatMemoryRepository.getClass().getSimpleName());
+        return new SlidingWindowChatMemory(chatMemoryRepository, maxMessages);
     }
 
     /**
@@ -55,7 +68,11 @@ public class ChatMemoryConfig {
             @Value("${app.memory.vector.pgvector.initialize-schema:true}") boolean initializeSchema,
             @Value("${app.memory.vector.pgvector.schema-name:public}") String schemaName,
             @Value("${app.memory.vector.pgvector.table-name:conversation_memory_store}") String tableName,
-            @Value("${app.memory.vector.pgvector.dimensions:1536}") int dimensions
+            @Value("${app.memory.vector.pgvector.dimensions:1536}") int dimensions,
+            @Value("${app.memory.vector.hnsw.path:}") String hnswPath,
+            @Value("${app.memory.vector.hnsw.m:16}") int hnswM,
+            @Value("${app.memory.vector.hnsw.ef-construction:100}") int hnswEfConstruction,
+            @Value("${app.memory.vector.hnsw.ef-search:64}") int hnswEfSearch
     ) {
         String t = storeType == null ? "" : storeType.trim();
         JdbcTemplate jdbcTemplate = jdbcTemplateProvider.getIfAvailable();
@@ -73,22 +90,122 @@ public class ChatMemoryConfig {
                     .build();
         }
 
+        if ("hnsw".equalsIgnoreCase(t)) {
+            Path path = hnswPath == null || hnswPath.isBlank() ? null : Path.of(hnswPath.trim());
+            log.info("Init conversationMemoryVectorStore with HnswVectorStore, path={}, m={}, efConstruction={}, efSearch={}",
+                    path, hnswM, hnswEfConstruction, hnswEfSearch);
+            return new HnswVectorStore(embeddingModel, path, hnswM, hnswEfConstruction, hnswEfSearch);
+        }
+
         log.info("Init conversationMemoryVectorStore with SimpleVectorStore (in-memory), storeType={}, jdbcTemplatePresent={}",
                 t, jdbcTemplate != null);
         return SimpleVectorStore.builder(embeddingModel).build();
     }
 
+    /**
+     * 调用模型前记忆读取（向量检索 / 摘要 / 窗口）使用的虚拟线程执行器。
+     */
+    @Bean(name = "memoryReadExecutor", destroyMethod = "shutdown")
+    public ExecutorService memoryReadExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("memory-read-", 0).factory());
+    }
+
+    /**
+     * 回复后的记忆维护任务执行器：摘要 / 向量 / 结构化各自独立的有界线程池。
+     */
+    @Bean(destroyMethod = "close")
+    public MemoryMaintenanceExecutor memoryMaintenanceExecutor(
+            ObjectProvider<MeterRegistry> meterRegistryProvider,
+            @Value("${app.memory.maintenance.summary.threads:1}") int summaryThreads,
+            @Value("${app.memory.maintenance.summary.queue-capacity:200}") int summaryQueueCapacity,
+            @Value("${app.memory.maintenance.vector.threads:2}") int vectorThreads,
+            @Value("${app.memory.maintenance.vector.queue-capacity:500}") int vectorQueueCapacity,
+            @Value("${app.memory.maintenance.structured.threads:2}") int structuredThreads,
+            @Value("${app.memory.maintenance.structured.queue-capacity:500}") int structuredQueueCapacity) {
+        log.info("Init MemoryMaintenanceExecutor, summary={}/{}, vector={}/{}, structured={}/{}",
+                summaryThreads, summaryQueueCapacity, vectorThreads, vectorQueueCapacity,
+                structuredThreads, structuredQueueCapacity);
+        return new MemoryMaintenanceExecutor(
+                new MemoryMaintenanceExecutor.PoolSettings(summaryThreads, summaryQueueCapacity),
+                new MemoryMaintenanceExecutor.PoolSettings(vectorThreads, vectorQueueCapacity),
+                new MemoryMaintenanceExecutor.PoolSettings(structuredThreads, structuredQueueCapacity),
+                meterRegistryProvider.getIfAvailable());
+    }
+
+    /**
+     * 摘要防抖合并：多次淘汰合并为一次摘要 LLM 调用。
+     */
+    @Bean(destroyMethod = "close")
+    public SummaryCompactionScheduler summaryCompactionScheduler(
+            ConversationSummaryService summaryService,
+            MemoryMaintenanceExecutor memoryMaintenanceExecutor,
+            ObjectProvider<MeterRegistry> meterRegistryProvider,
+            @Value("${app.memory.summary.debounce-ms:3000}") long debounceMs,
+            @Value("${app.memory.summary.max-delay-ms:30000}") long maxDelayMs,
+            @Value("${app.memory.summary.max-batch-messages:20}") int maxBatchMessages) {
+        log.info("Init SummaryCompactionScheduler, debounceMs={}, maxDelayMs={}, maxBatchMessages={}",
+                debounceMs, maxDelayMs, maxBatchMessages);
+        return new SummaryCompactionScheduler(summaryService, memoryMaintenanceExecutor,
+                Duration.ofMillis(debounceMs), Duration.ofMillis(maxDelayMs), maxBatchMessages,
+                meterRegistryProvider.getIfAvailable());
+    }
+
+    /**
+     * 记忆召回使用的重排器：strategy=feature-model 时使用本地特征模型（超出预算 / 出错 / 权重加载失败回退线性公式），
+     * 默认 linear 即 {@link MemoryRerankService}。
+     */
+    @Bean
+    @Primary
+    public Reranker memoryReranker(MemoryRerankService linearReranker,
+                                   ObjectProvider<MeterRegistry> meterRegistryProvider,
+                                   @Value("${app.memory.rerank.strategy:linear}") String strategy,
+                                   @Value("${app.memory.rerank.feature-model.weights:classpath:memory/rerank-feature-model.json}") Resource weights,
+                                   @Value("${app.memory.rerank.feature-model.batch-size:64}") int batchSize,
+                                   @Value("${app.memory.rerank.feature-model.budget-ms:15}") long budgetMs) {
+        if (!"feature-model".equalsIgnoreCase(strategy == null ? "" : strategy.trim())) {
+            log.info("Init memory reranker, strategy=linear");
+            return linearReranker;
+        }
+        try {
+            FeatureModelReranker featureModel = FeatureModelReranker.load(weights, batchSize, Duration.ofMillis(budgetMs));
+            log.info("Init memory reranker, strategy=feature-model, version={}, batchSize={}, budgetMs={}",
+                    featureModel.version(), batchSize, budgetMs);
+            if (featureModel.untrained()) {
+                log.warn("特征模型使用的是未训练的占位权重，排序效果未经评测, version={}, weights={}",
+                        featureModel.version(), weights);
+            }
+            return new FallbackReranker(featureModel, linearReranker, meterRegistryProvider.getIfAvailable());
+        } catch (Exception e) {
+            log.warn("特征模型权重加载失败，回退线性重排, weights={}", weights, e);
+            return linearReranker;
+        }
+    }
+
     @Bean
     public TieredChatMemoryAdvisor tieredChatMemoryAdvisor(ChatMemory chatMemory,
                                                            ConversationSummaryService summaryService,
                                                            VectorMemoryService vectorMemoryService,
                                                            StructuredMidMemoryService structuredMidMemoryService,
-                                                           @Value("${app.memory.vector.topk:5}") int vectorTopK) {
+                                                           @Qualifier("memoryReadExecutor") ExecutorService memoryReadExecutor,
+                                                           MemoryMaintenanceExecutor memoryMaintenanceExecutor,
+                                                           SummaryCompactionScheduler summaryCompactionScheduler,
+                                                           ObjectProvider<MeterRegistry> meterRegistryProvider,
+                                                           @Value("${app.memory.vector.topk:5}") int vectorTopK,
+                                                           @Value("${app.memory.read.long-term-timeout-ms:800}") long longTermTimeoutMs,
+                                                           @Value("${app.memory.read.summary-timeout-ms:300}") long summaryTimeoutMs,
+                                                           @Value("${app.memory.read.window-timeout-ms:500}") long windowTimeoutMs) {
         return TieredChatMemoryAdvisor.builder(chatMemory)
                 .summaryService(summaryService)
                 .vectorMemoryService(vectorMemoryService)
                 .structuredMidMemoryService(structuredMidMemoryService)
                 .vectorTopK(vectorTopK)
+                .readExecutor(memoryReadExecutor)
+                .maintenanceExecutor(memoryMaintenanceExecutor)
+                .summaryScheduler(summaryCompactionScheduler)
+                .longTermTimeout(Duration.ofMillis(longTermTimeoutMs))
+                .summaryTimeout(Duration.ofMillis(summaryTimeoutMs))
+                .windowTimeout(Duration.ofMillis(windowTimeoutMs))
+                .meterRegistry(meterRegistryProvider.getIfAvailable())
                 .build();
     }
 }
@@ -1,24 +1,44 @@
 package com.yupi.yuaiagent.config;
 
 import com.yupi.yuaiagent.chatmemory.FileChatMemoryRepository;
+import com.yupi.yuaiagent.chatmemory.SegmentedFileChatMemoryRepository;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.memory.ChatMemoryRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 /**
  * 对话记忆仓库配置：启用后把消息持久化到本地文件。
+ * <p>
+ * - format=segmented（默认）：分段追加日志，每轮只追加新增消息
+ * - format=snapshot：整文件 Kryo 快照（旧实现）
  */
+@Slf4j
 @Configuration
 @ConditionalOnProperty(name = "app.memory.file.enabled", havingValue = "true", matchIfMissing = true)
 public class ChatMemoryRepositoryConfig {
 
     @Bean
     public ChatMemoryRepository chatMemoryRepository(
-            @Value("${app.memory.file.dir:${user.dir}/tmp/chat-memory}") String dir
+            @Value("${app.memory.file.dir:${user.dir}/tmp/chat-memory}") String dir,
+            @Value("${app.memory.file.format:segmented}") String format,
+            @Value("${app.memory.file.segment-max-bytes:4194304}") long segmentMaxBytes,
+            @Value("${app.memory.file.compaction-min-dead-bytes:262144}") long compactionMinDeadBytes,
+            @Value("${app.memory.file.fsync:false}") boolean fsync,
+            @Value("${app.memory.file.max-cached-conversations:10000}") long maxCachedConversations,
+            @Value("${app.memory.file.cache-expire-after-access-minutes:30}") long cacheExpireAfterAccessMinutes
     ) {
-        return new FileChatMemoryRepository(dir);
+        if ("snapshot".equalsIgnoreCase(format == null ? "" : format.trim())) {
+            log.info("Init FileChatMemoryRepository (snapshot), dir={}", dir);
+            return new FileChatMemoryRepository(dir);
+        }
+        log.info("Init SegmentedFileChatMemoryRepository, dir={}, segmentMaxBytes={}, compactionMinDeadBytes={}, fsync={}, maxCachedConversations={}",
+                dir, segmentMaxBytes, compactionMinDeadBytes, fsync, maxCachedConversations);
+        return new SegmentedFileChatMemoryRepository(dir, segmentMaxBytes, compactionMinDeadBytes, fsync,
+                maxCachedConversations, Duration.ofMinutes(Math.max(1, cacheExpireAfterAccessMinutes)));
     }
 }
-
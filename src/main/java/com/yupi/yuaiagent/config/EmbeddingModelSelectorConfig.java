@@ -1,5 +1,8 @@
 package com.yupi.yuaiagent.config;
 
+import com.yupi.yuaiagent.rag.CachingEmbeddingModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -8,15 +11,32 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 
+import java.time.Duration;
+
 /**
  * 统一选择项目中使用的 EmbeddingModel。
  * <p>
  * - 默认使用 DashScope（阿里云百练）
  * - 配置 app.llm.provider=volcengine 时，优先使用 OpenAI 兼容的 Embedding 模型（用于火山引擎 Ark / 豆包）
+ * - app.embedding.cache.enabled=true（默认）时包一层 {@link CachingEmbeddingModel}，
+ *   会话记忆检索、RAG 检索与 RAG 评测共享同一份查询向量缓存
  */
+@Slf4j
 @Configuration
 public class EmbeddingModelSelectorConfig {
 
+    @Value("${app.embedding.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${app.embedding.cache.max-bytes:67108864}")
+    private long cacheMaxBytes;
+
+    @Value("${app.embedding.cache.expire-minutes:60}")
+    private long cacheExpireMinutes;
+
+    @Value("${app.embedding.cache.off-heap:false}")
+    private boolean cacheOffHeap;
+
     /**
      * @param provider dashscope / volcengine
      */
@@ -25,14 +45,17 @@ public class EmbeddingModelSelectorConfig {
     public EmbeddingModel embeddingModel(
             @Qualifier("dashscopeEmbeddingModel") ObjectProvider<EmbeddingModel> dashscopeEmbeddingModelProvider,
             @Qualifier("openAiEmbeddingModel") ObjectProvider<EmbeddingModel> openAiEmbeddingModelProvider,
-            @Value("${app.llm.provider:dashscope}") String provider
+            @Value("${app.llm.provider:dashscope}") String provider,
+            @Value("${spring.ai.openai.embedding.options.model:}") String openAiEmbeddingModelName,
+            @Value("${spring.ai.dashscope.embedding.options.model:}") String dashscopeEmbeddingModelName,
+            ObjectProvider<MeterRegistry> meterRegistryProvider
     ) {
         String p = provider == null ? "" : provider.trim();
 
         if (p.equalsIgnoreCase("volcengine")) {
             EmbeddingModel openAiEmbeddingModel = openAiEmbeddingModelProvider.getIfAvailable();
             if (openAiEmbeddingModel != null) {
-                return openAiEmbeddingModel;
+                return withCache(openAiEmbeddingModel, "openai:" + openAiEmbeddingModelName, meterRegistryProvider);
             }
 
             throw new IllegalStateException(
@@ -47,7 +70,7 @@ public class EmbeddingModelSelectorConfig {
 
         EmbeddingModel dashscopeEmbeddingModel = dashscopeEmbeddingModelProvider.getIfAvailable();
         if (dashscopeEmbeddingModel != null) {
-            return dashscopeEmbeddingModel;
+            return withCache(dashscopeEmbeddingModel, "dashscope:" + dashscopeEmbeddingModelName, meterRegistryProvider);
         }
 
         throw new IllegalStateException(
@@ -55,4 +78,15 @@ public class EmbeddingModelSelectorConfig {
                         "请检查配置：spring.ai.dashscope.api-key"
         );
     }
+
+    private EmbeddingModel withCache(EmbeddingModel embeddingModel, String modelId,
+                                     ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        if (!cacheEnabled) {
+            return embeddingModel;
+        }
+        log.info("Embedding 查询缓存已启用, modelId={}, maxBytes={}, expireMinutes={}, offHeap={}",
+                modelId, cacheMaxBytes, cacheExpireMinutes, cacheOffHeap);
+        return new CachingEmbeddingModel(embeddingModel, modelId, cacheMaxBytes,
+                Duration.ofMinutes(cacheExpireMinutes), cacheOffHeap, meterRegistryProvider.getIfAvailable());
+    }
 }
@@ -3,6 +3,7 @@ package com.yupi.yuaiagent.controller;
 import com.yupi.yuaiagent.agent.YuManus;
 import com.yupi.yuaiagent.app.LoveApp;
 import com.yupi.yuaiagent.dto.VisionChatRequest;
+import com.yupi.yuaiagent.orchestration.core.OrchestrationExecutor;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.model.ChatModel;
@@ -30,6 +31,9 @@ public class AiController {
     @Resource
     private ChatModel chatModel;
 
+    @Resource
+    private OrchestrationExecutor orchestrationExecutor;
+
     /**
      * 同步调用 AI 恋爱大师应用
      *
@@ -139,6 +143,7 @@ public class AiController {
                 kv("messageLength", message == null ? 0 : message.length(), "message", message));
         long start = System.currentTimeMillis();
         YuManus yuManus = new YuManus(allTools, chatModel);
+        yuManus.setStreamExecutor(orchestrationExecutor);
         SseEmitter emitter = yuManus.runStream(message);
         emitter.onCompletion(() -> log.info("[AiController-doChatWithManus] {}",
                 kv("status", "completed", "durationMs", System.currentTimeMillis() - start)));
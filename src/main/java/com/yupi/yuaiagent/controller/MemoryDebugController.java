@@ -159,6 +159,28 @@ public class MemoryDebugController {
         }
     }
 
+    /**
+     * 按会话分区检索的存量数据迁移：建 conversation_id 分区列 / 索引 / 触发器，并按批回填已有行。
+     *
+     * 需要 app.memory.vector.search-mode=partitioned 且使用 pgvector；可重复执行。
+     */
+    @PostMapping("/vector/partition/migrate")
+    public Map<String, Object> migrateVectorPartitions(@RequestParam(defaultValue = "5000") int batchSize) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("table", pgvectorTableName);
+        out.put("batchSize", batchSize);
+        long startMs = System.currentTimeMillis();
+        try {
+            out.put("migratedRows", vectorMemoryService.migratePartitions(batchSize));
+            out.put("success", true);
+        } catch (Exception e) {
+            out.put("success", false);
+            out.put("error", e.getMessage());
+        }
+        out.put("costMs", System.currentTimeMillis() - startMs);
+        return out;
+    }
+
     /**
      * 生成一段“可写入的对话”，用于把三层记忆的数据打进去（不依赖真实 LLM 对话）。
      *
@@ -34,4 +34,9 @@ public class OrchestrationChatRequest {
      * 场景 ID（可选），如 first_date_planning / cold_war_repair / breakup_recovery
      */
     private String sceneId;
+
+    /**
+     * 是否逐段推送 response_chunk（可选），不传时取 app.orchestration.stream.enabled
+     */
+    private Boolean stream;
 }
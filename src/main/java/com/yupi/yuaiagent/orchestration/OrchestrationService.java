@@ -5,6 +5,7 @@ import cn.hutool.json.JSONUtil;
 import com.yupi.yuaiagent.agent.YuManus;
 import com.yupi.yuaiagent.app.LoveApp;
 import com.yupi.yuaiagent.dto.OrchestrationChatRequest;
+import com.yupi.yuaiagent.orchestration.core.OrchestrationExecutor;
 import com.yupi.yuaiagent.orchestration.model.ExecutionMode;
 import com.yupi.yuaiagent.orchestration.model.OrchestrationPolicy;
 import com.yupi.yuaiagent.orchestration.scene.SceneContext;
@@ -33,12 +34,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
 
 /**
  * 统一编排服务：意图识别 + 策略决策 + 执行链路选择 + 流式事件输出。
+ * <p>
+ * 流式模式（请求 stream=true 或 app.orchestration.stream.enabled=true）下，CHAT / VISION 链路边生成边推送
+ * response_chunk 事件，结束时仍发送完整的 structured_response；否则等模型输出完毕后只发送 structured_response。
  */
 @Slf4j
 @Service
@@ -65,12 +70,18 @@ public class OrchestrationService {
     @Resource
     private ScenePromptService scenePromptService;
 
+    @Resource
+    private OrchestrationExecutor orchestrationExecutor;
+
     @Value("${app.orchestration.sse-timeout-ms:300000}")
     private long sseTimeoutMs;
 
     @Value("${app.orchestration.agent-message-threshold:120}")
     private int agentMessageThreshold;
 
+    @Value("${app.orchestration.stream.enabled:false}")
+    private boolean streamEnabled;
+
     /**
      * 统一编排入口
      */
@@ -81,7 +92,9 @@ public class OrchestrationService {
 
         SseEmitter emitter = new SseEmitter(sseTimeoutMs);
 
-        CompletableFuture.runAsync(() -> execute(request, emitter, traceId, rateLimitKey, start));
+        orchestrationExecutor.execute(
+                () -> execute(request, emitter, traceId, rateLimitKey, start),
+                () -> rejectBusy(emitter, traceId, start, normalizeChatId(request == null ? null : request.getChatId())));
 
         emitter.onTimeout(() -> {
             log.warn("[OrchestrationService-timeout] {}",
@@ -102,6 +115,7 @@ public class OrchestrationService {
         String message = request == null ? "" : safeTrim(request.getMessage());
         List<String> images = request == null || request.getImages() == null ? List.of() : request.getImages();
         String requestedSceneId = request == null ? "" : safeTrim(request.getSceneId());
+        boolean stream = request == null || request.getStream() == null ? streamEnabled : request.getStream();
         SceneContext sceneContext = scenePromptService.resolve(chatId, requestedSceneId, message);
 
         log.info("[OrchestrationService-execute] {}",
@@ -110,6 +124,7 @@ public class OrchestrationService {
                         "imageCount", images.size(),
                         "forceMode", request == null ? "" : request.getForceMode(),
                         "requestedSceneId", requestedSceneId,
+                        "stream", stream,
                         "sceneId", sceneContext == null ? "" : sceneContext.getSceneId(),
                         "sceneStage", sceneContext == null ? "" : sceneContext.getSceneStage(),
                         "sceneTurn", sceneContext == null ? 0 : sceneContext.getTurnCount(),
@@ -156,11 +171,11 @@ public class OrchestrationService {
 
             switch (policy.getMode()) {
                 case BLOCK -> executeBlock(emitter, chatId, traceId, start, routeResult);
-                case VISION -> executeVision(emitter, chatId, message, images, traceId, start, policy, routeResult, sceneContext);
+                case VISION -> executeVision(emitter, chatId, message, images, traceId, start, policy, routeResult, sceneContext, stream);
                 case TOOL -> executeTool(emitter, chatId, message, traceId, start, policy, routeResult, sceneContext);
                 case AGENT -> executeAgent(emitter, chatId, message, traceId, start, policy, routeResult, sceneContext);
-                case CHAT -> executeChat(emitter, chatId, message, traceId, start, policy, routeResult, sceneContext);
-                default -> executeChat(emitter, chatId, message, traceId, start, policy, routeResult, sceneContext);
+                case CHAT -> executeChat(emitter, chatId, message, traceId, start, policy, routeResult, sceneContext, stream);
+                default -> executeChat(emitter, chatId, message, traceId, start, policy, routeResult, sceneContext, stream);
             }
         } catch (Exception e) {
             log.error("[OrchestrationService-execute] {}",
@@ -176,6 +191,17 @@ public class OrchestrationService {
         }
     }
 
+    private void rejectBusy(SseEmitter emitter, String traceId, long start, String chatId) {
+        try {
+            sendEvent(emitter, "error",
+                    payload("code", "SERVER_BUSY", "message", "当前进行中的会话过多，请稍后重试"), traceId);
+        } catch (Exception ignore) {
+            // ignore
+        } finally {
+            sendDone(emitter, traceId, start, chatId, ExecutionMode.BLOCK, true);
+        }
+    }
+
     private void executeBlock(SseEmitter emitter,
                               String chatId,
                               String traceId,
@@ -200,7 +226,8 @@ public class OrchestrationService {
                              long start,
                              OrchestrationPolicy policy,
                              IntentRouter.RouteResult routeResult,
-                             SceneContext sceneContext) throws IOException {
+                             SceneContext sceneContext,
+                             boolean stream) throws IOException {
         String userPrompt = buildUserPrompt(message);
         String dynamicSystemPrompt = buildDynamicSystemPrompt(policy, sceneContext);
         log.info("[OrchestrationService-prompt] {}",
@@ -211,7 +238,10 @@ public class OrchestrationService {
                         "sceneStage", sceneContext == null ? "" : sceneContext.getSceneStage(),
                         "systemPromptLength", dynamicSystemPrompt.length(),
                         "userPromptLength", userPrompt.length()));
-        String result = collectFluxResult(loveApp.doChatByStream(userPrompt, chatId, dynamicSystemPrompt));
+        Flux<String> flux = loveApp.doChatByStream(userPrompt, chatId, dynamicSystemPrompt);
+        String result = stream
+                ? streamFluxResult(emitter, chatId, traceId, ExecutionMode.CHAT, flux)
+                : collectFluxResult(flux);
         sendStructuredResponse(emitter, chatId, traceId, routeResult, ExecutionMode.CHAT, result, false);
         sendDone(emitter, traceId, start, chatId, ExecutionMode.CHAT, false);
     }
@@ -224,7 +254,8 @@ public class OrchestrationService {
                                long start,
                                OrchestrationPolicy policy,
                                IntentRouter.RouteResult routeResult,
-                               SceneContext sceneContext) throws IOException {
+                               SceneContext sceneContext,
+                               boolean stream) throws IOException {
         String userPrompt = buildUserPrompt(message);
         String dynamicSystemPrompt = buildDynamicSystemPrompt(policy, sceneContext);
         log.info("[OrchestrationService-prompt] {}",
@@ -236,7 +267,10 @@ public class OrchestrationService {
                         "systemPromptLength", dynamicSystemPrompt.length(),
                         "userPromptLength", userPrompt.length(),
                         "imageCount", images == null ? 0 : images.size()));
-        String result = collectFluxResult(loveApp.doChatWithVision(userPrompt, chatId, images, dynamicSystemPrompt));
+        Flux<String> flux = loveApp.doChatWithVision(userPrompt, chatId, images, dynamicSystemPrompt);
+        String result = stream
+                ? streamFluxResult(emitter, chatId, traceId, ExecutionMode.VISION, flux)
+                : collectFluxResult(flux);
         sendStructuredResponse(emitter, chatId, traceId, routeResult, ExecutionMode.VISION, result, false);
         sendDone(emitter, traceId, start, chatId, ExecutionMode.VISION, false);
     }
@@ -326,6 +360,53 @@ public class OrchestrationService {
         return sb.toString();
     }
 
+    /**
+     * 边收边推送 response_chunk（正文片段或地点卡片），返回完整原文供最终 structured_response 使用。
+     */
+    private String streamFluxResult(SseEmitter emitter,
+                                    String chatId,
+                                    String traceId,
+                                    ExecutionMode mode,
+                                    Flux<String> flux) {
+        if (flux == null) {
+            return "";
+        }
+        long startMs = System.currentTimeMillis();
+        AtomicLong firstChunkMs = new AtomicLong(-1);
+        AtomicInteger chunkCount = new AtomicInteger();
+        StructuredResponseComposer.IncrementalComposition composition = structuredResponseComposer.incremental();
+        flux.filter(chunk -> chunk != null && !"[DONE]".equals(chunk))
+                .doOnNext(chunk -> {
+                    firstChunkMs.compareAndSet(-1, System.currentTimeMillis() - startMs);
+                    chunkCount.addAndGet(sendResponseChunks(emitter, chatId, traceId, composition.append(chunk)));
+                })
+                .blockLast();
+        chunkCount.addAndGet(sendResponseChunks(emitter, chatId, traceId, composition.flush()));
+        log.info("[OrchestrationService-stream] {}",
+                kv("chatId", chatId,
+                        "traceId", traceId,
+                        "mode", mode,
+                        "firstChunkMs", firstChunkMs.get(),
+                        "chunkCount", chunkCount.get(),
+                        "durationMs", System.currentTimeMillis() - startMs));
+        return composition.rawText();
+    }
+
+    private int sendResponseChunks(SseEmitter emitter,
+                                   String chatId,
+                                   String traceId,
+                                   List<StructuredResponseComposer.StreamDelta> deltas) {
+        for (StructuredResponseComposer.StreamDelta delta : deltas) {
+            if (delta.isLocationCard()) {
+                sendEvent(emitter, "response_chunk",
+                        payload("chatId", chatId, "content", "", "locationCard", delta.locationCard()), traceId);
+            } else {
+                sendEvent(emitter, "response_chunk", payload("chatId", chatId, "content", delta.text()), traceId);
+            }
+        }
+        return deltas.size();
+    }
+
     private void sendStructuredResponse(SseEmitter emitter,
                                         String chatId,
                                         String traceId,
@@ -12,7 +12,7 @@ import java.util.Map;
  * Agent 执行上下文。
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class AgentContext {
 
     private String conversationId;
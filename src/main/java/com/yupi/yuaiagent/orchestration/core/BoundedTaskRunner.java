@@ -0,0 +1,180 @@
+package com.yupi.yuaiagent.orchestration.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
+
+/**
+ * 带独立超时的并发 Agent 任务运行器（v2 {@code AgentDagExecutor} 与 v3 {@code PlanScheduler} 共用）。
+ * <p>
+ * - 任务以 FutureTask 提交：FutureTask.cancel(true) 会中断执行线程（CompletableFuture 不会），超时 / 取消时用于打断阻塞调用
+ * - 超时从任务真正开始运行时计时，线程池排队的时间不算入；排队超过一个超时时长仍未开始的任务同样按超时处理
+ * - 完成结果经队列回到调用线程，{@link #poll()} 每次最多等待 50ms 或到最近的截止时间，调用方在两次 poll 之间检查取消
+ * - 线程池拒绝时在调用线程上直接执行，避免整轮失败
+ * <p>
+ * 非线程安全：除任务本身外，所有方法都应在同一个调度线程上调用。
+ *
+ * @param <K> 任务标识
+ */
+@Slf4j
+public class BoundedTaskRunner<K> implements AutoCloseable {
+
+    private static final long POLL_SLICE_MS = 50;
+
+    public enum Outcome {
+        COMPLETED,
+        FAILED,
+        TIMED_OUT,
+        CANCELLED
+    }
+
+    /**
+     * @param durationMs 从任务开始运行到结束的耗时；排队中即被超时 / 取消的任务为 0
+     */
+    public record Finished<K>(K key, Outcome outcome, AgentOutput output, Throwable error, long durationMs) {
+    }
+
+    private record Completion<K>(K key, AgentOutput output, Throwable error) {
+    }
+
+    private static final class Slot {
+
+        private final long submittedAt;
+        private final long timeoutMs;
+        private volatile long startedAt;
+        private FutureTask<Void> future;
+
+        private Slot(long submittedAt, long timeoutMs) {
+            this.submittedAt = submittedAt;
+            this.timeoutMs = timeoutMs;
+        }
+
+        private long deadline() {
+            long started = startedAt;
+            return (started > 0 ? started : submittedAt) + timeoutMs;
+        }
+
+        private long durationMs(long now) {
+            long started = startedAt;
+            return started > 0 ? now - started : 0;
+        }
+    }
+
+    private final Executor executor;
+    private final Map<K, Slot> running = new LinkedHashMap<>();
+    private final BlockingQueue<Completion<K>> completions = new LinkedBlockingQueue<>();
+
+    public BoundedTaskRunner(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 提交任务；call 在执行线程上带调用方上下文（MDC 等）运行。
+     */
+    public void submit(K key, Supplier<AgentOutput> call, long timeoutMs) {
+        Slot slot = new Slot(System.currentTimeMillis(), timeoutMs);
+        slot.future = completionTask(key, slot, OrchestrationExecutor.withCallerContext(call));
+        running.put(key, slot);
+        try {
+            executor.execute(slot.future);
+        } catch (RejectedExecutionException e) {
+            log.warn("[BoundedTaskRunner-submit] {}", kv("task", key, "status", "rejected_run_inline"));
+            slot.future = completionTask(key, slot, call);
+            slot.future.run();
+        }
+    }
+
+    public boolean hasRunning() {
+        return !running.isEmpty();
+    }
+
+    /**
+     * 等待下一个任务结束或到达最近的截止时间（最多 50ms），返回这段时间内结束的任务：先是完成 / 失败的，再是超时的。
+     * 超时的任务已被中断；没有任务结束时返回空列表。
+     */
+    public List<Finished<K>> poll() throws InterruptedException {
+        if (running.isEmpty()) {
+            return List.of();
+        }
+        long now = System.currentTimeMillis();
+        long nextDeadline = Long.MAX_VALUE;
+        for (Slot slot : running.values()) {
+            nextDeadline = Math.min(nextDeadline, slot.deadline());
+        }
+        List<Finished<K>> finished = new ArrayList<>();
+        Completion<K> completion = completions.poll(Math.max(1, Math.min(POLL_SLICE_MS, nextDeadline - now)), TimeUnit.MILLISECONDS);
+        while (completion != null) {
+            Slot slot = running.remove(completion.key());
+            // 已按超时 / 取消结束的任务，迟到的完成结果直接丢弃
+            if (slot != null) {
+                long end = System.currentTimeMillis();
+                finished.add(completion.error() == null
+                        ? new Finished<>(completion.key(), Outcome.COMPLETED, completion.output(), null, slot.durationMs(end))
+                        : new Finished<>(completion.key(), Outcome.FAILED, null, completion.error(), slot.durationMs(end)));
+            }
+            completion = completions.poll();
+        }
+
+        now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<K, Slot>> it = running.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<K, Slot> entry = it.next();
+            Slot slot = entry.getValue();
+            if (slot.deadline() > now) {
+                continue;
+            }
+            it.remove();
+            slot.future.cancel(true);
+            finished.add(new Finished<>(entry.getKey(), Outcome.TIMED_OUT, null, null, slot.durationMs(now)));
+        }
+        return finished;
+    }
+
+    /**
+     * 中断全部仍在运行 / 排队的任务，按提交顺序返回 CANCELLED 结果，供调用方回调结束事件。
+     */
+    public List<Finished<K>> cancelAll() {
+        long now = System.currentTimeMillis();
+        List<Finished<K>> cancelled = new ArrayList<>(running.size());
+        for (Map.Entry<K, Slot> entry : running.entrySet()) {
+            entry.getValue().future.cancel(true);
+            cancelled.add(new Finished<>(entry.getKey(), Outcome.CANCELLED, null, null, entry.getValue().durationMs(now)));
+        }
+        running.clear();
+        return cancelled;
+    }
+
+    /**
+     * 异常退出时兜底中断剩余任务（不产生结束事件）。
+     */
+    @Override
+    public void close() {
+        for (Slot slot : running.values()) {
+            slot.future.cancel(true);
+        }
+        running.clear();
+    }
+
+    private FutureTask<Void> completionTask(K key, Slot slot, Supplier<AgentOutput> call) {
+        return new FutureTask<>(() -> {
+            slot.startedAt = System.currentTimeMillis();
+            try {
+                completions.add(new Completion<>(key, call.get(), null));
+            } catch (Throwable e) {
+                completions.add(new Completion<>(key, null, e));
+            }
+        }, null);
+    }
+}
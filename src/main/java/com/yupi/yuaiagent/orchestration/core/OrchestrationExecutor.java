@@ -0,0 +1,227 @@
+package com.yupi.yuaiagent.orchestration.core;
+
+import com.yupi.yuaiagent.tenant.TenantContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
+
+/**
+ * SSE 编排请求执行器：每个会话一个 JDK 21 虚拟线程，替代公共 ForkJoinPool（只有 cores-1 个线程）。
+ * <p>
+ * - 提交时捕获调用线程的 MDC 与 TenantContext，在虚拟线程里恢复，执行结束后清理
+ * - 全局信号量限制同时执行的会话数；名额用完时在虚拟线程里等待 acquire-timeout-ms，仍拿不到则拒绝并回调 onRejected
+ * - 任务内的 LLM 调用 / blockLast / JDBC 阻塞只挂起虚拟线程，不占用平台线程
+ */
+@Slf4j
+public class OrchestrationExecutor implements Executor, AutoCloseable {
+
+    public static final int DEFAULT_MAX_CONCURRENT = 2000;
+
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MS = 10_000;
+
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final long acquireTimeoutMs;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Counter completed;
+    private final Counter failed;
+    private final Counter rejected;
+
+    /**
+     * @param maxConcurrent    同时执行的会话上限
+     * @param acquireTimeoutMs 名额用完时最多等待的毫秒数，<=0 表示不等待直接拒绝
+     */
+    public OrchestrationExecutor(int maxConcurrent, long acquireTimeoutMs, MeterRegistry meterRegistry) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.acquireTimeoutMs = Math.max(0, acquireTimeoutMs);
+        this.permits = new Semaphore(this.maxConcurrent);
+        this.delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("orchestration-", 0).factory());
+        if (meterRegistry != null) {
+            Gauge.builder("orchestration_executor_active", this, OrchestrationExecutor::activeCount)
+                    .register(meterRegistry);
+            Gauge.builder("orchestration_executor_waiting", waiting, AtomicInteger::get)
+                    .register(meterRegistry);
+        }
+        this.completed = counter(meterRegistry, "completed");
+        this.failed = counter(meterRegistry, "failed");
+        this.rejected = counter(meterRegistry, "rejected");
+    }
+
+    /**
+     * 不经过 Spring 创建的调用方（如 new 出来的 BaseAgent）使用的进程级共享实例，不上报指标。
+     */
+    public static OrchestrationExecutor defaults() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        execute(task, null);
+    }
+
+    /**
+     * 提交一个编排任务。
+     *
+     * @param onRejected 等待名额超时或执行器已关闭时调用（同样带着调用方的 MDC / TenantContext），可为 null
+     */
+    public void execute(Runnable task, Runnable onRejected) {
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        TenantContext.TenantInfo tenant = TenantContext.getTenant();
+        try {
+            delegate.execute(() -> runWithContext(task, onRejected, mdc, tenant));
+        } catch (RejectedExecutionException e) {
+            reject(onRejected, "shutdown");
+        }
+    }
+
+    /**
+     * 包装一个任务，使其在其他线程执行时带着当前（调用方）线程的 MDC 与 TenantContext，执行后清理。
+     */
+    public static <T> Supplier<T> withCallerContext(Supplier<T> task) {
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        TenantContext.TenantInfo tenant = TenantContext.getTenant();
+        return () -> {
+            restoreContext(mdc, tenant);
+            try {
+                return task.get();
+            } finally {
+                clearContext();
+            }
+        };
+    }
+
+    public int activeCount() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public int waitingCount() {
+        return waiting.get();
+    }
+
+    public int maxConcurrent() {
+        return maxConcurrent;
+    }
+
+    @Override
+    public void close() {
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("[OrchestrationExecutor-close] {}", kv("active", activeCount(), "waiting", waiting.get()));
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            delegate.shutdownNow();
+        }
+    }
+
+    private void runWithContext(Runnable task,
+                                Runnable onRejected,
+                                Map<String, String> mdc,
+                                TenantContext.TenantInfo tenant) {
+        restoreContext(mdc, tenant);
+        try {
+            if (!acquire()) {
+                reject(onRejected, "saturated");
+                return;
+            }
+            try {
+                task.run();
+                increment(completed);
+            } catch (Throwable e) {
+                increment(failed);
+                log.error("[OrchestrationExecutor-run] {}", kv("active", activeCount()), e);
+            } finally {
+                permits.release();
+            }
+        } finally {
+            clearContext();
+        }
+    }
+
+    private static void restoreContext(Map<String, String> mdc, TenantContext.TenantInfo tenant) {
+        if (mdc != null) {
+            MDC.setContextMap(mdc);
+        }
+        if (tenant != null) {
+            TenantContext.setTenant(tenant.getTenantId(), tenant.getUserId());
+        }
+    }
+
+    private static void clearContext() {
+        MDC.clear();
+        TenantContext.clear();
+    }
+
+    private boolean acquire() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        if (acquireTimeoutMs <= 0) {
+            return false;
+        }
+        waiting.incrementAndGet();
+        try {
+            return permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private void reject(Runnable onRejected, String reason) {
+        increment(rejected);
+        log.warn("[OrchestrationExecutor-reject] {}",
+                kv("reason", reason,
+                        "active", activeCount(),
+                        "waiting", waiting.get(),
+                        "maxConcurrent", maxConcurrent,
+                        "acquireTimeoutMs", acquireTimeoutMs));
+        if (onRejected == null) {
+            return;
+        }
+        try {
+            onRejected.run();
+        } catch (Exception e) {
+            log.warn("[OrchestrationExecutor-reject] {}", kv("reason", reason, "status", "callback_failed"), e);
+        }
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String outcome) {
+        if (meterRegistry == null) {
+            return null;
+        }
+        return Counter.builder("orchestration_executor_tasks")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private static final class DefaultHolder {
+        private static final OrchestrationExecutor INSTANCE =
+                new OrchestrationExecutor(DEFAULT_MAX_CONCURRENT, DEFAULT_ACQUIRE_TIMEOUT_MS, null);
+    }
+}
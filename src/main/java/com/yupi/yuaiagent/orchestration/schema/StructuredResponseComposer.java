@@ -17,6 +17,9 @@ import java.util.regex.Pattern;
 
 /**
  * 将模型文本输出归一化为结构化响应协议。
+ * <p>
+ * 流式输出时用 {@link #incremental()} 边收边解析：正文片段即时转发，
+ * 跨 chunk 的 {@code <!--LOCATION_CARD:...-->} 标记缓存到闭合后整体解析为地点卡片，结束时再 {@link #compose} 完整响应。
  */
 @Slf4j
 @Component
@@ -24,6 +27,12 @@ public class StructuredResponseComposer {
 
     private static final String SCHEMA_VERSION = "assistant_response_v2";
     private static final Pattern LOCATION_CARD_PATTERN = Pattern.compile("<!--LOCATION_CARD:(.*?)-->", Pattern.DOTALL);
+    private static final String LOCATION_CARD_PREFIX = "<!--LOCATION_CARD:";
+    private static final String LOCATION_CARD_SUFFIX = "-->";
+    /**
+     * 未闭合的标记超过该长度按普通文本输出，避免异常输出把后续内容全部憋住
+     */
+    private static final int MAX_PENDING_CARD_CHARS = 32 * 1024;
 
     private final ObjectMapper objectMapper;
 
@@ -107,6 +116,117 @@ public class StructuredResponseComposer {
         return response;
     }
 
+    /**
+     * 开启一次增量解析（单次流式响应内使用，非线程安全）。
+     */
+    public IncrementalComposition incremental() {
+        return new IncrementalComposition();
+    }
+
+    /**
+     * 增量解析产出的片段：正文文本或一张已解析的地点卡片，二者只有一个非空。
+     */
+    public record StreamDelta(String text, Map<String, Object> locationCard) {
+
+        public boolean isLocationCard() {
+            return locationCard != null;
+        }
+    }
+
+    public final class IncrementalComposition {
+
+        private final StringBuilder raw = new StringBuilder();
+        private final StringBuilder pending = new StringBuilder();
+
+        private IncrementalComposition() {
+        }
+
+        /**
+         * 追加一个模型输出片段，返回可以立即下发的正文 / 地点卡片。
+         */
+        public List<StreamDelta> append(String chunk) {
+            List<StreamDelta> deltas = new ArrayList<>();
+            if (chunk == null || chunk.isEmpty()) {
+                return deltas;
+            }
+            raw.append(chunk);
+            pending.append(chunk);
+            drain(deltas);
+            return deltas;
+        }
+
+        /**
+         * 流结束：把缓存中未闭合的内容按文本输出。
+         */
+        public List<StreamDelta> flush() {
+            List<StreamDelta> deltas = new ArrayList<>();
+            emitText(deltas, pending.length());
+            return deltas;
+        }
+
+        public String rawText() {
+            return raw.toString();
+        }
+
+        private void drain(List<StreamDelta> deltas) {
+            while (pending.length() > 0) {
+                int start = pending.indexOf(LOCATION_CARD_PREFIX);
+                if (start < 0) {
+                    emitText(deltas, pending.length() - partialPrefixLength());
+                    return;
+                }
+                emitText(deltas, start);
+                int end = pending.indexOf(LOCATION_CARD_SUFFIX, LOCATION_CARD_PREFIX.length());
+                if (end < 0) {
+                    if (pending.length() > MAX_PENDING_CARD_CHARS) {
+                        emitText(deltas, pending.length());
+                    }
+                    return;
+                }
+                String json = pending.substring(LOCATION_CARD_PREFIX.length(), end);
+                pending.delete(0, end + LOCATION_CARD_SUFFIX.length());
+                Map<String, Object> card = parseLocationCard(json);
+                if (card != null) {
+                    deltas.add(new StreamDelta(null, card));
+                }
+            }
+        }
+
+        /**
+         * 末尾可能是被截断的标记开头（如 "<!--LOC"），这部分先不下发
+         */
+        private int partialPrefixLength() {
+            int max = Math.min(pending.length(), LOCATION_CARD_PREFIX.length() - 1);
+            for (int length = max; length > 0; length--) {
+                if (pending.substring(pending.length() - length).equals(LOCATION_CARD_PREFIX.substring(0, length))) {
+                    return length;
+                }
+            }
+            return 0;
+        }
+
+        private void emitText(List<StreamDelta> deltas, int length) {
+            if (length <= 0) {
+                return;
+            }
+            deltas.add(new StreamDelta(pending.substring(0, length), null));
+            pending.delete(0, length);
+        }
+    }
+
+    private Map<String, Object> parseLocationCard(String json) {
+        if (!StringUtils.hasText(json)) {
+            return null;
+        }
+        try {
+            return normalizeLocationCard(objectMapper.readValue(json, new TypeReference<Map<String, Object>>() {
+            }));
+        } catch (Exception e) {
+            log.warn("[StructuredResponseComposer-parseLocationCard] parse failed", e);
+            return null;
+        }
+    }
+
     private List<Map<String, Object>> extractLocationCards(String text) {
         List<Map<String, Object>> cards = new ArrayList<>();
         if (!StringUtils.hasText(text)) {
@@ -115,16 +235,9 @@ public class StructuredResponseComposer {
 
         Matcher matcher = LOCATION_CARD_PATTERN.matcher(text);
         while (matcher.find()) {
-            String json = matcher.group(1);
-            if (!StringUtils.hasText(json)) {
-                continue;
-            }
-            try {
-                Map<String, Object> card = objectMapper.readValue(json, new TypeReference<Map<String, Object>>() {
-                });
-                cards.add(normalizeLocationCard(card));
-            } catch (Exception e) {
-                log.warn("[StructuredResponseComposer-extractLocationCards] parse failed", e);
+            Map<String, Object> card = parseLocationCard(matcher.group(1));
+            if (card != null) {
+                cards.add(card);
             }
         }
         return cards;
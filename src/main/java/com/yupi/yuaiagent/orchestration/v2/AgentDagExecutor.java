@@ -0,0 +1,257 @@
+package com.yupi.yuaiagent.orchestration.v2;
+
+import com.yupi.yuaiagent.agent.specialized.AgentCapability;
+import com.yupi.yuaiagent.agent.specialized.SpecializedAgent;
+import com.yupi.yuaiagent.orchestration.core.AgentContext;
+import com.yupi.yuaiagent.orchestration.core.AgentOutput;
+import com.yupi.yuaiagent.orchestration.core.AgentType;
+import com.yupi.yuaiagent.orchestration.core.BoundedTaskRunner;
+import com.yupi.yuaiagent.orchestration.core.CancellationToken;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.AnnotationUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
+
+/**
+ * 回复前 Agent 的 DAG 执行器。
+ * <p>
+ * - 依赖由 {@link AgentCapability#consumes()} / {@link AgentCapability#produces()} 推导，节点只等待它读取的 sharedState 键的产出者
+ * - 就绪节点并发运行（默认每个节点一个虚拟线程）；开始 / 完成回调都在调用线程上按发生顺序触发，
+ * 同一批就绪节点按声明顺序开始，完成事件在节点结束时立即回调
+ * - 每个节点独立超时（从节点真正开始运行时计时，见 {@link BoundedTaskRunner}）；非 required 节点超时或异常时以空输出降级，required 节点（如 SafetyAgent）超时或异常则整体失败
+ * - 任一节点返回 blocked 时取消 DAG 级 CancellationToken、中断仍在运行的节点，未开始的节点不再启动
+ * - 会话的 CancellationToken 被取消（用户中断）时同样停止，结果标记 interrupted，由调用方按中断处理
+ */
+@Slf4j
+public class AgentDagExecutor {
+
+    private static final ExecutorService DEFAULT_EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("agent-dag-", 0).factory());
+
+    public enum Status {
+        COMPLETED,
+        TIMED_OUT,
+        FAILED,
+        CANCELLED
+    }
+
+    /**
+     * @param produces  执行结果写入 sharedState 的键
+     * @param consumes  依赖的 sharedState 键
+     * @param timeoutMs 单次执行超时
+     * @param required  是否必需：必需节点超时或异常时整个 DAG 失败
+     */
+    public record Node(SpecializedAgent agent, String produces, Set<String> consumes, long timeoutMs, boolean required) {
+
+        public AgentType agentType() {
+            return agent.getAgentType();
+        }
+    }
+
+    public record NodeResult(Node node, Status status, AgentOutput output, long durationMs) {
+    }
+
+    /**
+     * @param results     已结束节点的结果，按结束顺序
+     * @param blockedBy   返回 blocked 导致短路的节点，未短路时为 null
+     * @param interrupted 会话被中断
+     */
+    public record Result(Map<AgentType, NodeResult> results, Node blockedBy, boolean interrupted) {
+
+        public boolean blocked() {
+            return blockedBy != null;
+        }
+    }
+
+    /**
+     * 节点开始 / 结束回调（在调用 {@link #run} 的线程上执行），用于实时推送 agent_started / agent_finished。
+     */
+    public interface Listener {
+
+        void onStarted(Node node) throws IOException;
+
+        void onFinished(NodeResult result) throws IOException;
+    }
+
+    private final Executor executor;
+    private final long defaultTimeoutMs;
+
+    public AgentDagExecutor(long defaultTimeoutMs) {
+        this(DEFAULT_EXECUTOR, defaultTimeoutMs);
+    }
+
+    public AgentDagExecutor(Executor executor, long defaultTimeoutMs) {
+        this.executor = executor == null ? DEFAULT_EXECUTOR : executor;
+        this.defaultTimeoutMs = defaultTimeoutMs > 0 ? defaultTimeoutMs : 3000;
+    }
+
+    /**
+     * 从 {@link AgentCapability} 读取节点声明；未标注时视为无依赖、产出 AgentType 小写名的非必需节点。
+     */
+    public Node node(SpecializedAgent agent) {
+        AgentCapability capability = AnnotationUtils.findAnnotation(agent.getClass(), AgentCapability.class);
+        String defaultKey = agent.getAgentType().name().toLowerCase(Locale.ROOT);
+        if (capability == null) {
+            return new Node(agent, defaultKey, Set.of(), defaultTimeoutMs, false);
+        }
+        String produces = capability.produces().isBlank() ? defaultKey : capability.produces();
+        long timeoutMs = capability.timeoutMs() > 0 ? capability.timeoutMs() : defaultTimeoutMs;
+        return new Node(agent, produces, new LinkedHashSet<>(List.of(capability.consumes())), timeoutMs, capability.required());
+    }
+
+    /**
+     * 执行一组 Agent。节点结果写入 {@code context.getSharedState()}（键为 produces，降级的节点不写入），
+     * 节点拿到的上下文与 context 相同，只是 CancellationToken 换成 DAG 级令牌。
+     */
+    public Result run(List<? extends SpecializedAgent> agents, AgentContext context, Listener listener) throws IOException {
+        List<Node> pending = new ArrayList<>();
+        for (SpecializedAgent agent : agents) {
+            pending.add(node(agent));
+        }
+        Set<String> producedByDag = new HashSet<>();
+        for (Node node : pending) {
+            producedByDag.add(node.produces());
+        }
+
+        CancellationToken sessionToken = context.getCancellationToken();
+        CancellationToken dagToken = new CancellationToken();
+        AgentContext nodeContext = context.toBuilder().cancellationToken(dagToken).build();
+        Map<String, Object> sharedState = context.getSharedState();
+
+        Set<String> produced = new HashSet<>();
+        Map<AgentType, NodeResult> results = new LinkedHashMap<>();
+        try (BoundedTaskRunner<Node> runner = new BoundedTaskRunner<>(executor)) {
+            while (!pending.isEmpty() || runner.hasRunning()) {
+                if (sessionToken != null && sessionToken.isCancelled()) {
+                    dagToken.cancel(sessionToken.getReason());
+                    return new Result(results, null, true);
+                }
+
+                for (Iterator<Node> it = pending.iterator(); it.hasNext(); ) {
+                    Node node = it.next();
+                    if (!isReady(node, producedByDag, produced)) {
+                        continue;
+                    }
+                    it.remove();
+                    listener.onStarted(node);
+                    runner.submit(node, () -> node.agent().execute(nodeContext), node.timeoutMs());
+                }
+                if (!runner.hasRunning()) {
+                    if (!pending.isEmpty()) {
+                        throw new IllegalStateException("agent DAG 存在无法满足的依赖: "
+                                + pending.stream().map(n -> n.agentType() + "<-" + n.consumes()).toList());
+                    }
+                    break;
+                }
+
+                List<BoundedTaskRunner.Finished<Node>> finished;
+                try {
+                    finished = runner.poll();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dagToken.cancel("interrupted");
+                    return new Result(results, null, true);
+                }
+                // 同一次 poll 结束的节点都先记录并回调，再处理短路
+                Result shortCircuit = null;
+                for (BoundedTaskRunner.Finished<Node> item : finished) {
+                    NodeResult result = item.outcome() == BoundedTaskRunner.Outcome.COMPLETED
+                            ? new NodeResult(item.key(), Status.COMPLETED, item.output(), item.durationMs())
+                            : degrade(item.key(), Status.valueOf(item.outcome().name()), item.durationMs(), item.error());
+                    Result blocked = finish(result, sharedState, produced, results, listener, item.error());
+                    shortCircuit = shortCircuit == null ? blocked : shortCircuit;
+                }
+                if (shortCircuit != null) {
+                    dagToken.cancel("blocked_by_" + shortCircuit.blockedBy().agentType());
+                    cancelRunning(runner, results, listener);
+                    return shortCircuit;
+                }
+            }
+            return new Result(results, null, false);
+        }
+    }
+
+    private static boolean isReady(Node node, Set<String> producedByDag, Set<String> produced) {
+        for (String key : node.consumes()) {
+            // 不由本 DAG 产出的键视为调用方预先放入 sharedState 的输入
+            if (producedByDag.contains(key) && !produced.contains(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 记录节点结果并回调；必需节点失败时抛出异常，节点 blocked 时返回短路结果。
+     */
+    private Result finish(NodeResult result,
+                          Map<String, Object> sharedState,
+                          Set<String> produced,
+                          Map<AgentType, NodeResult> results,
+                          Listener listener,
+                          Throwable error) throws IOException {
+        Node node = result.node();
+        results.put(node.agentType(), result);
+        produced.add(node.produces());
+        if (result.status() == Status.COMPLETED && sharedState != null) {
+            sharedState.put(node.produces(), result.output().getData());
+        }
+        listener.onFinished(result);
+
+        if (result.status() != Status.COMPLETED && node.required()) {
+            if (error instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(node.agentType() + " 执行"
+                    + (result.status() == Status.TIMED_OUT ? "超时" : "失败"), error);
+        }
+        if (result.output() != null && result.output().isBlocked()) {
+            return new Result(results, node, false);
+        }
+        return null;
+    }
+
+    private void cancelRunning(BoundedTaskRunner<Node> runner, Map<AgentType, NodeResult> results, Listener listener) throws IOException {
+        for (BoundedTaskRunner.Finished<Node> item : runner.cancelAll()) {
+            NodeResult result = degrade(item.key(), Status.CANCELLED, item.durationMs(), null);
+            results.put(item.key().agentType(), result);
+            listener.onFinished(result);
+        }
+    }
+
+    private NodeResult degrade(Node node, Status status, long durationMs, Throwable error) {
+        String summary = switch (status) {
+            case TIMED_OUT -> "执行超时，已降级";
+            case CANCELLED -> "已取消";
+            default -> "执行失败，已降级";
+        };
+        if (status != Status.CANCELLED) {
+            log.warn("[AgentDagExecutor-degrade] {}",
+                    kv("agent", node.agentType(), "status", status, "durationMs", durationMs,
+                            "timeoutMs", node.timeoutMs(), "required", node.required(),
+                            "error", error == null ? "" : String.valueOf(error.getMessage())));
+        }
+        AgentOutput output = AgentOutput.builder()
+                .agentType(node.agentType())
+                .blocked(false)
+                .summary(summary)
+                .data(Collections.emptyMap())
+                .build();
+        return new NodeResult(node, status, output, durationMs);
+    }
+}
@@ -7,6 +7,7 @@ import com.yupi.yuaiagent.agent.specialized.MemoryAgent;
 import com.yupi.yuaiagent.agent.specialized.NarrativeAgent;
 import com.yupi.yuaiagent.agent.specialized.PersonaAgent;
 import com.yupi.yuaiagent.agent.specialized.SafetyAgent;
+import com.yupi.yuaiagent.agent.specialized.SpecializedAgent;
 import com.yupi.yuaiagent.conversation.model.ConversationEntity;
 import com.yupi.yuaiagent.conversation.service.ConversationStoreService;
 import com.yupi.yuaiagent.dto.ConversationMessageRequest;
@@ -16,6 +17,7 @@ import com.yupi.yuaiagent.orchestration.core.AgentType;
 import com.yupi.yuaiagent.orchestration.core.ConversationRuntime;
 import com.yupi.yuaiagent.orchestration.core.ConversationRuntimeRegistry;
 import com.yupi.yuaiagent.orchestration.core.OrchestrationEventType;
+import com.yupi.yuaiagent.orchestration.core.OrchestrationExecutor;
 import com.yupi.yuaiagent.orchestration.model.ExecutionMode;
 import com.yupi.yuaiagent.orchestration.model.OrchestrationPolicy;
 import com.yupi.yuaiagent.router.IntentRouter;
@@ -28,16 +30,19 @@ import reactor.core.publisher.Flux;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
 
 import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
 
 /**
  * 多 Agent 编排主服务（SSE v2）。
+ * <p>
+ * 回复前的 Safety / Emotion / Memory / Persona 按 {@link AgentDagExecutor} 并发执行，Safety 拦截时短路其余 Agent；
+ * 之后由 NarrativeAgent 流式生成回复（TOOL 模式走 AssetAgent 工具链）。
  */
 @Slf4j
 @Service
@@ -56,10 +61,14 @@ public class ConversationOrchestrationService {
     private final AssetAgent assetAgent;
     private final OrchestrationEventPublisher eventPublisher;
     private final ConversationRuntimeRegistry runtimeRegistry;
+    private final OrchestrationExecutor orchestrationExecutor;
 
     @Value("${app.orchestration.sse-timeout-ms:300000}")
     private long sseTimeoutMs;
 
+    @Value("${app.orchestration.agent-dag.timeout-ms:3000}")
+    private long agentTimeoutMs = 3000;
+
     public ConversationOrchestrationService(ConversationStoreService conversationStoreService,
                                             IntentRouter intentRouter,
                                             DefaultPolicyResolver policyResolver,
@@ -70,7 +79,8 @@ public class ConversationOrchestrationService {
                                             NarrativeAgent narrativeAgent,
                                             AssetAgent assetAgent,
                                             OrchestrationEventPublisher eventPublisher,
-                                            ConversationRuntimeRegistry runtimeRegistry) {
+                                            ConversationRuntimeRegistry runtimeRegistry,
+                                            OrchestrationExecutor orchestrationExecutor) {
         this.conversationStoreService = conversationStoreService;
         this.intentRouter = intentRouter;
         this.policyResolver = policyResolver;
@@ -82,6 +92,7 @@ public class ConversationOrchestrationService {
         this.assetAgent = assetAgent;
         this.eventPublisher = eventPublisher;
         this.runtimeRegistry = runtimeRegistry;
+        this.orchestrationExecutor = orchestrationExecutor;
     }
 
     public SseEmitter streamConversation(String conversationId, ConversationMessageRequest request) {
@@ -106,8 +117,6 @@ public class ConversationOrchestrationService {
         SseEmitter emitter = new SseEmitter(sseTimeoutMs);
         ConversationRuntime runtime = runtimeRegistry.start(normalizedConversationId, traceId);
 
-        CompletableFuture.runAsync(() -> execute(runtime, request, emitter, start));
-
         emitter.onTimeout(() -> {
             runtimeRegistry.interrupt(normalizedConversationId, "timeout");
             runtimeRegistry.finish(normalizedConversationId);
@@ -124,6 +133,11 @@ public class ConversationOrchestrationService {
 
         emitter.onCompletion(() -> runtimeRegistry.finish(normalizedConversationId));
 
+        orchestrationExecutor.execute(
+                () -> execute(runtime, request, emitter, start),
+                () -> failAndComplete(emitter, normalizedConversationId, traceId, start,
+                        "SERVER_BUSY", "当前进行中的会话过多，请稍后重试"));
+
         return emitter;
     }
 
@@ -140,6 +154,7 @@ public class ConversationOrchestrationService {
         String userMessage = request == null ? "" : StrUtil.nullToDefault(request.getMessage(), "").trim();
         List<String> images = request == null || request.getImages() == null ? List.of() : request.getImages();
         String assistantText = "";
+        boolean assistantSaved = false;
         ExecutionMode mode = ExecutionMode.CHAT;
 
         try {
@@ -171,7 +186,8 @@ public class ConversationOrchestrationService {
                     "reason", policy.getReason(),
                     "suggestedTools", policy.getSuggestedTools());
 
-            Map<String, Object> sharedState = new LinkedHashMap<>();
+            // 安全 / 情绪 / 记忆 / 人格 Agent 并发执行，写入 sharedState 的同时可能被编排线程读取
+            Map<String, Object> sharedState = Collections.synchronizedMap(new LinkedHashMap<>());
             AgentContext context = AgentContext.builder()
                     .conversationId(conversationId)
                     .userId(request == null ? "" : request.getUserId())
@@ -186,28 +202,23 @@ public class ConversationOrchestrationService {
                     .build();
 
             ensureNotInterrupted(runtime);
-            AgentOutput safetyOutput = runAgent(emitter, traceId, context, safetyAgent);
-            sharedState.put("safety", safetyOutput.getData());
-            if (safetyOutput.isBlocked() || policy.getMode() == ExecutionMode.BLOCK) {
+            List<SpecializedAgent> preResponseAgents = policy.getMode() == ExecutionMode.BLOCK
+                    ? List.of(safetyAgent)
+                    : List.of(safetyAgent, emotionAgent, memoryAgent, personaAgent);
+            AgentDagExecutor.Result preResponse = new AgentDagExecutor(agentTimeoutMs)
+                    .run(preResponseAgents, context, agentEventListener(emitter, conversationId, traceId));
+            if (preResponse.interrupted()) {
+                throw new RuntimeException(INTERRUPTED_EXCEPTION_CODE);
+            }
+            if (preResponse.blocked() || policy.getMode() == ExecutionMode.BLOCK) {
                 assistantText = "我不能协助处理可能有伤害或违法风险的请求。你可以换一种安全、合法的方式描述需求，我会继续帮助你。";
                 eventPublisher.publish(emitter, conversationId, traceId, OrchestrationEventType.response_chunk,
                         "content", assistantText);
+                assistantSaved = saveAssistantMessage(conversationId, traceId, assistantText);
                 complete(emitter, conversationId, traceId, start, mode, assistantText, false);
                 return;
             }
 
-            ensureNotInterrupted(runtime);
-            AgentOutput emotionOutput = runAgent(emitter, traceId, context, emotionAgent);
-            sharedState.put("emotion", emotionOutput.getData());
-
-            ensureNotInterrupted(runtime);
-            AgentOutput memoryOutput = runAgent(emitter, traceId, context, memoryAgent);
-            sharedState.put("memory", memoryOutput.getData());
-
-            ensureNotInterrupted(runtime);
-            AgentOutput personaOutput = runAgent(emitter, traceId, context, personaAgent);
-            sharedState.put("persona", personaOutput.getData());
-
             if (policy.getMode() == ExecutionMode.TOOL) {
                 ensureNotInterrupted(runtime);
                 eventPublisher.publish(emitter, conversationId, traceId, OrchestrationEventType.tool_call_started,
@@ -222,6 +233,7 @@ public class ConversationOrchestrationService {
                 }
                 eventPublisher.publish(emitter, conversationId, traceId, OrchestrationEventType.tool_call_finished,
                         "resultLength", assistantText.length());
+                assistantSaved = saveAssistantMessage(conversationId, traceId, assistantText);
                 complete(emitter, conversationId, traceId, start, mode, assistantText, false);
                 return;
             }
@@ -244,6 +256,7 @@ public class ConversationOrchestrationService {
                     })
                     .blockLast();
             assistantText = textBuilder.toString();
+            assistantSaved = saveAssistantMessage(conversationId, traceId, assistantText);
             complete(emitter, conversationId, traceId, start, mode, assistantText, false);
         } catch (RuntimeException e) {
             if (INTERRUPTED_EXCEPTION_CODE.equals(e.getMessage())) {
@@ -260,17 +273,49 @@ public class ConversationOrchestrationService {
             failAndComplete(emitter, conversationId, traceId, start, "INTERNAL_ERROR",
                     StrUtil.blankToDefault(e.getMessage(), "internal error"));
         } finally {
-            if (assistantText != null && !assistantText.isBlank()) {
-                conversationStoreService.saveMessage(conversationId, "assistant", assistantText, List.of(), Map.of("traceId", traceId));
+            if (!assistantSaved) {
+                saveAssistantMessage(conversationId, traceId, assistantText);
             }
             runtimeRegistry.finish(conversationId);
         }
     }
 
+    /**
+     * 正常结束时须在 response_completed 之前落库，客户端收到终态事件后即可读到本轮回复；中断 / 异常时在 finally 中保存已生成的部分。
+     */
+    private boolean saveAssistantMessage(String conversationId, String traceId, String assistantText) {
+        if (assistantText != null && !assistantText.isBlank()) {
+            conversationStoreService.saveMessage(conversationId, "assistant", assistantText, List.of(), Map.of("traceId", traceId));
+        }
+        return true;
+    }
+
+    private AgentDagExecutor.Listener agentEventListener(SseEmitter emitter, String conversationId, String traceId) {
+        return new AgentDagExecutor.Listener() {
+            @Override
+            public void onStarted(AgentDagExecutor.Node node) throws IOException {
+                eventPublisher.publish(emitter, conversationId, traceId, OrchestrationEventType.agent_started,
+                        "agent", node.agentType().name());
+            }
+
+            @Override
+            public void onFinished(AgentDagExecutor.NodeResult result) throws IOException {
+                AgentOutput output = result.output();
+                eventPublisher.publish(emitter, conversationId, traceId, OrchestrationEventType.agent_finished,
+                        "agent", result.node().agentType().name(),
+                        "blocked", output.isBlocked(),
+                        "summary", output.getSummary(),
+                        "data", output.getData(),
+                        "status", result.status().name(),
+                        "durationMs", result.durationMs());
+            }
+        };
+    }
+
     private AgentOutput runAgent(SseEmitter emitter,
                                  String traceId,
                                  AgentContext context,
-                                 com.yupi.yuaiagent.agent.specialized.SpecializedAgent agent) throws IOException {
+                                 SpecializedAgent agent) throws IOException {
         String conversationId = context.getConversationId();
         AgentType agentType = agent.getAgentType();
         eventPublisher.publish(emitter, conversationId, traceId, OrchestrationEventType.agent_started,
@@ -321,10 +366,10 @@ public class ConversationOrchestrationService {
                              String traceId,
                              long start) {
         try {
+            conversationStoreService.updateConversationStatus(conversationId, "INTERRUPTED");
             eventPublisher.publish(emitter, conversationId, traceId, OrchestrationEventType.interrupted,
                     "reason", "user_interrupt",
                     "durationMs", System.currentTimeMillis() - start);
-            conversationStoreService.updateConversationStatus(conversationId, "INTERRUPTED");
             emitter.complete();
         } catch (Exception e) {
             emitter.completeWithError(e);
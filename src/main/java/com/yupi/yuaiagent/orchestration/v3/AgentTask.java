@@ -1,9 +1,11 @@
 package com.yupi.yuaiagent.orchestration.v3;
 
 import com.yupi.yuaiagent.orchestration.core.AgentType;
-import com.yupi.yuaiagent.orchestration.model.ExecutionMode;
+import com.fasterxml.jackson.annotation.JsonAlias;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.util.Map;
 
@@ -13,11 +15,14 @@ import java.util.Map;
  */
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class AgentTask {
 
     /**
-     * Agent 类型
+     * Agent 类型（兼容提示词里的 "type" 字段）
      */
+    @JsonAlias("type")
     private AgentType agentType;
 
     /**
@@ -31,9 +36,9 @@ public class AgentTask {
     private String reason;
 
     /**
-     * 执行模式
+     * 为 SEQUENTIAL 时该任务独占一个波次，不与同 priority 的其他任务并行
      */
-    private ExecutionMode executionMode;
+    private PlanExecutionMode executionMode;
 
     /**
      * 该 Agent 的独立输入上下文（关键设计：实现上下文隔离）
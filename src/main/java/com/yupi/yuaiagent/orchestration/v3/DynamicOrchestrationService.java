@@ -5,7 +5,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yupi.yuaiagent.agent.specialized.AgentRegistry;
 import com.yupi.yuaiagent.agent.specialized.NarrativeAgent;
 import com.yupi.yuaiagent.agent.specialized.PlanAgent;
-import com.yupi.yuaiagent.agent.specialized.SpecializedAgent;
 import com.yupi.yuaiagent.conversation.model.ConversationEntity;
 import com.yupi.yuaiagent.conversation.service.ConversationStoreService;
 import com.yupi.yuaiagent.dto.ConversationMessageRequest;
@@ -16,6 +15,7 @@ import com.yupi.yuaiagent.orchestration.core.CancellationToken;
 import com.yupi.yuaiagent.orchestration.core.ConversationRuntime;
 import com.yupi.yuaiagent.orchestration.core.ConversationRuntimeRegistry;
 import com.yupi.yuaiagent.orchestration.core.OrchestrationEventType;
+import com.yupi.yuaiagent.orchestration.core.OrchestrationExecutor;
 import com.yupi.yuaiagent.orchestration.v2.OrchestrationEventPublisher;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.MDC;
@@ -30,7 +30,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
 
@@ -40,6 +40,7 @@ import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
  * 1. PlanAgent 分析意图，动态决定调用哪些 SubAgent
  * 2. 每个 SubAgent 拥有独立的上下文（inputContext），实现上下文隔离
  * 3. 减少不必要的 Agent 调用，降低 Token 消耗
+ * 4. 按计划中的 priority 分波执行，同一波次的 SubAgent 并发运行（见 {@link PlanScheduler}）
  */
 @Slf4j
 @Service
@@ -68,9 +69,21 @@ public class DynamicOrchestrationService {
     @Resource
     private ObjectMapper objectMapper;
 
+    @Resource
+    private OrchestrationExecutor orchestrationExecutor;
+
+    @Resource(name = "agentExecutor")
+    private Executor agentExecutor;
+
     @Value("${app.orchestration.sse-timeout-ms:300000}")
     private long sseTimeoutMs;
 
+    /**
+     * 单个 SubAgent 的执行超时
+     */
+    @Value("${app.orchestration.v3.agent-timeout-ms:5000}")
+    private long agentTimeoutMs = 5000;
+
     public SseEmitter streamConversation(String conversationId, ConversationMessageRequest request) {
         long start = System.currentTimeMillis();
         String normalizedConversationId = normalizeConversationId(conversationId);
@@ -115,8 +128,8 @@ public class DynamicOrchestrationService {
             log.error("[DynamicOrchestrationService-streamConversation] SSE error: {}", normalizedConversationId, e);
         });
 
-        CompletableFuture.runAsync(() -> {
-            MDC.put("traceId", traceId);
+        // traceId 等 MDC 字段由 orchestrationExecutor 带入虚拟线程
+        orchestrationExecutor.execute(() -> {
             try {
                 executeOrchestration(emitter, normalizedConversationId, conversationEntity, request, cancellationToken);
             } catch (Exception e) {
@@ -128,8 +141,10 @@ public class DynamicOrchestrationService {
                 } catch (Exception e) {
                     log.error("[DynamicOrchestrationService-streamConversation] Failed to complete emitter", e);
                 }
-                MDC.clear();
             }
+        }, () -> {
+            sendEvent(emitter, "error", Map.of("code", "SERVER_BUSY", "message", "当前进行中的会话过多，请稍后重试"));
+            emitter.complete();
         });
 
         return emitter;
@@ -145,6 +160,7 @@ public class DynamicOrchestrationService {
                 .conversationId(conversationId)
                 .userId(conversationEntity.getUserId())
                 .personaId(conversationEntity.getPersonaId())
+                .sceneId(conversationEntity.getSceneId())
                 .message(request.getMessage())
                 .cancellationToken(cancellationToken)
                 .build();
@@ -160,57 +176,70 @@ public class DynamicOrchestrationService {
                 "intent", plan.getIntent(),
                 "agentCount", plan.getRequiredAgents().size(),
                 "estimatedTokens", plan.getEstimatedTokens(),
-                "reasoning", plan.getReasoning()
+                "reasoning", plan.getReasoning(),
+                "executionMode", plan.getExecutionMode() == null ? PlanExecutionMode.MIXED.name() : plan.getExecutionMode().name(),
+                "waveCount", PlanScheduler.waves(plan).size(),
+                "source", String.valueOf(planOutput.getData().get("source"))
         ));
 
-        // Step 2: 根据计划动态调用 SubAgent（上下文隔离）
-        Map<String, AgentOutput> agentOutputs = new LinkedHashMap<>();
-
-        for (AgentTask task : plan.getRequiredAgents()) {
-            if (cancellationToken.isCancelled()) {
-                log.warn("[DynamicOrchestrationService-executeOrchestration] Cancelled by user");
-                sendEvent(emitter, "cancelled", Map.of("message", "用户取消"));
-                return;
-            }
+        // Step 2: 按 priority 分波执行 SubAgent：同一波次并发，波次之间串行（上下文隔离）
+        PlanScheduler.Result result = new PlanScheduler(agentExecutor, agentRegistry::getAgent, agentTimeoutMs).execute(
+                plan,
+                // 为每个 SubAgent 构建独立的上下文（关键设计：上下文隔离）
+                task -> AgentContext.builder()
+                        .conversationId(conversationId)
+                        .userId(conversationEntity.getUserId())
+                        .personaId(conversationEntity.getPersonaId())
+                        .message(request.getMessage())
+                        .sharedState(task.getInputContext() == null
+                                ? new HashMap<>() : new HashMap<>(task.getInputContext()))  // 只包含该 Agent 需要的数据
+                        .cancellationToken(cancellationToken)
+                        .build(),
+                cancellationToken,
+                new PlanScheduler.Listener() {
+                    @Override
+                    public void onStarted(PlanScheduler.Wave wave, AgentTask task) {
+                        Map<String, Object> data = new LinkedHashMap<>();
+                        data.put("agentType", task.getAgentType().name());
+                        data.put("priority", task.getPriority());
+                        data.put("reason", StrUtil.nullToEmpty(task.getReason()));
+                        data.put("wave", wave.index());
+                        sendEvent(emitter, "agent_started", data);
+                    }
 
-            sendEvent(emitter, "agent_started", Map.of(
-                    "agentType", task.getAgentType().name(),
-                    "priority", task.getPriority(),
-                    "reason", task.getReason()
-            ));
+                    @Override
+                    public void onFinished(PlanScheduler.TaskResult taskResult) {
+                        AgentOutput output = taskResult.output();
+                        Map<String, Object> data = new LinkedHashMap<>();
+                        data.put("agentType", taskResult.task().getAgentType().name());
+                        data.put("blocked", output != null && output.isBlocked());
+                        data.put("summary", output == null ? "" : StrUtil.nullToEmpty(output.getSummary()));
+                        data.put("status", taskResult.status().name());
+                        data.put("wave", taskResult.wave().index());
+                        data.put("waveSize", taskResult.wave().tasks().size());
+                        data.put("durationMs", taskResult.durationMs());
+                        data.put("waveElapsedMs", taskResult.waveElapsedMs());
+                        data.put("waveCompleted", taskResult.lastInWave());
+                        sendEvent(emitter, "agent_finished", data);
+                    }
+                });
 
-            // 为每个 SubAgent 构建独立的上下文（关键设计：上下文隔离）
-            AgentContext isolatedContext = AgentContext.builder()
-                    .conversationId(conversationId)
-                    .userId(conversationEntity.getUserId())
-                    .personaId(conversationEntity.getPersonaId())
-                    .message(request.getMessage())
-                    .sharedState(new HashMap<>(task.getInputContext()))  // 只包含该 Agent 需要的数据
-                    .cancellationToken(cancellationToken)
-                    .build();
-
-            // 执行 SubAgent
-            SpecializedAgent agent = agentRegistry.getAgent(task.getAgentType())
-                    .orElseThrow(() -> new RuntimeException("Agent not found: " + task.getAgentType()));
-
-            AgentOutput output = agent.execute(isolatedContext);
-            agentOutputs.put(task.getAgentType().name(), output);
-
-            sendEvent(emitter, "agent_finished", Map.of(
-                    "agentType", task.getAgentType().name(),
-                    "blocked", output.isBlocked(),
-                    "summary", output.getSummary()
+        if (result.cancelled()) {
+            log.warn("[DynamicOrchestrationService-executeOrchestration] {}",
+                    kv("conversationId", conversationId, "status", "cancelled", "wavesExecuted", result.wavesExecuted()));
+            sendEvent(emitter, "cancelled", Map.of("message", "用户取消"));
+            return;
+        }
+        // 如果 Agent 阻塞（如 SafetyAgent），立即返回
+        if (result.blocked()) {
+            PlanScheduler.TaskResult blockedBy = result.blockedBy();
+            sendEvent(emitter, "blocked", Map.of(
+                    "agentType", blockedBy.task().getAgentType().name(),
+                    "reason", StrUtil.nullToEmpty(blockedBy.output().getSummary())
             ));
-
-            // 如果 Agent 阻塞（如 SafetyAgent），立即返回
-            if (output.isBlocked()) {
-                sendEvent(emitter, "blocked", Map.of(
-                        "agentType", task.getAgentType().name(),
-                        "reason", output.getSummary()
-                ));
-                return;
-            }
+            return;
         }
+        Map<String, AgentOutput> agentOutputs = result.outputs();
 
         // 发送跳过的 Agent 信息
         if (plan.getSkipAgents() != null) {
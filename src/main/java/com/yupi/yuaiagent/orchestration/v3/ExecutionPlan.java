@@ -1,9 +1,10 @@
 package com.yupi.yuaiagent.orchestration.v3;
 
 import com.yupi.yuaiagent.orchestration.core.AgentType;
-import com.yupi.yuaiagent.orchestration.model.ExecutionMode;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.util.List;
 
@@ -13,6 +14,8 @@ import java.util.List;
  */
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class ExecutionPlan {
 
     /**
@@ -32,9 +35,9 @@ public class ExecutionPlan {
     private List<AgentType> skipAgents;
 
     /**
-     * 执行模式（串行/并行/混合）
+     * 调度模式（串行/并行/混合），为空时按混合处理
      */
-    private ExecutionMode executionMode;
+    private PlanExecutionMode executionMode;
 
     /**
      * 预估 Token 消耗
@@ -0,0 +1,41 @@
+package com.yupi.yuaiagent.orchestration.v3;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+import java.util.Locale;
+
+/**
+ * 执行计划的调度模式（V3 动态编排）。
+ */
+public enum PlanExecutionMode {
+
+    /**
+     * 逐个串行：每个 Agent 单独一个波次
+     */
+    SEQUENTIAL,
+
+    /**
+     * 全部并行：所有 Agent 同一个波次
+     */
+    PARALLEL,
+
+    /**
+     * 混合（默认）：相同 priority 的 Agent 组成一个并行波次，波次按 priority 升序串行
+     */
+    MIXED;
+
+    /**
+     * 宽松解析 LLM 输出：SERIAL / SEQUENTIAL 视为串行，PARALLEL / CONCURRENT 视为并行，其余视为混合。
+     */
+    @JsonCreator
+    public static PlanExecutionMode from(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return switch (value.trim().toUpperCase(Locale.ROOT)) {
+            case "SEQUENTIAL", "SERIAL" -> SEQUENTIAL;
+            case "PARALLEL", "CONCURRENT" -> PARALLEL;
+            default -> MIXED;
+        };
+    }
+}
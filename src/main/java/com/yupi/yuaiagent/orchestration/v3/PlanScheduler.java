@@ -0,0 +1,308 @@
+package com.yupi.yuaiagent.orchestration.v3;
+
+import com.yupi.yuaiagent.agent.specialized.AgentCapability;
+import com.yupi.yuaiagent.agent.specialized.SpecializedAgent;
+import com.yupi.yuaiagent.orchestration.core.AgentContext;
+import com.yupi.yuaiagent.orchestration.core.AgentOutput;
+import com.yupi.yuaiagent.orchestration.core.AgentType;
+import com.yupi.yuaiagent.orchestration.core.BoundedTaskRunner;
+import com.yupi.yuaiagent.orchestration.core.CancellationToken;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.AnnotationUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
+
+/**
+ * 执行计划调度器（V3 动态编排）：按 priority 把 AgentTask 分成波次，同一波次的任务并发执行，波次之间串行。
+ * <p>
+ * - 分波规则见 {@link PlanExecutionMode}；单个任务标记 SEQUENTIAL 时独占一个波次
+ * - 输出按计划顺序（波次顺序、波内声明顺序）合并，与完成先后无关，生成的 Prompt 保持稳定
+ * - 并发执行与超时由 {@link BoundedTaskRunner} 负责（与 v2 AgentDagExecutor 共用）：超时从任务真正开始运行时计时，
+ *   线程池排队时间不计入
+ * - 波次之间、波次内部（每 50ms）检查 CancellationToken，取消时中断仍在运行的任务
+ * - 任一任务返回 blocked 时取消同波次其余任务，后续波次不再执行
+ * - 任务超时或异常：非必需 Agent 丢弃其输出，必需 Agent（@AgentCapability(required = true)）则整体失败
+ * - 开始 / 结束回调都在调用线程上触发，结束回调带本波次已耗时；因拦截 / 取消 / 必需 Agent 失败而被中断的任务
+ *   也会收到 CANCELLED 结束回调，每个开始的任务都有对应的结束事件
+ */
+@Slf4j
+public class PlanScheduler {
+
+    public enum Status {
+        COMPLETED,
+        TIMED_OUT,
+        FAILED,
+        CANCELLED
+    }
+
+    /**
+     * @param index    波次序号（从 1 开始）
+     * @param priority 本波次任务的 priority
+     */
+    public record Wave(int index, int priority, List<AgentTask> tasks) {
+    }
+
+    /**
+     * @param durationMs    该任务从开始运行到结束的耗时（不含线程池排队时间）
+     * @param waveElapsedMs 本波次开始到该任务结束的耗时；lastInWave 为 true 时即整个波次耗时
+     */
+    public record TaskResult(Wave wave, AgentTask task, Status status, AgentOutput output,
+                             long durationMs, long waveElapsedMs, boolean lastInWave) {
+    }
+
+    /**
+     * @param outputs   按计划顺序合并的输出，键为 AgentType 名称
+     * @param blockedBy 返回 blocked 的任务结果，未拦截时为 null
+     * @param cancelled 被 CancellationToken 取消
+     */
+    public record Result(Map<String, AgentOutput> outputs, TaskResult blockedBy, boolean cancelled, int wavesExecuted) {
+
+        public boolean blocked() {
+            return blockedBy != null;
+        }
+    }
+
+    public interface Listener {
+
+        void onStarted(Wave wave, AgentTask task);
+
+        void onFinished(TaskResult result);
+    }
+
+    private final Executor executor;
+    private final Function<AgentType, Optional<SpecializedAgent>> agentLookup;
+    private final long taskTimeoutMs;
+
+    public PlanScheduler(Executor executor,
+                         Function<AgentType, Optional<SpecializedAgent>> agentLookup,
+                         long taskTimeoutMs) {
+        this.executor = executor;
+        this.agentLookup = agentLookup;
+        this.taskTimeoutMs = taskTimeoutMs > 0 ? taskTimeoutMs : 5000;
+    }
+
+    /**
+     * 按调度模式把计划拆成波次；agentType 为空的任务被忽略。
+     */
+    public static List<Wave> waves(ExecutionPlan plan) {
+        List<AgentTask> tasks = new ArrayList<>();
+        if (plan != null && plan.getRequiredAgents() != null) {
+            for (AgentTask task : plan.getRequiredAgents()) {
+                if (task != null && task.getAgentType() != null) {
+                    tasks.add(task);
+                }
+            }
+        }
+        // List.sort 是稳定排序，同 priority 保持声明顺序
+        tasks.sort(Comparator.comparingInt(AgentTask::getPriority));
+        PlanExecutionMode mode = plan == null || plan.getExecutionMode() == null
+                ? PlanExecutionMode.MIXED : plan.getExecutionMode();
+
+        List<List<AgentTask>> groups = new ArrayList<>();
+        if (mode == PlanExecutionMode.PARALLEL) {
+            if (!tasks.isEmpty()) {
+                groups.add(tasks);
+            }
+        } else {
+            List<AgentTask> current = null;
+            for (AgentTask task : tasks) {
+                boolean exclusive = mode == PlanExecutionMode.SEQUENTIAL
+                        || task.getExecutionMode() == PlanExecutionMode.SEQUENTIAL;
+                if (exclusive || current == null || current.get(0).getPriority() != task.getPriority()
+                        || current.get(0).getExecutionMode() == PlanExecutionMode.SEQUENTIAL) {
+                    current = new ArrayList<>();
+                    groups.add(current);
+                }
+                current.add(task);
+            }
+        }
+
+        List<Wave> waves = new ArrayList<>(groups.size());
+        for (List<AgentTask> group : groups) {
+            waves.add(new Wave(waves.size() + 1, group.get(0).getPriority(), List.copyOf(group)));
+        }
+        return waves;
+    }
+
+    /**
+     * 执行计划。
+     *
+     * @param contextFactory 为每个任务构建独立上下文（上下文隔离）
+     */
+    public Result execute(ExecutionPlan plan,
+                          Function<AgentTask, AgentContext> contextFactory,
+                          CancellationToken cancellationToken,
+                          Listener listener) {
+        List<Wave> waves = waves(plan);
+        // 先解析全部 Agent，缺失时在执行任何任务前失败
+        Map<AgentTask, SpecializedAgent> agents = new IdentityHashMap<>();
+        for (Wave wave : waves) {
+            for (AgentTask task : wave.tasks()) {
+                agents.put(task, agentLookup.apply(task.getAgentType())
+                        .orElseThrow(() -> new RuntimeException("Agent not found: " + task.getAgentType())));
+            }
+        }
+
+        Map<String, AgentOutput> merged = new LinkedHashMap<>();
+        int executed = 0;
+        for (Wave wave : waves) {
+            if (isCancelled(cancellationToken)) {
+                return new Result(merged, null, true, executed);
+            }
+            executed++;
+            WaveOutcome outcome = runWave(wave, agents, contextFactory, cancellationToken, listener);
+            for (AgentOutput output : outcome.outputs()) {
+                if (output != null) {
+                    merged.put(output.getAgentType() == null ? "" : output.getAgentType().name(), output);
+                }
+            }
+            if (outcome.cancelled()) {
+                return new Result(merged, null, true, executed);
+            }
+            if (outcome.blockedBy() != null) {
+                return new Result(merged, outcome.blockedBy(), false, executed);
+            }
+        }
+        return new Result(merged, null, false, executed);
+    }
+
+    private record WaveOutcome(List<AgentOutput> outputs, TaskResult blockedBy, boolean cancelled) {
+    }
+
+    private WaveOutcome runWave(Wave wave,
+                                Map<AgentTask, SpecializedAgent> agents,
+                                Function<AgentTask, AgentContext> contextFactory,
+                                CancellationToken cancellationToken,
+                                Listener listener) {
+        List<AgentTask> tasks = wave.tasks();
+        AgentOutput[] outputs = new AgentOutput[tasks.size()];
+        long waveStart = System.currentTimeMillis();
+        try (BoundedTaskRunner<Integer> runner = new BoundedTaskRunner<>(executor)) {
+            for (int i = 0; i < tasks.size(); i++) {
+                AgentTask task = tasks.get(i);
+                SpecializedAgent agent = agents.get(task);
+                AgentContext context = contextFactory.apply(task);
+                listener.onStarted(wave, task);
+                runner.submit(i, () -> agent.execute(context), taskTimeoutMs);
+            }
+
+            int remaining = tasks.size();
+            while (remaining > 0) {
+                if (isCancelled(cancellationToken)) {
+                    cancelRunning(wave, runner, waveStart, listener);
+                    return new WaveOutcome(Arrays.asList(outputs), null, true);
+                }
+                List<BoundedTaskRunner.Finished<Integer>> finished;
+                try {
+                    finished = runner.poll();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelRunning(wave, runner, waveStart, listener);
+                    return new WaveOutcome(Arrays.asList(outputs), null, true);
+                }
+
+                // 同一次 poll 结束的任务都先回调结束事件，再处理拦截 / 必需 Agent 失败
+                TaskResult blockedBy = null;
+                RuntimeException fatal = null;
+                for (BoundedTaskRunner.Finished<Integer> item : finished) {
+                    remaining--;
+                    int slot = item.key();
+                    AgentTask task = tasks.get(slot);
+                    long end = System.currentTimeMillis();
+                    if (item.outcome() != BoundedTaskRunner.Outcome.COMPLETED) {
+                        RuntimeException error = failOrSkip(wave, task, agents.get(task), Status.valueOf(item.outcome().name()),
+                                item.durationMs(), end - waveStart, remaining == 0, item.error(), listener);
+                        fatal = fatal == null ? error : fatal;
+                        continue;
+                    }
+                    AgentOutput output = item.output();
+                    outputs[slot] = output;
+                    TaskResult result = new TaskResult(wave, task, Status.COMPLETED, output,
+                            item.durationMs(), end - waveStart, remaining == 0);
+                    listener.onFinished(result);
+                    if (blockedBy == null && output != null && output.isBlocked()) {
+                        blockedBy = result;
+                    }
+                }
+                if (fatal != null) {
+                    cancelRunning(wave, runner, waveStart, listener);
+                    throw fatal;
+                }
+                if (blockedBy != null) {
+                    cancelRunning(wave, runner, waveStart, listener);
+                    return new WaveOutcome(Arrays.asList(outputs), blockedBy, false);
+                }
+            }
+            return new WaveOutcome(Arrays.asList(outputs), null, false);
+        }
+    }
+
+    /**
+     * 中断本波次仍在运行的任务，并为每个任务回调 CANCELLED 结束事件（与 AgentDagExecutor 一致）。
+     */
+    private void cancelRunning(Wave wave, BoundedTaskRunner<Integer> runner, long waveStart, Listener listener) {
+        List<BoundedTaskRunner.Finished<Integer>> cancelled = runner.cancelAll();
+        for (int i = 0; i < cancelled.size(); i++) {
+            BoundedTaskRunner.Finished<Integer> item = cancelled.get(i);
+            AgentTask task = wave.tasks().get(item.key());
+            AgentOutput output = AgentOutput.builder()
+                    .agentType(task.getAgentType())
+                    .blocked(false)
+                    .summary("已取消")
+                    .data(Map.of())
+                    .build();
+            listener.onFinished(new TaskResult(wave, task, Status.CANCELLED, output, item.durationMs(),
+                    System.currentTimeMillis() - waveStart, i == cancelled.size() - 1));
+        }
+    }
+
+    /**
+     * 回调超时 / 失败的结束事件；必需 Agent 返回需要抛出的异常，非必需 Agent 返回 null（丢弃输出继续执行）。
+     */
+    private RuntimeException failOrSkip(Wave wave,
+                                        AgentTask task,
+                                        SpecializedAgent agent,
+                                        Status status,
+                                        long durationMs,
+                                        long waveElapsedMs,
+                                        boolean lastInWave,
+                                        Throwable error,
+                                        Listener listener) {
+        AgentCapability capability = AnnotationUtils.findAnnotation(agent.getClass(), AgentCapability.class);
+        boolean required = capability != null && capability.required();
+        log.warn("[PlanScheduler-runWave] {}",
+                kv("wave", wave.index(), "agentType", task.getAgentType(), "status", status,
+                        "durationMs", durationMs, "timeoutMs", taskTimeoutMs, "required", required,
+                        "error", error == null ? "" : String.valueOf(error.getMessage())));
+        AgentOutput output = AgentOutput.builder()
+                .agentType(task.getAgentType())
+                .blocked(false)
+                .summary(status == Status.TIMED_OUT ? "执行超时，已跳过" : "执行失败，已跳过")
+                .data(Map.of())
+                .build();
+        listener.onFinished(new TaskResult(wave, task, status, output, durationMs, waveElapsedMs, lastInWave));
+        if (!required) {
+            return null;
+        }
+        if (error instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        return new IllegalStateException(task.getAgentType() + " 执行"
+                + (status == Status.TIMED_OUT ? "超时" : "失败"), error);
+    }
+
+    private static boolean isCancelled(CancellationToken cancellationToken) {
+        return cancellationToken != null && cancellationToken.isCancelled();
+    }
+}
@@ -0,0 +1,113 @@
+package com.yupi.yuaiagent.orchestration.v3;
+
+import cn.hutool.core.util.StrUtil;
+
+import java.text.Normalizer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 执行计划签名（V3 动态编排）：意图 + 命中的意图关键词 + 人格 + 场景。
+ * <p>
+ * 签名相同的消息视为同一类请求，可以复用同一份计划模板（见 {@link PlanTemplate}）。
+ * 消息未命中任何意图关键词时，只能按归一化后的整条消息精确复用（{@link #exact(String)}）。
+ *
+ * @param intent       按关键词推断的意图，未命中时为 {@link #UNKNOWN}
+ * @param keywords     命中的意图关键词（去重、排序）
+ * @param exactMessage 非空时为精确签名，只匹配归一化后完全相同的消息
+ */
+public record PlanSignature(String intent,
+                            List<String> keywords,
+                            String personaId,
+                            String sceneId,
+                            String exactMessage) {
+
+    public static final String UNKNOWN = "UNKNOWN";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * 整条消息只是问候语（允许结尾带标点 / 语气符号）
+     */
+    private static final Pattern GREETING = Pattern.compile(
+            "^(你好|您好|在吗|在不在|嗨|哈喽|hi|hello|hey|早安|早上好|午安|晚上好|晚安)[\\p{P}~～\\s]*$"
+    );
+
+    /**
+     * 意图关键词，按优先级排列：需要工具的意图优先于情感类意图
+     */
+    private static final Map<String, Pattern> INTENT_KEYWORDS;
+
+    static {
+        Map<String, Pattern> m = new LinkedHashMap<>();
+        m.put("WEATHER_QUERY", Pattern.compile("天气|下雨|下雪|气温|温度"));
+        m.put("WEB_SEARCH", Pattern.compile("搜索|搜一下|查一下|查查"));
+        m.put("GIFT_ADVICE", Pattern.compile("礼物|送什么|纪念日"));
+        m.put("DATE_PLANNING", Pattern.compile("约会|餐厅|景点|去哪|电影|探店"));
+        m.put("CONFLICT_RESOLUTION", Pattern.compile(
+                "吵架|争吵|矛盾|闹别扭|不理我|生气|冷战|不回消息|已读不回|冷暴力|分手|挽回|复合|前任"));
+        m.put("EMOTION_SUPPORT", Pattern.compile(
+                "焦虑|难过|伤心|委屈|失眠|崩溃|压力|孤单|寂寞|想哭|心累|不开心|郁闷|害怕|(?<![a-z])emo(?![a-z])"));
+        INTENT_KEYWORDS = Collections.unmodifiableMap(m);
+    }
+
+    public static PlanSignature of(String message, String personaId, String sceneId) {
+        String normalized = normalize(message);
+        String persona = StrUtil.blankToDefault(personaId, "default");
+        String scene = StrUtil.nullToEmpty(sceneId);
+
+        Matcher greeting = GREETING.matcher(normalized);
+        if (greeting.matches()) {
+            return new PlanSignature("CHITCHAT", List.of(greeting.group(1)), persona, scene, null);
+        }
+
+        String intent = UNKNOWN;
+        TreeSet<String> keywords = new TreeSet<>();
+        for (Map.Entry<String, Pattern> entry : INTENT_KEYWORDS.entrySet()) {
+            Matcher matcher = entry.getValue().matcher(normalized);
+            while (matcher.find()) {
+                keywords.add(matcher.group());
+                if (UNKNOWN.equals(intent)) {
+                    intent = entry.getKey();
+                }
+            }
+        }
+        return new PlanSignature(intent, List.copyOf(keywords), persona, scene, null);
+    }
+
+    /**
+     * 同一人格 / 场景下，只匹配与 message 归一化后完全相同的消息的精确签名。
+     */
+    public PlanSignature exact(String message) {
+        return new PlanSignature(intent, keywords, personaId, sceneId, normalize(message));
+    }
+
+    /**
+     * 关键词签名至少要命中一个关键词才允许复用，否则所有未识别的消息会共用同一份计划。
+     */
+    public boolean cacheable() {
+        return exactMessage != null || !keywords.isEmpty();
+    }
+
+    public String key() {
+        return intent + "|" + String.join(",", keywords) + "|" + personaId + "|" + sceneId
+                + (exactMessage == null ? "" : "|" + exactMessage);
+    }
+
+    /**
+     * NFKC、去首尾空白、合并空白、小写。
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).trim();
+        return WHITESPACE.matcher(normalized).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,190 @@
+package com.yupi.yuaiagent.orchestration.v3;
+
+import cn.hutool.core.util.StrUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 执行计划模板（V3 动态编排）：inputContext 中与本轮请求相关的值用占位符表示，复用时再绑定为实际值。
+ * <p>
+ * - 占位符：{message}、{conversationId}、{personaId}（与 plan-agent-system.txt 约定一致）
+ * - 关键词签名的模板只允许占位符、签名关键词和工具名；含有其他消息片段（城市、日期、搜索词等）的计划
+ *   只能用精确签名复用，避免“推荐上海的约会地点”拿到北京的参数
+ * - 模板与绑定结果之间不共享可变对象
+ */
+public final class PlanTemplate {
+
+    public static final String MESSAGE = "{message}";
+    public static final String CONVERSATION_ID = "{conversationId}";
+    public static final String PERSONA_ID = "{personaId}";
+
+    private static final Set<String> PLACEHOLDERS = Set.of(MESSAGE, CONVERSATION_ID, PERSONA_ID);
+
+    /**
+     * 取值与消息无关的 inputContext 字段
+     */
+    private static final Set<String> STATIC_KEYS = Set.of("toolName");
+
+    private static final Object NOT_TEMPLATABLE = new Object();
+
+    private PlanTemplate() {
+    }
+
+    /**
+     * 把一次具体的计划转换为模板；计划依赖签名之外的消息内容时返回 empty。
+     */
+    public static Optional<ExecutionPlan> extract(ExecutionPlan plan,
+                                                  PlanSignature signature,
+                                                  String message,
+                                                  String conversationId,
+                                                  String personaId) {
+        if (plan == null || plan.getRequiredAgents() == null || signature == null || !signature.cacheable()) {
+            return Optional.empty();
+        }
+        Bindings bindings = new Bindings(message, conversationId, personaId);
+        List<AgentTask> tasks = new ArrayList<>(plan.getRequiredAgents().size());
+        for (AgentTask task : plan.getRequiredAgents()) {
+            if (task == null) {
+                continue;
+            }
+            Object inputContext = templateValue(null, task.getInputContext(), signature, bindings);
+            if (inputContext == NOT_TEMPLATABLE) {
+                return Optional.empty();
+            }
+            tasks.add(copyTask(task, castMap(inputContext)));
+        }
+        return Optional.of(copyPlan(plan, tasks));
+    }
+
+    /**
+     * 深拷贝模板并把占位符替换为本轮请求的实际值。
+     */
+    public static ExecutionPlan bind(ExecutionPlan template, String message, String conversationId, String personaId) {
+        if (template == null) {
+            return null;
+        }
+        Bindings bindings = new Bindings(message, conversationId, personaId);
+        List<AgentTask> tasks = null;
+        if (template.getRequiredAgents() != null) {
+            tasks = new ArrayList<>(template.getRequiredAgents().size());
+            for (AgentTask task : template.getRequiredAgents()) {
+                tasks.add(task == null ? null : copyTask(task, castMap(bindValue(task.getInputContext(), bindings))));
+            }
+        }
+        return copyPlan(template, tasks);
+    }
+
+    private static Object templateValue(String key, Object value, PlanSignature signature, Bindings bindings) {
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                String childKey = String.valueOf(entry.getKey());
+                Object child = templateValue(childKey, entry.getValue(), signature, bindings);
+                if (child == NOT_TEMPLATABLE) {
+                    return NOT_TEMPLATABLE;
+                }
+                copy.put(childKey, child);
+            }
+            return copy;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            for (Object item : list) {
+                Object child = templateValue(key, item, signature, bindings);
+                if (child == NOT_TEMPLATABLE) {
+                    return NOT_TEMPLATABLE;
+                }
+                copy.add(child);
+            }
+            return copy;
+        }
+        if (!(value instanceof String text)) {
+            return value;
+        }
+        if (PLACEHOLDERS.contains(text)) {
+            return text;
+        }
+        if (StrUtil.isNotBlank(bindings.message()) && text.trim().equals(bindings.message().trim())) {
+            return MESSAGE;
+        }
+        if (StrUtil.isNotBlank(bindings.conversationId()) && text.equals(bindings.conversationId())) {
+            return CONVERSATION_ID;
+        }
+        if (StrUtil.isNotBlank(bindings.personaId()) && text.equals(bindings.personaId())) {
+            return PERSONA_ID;
+        }
+        if (signature.exactMessage() != null || STATIC_KEYS.contains(key) || isKeywords(text, signature)) {
+            return text;
+        }
+        return NOT_TEMPLATABLE;
+    }
+
+    private static boolean isKeywords(String text, PlanSignature signature) {
+        String normalized = PlanSignature.normalize(text);
+        if (normalized.isEmpty()) {
+            return true;
+        }
+        for (String part : normalized.split(" ")) {
+            if (!signature.keywords().contains(part)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object bindValue(Object value, Bindings bindings) {
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> copy = new LinkedHashMap<>();
+            map.forEach((k, v) -> copy.put(String.valueOf(k), bindValue(v, bindings)));
+            return copy;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            list.forEach(item -> copy.add(bindValue(item, bindings)));
+            return copy;
+        }
+        if (value instanceof String text) {
+            return switch (text) {
+                case MESSAGE -> bindings.message();
+                case CONVERSATION_ID -> bindings.conversationId();
+                case PERSONA_ID -> bindings.personaId();
+                default -> text;
+            };
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castMap(Object value) {
+        return (Map<String, Object>) value;
+    }
+
+    private static AgentTask copyTask(AgentTask task, Map<String, Object> inputContext) {
+        return AgentTask.builder()
+                .agentType(task.getAgentType())
+                .priority(task.getPriority())
+                .reason(task.getReason())
+                .executionMode(task.getExecutionMode())
+                .inputContext(inputContext)
+                .build();
+    }
+
+    private static ExecutionPlan copyPlan(ExecutionPlan plan, List<AgentTask> tasks) {
+        return ExecutionPlan.builder()
+                .intent(plan.getIntent())
+                .requiredAgents(tasks)
+                .skipAgents(plan.getSkipAgents() == null ? null : new ArrayList<>(plan.getSkipAgents()))
+                .executionMode(plan.getExecutionMode())
+                .estimatedTokens(plan.getEstimatedTokens())
+                .reasoning(plan.getReasoning())
+                .build();
+    }
+
+    private record Bindings(String message, String conversationId, String personaId) {
+    }
+}
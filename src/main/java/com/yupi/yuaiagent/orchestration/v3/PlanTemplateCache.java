@@ -0,0 +1,77 @@
+package com.yupi.yuaiagent.orchestration.v3;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * 执行计划模板缓存（V3 动态编排）：签名 -> 计划模板，容量上限 + 写入后 TTL 过期。
+ * <p>
+ * 先按关键词签名查找，再按精确签名（同一条消息）查找；写入时优先存为关键词模板，
+ * 计划依赖签名之外的消息内容时退化为精确模板，过长的消息不做精确缓存。
+ */
+public class PlanTemplateCache {
+
+    /**
+     * 超过该长度的消息几乎不会原样重复，不做精确缓存
+     */
+    static final int MAX_EXACT_MESSAGE_LENGTH = 100;
+
+    private final Cache<String, ExecutionPlan> cache;
+
+    /**
+     * @param meterRegistry 可为 null；非空时导出命中率等指标（cache=v3_plan）
+     */
+    public PlanTemplateCache(long maxSize, Duration ttl, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(1L, maxSize))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "v3_plan");
+        }
+    }
+
+    /**
+     * 查找并绑定计划；未命中时返回 empty。
+     */
+    public Optional<ExecutionPlan> get(PlanSignature signature, String message, String conversationId, String personaId) {
+        ExecutionPlan template = signature.cacheable() ? cache.getIfPresent(signature.key()) : null;
+        if (template == null && exactCacheable(message)) {
+            template = cache.getIfPresent(signature.exact(message).key());
+        }
+        return Optional.ofNullable(PlanTemplate.bind(template, message, conversationId, personaId));
+    }
+
+    /**
+     * 把一次具体的计划存为模板。
+     *
+     * @return 是否写入了缓存
+     */
+    public boolean put(ExecutionPlan plan, PlanSignature signature, String message, String conversationId, String personaId) {
+        PlanSignature target = signature;
+        Optional<ExecutionPlan> template = PlanTemplate.extract(plan, target, message, conversationId, personaId);
+        if (template.isEmpty() && exactCacheable(message)) {
+            target = signature.exact(message);
+            template = PlanTemplate.extract(plan, target, message, conversationId, personaId);
+        }
+        if (template.isEmpty()) {
+            return false;
+        }
+        cache.put(target.key(), template.get());
+        return true;
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private static boolean exactCacheable(String message) {
+        return message != null && !message.isBlank() && message.length() <= MAX_EXACT_MESSAGE_LENGTH;
+    }
+}
@@ -0,0 +1,76 @@
+package com.yupi.yuaiagent.orchestration.v3;
+
+import com.yupi.yuaiagent.orchestration.core.AgentType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 规则规划器（V3 动态编排）：计划固定的高频意图直接按规则生成计划模板，不调用 LLM。
+ * <p>
+ * - 问候闲聊：SafetyAgent + EmotionAgent
+ * - 情感支持 / 冲突处理：SafetyAgent 之后 EmotionAgent、MemoryAgent、PersonaAgent 同一波次并行
+ * - 需要从消息中抽取参数的工具类意图（约会地点、天气、搜索、礼物）及未识别的消息返回 empty，交给缓存 / PlanAgent
+ * <p>
+ * 与 plan-agent-system.txt 中的示例保持一致；返回的是模板，需经 {@link PlanTemplate#bind} 绑定。
+ */
+public class RuleBasedPlanner {
+
+    public Optional<ExecutionPlan> plan(PlanSignature signature) {
+        if (signature == null || signature.intent() == null) {
+            return Optional.empty();
+        }
+        return switch (signature.intent()) {
+            case "CHITCHAT" -> Optional.of(chitchat());
+            case "EMOTION_SUPPORT", "CONFLICT_RESOLUTION" -> Optional.of(emotionSupport(signature));
+            default -> Optional.empty();
+        };
+    }
+
+    private ExecutionPlan chitchat() {
+        return ExecutionPlan.builder()
+                .intent("CHITCHAT")
+                .requiredAgents(new ArrayList<>(List.of(
+                        safety(),
+                        task(AgentType.EMOTION, 2, "识别用户情绪状态", Map.of("message", PlanTemplate.MESSAGE))
+                )))
+                .skipAgents(new ArrayList<>(List.of(AgentType.MEMORY, AgentType.PERSONA, AgentType.TOOLS)))
+                .executionMode(PlanExecutionMode.MIXED)
+                .estimatedTokens(130)
+                .reasoning("规则命中：简单问候，只需安全检查和情绪识别")
+                .build();
+    }
+
+    private ExecutionPlan emotionSupport(PlanSignature signature) {
+        return ExecutionPlan.builder()
+                .intent(signature.intent())
+                .requiredAgents(new ArrayList<>(List.of(
+                        safety(),
+                        task(AgentType.EMOTION, 2, "识别用户情绪", Map.of("message", PlanTemplate.MESSAGE)),
+                        task(AgentType.MEMORY, 2, "召回相关的历史对话",
+                                Map.of("conversationId", PlanTemplate.CONVERSATION_ID,
+                                        "query", String.join(" ", signature.keywords()))),
+                        task(AgentType.PERSONA, 2, "加载人格配置", Map.of("personaId", PlanTemplate.PERSONA_ID))
+                )))
+                .skipAgents(new ArrayList<>(List.of(AgentType.TOOLS)))
+                .executionMode(PlanExecutionMode.MIXED)
+                .estimatedTokens(380)
+                .reasoning("规则命中：情感支持场景，需要情绪识别、记忆召回和人格约束")
+                .build();
+    }
+
+    private static AgentTask safety() {
+        return task(AgentType.SAFETY, 1, "必须检查输入安全性", Map.of("message", PlanTemplate.MESSAGE));
+    }
+
+    private static AgentTask task(AgentType type, int priority, String reason, Map<String, Object> inputContext) {
+        return AgentTask.builder()
+                .agentType(type)
+                .priority(priority)
+                .reason(reason)
+                .inputContext(inputContext)
+                .build();
+    }
+}
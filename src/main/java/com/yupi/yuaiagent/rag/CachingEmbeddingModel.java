@@ -0,0 +1,217 @@
+package com.yupi.yuaiagent.rag;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带缓存的 EmbeddingModel 装饰器。
+ * <p>
+ * 以“模型标识 + NFKC 规范化文本的 SHA-256”为 key，同一查询在会话记忆检索、RAG 检索、RAG 评测重跑之间只请求一次 embedding API。
+ * 只做 NFKC（全角 / 半角等等价字符），不改大小写、不合并空白：这些差异可能改变向量，不能共用缓存。
+ * 批量请求只把未命中的文本发给下游；向量可选存放在堆外（direct buffer），减轻大缓存的 GC 压力。
+ * <p>
+ * 只缓存查询：VectorStore 写入文档走 {@link #embed(List, EmbeddingOptions, BatchingStrategy)} / {@link #embed(Document)}，
+ * 直接交给下游，不占用查询缓存。
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final String modelId;
+    private final boolean offHeap;
+    private final Cache<String, StoredVector> cache;
+
+    /**
+     * @param modelId           模型标识（区分不同 provider / 模型，避免向量混用）
+     * @param maxBytes          缓存向量总字节上限
+     * @param expireAfterAccess 多久未访问后淘汰
+     * @param offHeap           是否把向量存放在堆外
+     * @param meterRegistry     可为 null；非空时导出命中率等指标（cache=embedding）
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate,
+                                 String modelId,
+                                 long maxBytes,
+                                 Duration expireAfterAccess,
+                                 boolean offHeap,
+                                 MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.modelId = modelId == null ? "" : modelId;
+        this.offHeap = offHeap;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(Math.max(1L, maxBytes))
+                .weigher((String key, StoredVector value) -> value.bytes())
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "embedding");
+        }
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        if (texts == null || texts.isEmpty()) {
+            return delegate.call(request);
+        }
+        String keyPrefix = keyPrefix(request.getOptions());
+        float[][] vectors = new float[texts.size()][];
+        // 未命中的文本去重后只请求一次：key -> 在下游请求中的下标
+        Map<String, Integer> missIndex = new LinkedHashMap<>();
+        List<String> missTexts = new ArrayList<>();
+        String[] keys = new String[texts.size()];
+        for (int i = 0; i < texts.size(); i++) {
+            keys[i] = keyPrefix + digest(normalize(texts.get(i)));
+            StoredVector cached = cache.getIfPresent(keys[i]);
+            if (cached != null) {
+                vectors[i] = cached.toArray();
+            } else if (!missIndex.containsKey(keys[i])) {
+                missIndex.put(keys[i], missTexts.size());
+                missTexts.add(texts.get(i));
+            }
+        }
+
+        EmbeddingResponseMetadata metadata = new EmbeddingResponseMetadata();
+        if (!missTexts.isEmpty()) {
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(missTexts, request.getOptions()));
+            List<Embedding> results = response.getResults();
+            if (results.size() != missTexts.size()) {
+                throw new IllegalStateException("Embedding 返回数量与请求不一致: expected=" + missTexts.size()
+                        + ", actual=" + results.size());
+            }
+            metadata = response.getMetadata();
+            float[][] fetched = new float[missTexts.size()][];
+            for (int j = 0; j < results.size(); j++) {
+                Embedding embedding = results.get(j);
+                int index = embedding.getIndex() == null ? j : embedding.getIndex();
+                fetched[index] = embedding.getOutput();
+            }
+            for (Map.Entry<String, Integer> entry : missIndex.entrySet()) {
+                float[] vector = fetched[entry.getValue()];
+                if (vector != null) {
+                    cache.put(entry.getKey(), store(vector));
+                }
+            }
+            for (int i = 0; i < texts.size(); i++) {
+                if (vectors[i] == null) {
+                    vectors[i] = fetched[missIndex.get(keys[i])];
+                }
+            }
+            log.debug("Embedding cache partial miss, requested={}, misses={}", texts.size(), missTexts.size());
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+        return new EmbeddingResponse(embeddings, metadata);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public List<float[]> embed(List<Document> documents, EmbeddingOptions options, BatchingStrategy batchingStrategy) {
+        return delegate.embed(documents, options, batchingStrategy);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    public EmbeddingModel getDelegate() {
+        return delegate;
+    }
+
+    static String normalize(String text) {
+        return text == null ? "" : Normalizer.normalize(text, Normalizer.Form.NFKC);
+    }
+
+    private String keyPrefix(EmbeddingOptions options) {
+        if (options == null) {
+            return modelId + "|";
+        }
+        return modelId + "|" + (options.getModel() == null ? "" : options.getModel())
+                + "|" + (options.getDimensions() == null ? "" : options.getDimensions()) + "|";
+    }
+
+    private static String digest(String text) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private StoredVector store(float[] vector) {
+        if (!offHeap) {
+            return new HeapVector(vector.clone());
+        }
+        FloatBuffer buffer = ByteBuffer.allocateDirect(vector.length * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(vector);
+        return new OffHeapVector(buffer);
+    }
+
+    private interface StoredVector {
+        float[] toArray();
+
+        int bytes();
+    }
+
+    private record HeapVector(float[] vector) implements StoredVector {
+        @Override
+        public float[] toArray() {
+            return vector.clone();
+        }
+
+        @Override
+        public int bytes() {
+            return vector.length * Float.BYTES;
+        }
+    }
+
+    private record OffHeapVector(FloatBuffer buffer) implements StoredVector {
+        @Override
+        public float[] toArray() {
+            float[] vector = new float[buffer.capacity()];
+            buffer.duplicate().rewind().get(vector);
+            return vector;
+        }
+
+        @Override
+        public int bytes() {
+            return buffer.capacity() * Float.BYTES;
+        }
+    }
+}
@@ -0,0 +1,1046 @@
+package com.yupi.yuaiagent.rag;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
+import static com.yupi.yuaiagent.util.MappedBufferUtil.unmap;
+
+/**
+ * 进程内 HNSW 图索引的 VectorStore（SimpleVectorStore 的替代：检索不再逐条计算相似度）。
+ * <p>
+ * - 向量归一化后存放在堆外：配置 storageDir 时为内存映射文件 vectors.bin，否则为 direct buffer；
+ *   按固定大小分段映射，扩容只追加新段，不拷贝已有向量
+ * - 文档正文与元信息追加写入 documents.jsonl（add / delete 日志），每批 add 后落盘，即增量持久化；
+ *   重启时回放日志并从映射文件中的向量重建图，不需要重新调用 EmbeddingModel
+ * - 过滤条件支持 Filter.Expression 的 EQ/NE/GT/GTE/LT/LTE/IN/NIN/AND/OR/NOT；
+ *   带 conversation_id 等值条件时直接在该会话的分区内精确计算（会话内记忆量小），
+ *   其余过滤先走图检索并逐步放大 ef，仍不足 topK 时退化为全量精确检索
+ * - 删除为墓碑标记，被删节点仍参与图遍历以保持连通性；打开时失效记录超过阈值（且不少于存活文档数）则把
+ *   vectors.bin 与日志重写为只含存活文档，两个文件不会随删除 / 元信息更新无限增长
+ * - 图结构不落盘，每次打开都按 slot 顺序重新插入全部向量建图：启动耗时与文档数近似线性
+ *   （每个节点一次 efConstruction 规模的检索），大规模数据集需预留启动时间，可从 load 日志的 graphBuildMs 观察
+ */
+@Slf4j
+public class HnswVectorStore implements VectorStore, AutoCloseable {
+
+    private static final int MAGIC = 0x484E5357;
+    private static final int HEADER_BYTES = 16;
+    private static final int SEGMENT_BYTES = 16 << 20;
+    private static final int MAX_LEVEL = 16;
+    private static final String VECTOR_FILE = "vectors.bin";
+    private static final String JOURNAL_FILE = "documents.jsonl";
+    private static final String COMPACT_SUFFIX = ".compact";
+    private static final String CONVERSATION_KEY = "conversation_id";
+    private static final int DEFAULT_COMPACTION_MIN_STALE_RECORDS = 10_000;
+
+    private record StoredDocument(String id, String text, Map<String, Object> metadata) {
+    }
+
+    private record Candidate(int slot, float similarity) {
+    }
+
+    private record ReplayResult(long validBytes, int records) {
+    }
+
+    private static final Comparator<Candidate> BY_SIMILARITY = Comparator.comparingDouble(Candidate::similarity);
+
+    private final EmbeddingModel embeddingModel;
+    private final Path storageDir;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final int compactionMinStaleRecords;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private FileChannel channel;
+    private MappedByteBuffer header;
+    private BufferedWriter journal;
+    private final List<ByteBuffer> rawSegments = new ArrayList<>();
+    private final List<FloatBuffer> segments = new ArrayList<>();
+    private int dimensions;
+    private int segmentVectors;
+    private int count;
+
+    private final List<StoredDocument> documents = new ArrayList<>();
+    private final List<int[][]> links = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private final Map<String, Integer> slotById = new HashMap<>();
+    private final Map<String, List<Integer>> slotsByConversation = new HashMap<>();
+    private int entryPoint = -1;
+    private int topLevel = -1;
+
+    /**
+     * @param storageDir     持久化目录；为 null 时只保存在进程内（堆外 direct buffer）
+     * @param m              每层最大连接数（第 0 层为 2m）
+     * @param efConstruction 建图时的候选集大小
+     * @param efSearch       检索时的候选集大小（不小于 topK）
+     */
+    public HnswVectorStore(EmbeddingModel embeddingModel, Path storageDir, int m, int efConstruction, int efSearch) {
+        this(embeddingModel, storageDir, m, efConstruction, efSearch, DEFAULT_COMPACTION_MIN_STALE_RECORDS);
+    }
+
+    /**
+     * @param compactionMinStaleRecords 打开时失效日志记录（已删除 / 被覆盖的文档、元信息更新）达到该值且不少于存活文档数时压缩文件
+     */
+    public HnswVectorStore(EmbeddingModel embeddingModel, Path storageDir, int m, int efConstruction, int efSearch,
+                           int compactionMinStaleRecords) {
+        this.embeddingModel = Objects.requireNonNull(embeddingModel, "embeddingModel");
+        this.storageDir = storageDir;
+        this.m = Math.max(2, m);
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.efSearch = Math.max(1, efSearch);
+        this.levelMultiplier = 1.0 / Math.log(this.m);
+        this.compactionMinStaleRecords = Math.max(1, compactionMinStaleRecords);
+        if (storageDir != null) {
+            try {
+                load();
+            } catch (IOException e) {
+                throw new UncheckedIOException("加载 HNSW 向量存储失败: " + storageDir, e);
+            }
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count - deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 该会话是否还有未删除的文档（按会话分区直接判断，不做检索）。
+     */
+    public boolean containsConversation(String conversationId) {
+        lock.readLock().lock();
+        try {
+            return slotsByConversation.containsKey(conversationId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void add(List<Document> documentList) {
+        if (documentList == null || documentList.isEmpty()) {
+            return;
+        }
+        for (Document document : documentList) {
+            if (document.getText() == null) {
+                throw new IllegalArgumentException("HnswVectorStore 仅支持文本文档, id=" + document.getId());
+            }
+        }
+        // 走文档 embedding 接口（整批一次请求），与检索查询区分，不占用查询向量缓存
+        List<float[]> embeddings = embeddingModel.embed(documentList, EmbeddingOptionsBuilder.builder().build(),
+                documents -> List.of(documents));
+
+        lock.writeLock().lock();
+        try {
+            int firstSlot = count;
+            for (int i = 0; i < documentList.size(); i++) {
+                Document document = documentList.get(i);
+                float[] vector = normalize(embeddings.get(i));
+                int slot = append(new StoredDocument(document.getId(), document.getText(),
+                        new LinkedHashMap<>(document.getMetadata())), vector);
+                insert(slot, vector);
+            }
+            persistAdded(firstSlot, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException("HNSW 向量存储写入失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        if (idList == null || idList.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            List<String> removed = new ArrayList<>();
+            for (String id : idList) {
+                Integer slot = slotById.get(id);
+                if (slot != null) {
+                    tombstone(slot);
+                    removed.add(id);
+                }
+            }
+            persistDeleted(removed);
+        } catch (IOException e) {
+            throw new UncheckedIOException("HNSW 向量存储删除失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 原地合并文档元信息（不重新 embedding），用于重复记忆的重要度 / 时间戳刷新。
+     * conversation_id 决定会话分区，不允许通过此方法修改。
+     *
+     * @return 文档存在并已更新时返回 true
+     */
+    public boolean mergeMetadata(String id, Map<String, Object> patch) {
+        if (id == null || patch == null || patch.isEmpty()) {
+            return false;
+        }
+        Map<String, Object> changes = new LinkedHashMap<>(patch);
+        changes.remove(CONVERSATION_KEY);
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotById.get(id);
+            if (slot == null) {
+                return false;
+            }
+            applyMetadata(slot, changes);
+            persistMetadata(id, changes);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("HNSW 向量存储更新元信息失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        List<String> ids = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < count; slot++) {
+                if (!deleted.get(slot) && matches(filterExpression, documents.get(slot).metadata())) {
+                    ids.add(documents.get(slot).id());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        delete(ids);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] query = normalize(embeddingModel.embed(request.getQuery()));
+        int topK = Math.max(1, request.getTopK());
+        Filter.Expression filter = request.hasFilterExpression() ? request.getFilterExpression() : null;
+
+        lock.readLock().lock();
+        try {
+            if (count == 0 || entryPoint < 0) {
+                return List.of();
+            }
+            if (query.length != dimensions) {
+                throw new IllegalArgumentException("查询向量维度不匹配, expected=" + dimensions + ", actual=" + query.length);
+            }
+            String conversationId = conversationOf(filter);
+            List<Candidate> hits = conversationId != null
+                    ? exactSearch(query, slotsByConversation.getOrDefault(conversationId, List.of()), filter, topK)
+                    : graphSearch(query, filter, topK);
+
+            List<Document> results = new ArrayList<>(hits.size());
+            for (Candidate hit : hits) {
+                if (hit.similarity() < request.getSimilarityThreshold()) {
+                    break;
+                }
+                StoredDocument stored = documents.get(hit.slot());
+                Map<String, Object> metadata = new HashMap<>(stored.metadata());
+                metadata.put("distance", 1.0 - hit.similarity());
+                results.add(Document.builder()
+                        .id(stored.id())
+                        .text(stored.text())
+                        .metadata(metadata)
+                        .score((double) hit.similarity())
+                        .build());
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ---------------- 检索 ----------------
+
+    private List<Candidate> graphSearch(float[] query, Filter.Expression filter, int topK) {
+        int ef = Math.max(efSearch, topK);
+        while (ef < count) {
+            List<Candidate> matched = new ArrayList<>(topK);
+            for (Candidate candidate : searchFromTop(query, ef)) {
+                if (isVisible(candidate.slot(), filter)) {
+                    matched.add(candidate);
+                    if (matched.size() >= topK) {
+                        return matched;
+                    }
+                }
+            }
+            if (filter == null && deleted.isEmpty()) {
+                return matched;
+            }
+            ef *= 4;
+        }
+        return exactSearch(query, null, filter, topK);
+    }
+
+    /**
+     * 精确检索：slots 为 null 时遍历全部节点。
+     */
+    private List<Candidate> exactSearch(float[] query, Collection<Integer> slots, Filter.Expression filter, int topK) {
+        PriorityQueue<Candidate> heap = new PriorityQueue<>(topK + 1, BY_SIMILARITY);
+        if (slots == null) {
+            for (int slot = 0; slot < count; slot++) {
+                offerExact(heap, query, slot, filter, topK);
+            }
+        } else {
+            for (Integer slot : slots) {
+                offerExact(heap, query, slot, filter, topK);
+            }
+        }
+        List<Candidate> ordered = new ArrayList<>(heap);
+        ordered.sort(BY_SIMILARITY.reversed());
+        return ordered;
+    }
+
+    private void offerExact(PriorityQueue<Candidate> heap, float[] query, int slot, Filter.Expression filter, int topK) {
+        if (!isVisible(slot, filter)) {
+            return;
+        }
+        float similarity = similarity(query, slot);
+        if (heap.size() < topK) {
+            heap.add(new Candidate(slot, similarity));
+        } else if (similarity > heap.peek().similarity()) {
+            heap.poll();
+            heap.add(new Candidate(slot, similarity));
+        }
+    }
+
+    private boolean isVisible(int slot, Filter.Expression filter) {
+        return !deleted.get(slot) && (filter == null || matches(filter, documents.get(slot).metadata()));
+    }
+
+    private List<Candidate> searchFromTop(float[] query, int ef) {
+        int current = entryPoint;
+        for (int level = topLevel; level > 0; level--) {
+            current = greedyClosest(query, current, level);
+        }
+        return searchLayer(query, current, ef, 0);
+    }
+
+    // ---------------- HNSW 建图 ----------------
+
+    private void insert(int slot, float[] vector) {
+        int level = randomLevel();
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[maxConnections(l) + 1];
+        }
+        links.set(slot, nodeLinks);
+        if (entryPoint < 0) {
+            entryPoint = slot;
+            topLevel = level;
+            return;
+        }
+
+        int current = entryPoint;
+        for (int l = topLevel; l > level; l--) {
+            current = greedyClosest(vector, current, l);
+        }
+        for (int l = Math.min(level, topLevel); l >= 0; l--) {
+            List<Candidate> found = searchLayer(vector, current, efConstruction, l);
+            for (Candidate neighbor : selectNeighbors(found, m)) {
+                link(slot, neighbor.slot(), l);
+                link(neighbor.slot(), slot, l);
+            }
+            current = found.get(0).slot();
+        }
+        if (level > topLevel) {
+            topLevel = level;
+            entryPoint = slot;
+        }
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float best = similarity(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbors = links.get(current)[level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                float s = similarity(query, neighbors[i]);
+                if (s > best) {
+                    best = s;
+                    current = neighbors[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在单层内做 best-first 搜索，返回按相似度降序的 ef 个结果。
+     */
+    private List<Candidate> searchLayer(float[] query, int entry, int ef, int level) {
+        VisitedSet visited = new VisitedSet(ef * maxConnections(level));
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(BY_SIMILARITY.reversed());
+        PriorityQueue<Candidate> results = new PriorityQueue<>(ef + 1, BY_SIMILARITY);
+        Candidate start = new Candidate(entry, similarity(query, entry));
+        visited.add(entry);
+        frontier.add(start);
+        results.add(start);
+
+        while (!frontier.isEmpty()) {
+            Candidate closest = frontier.poll();
+            if (results.size() >= ef && closest.similarity() < results.peek().similarity()) {
+                break;
+            }
+            int[] neighbors = links.get(closest.slot())[level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (!visited.add(neighbor)) {
+                    continue;
+                }
+                float s = similarity(query, neighbor);
+                if (results.size() < ef || s > results.peek().similarity()) {
+                    Candidate candidate = new Candidate(neighbor, s);
+                    frontier.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        List<Candidate> ordered = new ArrayList<>(results);
+        ordered.sort(BY_SIMILARITY.reversed());
+        return ordered;
+    }
+
+    /**
+     * 启发式选邻居：候选只有在比已选邻居更接近目标时才保留，避免邻居扎堆在同一簇里。
+     * 不足 max 个时用剩余的最近候选补齐。
+     */
+    private List<Candidate> selectNeighbors(List<Candidate> ordered, int max) {
+        List<Candidate> selected = new ArrayList<>(max);
+        List<float[]> selectedVectors = new ArrayList<>(max);
+        List<Candidate> skipped = new ArrayList<>();
+        for (Candidate candidate : ordered) {
+            if (selected.size() >= max) {
+                break;
+            }
+            boolean diverse = true;
+            for (float[] chosen : selectedVectors) {
+                if (similarity(chosen, candidate.slot()) > candidate.similarity()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+                selectedVectors.add(vector(candidate.slot()));
+            } else {
+                skipped.add(candidate);
+            }
+        }
+        for (int i = 0; i < skipped.size() && selected.size() < max; i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected;
+    }
+
+    private void link(int from, int to, int level) {
+        int[] neighbors = links.get(from)[level];
+        int size = neighbors[0];
+        if (size < neighbors.length - 1) {
+            neighbors[size + 1] = to;
+            neighbors[0] = size + 1;
+            return;
+        }
+        float[] base = vector(from);
+        List<Candidate> ordered = new ArrayList<>(size + 1);
+        for (int i = 1; i <= size; i++) {
+            ordered.add(new Candidate(neighbors[i], similarity(base, neighbors[i])));
+        }
+        ordered.add(new Candidate(to, similarity(base, to)));
+        ordered.sort(BY_SIMILARITY.reversed());
+        List<Candidate> kept = selectNeighbors(ordered, neighbors.length - 1);
+        for (int i = 0; i < kept.size(); i++) {
+            neighbors[i + 1] = kept.get(i).slot();
+        }
+        neighbors[0] = kept.size();
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? 2 * m : m;
+    }
+
+    private int randomLevel() {
+        double r = 1.0 - random.nextDouble();
+        return Math.min(MAX_LEVEL, (int) Math.floor(-Math.log(r) * levelMultiplier));
+    }
+
+    // ---------------- 文档与向量存储 ----------------
+
+    private int append(StoredDocument document, float[] vector) throws IOException {
+        ensureDimensions(vector.length);
+        int slot = count;
+        ensureSegment(slot);
+        FloatBuffer segment = segments.get(slot / segmentVectors);
+        segment.put((slot % segmentVectors) * dimensions, vector);
+
+        Integer previous = slotById.get(document.id());
+        if (previous != null) {
+            tombstone(previous);
+        }
+        documents.add(document);
+        links.add(null);
+        register(slot, document);
+        count++;
+        return slot;
+    }
+
+    private void register(int slot, StoredDocument document) {
+        slotById.put(document.id(), slot);
+        Object conversationId = document.metadata().get(CONVERSATION_KEY);
+        if (conversationId != null) {
+            slotsByConversation.computeIfAbsent(String.valueOf(conversationId), k -> new ArrayList<>()).add(slot);
+        }
+    }
+
+    private void applyMetadata(int slot, Map<String, Object> changes) {
+        StoredDocument document = documents.get(slot);
+        Map<String, Object> metadata = new LinkedHashMap<>(document.metadata());
+        metadata.putAll(changes);
+        documents.set(slot, new StoredDocument(document.id(), document.text(), metadata));
+    }
+
+    private void tombstone(int slot) {
+        deleted.set(slot);
+        StoredDocument document = documents.get(slot);
+        slotById.remove(document.id(), slot);
+        Object conversationId = document.metadata().get(CONVERSATION_KEY);
+        if (conversationId != null) {
+            List<Integer> slots = slotsByConversation.get(String.valueOf(conversationId));
+            if (slots != null) {
+                slots.remove(Integer.valueOf(slot));
+                if (slots.isEmpty()) {
+                    slotsByConversation.remove(String.valueOf(conversationId));
+                }
+            }
+        }
+    }
+
+    private void ensureDimensions(int length) throws IOException {
+        if (dimensions == 0) {
+            dimensions = length;
+            segmentVectors = Math.max(1, SEGMENT_BYTES / (dimensions * Float.BYTES));
+            if (channel != null) {
+                header.putInt(0, MAGIC).putInt(4, dimensions).putInt(8, 0);
+            }
+        } else if (dimensions != length) {
+            throw new IllegalArgumentException("向量维度不匹配, expected=" + dimensions + ", actual=" + length);
+        }
+    }
+
+    private void ensureSegment(int slot) throws IOException {
+        int index = slot / segmentVectors;
+        while (segments.size() <= index) {
+            long segmentBytes = (long) segmentVectors * dimensions * Float.BYTES;
+            ByteBuffer raw = channel == null
+                    ? ByteBuffer.allocateDirect((int) segmentBytes)
+                    : channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + segments.size() * segmentBytes, segmentBytes);
+            raw.order(ByteOrder.LITTLE_ENDIAN);
+            rawSegments.add(raw);
+            segments.add(raw.asFloatBuffer());
+        }
+    }
+
+    private float similarity(float[] query, int slot) {
+        FloatBuffer segment = segments.get(slot / segmentVectors);
+        int base = (slot % segmentVectors) * dimensions;
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            sum += query[i] * segment.get(base + i);
+        }
+        return sum;
+    }
+
+    private float[] vector(int slot) {
+        float[] vector = new float[dimensions];
+        segments.get(slot / segmentVectors).get((slot % segmentVectors) * dimensions, vector);
+        return vector;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] normalized = vector.clone();
+        if (norm == 0) {
+            return normalized;
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < normalized.length; i++) {
+            normalized[i] *= inv;
+        }
+        return normalized;
+    }
+
+    // ---------------- 持久化 ----------------
+
+    private void load() throws IOException {
+        long startMs = System.currentTimeMillis();
+        Files.createDirectories(storageDir);
+        recoverCompaction();
+        int journalRecords = open();
+        int staleRecords = journalRecords - (count - deleted.cardinality());
+        boolean compacted = staleRecords >= Math.max(compactionMinStaleRecords, count - deleted.cardinality());
+        if (compacted) {
+            compact();
+        }
+        long graphStartMs = System.currentTimeMillis();
+        for (int slot = 0; slot < count; slot++) {
+            insert(slot, vector(slot));
+        }
+        journal = Files.newBufferedWriter(storageDir.resolve(JOURNAL_FILE), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        log.info("[HnswVectorStore-load] {}",
+                kv("path", storageDir,
+                        "dimensions", dimensions,
+                        "slots", count,
+                        "liveDocuments", count - deleted.cardinality(),
+                        "staleRecords", staleRecords,
+                        "compacted", compacted,
+                        "graphBuildMs", System.currentTimeMillis() - graphStartMs,
+                        "costMs", System.currentTimeMillis() - startMs));
+    }
+
+    /**
+     * 映射向量文件并回放文档日志，日志截断到最后一条完整记录之后。
+     *
+     * @return 回放的有效日志记录数
+     */
+    private int open() throws IOException {
+        channel = FileChannel.open(storageDir.resolve(VECTOR_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean existing = channel.size() >= HEADER_BYTES;
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        int persistedCount = 0;
+        if (existing && header.getInt(4) > 0) {
+            if (header.getInt(0) != MAGIC) {
+                throw new IllegalStateException("不是 HNSW 向量文件: " + storageDir.resolve(VECTOR_FILE));
+            }
+            persistedCount = header.getInt(8);
+            dimensions = header.getInt(4);
+            segmentVectors = Math.max(1, SEGMENT_BYTES / (dimensions * Float.BYTES));
+        }
+
+        Path journalPath = storageDir.resolve(JOURNAL_FILE);
+        ReplayResult replayed = new ReplayResult(0, 0);
+        if (Files.exists(journalPath) && persistedCount > 0) {
+            replayed = replay(journalPath, persistedCount);
+        }
+        // 写了一半的末行必须截掉，否则之后追加的记录会接在损坏行后面，下次重启回放到损坏行即停止而丢失
+        if (Files.exists(journalPath)) {
+            try (FileChannel journalChannel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+                if (journalChannel.size() > replayed.validBytes()) {
+                    log.warn("[HnswVectorStore-open] {}", kv("status", "truncate_journal_tail",
+                            "path", journalPath, "size", journalChannel.size(), "validBytes", replayed.validBytes()));
+                    journalChannel.truncate(replayed.validBytes());
+                    journalChannel.force(true);
+                }
+            }
+        }
+        header.putInt(8, count);
+        return replayed.records();
+    }
+
+    /**
+     * 回放文档日志：只接受向量已落盘（slot < persistedCount）的 add；遇到写了一半（无法解析或没有换行结尾）的行即停止。
+     */
+    private ReplayResult replay(Path journalPath, int persistedCount) throws IOException {
+        long offset = 0;
+        long validBytes = 0;
+        int records = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(journalPath), 1 << 16)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                String text = line.toString(StandardCharsets.UTF_8);
+                line.reset();
+                if (!text.isBlank()) {
+                    JsonNode node;
+                    try {
+                        node = objectMapper.readTree(text);
+                    } catch (IOException e) {
+                        log.warn("[HnswVectorStore-replay] {}", kv("status", "skip_corrupted_tail", "path", journalPath));
+                        break;
+                    }
+                    apply(node, persistedCount);
+                    records++;
+                }
+                validBytes = offset;
+            }
+        }
+        return new ReplayResult(validBytes, records);
+    }
+
+    private void apply(JsonNode node, int persistedCount) throws IOException {
+        if ("delete".equals(node.path("op").asText())) {
+            Integer slot = slotById.get(node.path("id").asText());
+            if (slot != null) {
+                tombstone(slot);
+            }
+            return;
+        }
+        if ("metadata".equals(node.path("op").asText())) {
+            Integer slot = slotById.get(node.path("id").asText());
+            if (slot != null) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> changes = objectMapper.convertValue(node.path("metadata"), LinkedHashMap.class);
+                if (changes != null) {
+                    changes.remove(CONVERSATION_KEY);
+                    applyMetadata(slot, changes);
+                }
+            }
+            return;
+        }
+        int slot = node.path("slot").asInt(-1);
+        if (slot != count || slot >= persistedCount) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> metadata = objectMapper.convertValue(node.path("metadata"), LinkedHashMap.class);
+        StoredDocument document = new StoredDocument(node.path("id").asText(), node.path("text").asText(),
+                metadata == null ? new LinkedHashMap<>() : metadata);
+        ensureSegment(slot);
+        Integer previous = slotById.get(document.id());
+        if (previous != null) {
+            tombstone(previous);
+        }
+        documents.add(document);
+        links.add(null);
+        register(slot, document);
+        count++;
+    }
+
+    /**
+     * 压缩：只保留存活文档，向量按新 slot 连续写入 vectors.bin 临时文件，日志每个文档一条合并了元信息的 add。
+     * 两个临时文件都落盘后先替换 vectors.bin 再替换日志；两次替换之间崩溃时由 {@link #recoverCompaction()} 补完。
+     */
+    private void compact() throws IOException {
+        Path vectorTmp = storageDir.resolve(VECTOR_FILE + COMPACT_SUFFIX);
+        Path journalTmp = storageDir.resolve(JOURNAL_FILE + COMPACT_SUFFIX);
+        int live = count - deleted.cardinality();
+        int vectorBytes = dimensions * Float.BYTES;
+        try (FileChannel out = FileChannel.open(vectorTmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            head.putInt(0, MAGIC).putInt(4, dimensions).putInt(8, live);
+            out.write(head, 0);
+            try (BufferedWriter writer = Files.newBufferedWriter(journalTmp, StandardCharsets.UTF_8)) {
+                ByteBuffer buffer = ByteBuffer.allocate(vectorBytes).order(ByteOrder.LITTLE_ENDIAN);
+                int target = 0;
+                for (int slot = deleted.nextClearBit(0); slot < count; slot = deleted.nextClearBit(slot + 1)) {
+                    buffer.clear();
+                    buffer.asFloatBuffer().put(vector(slot));
+                    out.write(buffer, HEADER_BYTES + (long) target * vectorBytes);
+                    writer.write(addRecord(target, documents.get(slot)));
+                    writer.newLine();
+                    target++;
+                }
+            }
+            out.force(true);
+        }
+        try (FileChannel journalChannel = FileChannel.open(journalTmp, StandardOpenOption.WRITE)) {
+            journalChannel.force(true);
+        }
+
+        for (ByteBuffer raw : rawSegments) {
+            unmap((MappedByteBuffer) raw);
+        }
+        unmap(header);
+        channel.close();
+        Files.move(vectorTmp, storageDir.resolve(VECTOR_FILE), StandardCopyOption.ATOMIC_MOVE);
+        Files.move(journalTmp, storageDir.resolve(JOURNAL_FILE), StandardCopyOption.ATOMIC_MOVE);
+
+        documents.clear();
+        links.clear();
+        deleted.clear();
+        slotById.clear();
+        slotsByConversation.clear();
+        rawSegments.clear();
+        segments.clear();
+        count = 0;
+        open();
+    }
+
+    /**
+     * 处理上次压缩中断留下的临时文件：只剩日志临时文件说明 vectors.bin 已替换，补完日志替换；否则旧文件完好，丢弃临时文件。
+     */
+    private void recoverCompaction() throws IOException {
+        Path vectorTmp = storageDir.resolve(VECTOR_FILE + COMPACT_SUFFIX);
+        Path journalTmp = storageDir.resolve(JOURNAL_FILE + COMPACT_SUFFIX);
+        if (Files.exists(journalTmp) && !Files.exists(vectorTmp)) {
+            log.warn("[HnswVectorStore-recoverCompaction] {}", kv("status", "finish_journal_swap", "path", storageDir));
+            Files.move(journalTmp, storageDir.resolve(JOURNAL_FILE), StandardCopyOption.ATOMIC_MOVE);
+            return;
+        }
+        Files.deleteIfExists(vectorTmp);
+        Files.deleteIfExists(journalTmp);
+    }
+
+    private void persistAdded(int fromSlot, int toSlot) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        for (int index = fromSlot / segmentVectors; index <= (toSlot - 1) / segmentVectors; index++) {
+            ((MappedByteBuffer) rawSegments.get(index)).force();
+        }
+        header.putInt(8, count);
+        header.force();
+        for (int slot = fromSlot; slot < toSlot; slot++) {
+            journal.write(addRecord(slot, documents.get(slot)));
+            journal.newLine();
+        }
+        journal.flush();
+    }
+
+    private String addRecord(int slot, StoredDocument document) throws IOException {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("op", "add");
+        node.put("slot", slot);
+        node.put("id", document.id());
+        node.put("text", document.text());
+        node.set("metadata", objectMapper.valueToTree(document.metadata()));
+        return objectMapper.writeValueAsString(node);
+    }
+
+    private void persistDeleted(List<String> ids) throws IOException {
+        if (channel == null || ids.isEmpty()) {
+            return;
+        }
+        for (String id : ids) {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("op", "delete");
+            node.put("id", id);
+            journal.write(objectMapper.writeValueAsString(node));
+            journal.newLine();
+        }
+        journal.flush();
+    }
+
+    private void persistMetadata(String id, Map<String, Object> changes) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("op", "metadata");
+        node.put("id", id);
+        node.set("metadata", objectMapper.valueToTree(changes));
+        journal.write(objectMapper.writeValueAsString(node));
+        journal.newLine();
+        journal.flush();
+    }
+
+    // ---------------- 元信息过滤 ----------------
+
+    /**
+     * 从 AND 链中取出 conversation_id 的等值条件（可走会话分区），没有时返回 null。
+     */
+    private static String conversationOf(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return conversationOf(group.content());
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            return null;
+        }
+        if (expression.type() == Filter.ExpressionType.AND) {
+            String left = conversationOf(expression.left());
+            return left != null ? left : conversationOf(expression.right());
+        }
+        if (expression.type() == Filter.ExpressionType.EQ
+                && expression.left() instanceof Filter.Key key
+                && CONVERSATION_KEY.equals(unquote(key.key()))
+                && expression.right() instanceof Filter.Value value
+                && value.value() != null) {
+            return String.valueOf(value.value());
+        }
+        return null;
+    }
+
+    static boolean matches(Filter.Operand operand, Map<String, Object> metadata) {
+        if (operand instanceof Filter.Group group) {
+            return matches(group.content(), metadata);
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            throw new IllegalArgumentException("不支持的过滤条件: " + operand);
+        }
+        return switch (expression.type()) {
+            case AND -> matches(expression.left(), metadata) && matches(expression.right(), metadata);
+            case OR -> matches(expression.left(), metadata) || matches(expression.right(), metadata);
+            case NOT -> !matches(expression.left(), metadata);
+            default -> compare(expression, metadata);
+        };
+    }
+
+    private static boolean compare(Filter.Expression expression, Map<String, Object> metadata) {
+        if (!(expression.left() instanceof Filter.Key key) || !(expression.right() instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("不支持的过滤条件: " + expression);
+        }
+        Object actual = metadata.get(unquote(key.key()));
+        Object expected = value.value();
+        return switch (expression.type()) {
+            case EQ -> valueEquals(actual, expected);
+            case NE -> !valueEquals(actual, expected);
+            case GT -> actual != null && compareValues(actual, expected) > 0;
+            case GTE -> actual != null && compareValues(actual, expected) >= 0;
+            case LT -> actual != null && compareValues(actual, expected) < 0;
+            case LTE -> actual != null && compareValues(actual, expected) <= 0;
+            case IN -> expected instanceof Collection<?> values && values.stream().anyMatch(v -> valueEquals(actual, v));
+            case NIN -> !(expected instanceof Collection<?> values) || values.stream().noneMatch(v -> valueEquals(actual, v));
+            default -> throw new IllegalArgumentException("不支持的过滤操作: " + expression.type());
+        };
+    }
+
+    private static boolean valueEquals(Object actual, Object expected) {
+        if (actual == null || expected == null) {
+            return actual == expected;
+        }
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return Double.compare(a.doubleValue(), b.doubleValue()) == 0;
+        }
+        return String.valueOf(actual).equals(String.valueOf(expected));
+    }
+
+    private static int compareValues(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return Double.compare(a.doubleValue(), b.doubleValue());
+        }
+        return String.valueOf(actual).compareTo(String.valueOf(expected));
+    }
+
+    private static String unquote(String key) {
+        if (key.length() >= 2 && (key.charAt(0) == '"' || key.charAt(0) == '\'') && key.charAt(key.length() - 1) == key.charAt(0)) {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+
+    /**
+     * 单次图搜索的已访问集合：开放寻址的 int 哈希集合，大小与实际访问的节点数相关，
+     * 避免每次检索都按总节点数分配 BitSet（百万级时每次约 125KB）。
+     */
+    private static final class VisitedSet {
+
+        private int[] slots;
+        private int size;
+
+        VisitedSet(int expected) {
+            slots = new int[Integer.highestOneBit(Math.max(16, expected) * 2 - 1) << 1];
+            Arrays.fill(slots, -1);
+        }
+
+        boolean add(int value) {
+            if (size * 2 >= slots.length) {
+                rehash();
+            }
+            int mask = slots.length - 1;
+            int i = mix(value) & mask;
+            while (slots[i] != -1) {
+                if (slots[i] == value) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            slots[i] = value;
+            size++;
+            return true;
+        }
+
+        private void rehash() {
+            int[] old = slots;
+            slots = new int[old.length << 1];
+            Arrays.fill(slots, -1);
+            size = 0;
+            for (int value : old) {
+                if (value != -1) {
+                    add(value);
+                }
+            }
+        }
+
+        private static int mix(int value) {
+            int h = value * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
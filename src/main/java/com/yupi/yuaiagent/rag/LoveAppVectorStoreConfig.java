@@ -1,5 +1,6 @@
 package com.yupi.yuaiagent.rag;
 
+import cn.hutool.core.util.StrUtil;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
@@ -15,6 +16,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.nio.file.Path;
 import java.util.List;
 
 import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
@@ -65,6 +67,21 @@ public class LoveAppVectorStoreConfig {
     @Value("${app.rag.vectorstore.pgvector.max-document-batch-size:10000}")
     private int maxDocumentBatchSize;
 
+    /**
+     * store=hnsw 时的持久化目录；为空则只保存在进程内
+     */
+    @Value("${app.rag.vectorstore.hnsw.path:}")
+    private String hnswPath;
+
+    @Value("${app.rag.vectorstore.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${app.rag.vectorstore.hnsw.ef-construction:100}")
+    private int hnswEfConstruction;
+
+    @Value("${app.rag.vectorstore.hnsw.ef-search:64}")
+    private int hnswEfSearch;
+
     @Resource
     private LoveAppDocumentLoader loveAppDocumentLoader;
 
@@ -144,6 +161,16 @@ public class LoveAppVectorStoreConfig {
                     .maxDocumentBatchSize(maxDocumentBatchSize)
                     .build();
         }
+        if ("hnsw".equalsIgnoreCase(normalizedStoreType)) {
+            log.info("[LoveAppVectorStoreConfig-createVectorStore] {}",
+                    kv("storeType", "hnsw",
+                            "path", hnswPath,
+                            "m", hnswM,
+                            "efConstruction", hnswEfConstruction,
+                            "efSearch", hnswEfSearch));
+            return new HnswVectorStore(embeddingModel, StrUtil.isBlank(hnswPath) ? null : Path.of(hnswPath.trim()),
+                    hnswM, hnswEfConstruction, hnswEfSearch);
+        }
         if ("pgvector".equalsIgnoreCase(normalizedStoreType) && jdbcTemplate == null) {
             log.warn("[LoveAppVectorStoreConfig-createVectorStore] {}",
                     kv("storeType", "pgvector", "status", "fallback_to_simple", "reason", "jdbcTemplate_absent"));
@@ -28,6 +28,9 @@ public final class RagSettingUtil {
         if (StrUtil.equalsAnyIgnoreCase(storeType, "pgvector")) {
             return "pgvector";
         }
+        if (StrUtil.equalsAnyIgnoreCase(storeType, "hnsw")) {
+            return "hnsw";
+        }
         return "simple";
     }
 }
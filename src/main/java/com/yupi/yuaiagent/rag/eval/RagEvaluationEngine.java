@@ -2,6 +2,7 @@ package com.yupi.yuaiagent.rag.eval;
 
 import cn.hutool.core.util.StrUtil;
 import com.yupi.yuaiagent.rag.RagSettingUtil;
+import com.yupi.yuaiagent.util.TextTokenizer;
 import org.springframework.ai.document.Document;
 
 import java.util.ArrayList;
@@ -108,14 +109,15 @@ public class RagEvaluationEngine {
         if (docs == null || docs.isEmpty()) {
             return new HitResult(false, "");
         }
-        String joinedText = docs.stream()
+        String loweredText = docs.stream()
                 .filter(Objects::nonNull)
                 .map(Document::getText)
                 .filter(StrUtil::isNotBlank)
-                .collect(Collectors.joining("\n"));
+                .collect(Collectors.joining("\n"))
+                .toLowerCase();
 
         List<String> matched = keywords.stream()
-                .filter(keyword -> containsIgnoreCase(joinedText, keyword))
+                .filter(keyword -> matchesKeyword(loweredText, keyword))
                 .toList();
         boolean hit = matchMode == MatchMode.ALL
                 ? matched.size() == keywords.size()
@@ -123,11 +125,16 @@ public class RagEvaluationEngine {
         return new HitResult(hit, String.join("|", matched));
     }
 
-    private boolean containsIgnoreCase(String text, String keyword) {
-        if (text == null || keyword == null) {
+    /**
+     * 关键词原样包含即命中；否则按分词后的词全部出现判定（兼容“预算300”与“预算 300”这类空白/标点差异）。
+     */
+    private boolean matchesKeyword(String loweredText, String keyword) {
+        if (loweredText == null || keyword == null) {
             return false;
         }
-        return StrUtil.containsIgnoreCase(text, keyword);
+        String loweredKeyword = keyword.toLowerCase();
+        return loweredText.contains(loweredKeyword)
+                || TextTokenizer.containsAll(loweredText, TextTokenizer.tokenize(loweredKeyword));
     }
 
     private List<String> buildPreview(List<Document> docs, int limit, int maxChars) {
@@ -0,0 +1,55 @@
+package com.yupi.yuaiagent.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+import static com.yupi.yuaiagent.util.LogFieldUtil.kv;
+
+/**
+ * 内存映射缓冲区工具
+ */
+@Slf4j
+public final class MappedBufferUtil {
+
+    /**
+     * Unsafe.invokeCleaner：JDK 没有公开的解除映射 API，不可用时退化为等待 GC 回收映射
+     */
+    private static final MethodHandle INVOKE_CLEANER = lookupInvokeCleaner();
+
+    private MappedBufferUtil() {
+    }
+
+    /**
+     * 立即解除映射（释放文件句柄，Windows 下之后才能删除 / 替换文件）。调用后不得再访问该 buffer。
+     */
+    public static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null || INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            log.debug("解除文件映射失败，等待 GC 回收", e);
+        }
+    }
+
+    private static MethodHandle lookupInvokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (Throwable e) {
+            log.warn("[MappedBufferUtil-unmap] {}", kv("status", "invoke_cleaner_unavailable"), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.yupi.yuaiagent.util;
+
+import java.util.List;
+
+/**
+ * 64 位 SimHash 文本指纹（近似重复检测）。
+ * <p>
+ * 以 {@link TextTokenizer} 的分词结果（汉字 bigram + 英文/数字词）为特征，每个特征哈希到 64 位后按位投票；
+ * 两段文本指纹的汉明距离越小越相似，措辞略有差异的同一句话通常在 3 以内。
+ */
+public final class SimHash {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SimHash() {
+    }
+
+    public static long fingerprint(String text) {
+        return fingerprint(TextTokenizer.tokenize(text));
+    }
+
+    public static long fingerprint(List<String> tokens) {
+        if (tokens == null || tokens.isEmpty()) {
+            return 0L;
+        }
+        int[] votes = new int[64];
+        for (String token : tokens) {
+            long hash = hash64(token);
+            for (int bit = 0; bit < 64; bit++) {
+                votes[bit] += ((hash >>> bit) & 1L) == 1L ? 1 : -1;
+            }
+        }
+        long fingerprint = 0L;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    public static int hammingDistance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * FNV-1a 后再做一次 murmur3 finalizer 混合，使短 token 的哈希位分布更均匀。
+     */
+    private static long hash64(String token) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < token.length(); i++) {
+            hash ^= token.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
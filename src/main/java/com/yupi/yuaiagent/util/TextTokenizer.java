@@ -0,0 +1,181 @@
+package com.yupi.yuaiagent.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 中英文混排文本的轻量分词工具（记忆 rerank / 结构化记忆检索 / RAG 评测关键词匹配共用）。
+ * <p>
+ * 单次遍历字符，不使用正则：
+ * - 连续汉字按相邻二字（bigram）切分，单个汉字保留为一个词
+ * - 连续字母 / 数字作为一个词，统一小写
+ * - 空白、标点视为分隔符
+ * - “和 / 与 / 及”只在两侧各有至少两个汉字、且不是常见词词首时视为分隔符（“预算和纪念日”），
+ *   其余情况按普通汉字处理（“和好”“及时”“与其”“我们和好了”）
+ * 结果去重并保持出现顺序。
+ * <p>
+ * 示例：tokenize("预算300 咖啡馆") -> [预算, 300, 咖啡, 啡馆]
+ */
+public final class TextTokenizer {
+
+    /**
+     * 连接两个汉字词时视为分隔符的连接词
+     */
+    private static final String CONNECTOR_CHARS = "和与及";
+
+    /**
+     * 连接词两侧至少各有这么多个汉字，才视为分隔符
+     */
+    private static final int MIN_CONNECTED_WORD_LENGTH = 2;
+
+    /**
+     * 以连接词开头的常见词，出现时不在连接词处切开
+     */
+    private static final Set<String> CONNECTOR_WORDS = Set.of(
+            "和好", "和解", "和睦", "和谐", "和平", "和气", "及时", "及早", "及格", "与其", "与众");
+
+    private TextTokenizer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return List.of();
+        }
+        List<String> tokens = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        StringBuilder word = new StringBuilder();
+        int hanStart = -1;
+        int length = text.length();
+        for (int i = 0; i < length; ) {
+            int cp = text.codePointAt(i);
+            int next = i + Character.charCount(cp);
+            if (isHan(cp)) {
+                flushWord(word, tokens, seen);
+                if (hanStart < 0) {
+                    hanStart = i;
+                }
+            } else {
+                flushHan(text, hanStart, i, tokens, seen);
+                hanStart = -1;
+                if (Character.isLetterOrDigit(cp)) {
+                    word.appendCodePoint(Character.toLowerCase(cp));
+                } else {
+                    flushWord(word, tokens, seen);
+                }
+            }
+            i = next;
+        }
+        flushHan(text, hanStart, length, tokens, seen);
+        flushWord(word, tokens, seen);
+        return tokens;
+    }
+
+    /**
+     * content 是否包含 token 列表中的每一个词（content 需已小写）。
+     */
+    public static boolean containsAll(String loweredContent, List<String> tokens) {
+        if (loweredContent == null || tokens == null || tokens.isEmpty()) {
+            return false;
+        }
+        for (String token : tokens) {
+            if (!loweredContent.contains(token)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 命中的词数 / 总词数（content 需已小写）。
+     */
+    public static double hitRatio(String loweredContent, List<String> tokens) {
+        if (loweredContent == null || loweredContent.isEmpty() || tokens == null || tokens.isEmpty()) {
+            return 0.0;
+        }
+        int hit = 0;
+        for (String token : tokens) {
+            if (loweredContent.contains(token)) {
+                hit++;
+            }
+        }
+        return (double) hit / tokens.size();
+    }
+
+    private static boolean isHan(int cp) {
+        return Character.UnicodeScript.of(cp) == Character.UnicodeScript.HAN;
+    }
+
+    /**
+     * 在两侧各有至少 {@link #MIN_CONNECTED_WORD_LENGTH} 个汉字、且不构成 {@link #CONNECTOR_WORDS} 的连接词处
+     * 切开汉字串，各段分别切分 bigram；
+     * 只由连接词组成的汉字串（如 "coffee 和 tea" 中的“和”）整体视为分隔符。
+     */
+    private static void flushHan(String text, int start, int end, List<String> tokens, Set<String> seen) {
+        if (start < 0 || end <= start) {
+            return;
+        }
+        int total = text.codePointCount(start, end);
+        boolean connectorsOnly = true;
+        int segmentStart = start;
+        int segmentLength = 0;
+        int index = 0;
+        for (int i = start; i < end; index++) {
+            int cp = text.codePointAt(i);
+            int next = i + Character.charCount(cp);
+            boolean connector = CONNECTOR_CHARS.indexOf(cp) >= 0;
+            connectorsOnly &= connector;
+            if (connector && segmentLength >= MIN_CONNECTED_WORD_LENGTH
+                    && total - index - 1 >= MIN_CONNECTED_WORD_LENGTH
+                    && !CONNECTOR_WORDS.contains(text.substring(i, next + Character.charCount(text.codePointAt(next))))) {
+                flushHanSegment(text, segmentStart, i, tokens, seen);
+                segmentStart = next;
+                segmentLength = 0;
+            } else {
+                segmentLength++;
+            }
+            i = next;
+        }
+        if (!connectorsOnly) {
+            flushHanSegment(text, segmentStart, end, tokens, seen);
+        }
+    }
+
+    private static void flushHanSegment(String text, int start, int end, List<String> tokens, Set<String> seen) {
+        if (end <= start) {
+            return;
+        }
+        int first = text.codePointAt(start);
+        int firstEnd = start + Character.charCount(first);
+        if (firstEnd >= end) {
+            add(text.substring(start, end), tokens, seen);
+            return;
+        }
+        int i = start;
+        while (i < end) {
+            int cp = text.codePointAt(i);
+            int second = i + Character.charCount(cp);
+            if (second >= end) {
+                break;
+            }
+            int bigramEnd = second + Character.charCount(text.codePointAt(second));
+            add(text.substring(i, bigramEnd), tokens, seen);
+            i = second;
+        }
+    }
+
+    private static void flushWord(StringBuilder word, List<String> tokens, Set<String> seen) {
+        if (word.isEmpty()) {
+            return;
+        }
+        add(word.toString(), tokens, seen);
+        word.setLength(0);
+    }
+
+    private static void add(String token, List<String> tokens, Set<String> seen) {
+        if (seen.add(token)) {
+            tokens.add(token);
+        }
+    }
+}
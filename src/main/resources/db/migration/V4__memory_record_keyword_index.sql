@@ -0,0 +1,19 @@
+-- 结构化中期记忆关键词检索索引：
+-- 1) pg_trgm GIN：只对 3 个字符及以上的 ILIKE '%词%' 生效（英文单词、数字、较长的词）；
+--    TextTokenizer 产出的二字汉字词提取不出 trigram，用不上该索引，且汉字能否参与 trigram 取决于库的 LC_CTYPE
+-- 2) tsvector GIN：'simple' 配置只按空格 / 标点切词，不做中文分词，只覆盖空格分词的文本
+-- 中文查询主要依靠 (conversation_id, created_at) 索引先按会话过滤，再在该会话的记录中匹配
+-- memory_record_v2 由 docs/sql/memory_v2_init.sql 手动创建，表不存在时跳过
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+DO $$
+    BEGIN
+        IF EXISTS (SELECT 1 FROM information_schema.tables WHERE table_name = 'memory_record_v2') THEN
+            CREATE INDEX IF NOT EXISTS idx_memory_record_v2_content_trgm
+                ON memory_record_v2 USING gin (content gin_trgm_ops)
+                WHERE is_deleted = false;
+            CREATE INDEX IF NOT EXISTS idx_memory_record_v2_content_tsv
+                ON memory_record_v2 USING gin (to_tsvector('simple', content))
+                WHERE is_deleted = false;
+        END IF;
+    END $$;
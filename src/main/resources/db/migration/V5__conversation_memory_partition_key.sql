@@ -0,0 +1,27 @@
+-- 长期记忆按会话分区检索（app.memory.vector.search-mode=partitioned）：
+-- 1) conversation_id 列 + B-Tree 索引：检索先取出单个会话的行，再在会话内精确排序
+-- 2) 触发器：PgVectorStore 只写 metadata，插入时从 metadata 填充 conversation_id
+-- 3) 存量行不在迁移中回填（单条全表 UPDATE 会长时间持有行锁、产生大量 WAL），
+--    请开启 app.memory.vector.partition.migrate-on-startup 或调用 POST /debug/memory/vector/partition/migrate 分批回填，
+--    回填完成前不要切换到 search-mode=partitioned
+-- conversation_memory_store 由 PgVectorStore / docs/sql/memory_v2_init.sql 创建，表不存在时跳过
+DO $$
+    BEGIN
+        IF EXISTS (SELECT 1 FROM information_schema.tables WHERE table_name = 'conversation_memory_store') THEN
+            ALTER TABLE conversation_memory_store ADD COLUMN IF NOT EXISTS conversation_id text;
+            CREATE INDEX IF NOT EXISTS idx_conversation_memory_store_conversation_id
+                ON conversation_memory_store (conversation_id);
+
+            CREATE OR REPLACE FUNCTION conversation_memory_store_fill_conversation_id() RETURNS trigger
+                LANGUAGE plpgsql AS $fn$
+            BEGIN
+                NEW.conversation_id := NEW.metadata::jsonb ->> 'conversation_id';
+                RETURN NEW;
+            END $fn$;
+
+            DROP TRIGGER IF EXISTS trg_conversation_memory_store_conversation_id ON conversation_memory_store;
+            CREATE TRIGGER trg_conversation_memory_store_conversation_id
+                BEFORE INSERT OR UPDATE OF metadata ON conversation_memory_store
+                FOR EACH ROW EXECUTE FUNCTION conversation_memory_store_fill_conversation_id();
+        END IF;
+    END $$;
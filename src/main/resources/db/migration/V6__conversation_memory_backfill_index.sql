@@ -0,0 +1,13 @@
+-- 长期记忆分区列回填用的部分索引：只覆盖 metadata 带 conversation_id 但分区列仍为空的行，
+-- 分批回填（app.memory.vector.partition）每批直接定位剩余行，回填完成后索引为空，几乎不占空间；
+-- 启动时也用同一条件确认回填完成，之后才切换到按会话分区检索
+-- conversation_memory_store 由 PgVectorStore / docs/sql/memory_v2_init.sql 创建，表或分区列不存在时跳过
+DO $$
+    BEGIN
+        IF EXISTS (SELECT 1 FROM information_schema.columns
+                   WHERE table_name = 'conversation_memory_store' AND column_name = 'conversation_id') THEN
+            CREATE INDEX IF NOT EXISTS idx_conversation_memory_store_conversation_id_pending
+                ON conversation_memory_store (id)
+                WHERE conversation_id IS NULL AND (metadata::jsonb ->> 'conversation_id') IS NOT NULL;
+        END IF;
+    END $$;
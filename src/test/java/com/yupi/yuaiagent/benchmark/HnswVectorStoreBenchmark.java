@@ -0,0 +1,197 @@
+package com.yupi.yuaiagent.benchmark;
+
+import com.yupi.yuaiagent.rag.HnswVectorStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向量检索基准：HnswVectorStore 与 SimpleVectorStore 在 1 万 / 10 万 / 100 万条向量下的 topK 检索耗时。
+ * <p>
+ * 向量由文本种子确定性生成（128 维、按主题聚簇），不调用真实 EmbeddingModel；setUp 中会打印 HNSW 相对精确检索的 recall@10。
+ * 100 万条的建库耗时和堆内存（SimpleVectorStore 约需 1GB 以上）都较大，可用 -p vectorCount=10000 只跑小规模。
+ * 运行：mvn test-compile 后执行本类 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class HnswVectorStoreBenchmark {
+
+    private static final int DIMENSIONS = 128;
+    private static final int TOP_K = 10;
+    private static final int CONVERSATIONS = 1000;
+    private static final int QUERY_COUNT = 100;
+    private static final int ADD_BATCH = 10_000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int vectorCount;
+
+    private HnswVectorStore hnswStore;
+    private SimpleVectorStore simpleStore;
+    private List<SearchRequest> queries;
+    private List<SearchRequest> filteredQueries;
+    private int cursor;
+
+    /**
+     * 按文本 hashCode 生成确定性向量：先选一个“主题”中心再叠加高斯噪声。
+     * 真实 embedding 按语义聚簇，各向同性的纯随机高维向量是近似检索的最坏情况，不代表实际召回。
+     */
+    static class SeededEmbeddingModel implements EmbeddingModel {
+
+        private static final float[][] TOPICS = new float[64][DIMENSIONS];
+
+        static {
+            Random random = new Random(1);
+            for (float[] topic : TOPICS) {
+                for (int i = 0; i < DIMENSIONS; i++) {
+                    topic[i] = (float) random.nextGaussian();
+                }
+            }
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>(request.getInstructions().size());
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(vectorOf(request.getInstructions().get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return DIMENSIONS;
+        }
+
+        private static float[] vectorOf(String text) {
+            Random random = new Random(text.hashCode());
+            float[] topic = TOPICS[random.nextInt(TOPICS.length)];
+            float[] vector = new float[DIMENSIONS];
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] = topic[i] + (float) random.nextGaussian();
+            }
+            return vector;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // SimpleVectorStore 每条文档都会打一行 INFO 日志，建库阶段关掉
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(SimpleVectorStore.class))
+                .setLevel(ch.qos.logback.classic.Level.WARN);
+        EmbeddingModel embeddingModel = new SeededEmbeddingModel();
+        hnswStore = new HnswVectorStore(embeddingModel, null, 16, 100, 64);
+        simpleStore = SimpleVectorStore.builder(embeddingModel).build();
+        for (int start = 0; start < vectorCount; start += ADD_BATCH) {
+            List<Document> batch = new ArrayList<>(ADD_BATCH);
+            for (int i = start; i < Math.min(vectorCount, start + ADD_BATCH); i++) {
+                batch.add(Document.builder()
+                        .id("m" + i)
+                        .text("memory-" + i)
+                        .metadata(Map.of("conversation_id", "c" + (i % CONVERSATIONS), "memory_type", "conversation"))
+                        .build());
+            }
+            hnswStore.add(batch);
+            simpleStore.add(batch);
+        }
+
+        queries = new ArrayList<>(QUERY_COUNT);
+        filteredQueries = new ArrayList<>(QUERY_COUNT);
+        for (int q = 0; q < QUERY_COUNT; q++) {
+            queries.add(SearchRequest.builder().query("query-" + q).topK(TOP_K).similarityThresholdAll().build());
+            filteredQueries.add(SearchRequest.builder()
+                    .query("query-" + q)
+                    .topK(TOP_K)
+                    .similarityThresholdAll()
+                    .filterExpression("conversation_id == 'c" + (q % CONVERSATIONS) + "' && memory_type == 'conversation'")
+                    .build());
+        }
+
+        int hit = 0;
+        for (SearchRequest query : queries) {
+            Set<String> exact = new HashSet<>();
+            simpleStore.similaritySearch(query).forEach(d -> exact.add(d.getId()));
+            for (Document document : hnswStore.similaritySearch(query)) {
+                if (exact.contains(document.getId())) {
+                    hit++;
+                }
+            }
+        }
+        System.out.printf("%n[HnswVectorStoreBenchmark] vectorCount=%d recall@%d=%.3f%n",
+                vectorCount, TOP_K, (double) hit / (QUERY_COUNT * TOP_K));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        hnswStore.close();
+    }
+
+    private int next() {
+        cursor = (cursor + 1) % QUERY_COUNT;
+        return cursor;
+    }
+
+    @Benchmark
+    public List<Document> hnswSearch() {
+        return hnswStore.similaritySearch(queries.get(next()));
+    }
+
+    @Benchmark
+    public List<Document> simpleSearch() {
+        return simpleStore.similaritySearch(queries.get(next()));
+    }
+
+    @Benchmark
+    public List<Document> hnswFilteredSearch() {
+        return hnswStore.similaritySearch(filteredQueries.get(next()));
+    }
+
+    @Benchmark
+    public List<Document> simpleFilteredSearch() {
+        return simpleStore.similaritySearch(filteredQueries.get(next()));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HnswVectorStoreBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
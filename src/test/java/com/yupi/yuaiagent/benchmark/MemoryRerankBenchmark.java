@@ -0,0 +1,120 @@
+package com.yupi.yuaiagent.benchmark;
+
+import com.yupi.yuaiagent.chatmemory.MemoryRerankService;
+import com.yupi.yuaiagent.chatmemory.model.MemoryCandidate;
+import com.yupi.yuaiagent.util.TextTokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 记忆重排基准：当前 MemoryRerankService（原始数组 + 最小堆 topK）与原实现（逐条复制 metadata + 全量排序）对比。
+ * <p>
+ * 运行：mvn test-compile 后执行本类 main 方法；main 中开启了 GC profiler，
+ * 结果中的 gc.alloc.rate.norm 即每次 rerank 的分配字节数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryRerankBenchmark {
+
+    private static final String QUERY = "纪念日 预算 西湖约会";
+    private static final int TOP_K = 5;
+
+    @Param({"20", "200", "2000"})
+    public int candidateCount;
+
+    private final MemoryRerankService service = new MemoryRerankService();
+    private List<MemoryCandidate> candidates;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(7);
+        long now = System.currentTimeMillis();
+        String[] contents = {"预算300", "纪念日是2024-02-14", "喜欢安静的咖啡馆", "上周在西湖边吵架了", "用户: 想给她准备惊喜"};
+        candidates = new ArrayList<>(candidateCount);
+        for (int i = 0; i < candidateCount; i++) {
+            candidates.add(MemoryCandidate.builder()
+                    .source(i % 2 == 0 ? "vector" : "structured")
+                    .memoryType("conversation")
+                    .content(contents[i % contents.length] + i)
+                    .similarity(random.nextDouble())
+                    .importance(random.nextDouble())
+                    .timestampMs(now - random.nextInt(30) * 86_400_000L)
+                    .metadata(Map.of("conversation_id", "c1", "memory_type", "conversation"))
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public List<MemoryCandidate> heapTopK() {
+        return service.rerank(QUERY, candidates, TOP_K);
+    }
+
+    @Benchmark
+    public List<MemoryCandidate> legacyFullSort(Blackhole blackhole) {
+        return legacyRerank(QUERY, candidates, TOP_K, blackhole);
+    }
+
+    /**
+     * 替换前的 rerank 实现（权重取默认值），作为对照组
+     */
+    private static List<MemoryCandidate> legacyRerank(String query, List<MemoryCandidate> candidates, int topK,
+                                                      Blackhole blackhole) {
+        long now = System.currentTimeMillis();
+        List<String> tokens = TextTokenizer.tokenize(query);
+        List<MemoryCandidate> scored = new ArrayList<>();
+        for (MemoryCandidate candidate : candidates) {
+            double similarity = candidate.getSimilarity();
+            double importance = candidate.getImportance();
+            double recency = Math.min(1, 1.0 / (1.0 + Math.max(0L, now - candidate.getTimestampMs()) / 86_400_000D / 7.0));
+            double keyword = TextTokenizer.hitRatio(candidate.getContent().toLowerCase(), tokens);
+            double finalScore = similarity * 0.45 + recency * 0.20 + importance * 0.20 + keyword * 0.15;
+            candidate.setFinalScore(Math.round(finalScore * 1000D) / 1000D);
+            Map<String, Object> metadata = new HashMap<>(candidate.getMetadata());
+            metadata.put("rerank_similarity", Math.round(similarity * 1000D) / 1000D);
+            metadata.put("rerank_recency", Math.round(recency * 1000D) / 1000D);
+            metadata.put("rerank_importance", Math.round(importance * 1000D) / 1000D);
+            metadata.put("rerank_keyword", Math.round(keyword * 1000D) / 1000D);
+            metadata.put("rerank_formula", "sim*ws + rec*wr + imp*wi + key*wk");
+            // 对照组不回写 metadata（避免多轮迭代后 metadata 持续膨胀），交给 Blackhole 防止被优化掉
+            blackhole.consume(metadata);
+            scored.add(candidate);
+        }
+        scored.sort(Comparator
+                .comparing((MemoryCandidate c) -> c.getFinalScore()).reversed()
+                .thenComparing(MemoryCandidate::getTimestampMs, Comparator.reverseOrder()));
+        return scored.size() > topK ? new ArrayList<>(scored.subList(0, topK)) : scored;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MemoryRerankBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
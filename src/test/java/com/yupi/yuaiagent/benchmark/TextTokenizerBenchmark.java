@@ -0,0 +1,80 @@
+package com.yupi.yuaiagent.benchmark;
+
+import com.yupi.yuaiagent.util.TextTokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分词吞吐基准：TextTokenizer 与原 String.split 正则切分对比（每次调用处理一组典型对话消息）。
+ * <p>
+ * 运行：mvn test-compile 后执行本类 main 方法（IDE 或 exec:java -Dexec.classpathScope=test）。
+ * 结果中 ops/s × MESSAGES.length 即每秒处理的消息数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextTokenizerBenchmark {
+
+    static final String[] MESSAGES = {
+            "我喜欢安静的咖啡馆，预算300，纪念日是2024-02-14",
+            "他最近总是不回消息，我们已经冷战三天了，我该主动找他吗？",
+            "周末想去西湖附近约会，有没有适合拍照又不太贵的地方",
+            "Help me plan a surprise for our 2nd anniversary, budget around 500 RMB",
+            "预算和纪念日",
+            "上次你推荐的那家餐厅她很喜欢，这次想换个口味，最好是日料或者西餐"
+    };
+
+    @Benchmark
+    public void textTokenizer(Blackhole blackhole) {
+        for (String message : MESSAGES) {
+            blackhole.consume(TextTokenizer.tokenize(message));
+        }
+    }
+
+    @Benchmark
+    public void regexSplit(Blackhole blackhole) {
+        for (String message : MESSAGES) {
+            blackhole.consume(regexSplit(message));
+        }
+    }
+
+    /**
+     * 替换前 MemoryRerankService / StructuredMidMemoryService 的切分方式
+     */
+    private static List<String> regexSplit(String query) {
+        String[] parts = query.toLowerCase().split("[\\s,，。；;!?！？和与及]+");
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String part : parts) {
+            if (part != null && !part.isBlank()) {
+                tokens.add(part);
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TextTokenizerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
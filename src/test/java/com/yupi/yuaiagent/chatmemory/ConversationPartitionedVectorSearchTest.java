@@ -0,0 +1,153 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversationPartitionedVectorSearchTest {
+
+    /**
+     * 记录 SQL 的 JdbcTemplate 桩（不连接数据库）。
+     */
+    static class RecordingJdbcTemplate extends JdbcTemplate {
+
+        final List<String> statements = new ArrayList<>();
+        final List<List<Object>> arguments = new ArrayList<>();
+        final Deque<Integer> updateResults = new ArrayDeque<>();
+        final Deque<Boolean> booleanResults = new ArrayDeque<>();
+
+        @Override
+        public void execute(String sql) {
+            statements.add(sql);
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            statements.add(sql);
+            arguments.add(Arrays.asList(args));
+            return updateResults.isEmpty() ? 0 : updateResults.poll();
+        }
+
+        @Override
+        public <T> T queryForObject(String sql, Class<T> requiredType) {
+            return queryForObject(sql, requiredType, new Object[0]);
+        }
+
+        @Override
+        public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+            statements.add(sql);
+            arguments.add(Arrays.asList(args));
+            return requiredType.cast(booleanResults.poll());
+        }
+
+        @Override
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+            statements.add(sql);
+            arguments.add(Arrays.asList(args));
+            return List.of();
+        }
+    }
+
+    static class FixedEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            return new EmbeddingResponse(List.of(new Embedding(new float[]{0.5f, -0.25f}, 0)));
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+
+    @Test
+    void search_shouldRankOnlyWithinConversationPartition() {
+        RecordingJdbcTemplate jdbc = new RecordingJdbcTemplate();
+        ConversationPartitionedVectorSearch search = new ConversationPartitionedVectorSearch(jdbc,
+                new FixedEmbeddingModel(), "public", "conversation_memory_store");
+
+        search.search("c1", "conversation", "纪念日", 5, 0.65);
+
+        String sql = jdbc.statements.get(0);
+        assertTrue(sql.startsWith("WITH conversation_rows AS MATERIALIZED ("), sql);
+        assertTrue(sql.contains("FROM public.conversation_memory_store WHERE conversation_id = ?"), sql);
+        List<Object> args = jdbc.arguments.get(0);
+        assertEquals(List.of("c1", "conversation", "[0.5,-0.25]"), args.subList(0, 3));
+        assertEquals(0.35, (double) args.get(3), 1e-9);
+        assertEquals(5, args.get(4));
+    }
+
+    @Test
+    void toDocument_shouldExposeDistanceAndScore() {
+        ConversationPartitionedVectorSearch search = new ConversationPartitionedVectorSearch(new RecordingJdbcTemplate(),
+                new FixedEmbeddingModel(), "public", "conversation_memory_store");
+
+        Document document = search.toDocument("id-1", "用户: 纪念日想去海边",
+                "{\"conversation_id\":\"c1\",\"memory_type\":\"conversation\",\"timestamp\":\"1700000000000\",\"note\":null}", 0.2);
+
+        assertEquals("c1", document.getMetadata().get("conversation_id"));
+        assertEquals(0.2, (double) document.getMetadata().get("distance"), 1e-9);
+        assertEquals(0.8, document.getScore(), 1e-9);
+    }
+
+    @Test
+    void migrate_shouldEnsureSchemaAndBackfillInBatches() {
+        RecordingJdbcTemplate jdbc = new RecordingJdbcTemplate();
+        jdbc.updateResults.addAll(List.of(3, 3, 1));
+        ConversationPartitionedVectorSearch search = new ConversationPartitionedVectorSearch(jdbc,
+                new FixedEmbeddingModel(), "memory", "conversation_memory_store");
+
+        search.ensureSchema();
+        long migrated = search.backfill(3);
+
+        assertEquals(7, migrated);
+        assertTrue(jdbc.statements.get(0).contains("ADD COLUMN IF NOT EXISTS conversation_id"));
+        assertTrue(jdbc.statements.stream().anyMatch(s -> s.startsWith("CREATE TRIGGER trg_conversation_memory_store_conversation_id")));
+        assertEquals(3, jdbc.statements.stream().filter(s -> s.startsWith("UPDATE memory.conversation_memory_store")).count());
+        assertEquals(List.of(3), jdbc.arguments.get(0));
+        assertTrue(jdbc.statements.stream().anyMatch(s -> s.startsWith("CREATE INDEX IF NOT EXISTS idx_conversation_memory_store_conversation_id_pending")
+                && s.endsWith("WHERE conversation_id IS NULL AND (metadata::jsonb ->> 'conversation_id') IS NOT NULL")));
+    }
+
+    @Test
+    void isMigrated_shouldRequireTriggerAndNoPendingRows() {
+        RecordingJdbcTemplate jdbc = new RecordingJdbcTemplate();
+        ConversationPartitionedVectorSearch search = new ConversationPartitionedVectorSearch(jdbc,
+                new FixedEmbeddingModel(), "public", "conversation_memory_store");
+
+        jdbc.booleanResults.addAll(List.of(false));
+        assertFalse(search.isMigrated());
+        assertEquals(List.of("public.conversation_memory_store", "trg_conversation_memory_store_conversation_id"),
+                jdbc.arguments.get(0));
+
+        jdbc.booleanResults.addAll(List.of(true, true));
+        assertFalse(search.isMigrated());
+        assertTrue(jdbc.statements.get(2).contains("WHERE conversation_id IS NULL"), jdbc.statements.get(2));
+
+        jdbc.booleanResults.addAll(List.of(true, false));
+        assertTrue(search.isMigrated());
+    }
+
+    @Test
+    void constructor_shouldRejectUnsafeTableName() {
+        assertThrows(IllegalArgumentException.class, () -> new ConversationPartitionedVectorSearch(
+                new RecordingJdbcTemplate(), new FixedEmbeddingModel(), "public", "t; drop table x"));
+    }
+}
@@ -0,0 +1,134 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversationSummaryServiceTest {
+
+    /**
+     * 只实现摘要服务用到的 multiGet / CAS 脚本；readFails / casFails 模拟 Redis 故障。
+     */
+    static class FlakyRedisTemplate extends StringRedisTemplate {
+
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+        private volatile boolean readFails;
+        private volatile boolean casFails;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public ValueOperations<String, String> opsForValue() {
+            return (ValueOperations<String, String>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{ValueOperations.class}, (proxy, method, args) -> {
+                        if (!"multiGet".equals(method.getName())) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        if (readFails) {
+                            throw new IllegalStateException("redis down");
+                        }
+                        List<String> result = new ArrayList<>();
+                        for (Object key : (Collection<?>) args[0]) {
+                            result.add(values.get((String) key));
+                        }
+                        return result;
+                    });
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            if (casFails) {
+                throw new IllegalStateException("redis down");
+            }
+            long current = Long.parseLong(values.getOrDefault(keys.get(1), "0"));
+            if (current != Long.parseLong((String) args[0])) {
+                return (T) Long.valueOf(-1);
+            }
+            values.put(keys.get(0), (String) args[1]);
+            values.put(keys.get(1), String.valueOf(current + 1));
+            return (T) Long.valueOf(current + 1);
+        }
+    }
+
+    static class RecordingChatModel implements ChatModel {
+
+        private final List<String> prompts = new CopyOnWriteArrayList<>();
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            prompts.add(prompt.getContents());
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("摘要#" + prompts.size()))));
+        }
+
+        @Override
+        public ChatOptions getDefaultOptions() {
+            return null;
+        }
+    }
+
+    @Test
+    void updateSummary_shouldGiveUpWithoutLocalFallbackWhenRedisCasFails() {
+        FlakyRedisTemplate redis = new FlakyRedisTemplate();
+        redis.values.put("love_master:summary:c1", "旧摘要");
+        redis.values.put("love_master:summary_ver:c1", "5");
+        redis.casFails = true;
+        RecordingChatModel chatModel = new RecordingChatModel();
+        ConversationSummaryService service = service(chatModel, redis);
+
+        String result = service.updateSummary("c1", List.of(new UserMessage("她下周过生日")));
+
+        assertEquals("旧摘要", result);
+        assertEquals(1, chatModel.prompts.size(), "CAS 出错不应重复调用 LLM");
+        assertEquals("5", redis.values.get("love_master:summary_ver:c1"));
+        assertEquals("旧摘要", service.getSummary("c1"), "不应把 Redis 版本和本地缓存比较或写入本地");
+    }
+
+    @Test
+    void updateSummary_shouldMergeSummaryWrittenDuringOutageOnceRedisRecovers() {
+        FlakyRedisTemplate redis = new FlakyRedisTemplate();
+        redis.values.put("love_master:summary:c1", "旧摘要");
+        redis.values.put("love_master:summary_ver:c1", "2");
+        RecordingChatModel chatModel = new RecordingChatModel();
+        ConversationSummaryService service = service(chatModel, redis);
+
+        redis.readFails = true;
+        redis.casFails = true;
+        assertEquals("摘要#1", service.updateSummary("c1", List.of(new UserMessage("她喜欢向日葵"))));
+
+        redis.readFails = false;
+        redis.casFails = false;
+        assertEquals("旧摘要\n摘要#1", service.getSummary("c1"));
+        assertEquals("摘要#2", service.updateSummary("c1", List.of(new UserMessage("纪念日在十月"))));
+
+        assertTrue(chatModel.prompts.get(1).contains("摘要#1"), "故障期间的本地摘要应并入 Redis");
+        assertEquals("3", redis.values.get("love_master:summary_ver:c1"));
+        assertEquals("摘要#2", service.getSummary("c1"));
+    }
+
+    private static ConversationSummaryService service(ChatModel chatModel, StringRedisTemplate redis) {
+        ConversationSummaryService service = new ConversationSummaryService(chatModel, true, true);
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(service, "summaryTtlDays", 7L);
+        return service;
+    }
+}
@@ -0,0 +1,86 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import com.yupi.yuaiagent.chatmemory.model.MemoryCandidate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FeatureModelRerankerTest {
+
+    private static MemoryCandidate candidate(String source, String memoryType, String content, double similarity) {
+        return MemoryCandidate.builder()
+                .source(source)
+                .memoryType(memoryType)
+                .content(content)
+                .similarity(similarity)
+                .importance(0.7)
+                .timestampMs(System.currentTimeMillis())
+                .metadata(Map.of())
+                .build();
+    }
+
+    @Test
+    void rerank_shouldPreferCandidateMatchingQueryTerms() throws Exception {
+        FeatureModelReranker reranker = FeatureModelReranker.load(
+                new ClassPathResource("memory/rerank-feature-model.json"), 64, Duration.ofSeconds(1));
+
+        List<MemoryCandidate> ranked = reranker.rerank("纪念日预算", List.of(
+                candidate("vector", "conversation", "用户: 周末想去看电影", 0.72),
+                candidate("structured", "constraint", "纪念日预算500", 0.6),
+                candidate("vector", "conversation", "用户: 今天加班好累", 0.7)), 2);
+
+        assertEquals(2, ranked.size());
+        assertEquals("纪念日预算500", ranked.get(0).getContent());
+        assertTrue(ranked.get(0).getFinalScore() > ranked.get(1).getFinalScore());
+        assertTrue(ranked.get(0).getFinalScore() <= 1.0);
+    }
+
+    @Test
+    void bundledWeights_shouldBeFlaggedAsUntrainedPlaceholder() throws Exception {
+        FeatureModelReranker reranker = FeatureModelReranker.load(
+                new ClassPathResource("memory/rerank-feature-model.json"), 64, Duration.ofSeconds(1));
+
+        assertTrue(reranker.untrained());
+        assertFalse(new FeatureModelReranker("trained-2026-10", 0, new double[FeatureModelReranker.FEATURES.length],
+                64, Duration.ofSeconds(1)).untrained());
+    }
+
+    @Test
+    void rerank_shouldAbortWhenBudgetIsExceeded() {
+        FeatureModelReranker reranker = new FeatureModelReranker("test", 0, new double[FeatureModelReranker.FEATURES.length],
+                1, Duration.ZERO);
+        List<MemoryCandidate> candidates = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            candidates.add(candidate("vector", "conversation", "记忆" + i, 0.5));
+        }
+
+        assertThrows(FeatureModelReranker.BudgetExceededException.class, () -> reranker.rerank("记忆", candidates, 3));
+    }
+
+    @Test
+    void fallbackReranker_shouldUseLinearRerankerWhenPrimaryFails() {
+        FeatureModelReranker slowModel = new FeatureModelReranker("test", 0, new double[FeatureModelReranker.FEATURES.length],
+                1, Duration.ZERO);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        FallbackReranker reranker = new FallbackReranker(slowModel, new MemoryRerankService(), registry);
+        List<MemoryCandidate> candidates = List.of(
+                candidate("vector", "conversation", "预算300", 0.9),
+                candidate("vector", "conversation", "今天下雨", 0.2));
+
+        List<MemoryCandidate> ranked = reranker.rerank("预算", candidates, 1);
+
+        assertEquals(List.of("预算300"), ranked.stream().map(MemoryCandidate::getContent).toList());
+        assertEquals(1.0, registry.get("memory_rerank_fallbacks").tag("reason", "budget").counter().count());
+        assertEquals(1, registry.get("memory_rerank_latency").tag("reranker", "linear").timer().count());
+    }
+}
@@ -0,0 +1,133 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import com.yupi.yuaiagent.chatmemory.model.MemoryCandidate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HybridMemoryRecallServiceTest {
+
+    private static MemoryCandidate candidate(String source, String content, double similarity) {
+        return MemoryCandidate.builder()
+                .source(source)
+                .memoryType("conversation")
+                .content(content)
+                .similarity(similarity)
+                .importance(0.5)
+                .timestampMs(System.currentTimeMillis())
+                .metadata(Map.of())
+                .build();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void recall_shouldQuerySourcesConcurrently() {
+        StructuredMidMemoryService structured = new StructuredMidMemoryService(null) {
+            @Override
+            public List<MemoryCandidate> search(String conversationId, String query, int topK) {
+                sleep(400);
+                return List.of(candidate("structured", "预算300", 0.3));
+            }
+        };
+        VectorMemoryService vector = new VectorMemoryService() {
+            @Override
+            public List<MemoryCandidate> searchCandidates(String conversationId, String query, int topK) {
+                sleep(400);
+                return List.of(candidate("vector", "用户: 纪念日想去海边", 0.8));
+            }
+        };
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        HybridMemoryRecallService service = new HybridMemoryRecallService(structured, vector,
+                new MemoryRerankService(), Executors.newVirtualThreadPerTaskExecutor(), registry);
+        ReflectionTestUtils.setField(service, "deadlineMs", 3000L);
+
+        long startMs = System.currentTimeMillis();
+        List<MemoryCandidate> ranked = service.recall("c1", "预算 纪念日", 5);
+        long costMs = System.currentTimeMillis() - startMs;
+
+        assertEquals(2, ranked.size());
+        assertTrue(costMs < 750, "两个来源应并发查询, costMs=" + costMs);
+        assertEquals(1, registry.get("memory_recall_source_latency").tag("source", "vector").timer().count());
+        assertEquals(1.0, registry.get("memory_recall_source_candidates").tag("source", "structured").summary().totalAmount());
+    }
+
+    @Test
+    void recall_shouldSkipVectorWhenStructuredCandidatesAreConfidentEnough() {
+        CountDownLatch release = new CountDownLatch(1);
+        StructuredMidMemoryService structured = new StructuredMidMemoryService(null) {
+            @Override
+            public List<MemoryCandidate> search(String conversationId, String query, int topK) {
+                return List.of(candidate("structured", "预算300", 0.9), candidate("structured", "纪念日2024-02-14", 0.85));
+            }
+        };
+        VectorMemoryService vector = new VectorMemoryService() {
+            @Override
+            public List<MemoryCandidate> searchCandidates(String conversationId, String query, int topK) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return List.of(candidate("vector", "用户: 很久以前的对话", 0.7));
+            }
+        };
+        HybridMemoryRecallService service = new HybridMemoryRecallService(structured, vector,
+                new MemoryRerankService(), Executors.newVirtualThreadPerTaskExecutor(), null);
+        ReflectionTestUtils.setField(service, "deadlineMs", 3000L);
+
+        long startMs = System.currentTimeMillis();
+        List<MemoryCandidate> ranked = service.recall("c2", "预算 纪念日", 2);
+        long costMs = System.currentTimeMillis() - startMs;
+        release.countDown();
+
+        assertEquals(2, ranked.size());
+        assertTrue(ranked.stream().allMatch(c -> "structured".equals(c.getSource())));
+        assertTrue(costMs < 1000, "高置信结构化候选足够时不应等待向量检索, costMs=" + costMs);
+    }
+
+    @Test
+    void recall_shouldDropSourceThatMissesDeadline() {
+        CountDownLatch release = new CountDownLatch(1);
+        StructuredMidMemoryService structured = new StructuredMidMemoryService(null) {
+            @Override
+            public List<MemoryCandidate> search(String conversationId, String query, int topK) {
+                return List.of(candidate("structured", "预算300", 0.4));
+            }
+        };
+        VectorMemoryService vector = new VectorMemoryService() {
+            @Override
+            public List<MemoryCandidate> searchCandidates(String conversationId, String query, int topK) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return List.of(candidate("vector", "用户: 迟到的结果", 0.9));
+            }
+        };
+        HybridMemoryRecallService service = new HybridMemoryRecallService(structured, vector,
+                new MemoryRerankService(), Executors.newVirtualThreadPerTaskExecutor(), null);
+        ReflectionTestUtils.setField(service, "deadlineMs", 200L);
+
+        List<MemoryCandidate> ranked = service.recall("c3", "预算", 5);
+        release.countDown();
+
+        assertEquals(List.of("预算300"), ranked.stream().map(MemoryCandidate::getContent).toList());
+    }
+}
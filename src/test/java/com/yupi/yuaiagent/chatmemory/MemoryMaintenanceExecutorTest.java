@@ -0,0 +1,88 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemoryMaintenanceExecutorTest {
+
+    @Test
+    void submit_shouldSerializePerConversation_andCoalesceQueuedWork() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MemoryMaintenanceExecutor executor = new MemoryMaintenanceExecutor(
+                new MemoryMaintenanceExecutor.PoolSettings(2, 10),
+                new MemoryMaintenanceExecutor.PoolSettings(1, 10),
+                new MemoryMaintenanceExecutor.PoolSettings(1, 10),
+                registry);
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+        for (int i = 1; i <= 4; i++) {
+            executor.submit(MemoryMaintenanceExecutor.TaskClass.SUMMARY, "c1", List.of(new UserMessage("M" + i)),
+                    (conversationId, messages) -> {
+                        maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                        firstStarted.countDown();
+                        try {
+                            release.await(2, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        batches.add(messages.stream().map(Message::getText).toList());
+                        concurrent.decrementAndGet();
+                    });
+            if (i == 1) {
+                assertTrue(firstStarted.await(2, TimeUnit.SECONDS));
+            }
+        }
+        release.countDown();
+        executor.close();
+
+        assertEquals(List.of(List.of("M1"), List.of("M2", "M3", "M4")), batches);
+        assertEquals(1, maxConcurrent.get());
+        assertEquals(2.0, registry.get("memory_maintenance_tasks").tag("pool", "summary").tag("outcome", "coalesced").counter().count());
+    }
+
+    @Test
+    void submit_shouldDropWhenQueueIsFull() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MemoryMaintenanceExecutor executor = new MemoryMaintenanceExecutor(
+                new MemoryMaintenanceExecutor.PoolSettings(1, 1),
+                new MemoryMaintenanceExecutor.PoolSettings(1, 1),
+                new MemoryMaintenanceExecutor.PoolSettings(1, 1),
+                registry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        executor.submit(MemoryMaintenanceExecutor.TaskClass.VECTOR, "c1", List.of(new UserMessage("U1")), (id, messages) -> {
+            started.countDown();
+            try {
+                release.await(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        executor.submit(MemoryMaintenanceExecutor.TaskClass.VECTOR, "c2", List.of(new UserMessage("U2")), (id, messages) -> {
+        });
+        executor.submit(MemoryMaintenanceExecutor.TaskClass.VECTOR, "c3", List.of(new UserMessage("U3")), (id, messages) -> {
+        });
+
+        assertEquals(1.0, registry.get("memory_maintenance_tasks").tag("pool", "vector").tag("outcome", "dropped").counter().count());
+        assertEquals(1.0, registry.get("memory_maintenance_queue_size").tag("pool", "vector").gauge().value());
+        release.countDown();
+        executor.close();
+    }
+}
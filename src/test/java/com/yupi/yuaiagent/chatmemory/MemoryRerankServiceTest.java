@@ -2,11 +2,17 @@ package com.yupi.yuaiagent.chatmemory;
 
 import com.yupi.yuaiagent.chatmemory.model.MemoryCandidate;
 import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class MemoryRerankServiceTest {
 
@@ -38,4 +44,53 @@ class MemoryRerankServiceTest {
         List<MemoryCandidate> ranked = service.rerank("预算300 咖啡馆", List.of(oldHighSimilarity, recentKeywordMatch), 2);
         assertEquals("用户当前约会预算是300，偏好安静咖啡馆", ranked.get(0).getContent());
     }
+
+    @Test
+    void rerank_shouldMatchFullSortOrderAndSkipDebugMetadataByDefault() {
+        MemoryRerankService service = new MemoryRerankService();
+        long now = System.currentTimeMillis();
+        Random random = new Random(42);
+        List<MemoryCandidate> candidates = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            candidates.add(MemoryCandidate.builder()
+                    .source(i % 2 == 0 ? "vector" : "structured")
+                    .content(i % 7 == 0 ? "预算" + i : "记忆" + i)
+                    .similarity(Math.round(random.nextDouble() * 10) / 10.0)
+                    .importance(0.5)
+                    .timestampMs(now - 1000L * 60 * 60 * (i % 5))
+                    .build());
+        }
+
+        List<MemoryCandidate> ranked = service.rerank("预算", candidates, 10);
+        List<MemoryCandidate> all = service.rerank("预算", candidates, candidates.size());
+
+        // 与“全量稳定排序后截断”的结果逐项一致
+        List<MemoryCandidate> expected = new ArrayList<>(candidates);
+        expected.sort(Comparator
+                .comparing(MemoryCandidate::getFinalScore).reversed()
+                .thenComparing(MemoryCandidate::getTimestampMs, Comparator.reverseOrder()));
+        assertEquals(expected, all);
+        assertEquals(expected.subList(0, 10), ranked);
+        assertTrue(ranked.stream().allMatch(c -> c.getMetadata() == null));
+    }
+
+    @Test
+    void rerank_shouldAttachScoreBreakdownWhenDebugEnabled() {
+        MemoryRerankService service = new MemoryRerankService();
+        ReflectionTestUtils.setField(service, "debug", true);
+        MemoryCandidate candidate = MemoryCandidate.builder()
+                .source("structured")
+                .content("预算300")
+                .similarity(0.8)
+                .timestampMs(System.currentTimeMillis())
+                .metadata(Map.of("source", "regex_extract"))
+                .build();
+
+        List<MemoryCandidate> ranked = service.rerank("预算", List.of(candidate), 5);
+
+        Map<String, Object> metadata = ranked.get(0).getMetadata();
+        assertEquals("regex_extract", metadata.get("source"));
+        assertEquals(1.0, metadata.get("rerank_keyword"));
+        assertFalse(String.valueOf(metadata.get("rerank_formula")).isEmpty());
+    }
 }
@@ -0,0 +1,142 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import com.yupi.yuaiagent.chatmemory.model.MemoryCandidate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemorySourceResilienceTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    private MemorySourceResilience resilience(SimpleMeterRegistry registry) {
+        return new MemorySourceResilience(2, 10_000, 5_000, 100, registry, now::get);
+    }
+
+    @Test
+    void execute_shouldOpenAfterConsecutiveFailuresAndRecoverThroughHalfOpenProbe() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MemorySourceResilience resilience = resilience(registry);
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IllegalStateException.class, () -> resilience.execute("vector", () -> {
+                calls.incrementAndGet();
+                throw new IllegalStateException("db down");
+            }));
+        }
+        assertEquals(MemorySourceCircuitBreaker.State.OPEN, resilience.breaker("vector").state());
+        assertThrows(MemorySourceResilience.SourceUnavailableException.class,
+                () -> resilience.execute("vector", calls::incrementAndGet));
+        assertEquals(2, calls.get());
+
+        now.addAndGet(10_000);
+        assertThrows(IllegalStateException.class, () -> resilience.execute("vector", () -> {
+            throw new IllegalStateException("still down");
+        }));
+        assertEquals(MemorySourceCircuitBreaker.State.OPEN, resilience.breaker("vector").state());
+
+        now.addAndGet(10_000);
+        assertEquals(3, resilience.execute("vector", calls::incrementAndGet));
+        assertEquals(MemorySourceCircuitBreaker.State.CLOSED, resilience.breaker("vector").state());
+        assertEquals(1.0, registry.get("memory_source_calls").tags("source", "vector", "outcome", "rejected").counter().count());
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> vector = (Map<String, Object>) ((Map<String, Object>) resilience.describe().get("sources")).get("vector");
+        assertEquals(MemorySourceCircuitBreaker.State.CLOSED, vector.get("state"));
+        assertEquals(3L, vector.get("totalFailures"));
+        assertEquals(IllegalStateException.class.getName(), vector.get("lastErrorType"));
+        assertFalse(vector.containsKey("lastError"), "只读视图不应暴露异常消息");
+    }
+
+    @Test
+    void negativeCache_shouldExpireAndBeInvalidatedByWrites() {
+        MemorySourceResilience resilience = resilience(null);
+
+        assertTrue(resilience.markEmpty("vector", "c1", resilience.writeEpoch("vector", "c1")));
+        assertTrue(resilience.isKnownEmpty("vector", "c1"));
+        assertFalse(resilience.isKnownEmpty("structured_db", "c1"));
+
+        resilience.invalidate("vector", "c1");
+        assertFalse(resilience.isKnownEmpty("vector", "c1"));
+
+        resilience.markEmpty("vector", "c2", resilience.writeEpoch("vector", "c2"));
+        now.addAndGet(5_001);
+        assertFalse(resilience.isKnownEmpty("vector", "c2"));
+    }
+
+    @Test
+    void markEmpty_shouldSkipWhenConversationWasWrittenDuringSearch() {
+        MemorySourceResilience resilience = resilience(null);
+
+        long epoch = resilience.writeEpoch("vector", "c1");
+        // 检索期间写入了新记忆：EXISTS 看到的是写入前的状态
+        resilience.invalidate("vector", "c1");
+        assertFalse(resilience.markEmpty("vector", "c1", epoch));
+        assertFalse(resilience.isKnownEmpty("vector", "c1"));
+
+        assertTrue(resilience.markEmpty("vector", "c1", resilience.writeEpoch("vector", "c1")));
+        assertTrue(resilience.isKnownEmpty("vector", "c1"));
+    }
+
+    /**
+     * 数据库故障时降级到本地，熔断到期后恢复写库（原实现一次失败后永久停用 DB）。
+     */
+    @Test
+    void structuredMemory_shouldFallBackToLocalAndResumeDbAfterOutage() {
+        AtomicInteger inserts = new AtomicInteger();
+        AtomicInteger failuresLeft = new AtomicInteger(2);
+        JdbcTemplate jdbc = new JdbcTemplate() {
+            @Override
+            public int update(String sql, Object... args) {
+                if (failuresLeft.getAndDecrement() > 0) {
+                    throw new DataAccessResourceFailureException("connection refused");
+                }
+                return inserts.incrementAndGet();
+            }
+
+            @Override
+            public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+                return List.of();
+            }
+
+            @Override
+            public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+                return requiredType.cast(Boolean.FALSE);
+            }
+        };
+        StructuredMidMemoryService service = new StructuredMidMemoryService(jdbc);
+        MemorySourceResilience resilience = resilience(null);
+        ReflectionTestUtils.setField(service, "resilience", resilience);
+
+        service.saveFromEvictedMessages("c1", List.of(new UserMessage("我们下个月见家长")));
+        service.saveFromEvictedMessages("c1", List.of(new UserMessage("她不喜欢吃辣")));
+        service.saveFromEvictedMessages("c1", List.of(new UserMessage("预算500左右")));
+        assertEquals(0, inserts.get());
+        List<MemoryCandidate> local = service.search("c1", "见家长", 3);
+        assertTrue(local.stream().anyMatch(c -> c.getContent().contains("见家长")));
+
+        now.addAndGet(10_000);
+        service.saveFromEvictedMessages("c1", List.of(new UserMessage("纪念日在2024-02-14")));
+        assertTrue(inserts.get() > 0);
+        assertEquals(MemorySourceCircuitBreaker.State.CLOSED,
+                resilience.breaker(MemorySourceResilience.SOURCE_STRUCTURED_DB).state());
+
+        service.search("c2", "见家长", 3);
+        assertTrue(resilience.isKnownEmpty(MemorySourceResilience.SOURCE_STRUCTURED_DB, "c2"));
+    }
+}
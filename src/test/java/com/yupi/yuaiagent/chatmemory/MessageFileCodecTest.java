@@ -0,0 +1,44 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * 快照文件编解码单测：按偏移 footer 读取最后 N 条，读取后文件可被替换 / 删除。
+ */
+class MessageFileCodecTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readLastN_shouldDecodeOnlyTailAndReleaseMapping() throws Exception {
+        File file = dir.resolve("c1.kryo").toFile();
+        MessageFileCodec.writeSnapshot(file, List.of(new UserMessage("U1"), new AssistantMessage("A1"),
+                new UserMessage("U2"), new AssistantMessage("A2")));
+
+        assertEquals(List.of("U2", "A2"), texts(MessageFileCodec.readLastN(file, 2)));
+        assertEquals(4, MessageFileCodec.readAll(file).size());
+
+        MessageFileCodec.writeSnapshot(file, List.of(new UserMessage("U3")));
+        assertEquals(List.of("U3"), texts(MessageFileCodec.readLastN(file, 5)));
+
+        Files.delete(file.toPath());
+        assertFalse(file.exists());
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+}
@@ -0,0 +1,102 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Redis List 模式测试（依赖本地 Redis，不可达时跳过）。
+ */
+class RedisChatMemoryRepositoryListModeTest {
+
+    private static final String REDIS_HOST = System.getProperty("redis.host", "localhost");
+    private static final int REDIS_PORT = Integer.parseInt(System.getProperty("redis.port", "6379"));
+
+    private LettuceConnectionFactory redisConnectionFactory;
+    private RedisTemplate<String, Object> redisTemplate;
+    private String conversationId;
+
+    @BeforeEach
+    void setUp() {
+        redisConnectionFactory = new LettuceConnectionFactory(REDIS_HOST, REDIS_PORT);
+        redisConnectionFactory.afterPropertiesSet();
+
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(redisConnectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+
+        Assumptions.assumeTrue(isRedisAvailable(),
+                "Redis not reachable at %s:%s".formatted(REDIS_HOST, REDIS_PORT));
+        conversationId = "list-mode-" + UUID.randomUUID();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (conversationId != null) {
+            newRepository(4).clear(conversationId);
+        }
+        if (redisConnectionFactory != null) {
+            redisConnectionFactory.destroy();
+        }
+    }
+
+    @Test
+    void add_shouldAppendAndTrimToWindow() {
+        RedisChatMemoryRepository repository = newRepository(4);
+        for (int i = 1; i <= 3; i++) {
+            repository.add(conversationId, List.of(new UserMessage("U" + i), new AssistantMessage("A" + i)));
+        }
+
+        assertEquals(List.of("U2", "A2", "U3", "A3"), texts(repository.get(conversationId)));
+        Long ttl = redisTemplate.getExpire("chat:memory:list:" + conversationId);
+        assertTrue(ttl != null && ttl > 0, "追加后应刷新 TTL");
+    }
+
+    @Test
+    void add_shouldNotLoseConcurrentAppends() {
+        RedisChatMemoryRepository repository = newRepository(100);
+        CompletableFuture<?>[] futures = IntStream.range(0, 20)
+                .mapToObj(i -> CompletableFuture.runAsync(() ->
+                        repository.add(conversationId, List.of(new UserMessage("U" + i)))))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).join();
+
+        assertEquals(20, repository.get(conversationId).size());
+    }
+
+    private RedisChatMemoryRepository newRepository(int maxMessages) {
+        return new RedisChatMemoryRepository(redisTemplate, 60,
+                RedisChatMemoryRepository.StorageMode.LIST, maxMessages);
+    }
+
+    private boolean isRedisAvailable() {
+        try {
+            String pong = redisConnectionFactory.getConnection().ping();
+            return "PONG".equalsIgnoreCase(pong);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+}
@@ -0,0 +1,124 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分段追加日志仓库单测：窗口语义、重启恢复、压缩与半条记录截断。
+ */
+class SegmentedFileChatMemoryRepositoryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void windowMemory_shouldKeepLastMessages_andSurviveReopen() {
+        SegmentedFileChatMemoryRepository repository = new SegmentedFileChatMemoryRepository(dir.toString());
+        ChatMemory chatMemory = windowMemory(repository, 4);
+        for (int i = 1; i <= 5; i++) {
+            chatMemory.add("c1", List.of(new UserMessage("U" + i), new AssistantMessage("A" + i)));
+        }
+
+        assertEquals(List.of("U4", "A4", "U5", "A5"), texts(chatMemory.get("c1")));
+
+        SegmentedFileChatMemoryRepository reopened = new SegmentedFileChatMemoryRepository(dir.toString());
+        assertEquals(List.of("U4", "A4", "U5", "A5"), texts(reopened.findByConversationId("c1")));
+        assertEquals(List.of("c1"), reopened.findConversationIds());
+    }
+
+    @Test
+    void saveAll_shouldCompactDeadRecords() throws IOException {
+        SegmentedFileChatMemoryRepository repository = new SegmentedFileChatMemoryRepository(dir.toString(), 1024, 512, false);
+        ChatMemory chatMemory = windowMemory(repository, 2);
+        for (int i = 1; i <= 200; i++) {
+            chatMemory.add("c2", List.of(new UserMessage("U" + i), new AssistantMessage("A" + i)));
+        }
+
+        assertEquals(List.of("U200", "A200"), texts(chatMemory.get("c2")));
+        assertTrue(totalBytes(dir) < 4096, "压缩后磁盘占用应与窗口大小相关，而不是历史长度");
+        assertEquals(List.of("U200", "A200"),
+                texts(new SegmentedFileChatMemoryRepository(dir.toString()).findByConversationId("c2")));
+    }
+
+    @Test
+    void reopen_shouldTruncateTornTailRecord() throws IOException {
+        SegmentedFileChatMemoryRepository repository = new SegmentedFileChatMemoryRepository(dir.toString());
+        repository.saveAll("c3", List.of(new UserMessage("U1"), new AssistantMessage("A1")));
+
+        Path segment;
+        try (Stream<Path> stream = Files.walk(dir)) {
+            segment = stream.filter(p -> p.getFileName().toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        SegmentedFileChatMemoryRepository reopened = new SegmentedFileChatMemoryRepository(dir.toString());
+        assertEquals(List.of("U1", "A1"), texts(reopened.findByConversationId("c3")));
+        reopened.saveAll("c3", List.of(new UserMessage("U1"), new AssistantMessage("A1"), new UserMessage("U2")));
+        assertEquals(List.of("U1", "A1", "U2"),
+                texts(new SegmentedFileChatMemoryRepository(dir.toString()).findByConversationId("c3")));
+    }
+
+    @Test
+    void findLastN_shouldReturnTail_andImportSnapshotFile() {
+        FileChatMemoryRepository snapshot = new FileChatMemoryRepository(dir.toString());
+        snapshot.saveAll("c4", List.of(new UserMessage("U1"), new AssistantMessage("A1"),
+                new UserMessage("U2"), new AssistantMessage("A2")));
+        assertEquals(List.of("U2", "A2"), texts(snapshot.findLastN("c4", 2)));
+
+        SegmentedFileChatMemoryRepository repository = new SegmentedFileChatMemoryRepository(dir.toString());
+        assertEquals(List.of("A1", "U2", "A2"), texts(repository.findLastN("c4", 3)));
+        assertEquals(4, repository.findLastN("c4", 10).size());
+
+        SlidingWindowChatMemory chatMemory = new SlidingWindowChatMemory(repository, 4);
+        chatMemory.add("c4", List.of(new UserMessage("U3"), new AssistantMessage("A3")));
+        assertEquals(List.of("U2", "A2", "U3", "A3"), texts(chatMemory.get("c4")));
+        assertEquals(List.of("A3"), texts(chatMemory.findLastN("c4", 1)));
+    }
+
+    @Test
+    void evictedConversation_shouldReloadFromDisk() {
+        SegmentedFileChatMemoryRepository repository = new SegmentedFileChatMemoryRepository(dir.toString(),
+                1024 * 1024, 256 * 1024, false, 1, Duration.ofMinutes(30));
+        ChatMemory chatMemory = windowMemory(repository, 4);
+        for (int i = 1; i <= 3; i++) {
+            chatMemory.add("c5", List.of(new UserMessage("U" + i), new AssistantMessage("A" + i)));
+            chatMemory.add("c6", List.of(new UserMessage("X" + i), new AssistantMessage("Y" + i)));
+        }
+
+        assertEquals(List.of("U2", "A2", "U3", "A3"), texts(chatMemory.get("c5")));
+        assertEquals(List.of("X2", "Y2", "X3", "Y3"), texts(chatMemory.get("c6")));
+    }
+
+    private static ChatMemory windowMemory(SegmentedFileChatMemoryRepository repository, int maxMessages) {
+        return MessageWindowChatMemory.builder()
+                .chatMemoryRepository(repository)
+                .maxMessages(maxMessages)
+                .build();
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+
+    private static long totalBytes(Path root) throws IOException {
+        try (Stream<Path> stream = Files.walk(root)) {
+            return stream.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+}
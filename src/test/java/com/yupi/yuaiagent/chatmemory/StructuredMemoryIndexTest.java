@@ -0,0 +1,55 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import com.yupi.yuaiagent.chatmemory.model.StructuredMidMemoryRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StructuredMemoryIndexTest {
+
+    private static StructuredMidMemoryRecord record(String content) {
+        return StructuredMidMemoryRecord.builder()
+                .conversationId("c1")
+                .memoryType("conversation")
+                .content(content)
+                .importance(0.7)
+                .timestampMs(System.currentTimeMillis())
+                .metadata(Map.of())
+                .build();
+    }
+
+    @Test
+    void search_shouldRankByMatchedTokensAndVerifySubstring() {
+        StructuredMemoryIndex index = new StructuredMemoryIndex(100);
+        index.addAll(List.of(
+                record("预算300"),
+                record("纪念日是2024-02-14，预算500"),
+                record("算预一下"),
+                record("喜欢安静的咖啡馆")));
+
+        List<StructuredMemoryIndex.Hit> hits = index.search(List.of("预算", "纪念日"), 5);
+
+        assertEquals(List.of("纪念日是2024-02-14，预算500", "预算300"),
+                hits.stream().map(h -> h.record().getContent()).toList());
+        assertEquals(1.0, hits.get(0).score());
+        assertEquals(0.5, hits.get(1).score());
+        assertEquals(List.of("喜欢安静的咖啡馆"),
+                index.search(List.of("咖"), 5).stream().map(h -> h.record().getContent()).toList());
+    }
+
+    @Test
+    void addAll_shouldEvictOldestRecordsAndTheirPostings() {
+        StructuredMemoryIndex index = new StructuredMemoryIndex(2);
+        index.addAll(List.of(record("冷战三天"), record("预算300")));
+        index.addAll(List.of(record("求婚计划")));
+
+        assertEquals(2, index.size());
+        assertTrue(index.search(List.of("冷战"), 5).isEmpty());
+        assertEquals(List.of("求婚计划", "预算300"),
+                index.search(List.of(), 5).stream().map(h -> h.record().getContent()).toList());
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.ai.chat.messages.UserMessage;
 
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -29,4 +30,19 @@ class StructuredMidMemoryServiceTest {
         assertTrue(candidates.stream().anyMatch(c -> c.getContent().contains("预算")));
         assertTrue(candidates.stream().anyMatch(c -> c.getContent().contains("纪念日")));
     }
+
+    @Test
+    void search_shouldFindOldRecordsBeyondRecentScanWindow() {
+        StructuredMidMemoryService service = new StructuredMidMemoryService(null);
+        String conversationId = "mem_struct_2";
+        service.saveFromEvictedMessages(conversationId, List.of(new UserMessage("下个月见家长，有点紧张")));
+        for (int i = 0; i < 100; i++) {
+            service.saveFromEvictedMessages(conversationId, List.of(new UserMessage("今天聊了第" + i + "部电影")));
+        }
+
+        List<MemoryCandidate> candidates = service.search(conversationId, "见家长", 3);
+
+        assertEquals(2, candidates.size());
+        assertTrue(candidates.stream().allMatch(c -> c.getContent().contains("见家长") && c.getSimilarity() == 1.0));
+    }
 }
@@ -0,0 +1,90 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SummaryCompactionSchedulerTest {
+
+    static class RecordingSummaryService extends ConversationSummaryService {
+
+        private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+        private final CountDownLatch latch;
+
+        RecordingSummaryService(CountDownLatch latch) {
+            super(new TieredChatMemoryAdvisorTest.NoopChatModel(), false, false);
+            this.latch = latch;
+        }
+
+        @Override
+        public String updateSummary(String conversationId, List<Message> evictedMessages) {
+            batches.add(evictedMessages.stream().map(Message::getText).toList());
+            latch.countDown();
+            return "";
+        }
+    }
+
+    @Test
+    void onEvicted_shouldBatchEvictionsWithinDebounceWindow() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        RecordingSummaryService summaryService = new RecordingSummaryService(latch);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MemoryMaintenanceExecutor executor = MemoryMaintenanceExecutor.withDefaults();
+        SummaryCompactionScheduler scheduler = new SummaryCompactionScheduler(summaryService, executor,
+                Duration.ofMillis(200), Duration.ofSeconds(5), 100, registry);
+
+        for (int i = 1; i <= 3; i++) {
+            scheduler.onEvicted("c1", List.of(new UserMessage("U" + i), new AssistantMessage("A" + i)));
+        }
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        executor.close();
+        assertEquals(List.of(List.of("U1", "A1", "U2", "A2", "U3", "A3")), summaryService.batches);
+        assertEquals(6.0, registry.get("summary_compaction_evicted_messages").counter().count());
+        assertEquals(1.0, registry.get("summary_compaction_flushes").counter().count());
+        scheduler.close();
+    }
+
+    @Test
+    void onEvicted_shouldFlushImmediatelyWhenBatchIsFull() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        RecordingSummaryService summaryService = new RecordingSummaryService(latch);
+        MemoryMaintenanceExecutor executor = MemoryMaintenanceExecutor.withDefaults();
+        SummaryCompactionScheduler scheduler = new SummaryCompactionScheduler(summaryService, executor,
+                Duration.ofMinutes(1), Duration.ofMinutes(5), 2, null);
+
+        scheduler.onEvicted("c2", List.of(new UserMessage("U1"), new AssistantMessage("A1")));
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of("U1", "A1")), summaryService.batches);
+        scheduler.close();
+        executor.close();
+    }
+
+    @Test
+    void updateSummary_shouldNotLoseConcurrentUpdates() {
+        ConversationSummaryService summaryService =
+                new ConversationSummaryService(new TieredChatMemoryAdvisorTest.NoopChatModel(), false, false);
+
+        // 3 个并发写：每次冲突都意味着另一个写入成功，因此 3 次尝试内必然全部写入
+        IntStream.range(0, 3).parallel().forEach(i ->
+                summaryService.updateSummary("c3", List.of(new UserMessage("事实" + i))));
+
+        String summary = summaryService.getSummary("c3");
+        for (int i = 0; i < 3; i++) {
+            assertTrue(summary.contains("事实" + i), "并发更新丢失: 事实" + i + " -> " + summary);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.ai.chat.client.ChatClientResponse;
 import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
 import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
 import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
 import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
 import org.springframework.ai.chat.memory.MessageWindowChatMemory;
 import org.springframework.ai.chat.messages.AssistantMessage;
@@ -18,6 +19,9 @@ import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.ChatOptions;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -290,4 +294,129 @@ class TieredChatMemoryAdvisorTest {
         assertTrue(window.get(1) instanceof AssistantMessage);
         assertEquals("A2", window.get(1).getText());
     }
+
+    @Test
+    void adviseCall_before_shouldDegradeSlowSource_andKeepOthers() {
+        String conversationId = "c3";
+        ChatMemory chatMemory = MessageWindowChatMemory.builder()
+                .chatMemoryRepository(new InMemoryChatMemoryRepository())
+                .maxMessages(10)
+                .build();
+        chatMemory.add(conversationId, List.of(new UserMessage("你好"), new AssistantMessage("你好呀")));
+
+        TestSummaryService summaryService = new TestSummaryService(null);
+        summaryService.putSummary(conversationId, "用户偏好：喜欢猫");
+        TestVectorMemoryService slowVectorMemoryService = new TestVectorMemoryService("历史信息：西湖", null) {
+            @Override
+            public String retrieveRelevantMemories(String conversationId, String query, int topK) {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.retrieveRelevantMemories(conversationId, query, topK);
+            }
+        };
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        TieredChatMemoryAdvisor advisor = TieredChatMemoryAdvisor.builder(chatMemory)
+                .summaryService(summaryService)
+                .vectorMemoryService(slowVectorMemoryService)
+                .longTermTimeout(Duration.ofMillis(100))
+                .meterRegistry(registry)
+                .build();
+
+        Map<String, Object> ctx = new HashMap<>();
+        ctx.put(ChatMemory.CONVERSATION_ID, conversationId);
+        ChatClientRequest req = new ChatClientRequest(
+                new Prompt(List.of(new SystemMessage("BASE_SYSTEM"), new UserMessage("今天去哪里约会？"))), ctx);
+
+        final List<ChatClientRequest> captured = new ArrayList<>(1);
+        CallAdvisorChain chain = new CallAdvisorChain() {
+            @Override
+            public ChatClientResponse nextCall(ChatClientRequest request) {
+                captured.add(request);
+                return buildResponse("OK", request.context());
+            }
+
+            @Override
+            public List<CallAdvisor> getCallAdvisors() {
+                return List.of();
+            }
+        };
+
+        long startNs = System.nanoTime();
+        advisor.adviseCall(req, chain);
+        long costMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+
+        assertTrue(costMs < 1500, "慢的长期记忆不应拖住整轮请求, costMs=" + costMs);
+        List<Message> msgs = captured.get(0).prompt().getInstructions();
+        assertEquals(4, msgs.size());
+        String systemText = msgs.get(0).getText();
+        assertFalse(systemText.contains("西湖"));
+        assertTrue(systemText.contains("喜欢猫"));
+        assertEquals(1L, registry.get("chat_memory_read").tag("source", "long_term").tag("outcome", "timeout").timer().count());
+        assertNull(registry.find("chat_memory_read").tag("source", "long_term").tag("outcome", "error").timer(),
+                "一次超时只应记录一个结果");
+        assertEquals(1L, registry.get("chat_memory_read").tag("source", "window").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void adviseCall_after_shouldUseReportedEvictions_withoutExtraWindowReads() throws Exception {
+        String conversationId = "c4";
+        AtomicInteger reads = new AtomicInteger();
+        InMemoryChatMemoryRepository delegate = new InMemoryChatMemoryRepository();
+        ChatMemoryRepository repository = new ChatMemoryRepository() {
+            @Override
+            public List<String> findConversationIds() {
+                return delegate.findConversationIds();
+            }
+
+            @Override
+            public List<Message> findByConversationId(String id) {
+                reads.incrementAndGet();
+                return delegate.findByConversationId(id);
+            }
+
+            @Override
+            public void saveAll(String id, List<Message> messages) {
+                delegate.saveAll(id, messages);
+            }
+
+            @Override
+            public void deleteByConversationId(String id) {
+                delegate.deleteByConversationId(id);
+            }
+        };
+        SlidingWindowChatMemory chatMemory = new SlidingWindowChatMemory(repository, 2);
+        chatMemory.add(conversationId, List.of(new UserMessage("U0"), new AssistantMessage("A0")));
+
+        CountDownLatch summaryLatch = new CountDownLatch(1);
+        TestSummaryService summaryService = new TestSummaryService(summaryLatch);
+        TieredChatMemoryAdvisor advisor = TieredChatMemoryAdvisor.builder(chatMemory)
+                .summaryService(summaryService)
+                .vectorMemoryService(new TestVectorMemoryService("", null))
+                .build();
+        CallAdvisorChain chain = new CallAdvisorChain() {
+            @Override
+            public ChatClientResponse nextCall(ChatClientRequest request) {
+                return buildResponse("A1", request.context());
+            }
+
+            @Override
+            public List<CallAdvisor> getCallAdvisors() {
+                return List.of();
+            }
+        };
+
+        Map<String, Object> ctx = new HashMap<>();
+        ctx.put(ChatMemory.CONVERSATION_ID, conversationId);
+        reads.set(0);
+        advisor.adviseCall(new ChatClientRequest(new Prompt(List.of(new UserMessage("U1"))), ctx), chain);
+
+        // before 读窗口一次 + 写入时读一次，不再有写入前后的快照读取
+        assertEquals(2, reads.get());
+        assertTrue(summaryLatch.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of("U0", "A0"), summaryService.getLastEvicted().stream().map(Message::getText).toList());
+    }
 }
@@ -0,0 +1,127 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TieredChatMemoryRepositoryTest {
+
+    @Test
+    void get_shouldBackfillLocalTier_andExportHitMissMetrics() {
+        ChatMemory fileMemory = MessageWindowChatMemory.builder()
+                .chatMemoryRepository(new InMemoryChatMemoryRepository())
+                .maxMessages(10)
+                .build();
+        fileMemory.add("c1", List.of(new UserMessage("U1"), new AssistantMessage("A1")));
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TieredChatMemoryRepository repository = new TieredChatMemoryRepository(
+                null, fileMemory, 1024 * 1024, Duration.ofMinutes(5), registry);
+
+        assertEquals(2, repository.get("c1").size());
+        repository.add("c1", List.of(new UserMessage("U2")));
+        List<Message> cached = repository.get("c1");
+
+        assertEquals(List.of("U1", "A1", "U2"), cached.stream().map(Message::getText).toList());
+        assertNotNull(registry.find("cache.gets").tag("cache", "chat_memory_local").tag("result", "hit").functionCounter());
+        assertTrue(registry.find("cache.gets").tag("result", "hit").functionCounter().count() >= 1);
+    }
+
+    @Test
+    void writeBehind_shouldServeUnflushedWrites_andCoalesceAppends() {
+        AtomicInteger fileWrites = new AtomicInteger();
+        ChatMemory backing = MessageWindowChatMemory.builder()
+                .chatMemoryRepository(new InMemoryChatMemoryRepository())
+                .maxMessages(10)
+                .build();
+        ChatMemory fileMemory = new ChatMemory() {
+            @Override
+            public void add(String conversationId, List<Message> messages) {
+                fileWrites.incrementAndGet();
+                backing.add(conversationId, messages);
+            }
+
+            @Override
+            public List<Message> get(String conversationId) {
+                return backing.get(conversationId);
+            }
+
+            @Override
+            public void clear(String conversationId) {
+                backing.clear(conversationId);
+            }
+        };
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        Executor manualExecutor = tasks::add;
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TieredChatMemoryRepository repository = new TieredChatMemoryRepository(
+                null, fileMemory, 1024 * 1024, Duration.ofMinutes(5), registry, manualExecutor, 100);
+
+        repository.add("c2", List.of(new UserMessage("U1")));
+        repository.add("c2", List.of(new AssistantMessage("A1")));
+        repository.add("c2", List.of(new UserMessage("U2")));
+
+        assertEquals(List.of("U1", "A1", "U2"), repository.get("c2").stream().map(Message::getText).toList());
+        assertTrue(backing.get("c2").isEmpty());
+        assertEquals(3.0, registry.get("chat_memory_write_behind_pending_messages").gauge().value());
+
+        assertEquals(1, tasks.size());
+        tasks.poll().run();
+
+        assertEquals(1, fileWrites.get());
+        assertEquals(List.of("U1", "A1", "U2"), backing.get("c2").stream().map(Message::getText).toList());
+        assertTrue(repository.flush(Duration.ofSeconds(1)));
+        assertEquals(1L, registry.get("chat_memory_write_behind_lag").timer().count());
+    }
+
+    @Test
+    void writeBehind_shouldLoadBaseOutsideConversationLock() throws Exception {
+        Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        WriteBehindChatMemoryPipeline pipeline = new WriteBehindChatMemoryPipeline(
+                List.of(), tasks::add, 100, Duration.ofMillis(50), null);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread slowWriter = Thread.ofVirtual().start(() -> pipeline.append("c3", List.of(new UserMessage("U2")), () -> {
+            loading.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return List.of(new UserMessage("stale"));
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        // 基线加载期间，同一会话的读取和写入不被阻塞
+        CompletableFuture<Void> fastWriter = CompletableFuture.runAsync(() ->
+                pipeline.append("c3", List.of(new UserMessage("U1")), () -> List.of(new UserMessage("U0"))));
+        fastWriter.get(1, TimeUnit.SECONDS);
+        assertEquals(List.of("U0", "U1"), pipeline.pendingView("c3").stream().map(Message::getText).toList());
+
+        // 慢加载结束后发现视图已建立，丢弃过期基线，直接追加
+        release.countDown();
+        slowWriter.join(5_000);
+        assertEquals(List.of("U0", "U1", "U2"), pipeline.pendingView("c3").stream().map(Message::getText).toList());
+    }
+}
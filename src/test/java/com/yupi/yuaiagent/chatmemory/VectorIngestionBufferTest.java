@@ -0,0 +1,127 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VectorIngestionBufferTest {
+
+    static class RecordingVectorStore implements VectorStore {
+
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        private final AtomicInteger failuresLeft;
+
+        RecordingVectorStore(int failures) {
+            this.failuresLeft = new AtomicInteger(failures);
+        }
+
+        @Override
+        public void add(List<Document> documents) {
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new IllegalStateException("embedding api unavailable");
+            }
+            batchSizes.add(documents.size());
+        }
+
+        @Override
+        public void delete(List<String> idList) {
+        }
+
+        @Override
+        public void delete(Filter.Expression filterExpression) {
+        }
+
+        @Override
+        public List<Document> similaritySearch(SearchRequest request) {
+            return List.of();
+        }
+    }
+
+    @Test
+    void offer_shouldWriteDocumentsFromManyConversationsInOneBatch() {
+        RecordingVectorStore vectorStore = new RecordingVectorStore(0);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        VectorIngestionBuffer buffer = new VectorIngestionBuffer(vectorStore, 64, 300, 100, 3, registry);
+
+        for (int i = 0; i < 5; i++) {
+            buffer.offer(List.of(new Document("用户: U" + i), new Document("AI助手: A" + i)));
+        }
+        buffer.close();
+
+        assertEquals(List.of(10), vectorStore.batchSizes);
+        assertEquals(10.0, registry.get("vector_ingest_documents").tag("outcome", "stored").counter().count());
+    }
+
+    @Test
+    void offer_shouldRetryFailedBatch() {
+        RecordingVectorStore vectorStore = new RecordingVectorStore(1);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        VectorIngestionBuffer buffer = new VectorIngestionBuffer(vectorStore, 64, 100, 100, 3, registry);
+
+        buffer.offer(List.of(new Document("1"), new Document("2"), new Document("3")));
+        buffer.close();
+
+        assertEquals(List.of(3), vectorStore.batchSizes);
+        assertEquals(3.0, registry.get("vector_ingest_documents").tag("outcome", "stored").counter().count());
+    }
+
+    @Test
+    void offer_shouldDropWhenBufferIsFull() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingVectorStore vectorStore = new RecordingVectorStore(0) {
+            @Override
+            public void add(List<Document> documents) {
+                writing.countDown();
+                try {
+                    release.await(2, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.add(documents);
+            }
+        };
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        VectorIngestionBuffer buffer = new VectorIngestionBuffer(vectorStore, 4, 0, 4, 1, registry);
+        List<String> droppedTexts = new CopyOnWriteArrayList<>();
+        buffer.setDroppedListener(docs -> docs.forEach(doc -> droppedTexts.add(doc.getText())));
+
+        buffer.offer(List.of(new Document("0")));
+        assertTrue(writing.await(2, TimeUnit.SECONDS));
+        int dropped = buffer.offer(List.of(new Document("1"), new Document("2"), new Document("3"),
+                new Document("4"), new Document("5"), new Document("6")));
+        release.countDown();
+        buffer.close();
+
+        assertEquals(2, dropped);
+        assertEquals(List.of("5", "6"), droppedTexts);
+        assertEquals(2.0, registry.get("vector_ingest_documents").tag("outcome", "dropped").counter().count());
+        assertEquals(5, vectorStore.batchSizes.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void offer_shouldReportBatchThatFailsAllAttempts() {
+        RecordingVectorStore vectorStore = new RecordingVectorStore(2);
+        VectorIngestionBuffer buffer = new VectorIngestionBuffer(vectorStore, 64, 100, 100, 2, null);
+        List<String> droppedTexts = new CopyOnWriteArrayList<>();
+        buffer.setDroppedListener(docs -> docs.forEach(doc -> droppedTexts.add(doc.getText())));
+
+        buffer.offer(List.of(new Document("1"), new Document("2")));
+        buffer.close();
+
+        assertTrue(vectorStore.batchSizes.isEmpty());
+        assertEquals(List.of("1", "2"), droppedTexts);
+    }
+}
@@ -0,0 +1,102 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VectorMemoryIngestFilterTest {
+
+    @Test
+    void isLowInformation_shouldDropGreetingsAndAcknowledgements() {
+        assertTrue(VectorMemoryIngestFilter.isLowInformation("好的~", 2));
+        assertTrue(VectorMemoryIngestFilter.isLowInformation("哈哈哈哈哈哈！", 2));
+        assertTrue(VectorMemoryIngestFilter.isLowInformation("  OK!! ", 2));
+        assertTrue(VectorMemoryIngestFilter.isLowInformation("👍", 2));
+        assertFalse(VectorMemoryIngestFilter.isLowInformation("我饿了", 2));
+        assertFalse(VectorMemoryIngestFilter.isLowInformation("她喜欢吃火锅", 2));
+    }
+
+    @Test
+    void isLowInformation_shouldKeepShortMeaningfulMessagesAndNumbers() {
+        assertFalse(VectorMemoryIngestFilter.isLowInformation("分手", 2));
+        assertFalse(VectorMemoryIngestFilter.isLowInformation("想你", 2));
+        assertFalse(VectorMemoryIngestFilter.isLowInformation("1000", 2));
+        assertFalse(VectorMemoryIngestFilter.isLowInformation("2000", 2));
+        assertFalse(VectorMemoryIngestFilter.isLowInformation("她生气了", 2));
+        assertTrue(VectorMemoryIngestFilter.isLowInformation("hahaha", 2));
+        assertTrue(VectorMemoryIngestFilter.isLowInformation("嗯", 2));
+    }
+
+    @Test
+    void inspect_shouldNotMergeMessagesWithDifferentNumbersOrRoles() {
+        VectorMemoryIngestFilter filter = new VectorMemoryIngestFilter(2, 1, 200, 0.1, null);
+
+        filter.inspect("c1", "d1", "USER", "我们纪念日的预算大概是500元左右，想找个安静的餐厅");
+        VectorMemoryIngestFilter.Decision corrected =
+                filter.inspect("c1", "d2", "USER", "我们纪念日的预算大概是5000元左右，想找个安静的餐厅");
+        assertEquals(VectorMemoryIngestFilter.Outcome.STORED, corrected.outcome(), "改了预算的消息不能合并掉");
+
+        VectorMemoryIngestFilter.Decision echoed =
+                filter.inspect("c1", "d3", "ASSISTANT", "我们纪念日的预算大概是5000元左右，想找个安静的餐厅");
+        assertEquals(VectorMemoryIngestFilter.Outcome.STORED, echoed.outcome(), "不同角色不算重复");
+
+        assertEquals(VectorMemoryIngestFilter.Outcome.DUPLICATE,
+                filter.inspect("c1", "d4", "USER", "我们纪念日的预算大概是5000元左右，想找个安静的餐厅。").outcome());
+    }
+
+    @Test
+    void inspect_shouldMergeNearDuplicatesAndBumpImportance() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        VectorMemoryIngestFilter filter = new VectorMemoryIngestFilter(2, 3, 200, 0.1, registry);
+
+        VectorMemoryIngestFilter.Decision first = filter.inspect("c1", "d1", "USER", "下周六是我们的恋爱纪念日，我想带她去海边看日落");
+        VectorMemoryIngestFilter.Decision again = filter.inspect("c1", "d2", "USER", "下周六是我们的恋爱纪念日，我想带她去海边看日落。");
+        VectorMemoryIngestFilter.Decision third = filter.inspect("c1", "d3", "USER", "下周六是我们的恋爱纪念日!!我想带她去海边看日落");
+        VectorMemoryIngestFilter.Decision other = filter.inspect("c1", "d4", "USER", "她最近工作压力很大，经常加班到深夜");
+        VectorMemoryIngestFilter.Decision filler = filter.inspect("c1", "d5", "USER", "嗯嗯");
+
+        assertEquals(VectorMemoryIngestFilter.Outcome.STORED, first.outcome());
+        assertEquals(VectorMemoryIngestFilter.Outcome.DUPLICATE, again.outcome());
+        assertEquals("d1", again.duplicateOfId());
+        assertEquals(0.6, again.importance(), 1e-9);
+        assertEquals(VectorMemoryIngestFilter.Outcome.DUPLICATE, third.outcome());
+        assertEquals(0.7, third.importance(), 1e-9);
+        assertEquals(2, third.duplicateCount());
+        assertEquals(VectorMemoryIngestFilter.Outcome.STORED, other.outcome());
+        assertEquals(VectorMemoryIngestFilter.Outcome.LOW_INFORMATION, filler.outcome());
+
+        assertEquals(2.0, registry.get("vector_memory_ingest_documents").tag("outcome", "stored").counter().count());
+        assertEquals(2.0, registry.get("vector_memory_ingest_documents").tag("outcome", "merged_duplicate").counter().count());
+        assertEquals(1.0, registry.get("vector_memory_ingest_documents").tag("outcome", "skipped_low_information").counter().count());
+    }
+
+    @Test
+    void inspect_shouldKeepWindowsPerConversationAndBounded() {
+        VectorMemoryIngestFilter filter = new VectorMemoryIngestFilter(2, 3, 1, 0.1, null);
+
+        filter.inspect("c1", "d1", "USER", "我们第一次约会是在学校附近的咖啡馆");
+        assertEquals(VectorMemoryIngestFilter.Outcome.STORED,
+                filter.inspect("c2", "d2", "USER", "我们第一次约会是在学校附近的咖啡馆").outcome());
+
+        filter.inspect("c1", "d3", "USER", "她生日是十月二十号，喜欢向日葵");
+        assertEquals(VectorMemoryIngestFilter.Outcome.STORED,
+                filter.inspect("c1", "d4", "USER", "我们第一次约会是在学校附近的咖啡馆").outcome());
+    }
+
+    @Test
+    void forget_shouldLetTheSameMessageBeStoredAgain() {
+        VectorMemoryIngestFilter filter = new VectorMemoryIngestFilter(2, 3, 200, 0.1, null);
+        String message = "她对芒果过敏，点甜品要避开";
+
+        assertEquals(VectorMemoryIngestFilter.Outcome.STORED, filter.inspect("c1", "d1", "USER", message).outcome());
+        filter.forget("c1", "d1");
+
+        VectorMemoryIngestFilter.Decision retry = filter.inspect("c1", "d2", "USER", message);
+        assertEquals(VectorMemoryIngestFilter.Outcome.STORED, retry.outcome());
+        assertEquals("d2", retry.duplicateOfId());
+        assertEquals(VectorMemoryIngestFilter.Outcome.DUPLICATE, filter.inspect("c1", "d3", "USER", message).outcome());
+    }
+}
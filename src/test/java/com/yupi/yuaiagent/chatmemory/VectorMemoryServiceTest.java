@@ -0,0 +1,60 @@
+package com.yupi.yuaiagent.chatmemory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VectorMemoryServiceTest {
+
+    private static final String MESSAGE = "她对芒果过敏，点甜品要避开";
+
+    @Test
+    void saveMessages_shouldStoreMessageAgainAfterFailedDirectWrite() {
+        VectorIngestionBufferTest.RecordingVectorStore vectorStore = new VectorIngestionBufferTest.RecordingVectorStore(1);
+        VectorMemoryService service = service(vectorStore, 1, 1);
+
+        service.saveMessages("c1", List.of(new UserMessage(MESSAGE)));
+        service.saveMessages("c1", List.of(new UserMessage(MESSAGE)));
+        service.saveMessages("c1", List.of(new UserMessage(MESSAGE)));
+
+        assertEquals(List.of(1), vectorStore.batchSizes, "失败的写入不留指纹，重发的消息写入一次，之后才按重复合并");
+    }
+
+    @Test
+    void saveMessages_shouldStoreMessageAgainAfterBufferedWriteIsDropped() {
+        VectorIngestionBufferTest.RecordingVectorStore vectorStore = new VectorIngestionBufferTest.RecordingVectorStore(1);
+        VectorMemoryService service = service(vectorStore, 64, 1);
+
+        service.saveMessages("c1", List.of(new UserMessage(MESSAGE)));
+        service.closeIngestionBuffer();
+        service.initIngestionBuffer();
+        service.saveMessages("c1", List.of(new UserMessage(MESSAGE)));
+        service.closeIngestionBuffer();
+
+        assertEquals(List.of(1), vectorStore.batchSizes);
+    }
+
+    private static VectorMemoryService service(VectorIngestionBufferTest.RecordingVectorStore vectorStore,
+                                               int batchSize,
+                                               int maxAttempts) {
+        VectorMemoryService service = new VectorMemoryService();
+        ReflectionTestUtils.setField(service, "vectorStore", vectorStore);
+        ReflectionTestUtils.setField(service, "vectorMemoryEnabled", true);
+        ReflectionTestUtils.setField(service, "ingestBatchSize", batchSize);
+        ReflectionTestUtils.setField(service, "ingestLingerMs", 50L);
+        ReflectionTestUtils.setField(service, "ingestBufferCapacity", 100);
+        ReflectionTestUtils.setField(service, "ingestMaxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(service, "dedupEnabled", true);
+        ReflectionTestUtils.setField(service, "dedupMinChars", 2);
+        ReflectionTestUtils.setField(service, "dedupHammingThreshold", 3);
+        ReflectionTestUtils.setField(service, "dedupWindowSize", 200);
+        ReflectionTestUtils.setField(service, "dedupImportanceStep", 0.1);
+        service.initIngestionBuffer();
+        service.initIngestFilter();
+        return service;
+    }
+}
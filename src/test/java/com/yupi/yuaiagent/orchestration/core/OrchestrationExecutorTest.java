@@ -0,0 +1,96 @@
+package com.yupi.yuaiagent.orchestration.core;
+
+import com.yupi.yuaiagent.tenant.TenantContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrchestrationExecutorTest {
+
+    @AfterEach
+    void tearDown() {
+        MDC.clear();
+        TenantContext.clear();
+    }
+
+    @Test
+    void execute_shouldRunOnVirtualThreadWithCallerMdcAndTenant() throws InterruptedException {
+        try (OrchestrationExecutor executor = new OrchestrationExecutor(4, 0, null)) {
+            MDC.put("traceId", "trace-1");
+            TenantContext.setTenant("t1", "u1");
+            AtomicReference<String> traceId = new AtomicReference<>();
+            AtomicReference<String> tenantKey = new AtomicReference<>();
+            AtomicBoolean virtual = new AtomicBoolean();
+            CountDownLatch done = new CountDownLatch(1);
+
+            executor.execute(() -> {
+                traceId.set(MDC.get("traceId"));
+                tenantKey.set(TenantContext.getTenant().getRateLimitKey());
+                virtual.set(Thread.currentThread().isVirtual());
+                done.countDown();
+            });
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals("trace-1", traceId.get());
+            assertEquals("t1:u1", tenantKey.get());
+            assertTrue(virtual.get());
+        }
+    }
+
+    @Test
+    void execute_shouldRejectWhenConcurrencyLimitStaysExhausted() throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (OrchestrationExecutor executor = new OrchestrationExecutor(1, 50, registry)) {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch rejected = new CountDownLatch(1);
+            AtomicBoolean secondRan = new AtomicBoolean();
+            AtomicReference<String> rejectedTraceId = new AtomicReference<>();
+
+            executor.execute(() -> {
+                started.countDown();
+                awaitQuietly(release);
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertEquals(1, executor.activeCount());
+
+            MDC.put("traceId", "trace-2");
+            executor.execute(() -> secondRan.set(true), () -> {
+                rejectedTraceId.set(MDC.get("traceId"));
+                rejected.countDown();
+            });
+
+            assertTrue(rejected.await(5, TimeUnit.SECONDS));
+            assertFalse(secondRan.get());
+            assertEquals("trace-2", rejectedTraceId.get());
+            assertEquals(1.0, registry.get("orchestration_executor_tasks").tag("outcome", "rejected").counter().count());
+
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (executor.activeCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            CountDownLatch third = new CountDownLatch(1);
+            executor.execute(third::countDown);
+            assertTrue(third.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.yupi.yuaiagent.orchestration.schema;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -65,4 +66,52 @@ class StructuredResponseComposerTest {
         assertEquals("warning", response.getSafety().getLevel());
         assertTrue(response.getBlocks().stream().anyMatch(block -> "risk_alert".equals(block.getType())));
     }
+
+    @Test
+    void incremental_shouldStreamTextAndDetectLocationCardAcrossChunks() {
+        StructuredResponseComposer composer = new StructuredResponseComposer(new ObjectMapper());
+        StructuredResponseComposer.IncrementalComposition composition = composer.incremental();
+        List<String> chunks = List.of("推荐你去这家店：<", "!--LOCATION", "_CARD:{\"name\":\"聚", "宝源\",\"photos\":[\"a\"]}-", "->\n记得提前", "排号。<!-- 普通注释 -->");
+
+        List<StructuredResponseComposer.StreamDelta> deltas = new ArrayList<>();
+        List<Integer> perChunk = new ArrayList<>();
+        for (String chunk : chunks) {
+            List<StructuredResponseComposer.StreamDelta> step = composition.append(chunk);
+            perChunk.add(step.size());
+            deltas.addAll(step);
+        }
+        deltas.addAll(composition.flush());
+
+        assertEquals("推荐你去这家店：", deltas.get(0).text());
+        assertEquals(1, perChunk.get(0));
+        List<StructuredResponseComposer.StreamDelta> cards = deltas.stream()
+                .filter(StructuredResponseComposer.StreamDelta::isLocationCard)
+                .toList();
+        assertEquals(1, cards.size());
+        assertEquals("聚宝源", cards.get(0).locationCard().get("name"));
+        assertEquals(List.of("a"), cards.get(0).locationCard().get("images"));
+        String streamedText = deltas.stream()
+                .filter(delta -> !delta.isLocationCard())
+                .map(StructuredResponseComposer.StreamDelta::text)
+                .reduce("", String::concat);
+        assertEquals("推荐你去这家店：\n记得提前排号。<!-- 普通注释 -->", streamedText);
+        assertFalse(streamedText.contains("LOCATION_CARD"));
+        assertEquals(String.join("", chunks), composition.rawText());
+
+        AssistantResponseSchema response = composer.compose("love_test", "DATE_PLANNING", "CHAT",
+                composition.rawText(), 0.9, false);
+        assertTrue(response.getBlocks().stream().anyMatch(block -> "location_cards".equals(block.getType())));
+    }
+
+    @Test
+    void incremental_shouldFlushUnterminatedMarkerAsText() {
+        StructuredResponseComposer composer = new StructuredResponseComposer(new ObjectMapper());
+        StructuredResponseComposer.IncrementalComposition composition = composer.incremental();
+
+        assertTrue(composition.append("好的<!--LOCATION_CARD:{\"name\"").stream().allMatch(d -> "好的".equals(d.text())));
+        List<StructuredResponseComposer.StreamDelta> rest = composition.flush();
+
+        assertEquals(1, rest.size());
+        assertEquals("<!--LOCATION_CARD:{\"name\"", rest.get(0).text());
+    }
 }
@@ -0,0 +1,232 @@
+package com.yupi.yuaiagent.orchestration.v2;
+
+import com.yupi.yuaiagent.agent.specialized.AgentCapability;
+import com.yupi.yuaiagent.agent.specialized.SpecializedAgent;
+import com.yupi.yuaiagent.orchestration.core.AgentContext;
+import com.yupi.yuaiagent.orchestration.core.AgentOutput;
+import com.yupi.yuaiagent.orchestration.core.AgentType;
+import com.yupi.yuaiagent.orchestration.core.CancellationToken;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AgentDagExecutorTest {
+
+    @Test
+    void run_shouldExecuteIndependentAgentsConcurrentlyAndRespectDeclaredInputs() throws Exception {
+        // 三个独立 Agent 必须同时到达屏障才能返回，串行执行会在 2 秒后抛 TimeoutException
+        CyclicBarrier barrier = new CyclicBarrier(3);
+        Function<AgentContext, Map<String, Object>> awaitBarrier = ctx -> {
+            try {
+                barrier.await(2, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return Map.of("ok", true);
+        };
+        List<String> seenByNarrative = Collections.synchronizedList(new ArrayList<>());
+        RecordingListener listener = new RecordingListener();
+        Map<String, Object> sharedState = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        AgentDagExecutor.Result result = new AgentDagExecutor(3000).run(List.of(
+                new EmotionStub(awaitBarrier),
+                new MemoryStub(awaitBarrier),
+                new PersonaStub(awaitBarrier),
+                new NarrativeStub(ctx -> {
+                    seenByNarrative.addAll(ctx.getSharedState().keySet());
+                    return Map.of();
+                })
+        ), context(sharedState, new CancellationToken()), listener);
+
+        assertFalse(result.blocked());
+        assertFalse(result.interrupted());
+        assertEquals(List.of("EMOTION", "MEMORY", "PERSONA", "NARRATIVE"), listener.started);
+        assertEquals("NARRATIVE", listener.finished.get(3));
+        assertTrue(seenByNarrative.containsAll(List.of("emotion", "memory", "persona")),
+                "依赖 emotion / memory / persona 的节点应在它们写入 sharedState 之后开始");
+        assertTrue(result.results().values().stream().allMatch(r -> r.status() == AgentDagExecutor.Status.COMPLETED));
+    }
+
+    @Test
+    void run_shouldShortCircuitWhenSafetyBlocksAndDegradeTimedOutOptionalAgents() throws Exception {
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        AtomicBoolean slowInterrupted = new AtomicBoolean();
+        AtomicBoolean narrativeRan = new AtomicBoolean();
+        RecordingListener listener = new RecordingListener();
+        Map<String, Object> sharedState = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        AgentDagExecutor.Result blocked = new AgentDagExecutor(3000).run(List.of(
+                new SafetyStub(ctx -> {
+                    awaitQuietly(slowStarted);
+                    return null;
+                }),
+                new MemoryStub(ctx -> {
+                    slowStarted.countDown();
+                    try {
+                        Thread.sleep(5_000);
+                    } catch (InterruptedException e) {
+                        slowInterrupted.set(true);
+                    }
+                    return Map.of();
+                }),
+                new NarrativeStub(ctx -> {
+                    narrativeRan.set(true);
+                    return Map.of();
+                })
+        ), context(sharedState, new CancellationToken()), listener);
+
+        assertTrue(blocked.blocked());
+        assertEquals(AgentType.SAFETY, blocked.blockedBy().agentType());
+        assertEquals(AgentDagExecutor.Status.CANCELLED, blocked.results().get(AgentType.MEMORY).status());
+        assertFalse(narrativeRan.get(), "短路后未开始的节点不应执行");
+        assertEquals(List.of("SAFETY", "MEMORY"), listener.started);
+        assertEquals(List.of("SAFETY", "MEMORY"), listener.finished);
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (!slowInterrupted.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(slowInterrupted.get(), "短路时仍在运行的节点应被中断");
+
+        // 可选节点超时：降级为空结果、不写 sharedState，依赖它的节点照常执行
+        sharedState.clear();
+        AgentDagExecutor.Result degraded = new AgentDagExecutor(100).run(List.of(
+                new MemoryStub(ctx -> {
+                    try {
+                        Thread.sleep(2_000);
+                    } catch (InterruptedException ignored) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Map.of("count", 1);
+                }),
+                new NarrativeStub(ctx -> Map.of())
+        ), context(sharedState, new CancellationToken()), new RecordingListener());
+        assertEquals(AgentDagExecutor.Status.TIMED_OUT, degraded.results().get(AgentType.MEMORY).status());
+        assertEquals(AgentDagExecutor.Status.COMPLETED, degraded.results().get(AgentType.NARRATIVE).status());
+        assertNull(sharedState.get("memory"));
+
+        // 必需节点（Safety）超时则整体失败
+        assertThrows(IllegalStateException.class, () -> new AgentDagExecutor(100).run(List.of(
+                new SafetyStub(ctx -> {
+                    try {
+                        Thread.sleep(2_000);
+                    } catch (InterruptedException ignored) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Map.of();
+                })
+        ), context(sharedState, new CancellationToken()), new RecordingListener()));
+    }
+
+    private static AgentContext context(Map<String, Object> sharedState, CancellationToken token) {
+        return AgentContext.builder()
+                .conversationId("c1")
+                .message("hello")
+                .sharedState(sharedState)
+                .cancellationToken(token)
+                .build();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class RecordingListener implements AgentDagExecutor.Listener {
+
+        private final List<String> started = new ArrayList<>();
+        private final List<String> finished = new ArrayList<>();
+
+        @Override
+        public void onStarted(AgentDagExecutor.Node node) {
+            started.add(node.agentType().name());
+        }
+
+        @Override
+        public void onFinished(AgentDagExecutor.NodeResult result) {
+            finished.add(result.node().agentType().name());
+        }
+    }
+
+    private abstract static class StubAgent implements SpecializedAgent {
+
+        private final AgentType type;
+        private final Function<AgentContext, Map<String, Object>> body;
+
+        private StubAgent(AgentType type, Function<AgentContext, Map<String, Object>> body) {
+            this.type = type;
+            this.body = body;
+        }
+
+        @Override
+        public AgentType getAgentType() {
+            return type;
+        }
+
+        @Override
+        public AgentOutput execute(AgentContext context) {
+            Map<String, Object> data = body.apply(context);
+            return AgentOutput.builder()
+                    .agentType(type)
+                    .blocked(data == null)
+                    .summary(data == null ? "blocked" : "ok")
+                    .data(data == null ? Map.of("code", "unsafe") : data)
+                    .build();
+        }
+    }
+
+    /**
+     * body 返回 null 表示拦截。
+     */
+    @AgentCapability(type = AgentType.SAFETY, required = true, produces = "safety")
+    private static class SafetyStub extends StubAgent {
+        private SafetyStub(Function<AgentContext, Map<String, Object>> body) {
+            super(AgentType.SAFETY, body);
+        }
+    }
+
+    @AgentCapability(type = AgentType.EMOTION, produces = "emotion")
+    private static class EmotionStub extends StubAgent {
+        private EmotionStub(Function<AgentContext, Map<String, Object>> body) {
+            super(AgentType.EMOTION, body);
+        }
+    }
+
+    @AgentCapability(type = AgentType.MEMORY, produces = "memory")
+    private static class MemoryStub extends StubAgent {
+        private MemoryStub(Function<AgentContext, Map<String, Object>> body) {
+            super(AgentType.MEMORY, body);
+        }
+    }
+
+    @AgentCapability(type = AgentType.PERSONA, produces = "persona")
+    private static class PersonaStub extends StubAgent {
+        private PersonaStub(Function<AgentContext, Map<String, Object>> body) {
+            super(AgentType.PERSONA, body);
+        }
+    }
+
+    @AgentCapability(type = AgentType.NARRATIVE, consumes = {"safety", "emotion", "memory", "persona"})
+    private static class NarrativeStub extends StubAgent {
+        private NarrativeStub(Function<AgentContext, Map<String, Object>> body) {
+            super(AgentType.NARRATIVE, body);
+        }
+    }
+}
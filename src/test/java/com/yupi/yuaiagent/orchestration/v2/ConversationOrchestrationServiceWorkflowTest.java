@@ -15,6 +15,7 @@ import com.yupi.yuaiagent.orchestration.core.AgentContext;
 import com.yupi.yuaiagent.orchestration.core.AgentOutput;
 import com.yupi.yuaiagent.orchestration.core.AgentType;
 import com.yupi.yuaiagent.orchestration.core.ConversationRuntimeRegistry;
+import com.yupi.yuaiagent.orchestration.core.OrchestrationExecutor;
 import com.yupi.yuaiagent.orchestration.core.OrchestrationEventType;
 import com.yupi.yuaiagent.orchestration.model.ExecutionMode;
 import com.yupi.yuaiagent.orchestration.model.OrchestrationPolicy;
@@ -80,7 +81,8 @@ class ConversationOrchestrationServiceWorkflowTest {
                 narrativeAgent,
                 assetAgent,
                 eventPublisher,
-                new ConversationRuntimeRegistry()
+                new ConversationRuntimeRegistry(),
+                OrchestrationExecutor.defaults()
         );
         ReflectionTestUtils.setField(service, "sseTimeoutMs", 300_000L);
     }
@@ -106,14 +108,15 @@ class ConversationOrchestrationServiceWorkflowTest {
                 OrchestrationEventType.orchestration_started,
                 OrchestrationEventType.intent_classified,
                 OrchestrationEventType.policy_selected,
+                // Safety / Emotion / Memory / Persona 并发：先依次发出 4 个 started，再按完成顺序发出 finished
                 OrchestrationEventType.agent_started,
-                OrchestrationEventType.agent_finished,
                 OrchestrationEventType.agent_started,
-                OrchestrationEventType.agent_finished,
                 OrchestrationEventType.agent_started,
-                OrchestrationEventType.agent_finished,
                 OrchestrationEventType.agent_started,
                 OrchestrationEventType.agent_finished,
+                OrchestrationEventType.agent_finished,
+                OrchestrationEventType.agent_finished,
+                OrchestrationEventType.agent_finished,
                 OrchestrationEventType.agent_started,
                 OrchestrationEventType.agent_finished,
                 OrchestrationEventType.response_chunk,
@@ -155,13 +158,13 @@ class ConversationOrchestrationServiceWorkflowTest {
                 OrchestrationEventType.intent_classified,
                 OrchestrationEventType.policy_selected,
                 OrchestrationEventType.agent_started,
-                OrchestrationEventType.agent_finished,
                 OrchestrationEventType.agent_started,
-                OrchestrationEventType.agent_finished,
                 OrchestrationEventType.agent_started,
-                OrchestrationEventType.agent_finished,
                 OrchestrationEventType.agent_started,
                 OrchestrationEventType.agent_finished,
+                OrchestrationEventType.agent_finished,
+                OrchestrationEventType.agent_finished,
+                OrchestrationEventType.agent_finished,
                 OrchestrationEventType.tool_call_started,
                 OrchestrationEventType.response_chunk,
                 OrchestrationEventType.tool_call_finished,
@@ -176,6 +179,25 @@ class ConversationOrchestrationServiceWorkflowTest {
         Assertions.assertTrue(assetAgent.getLastSystemPrompt().contains("可参考历史消息条数"), "systemPrompt 应包含 memory 信息");
     }
 
+    @Test
+    void streamConversation_shouldRefuseWithoutNarrative_whenSafetyBlocks() throws InterruptedException {
+        policyResolver.setNextPolicy(policy(ExecutionMode.CHAT, "complex_relationship_task", Set.of()));
+        safetyAgent.setBlockNext(true);
+
+        service.streamConversation("conv_block_flow", request("违规内容", "agent"));
+
+        Assertions.assertTrue(eventPublisher.awaitTerminal(5), "预期应在超时前收到终态事件");
+        List<String> startedAgents = eventPublisher.payloadsOf(OrchestrationEventType.agent_started).stream()
+                .map(payload -> String.valueOf(payload.get("agent")))
+                .toList();
+        Assertions.assertEquals("SAFETY", startedAgents.get(0));
+        Assertions.assertFalse(startedAgents.contains("NARRATIVE"), "安全拦截后不应进入叙事生成");
+        Assertions.assertEquals(0, narrativeAgent.getStreamCalls());
+        Assertions.assertEquals(startedAgents.size(), eventPublisher.payloadsOf(OrchestrationEventType.agent_finished).size(),
+                "每个已开始的 Agent 都应有对应的 agent_finished");
+        Assertions.assertTrue(eventPublisher.getEventTypes().contains(OrchestrationEventType.response_completed));
+    }
+
     @Test
     void streamConversation_shouldEmitInterruptedEvent_whenRuntimeInterrupted() throws InterruptedException {
         intentRouter.setNextResult(new IntentRouter.RouteResult(
@@ -344,10 +366,25 @@ class ConversationOrchestrationServiceWorkflowTest {
     }
 
     private static class StubSafetyAgent extends SafetyAgent {
+
+        private volatile boolean blockNext = false;
+
         @Override
         public AgentOutput execute(AgentContext context) {
+            if (blockNext) {
+                return AgentOutput.builder()
+                        .agentType(AgentType.SAFETY)
+                        .blocked(true)
+                        .summary("命中高风险内容")
+                        .data(Map.of("code", "unsafe"))
+                        .build();
+            }
             return output(AgentType.SAFETY, "安全检查通过", Map.of("code", "safe"));
         }
+
+        private void setBlockNext(boolean blockNext) {
+            this.blockNext = blockNext;
+        }
     }
 
     private static class StubEmotionAgent extends EmotionAgent {
@@ -0,0 +1,351 @@
+package com.yupi.yuaiagent.orchestration.v3;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yupi.yuaiagent.agent.specialized.AgentCapability;
+import com.yupi.yuaiagent.agent.specialized.SpecializedAgent;
+import com.yupi.yuaiagent.orchestration.core.AgentContext;
+import com.yupi.yuaiagent.orchestration.core.AgentOutput;
+import com.yupi.yuaiagent.orchestration.core.AgentType;
+import com.yupi.yuaiagent.orchestration.core.CancellationToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlanSchedulerTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void waves_shouldGroupByPriorityAndHonorExecutionMode() throws Exception {
+        String json = """
+                {
+                  "intent": "emotion_support",
+                  "executionMode": "MIXED",
+                  "requiredAgents": [
+                    {"type": "PERSONA", "priority": 2},
+                    {"type": "SAFETY", "priority": 1},
+                    {"type": "EMOTION", "priority": 2},
+                    {"type": "MEMORY", "priority": 2, "executionMode": "SEQUENTIAL"}
+                  ]
+                }
+                """;
+        ExecutionPlan plan = new ObjectMapper().readValue(json, ExecutionPlan.class);
+
+        List<PlanScheduler.Wave> mixed = PlanScheduler.waves(plan);
+        assertEquals(List.of(List.of(AgentType.SAFETY), List.of(AgentType.PERSONA, AgentType.EMOTION), List.of(AgentType.MEMORY)),
+                types(mixed));
+        assertEquals(List.of(1, 2, 3), mixed.stream().map(PlanScheduler.Wave::index).toList());
+
+        plan.setExecutionMode(PlanExecutionMode.from("serial"));
+        assertEquals(4, PlanScheduler.waves(plan).size());
+
+        plan.setExecutionMode(PlanExecutionMode.PARALLEL);
+        assertEquals(1, PlanScheduler.waves(plan).size());
+    }
+
+    @Test
+    void execute_shouldRunSamePriorityConcurrentlyAndMergeOutputsInPlanOrder() {
+        // 第二波的三个 Agent 必须同时到达屏障才能返回，串行执行会在 2 秒后失败
+        CyclicBarrier barrier = new CyclicBarrier(3);
+        Function<AgentContext, Map<String, Object>> awaitBarrier = ctx -> {
+            try {
+                barrier.await(2, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return Map.of("ok", true);
+        };
+        List<String> safetySawLater = Collections.synchronizedList(new ArrayList<>());
+        RecordingListener listener = new RecordingListener();
+
+        PlanScheduler.Result result = scheduler(List.of(
+                new SafetyStub(ctx -> {
+                    safetySawLater.addAll(listener.started);
+                    return Map.of("safe", true);
+                }),
+                new EmotionStub(awaitBarrier),
+                new MemoryStub(awaitBarrier),
+                new PersonaStub(awaitBarrier)
+        ), 3000).execute(plan(
+                task(AgentType.PERSONA, 2),
+                task(AgentType.MEMORY, 2),
+                task(AgentType.SAFETY, 1),
+                task(AgentType.EMOTION, 2)
+        ), this::context, new CancellationToken(), listener);
+
+        assertFalse(result.blocked());
+        assertFalse(result.cancelled());
+        assertEquals(2, result.wavesExecuted());
+        assertEquals(List.of("SAFETY"), safetySawLater, "第一波执行时第二波尚未开始");
+        assertEquals(List.of("SAFETY", "PERSONA", "MEMORY", "EMOTION"), new ArrayList<>(result.outputs().keySet()));
+        assertEquals(4, listener.finished.size());
+        PlanScheduler.TaskResult last = listener.finished.get(3);
+        assertEquals(2, last.wave().index());
+        assertTrue(last.lastInWave());
+        assertTrue(listener.finished.stream().allMatch(r -> r.status() == PlanScheduler.Status.COMPLETED));
+    }
+
+    @Test
+    void execute_shouldStopAfterBlockedWaveAndInterruptOnCancellation() throws Exception {
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        AtomicBoolean slowInterrupted = new AtomicBoolean();
+        AtomicBoolean laterWaveRan = new AtomicBoolean();
+        Function<AgentContext, Map<String, Object>> slow = ctx -> {
+            slowStarted.countDown();
+            try {
+                Thread.sleep(5_000);
+            } catch (InterruptedException e) {
+                slowInterrupted.set(true);
+            }
+            return Map.of();
+        };
+
+        // Safety 拦截：同波次的慢任务被中断并收到 CANCELLED 结束事件，后续波次不执行
+        RecordingListener blockedListener = new RecordingListener();
+        PlanScheduler.Result blocked = scheduler(List.of(
+                new SafetyStub(ctx -> {
+                    awaitQuietly(slowStarted);
+                    return null;
+                }),
+                new MemoryStub(slow),
+                new PersonaStub(ctx -> {
+                    laterWaveRan.set(true);
+                    return Map.of();
+                })
+        ), 3000).execute(plan(
+                task(AgentType.SAFETY, 1),
+                task(AgentType.MEMORY, 1),
+                task(AgentType.PERSONA, 2)
+        ), this::context, new CancellationToken(), blockedListener);
+
+        assertTrue(blocked.blocked());
+        assertEquals(List.of(PlanScheduler.Status.COMPLETED, PlanScheduler.Status.CANCELLED),
+                blockedListener.finished.stream().map(PlanScheduler.TaskResult::status).toList());
+        assertEquals(AgentType.MEMORY, blockedListener.finished.get(1).task().getAgentType());
+        assertTrue(blockedListener.finished.get(1).lastInWave());
+        assertEquals(AgentType.SAFETY, blocked.blockedBy().task().getAgentType());
+        assertEquals(1, blocked.wavesExecuted());
+        assertFalse(laterWaveRan.get());
+        awaitTrue(slowInterrupted);
+
+        // 波次内取消：正在运行的任务被中断并收到 CANCELLED 结束事件，后续波次不执行
+        RecordingListener cancelListener = new RecordingListener();
+        CancellationToken token = new CancellationToken();
+        CountDownLatch secondSlowStarted = new CountDownLatch(1);
+        AtomicBoolean secondInterrupted = new AtomicBoolean();
+        laterWaveRan.set(false);
+        executor.execute(() -> {
+            awaitQuietly(secondSlowStarted);
+            token.cancel("user");
+        });
+        PlanScheduler.Result cancelled = scheduler(List.of(
+                new MemoryStub(ctx -> {
+                    secondSlowStarted.countDown();
+                    try {
+                        Thread.sleep(5_000);
+                    } catch (InterruptedException e) {
+                        secondInterrupted.set(true);
+                    }
+                    return Map.of();
+                }),
+                new PersonaStub(ctx -> {
+                    laterWaveRan.set(true);
+                    return Map.of();
+                })
+        ), 3000).execute(plan(
+                task(AgentType.MEMORY, 1),
+                task(AgentType.PERSONA, 2)
+        ), this::context, token, cancelListener);
+
+        assertTrue(cancelled.cancelled());
+        assertEquals(List.of(PlanScheduler.Status.CANCELLED),
+                cancelListener.finished.stream().map(PlanScheduler.TaskResult::status).toList());
+        assertFalse(laterWaveRan.get());
+        awaitTrue(secondInterrupted);
+
+        // 可选 Agent 超时：丢弃输出，后续波次照常执行
+        RecordingListener timeoutListener = new RecordingListener();
+        PlanScheduler.Result degraded = scheduler(List.of(
+                new MemoryStub(slow),
+                new PersonaStub(ctx -> Map.of())
+        ), 100).execute(plan(
+                task(AgentType.MEMORY, 1),
+                task(AgentType.PERSONA, 2)
+        ), this::context, new CancellationToken(), timeoutListener);
+
+        assertEquals(PlanScheduler.Status.TIMED_OUT, timeoutListener.finished.get(0).status());
+        assertEquals(List.of("PERSONA"), new ArrayList<>(degraded.outputs().keySet()));
+    }
+
+    @Test
+    void execute_shouldNotCountPoolQueueTimeAgainstTaskTimeout() {
+        // 单线程池：第二个任务要排队等第一个跑完，排队时间计入超时的话会在 300ms 时被判超时
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        Function<AgentContext, Map<String, Object>> work = ctx -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Map.of("ok", true);
+        };
+        List<SpecializedAgent> agents = List.of(new EmotionStub(work), new MemoryStub(work));
+        RecordingListener listener = new RecordingListener();
+        try {
+            PlanScheduler.Result result = new PlanScheduler(singleThread,
+                    type -> agents.stream().filter(a -> a.getAgentType() == type).findFirst(),
+                    300).execute(plan(
+                    task(AgentType.EMOTION, 1),
+                    task(AgentType.MEMORY, 1)
+            ), this::context, new CancellationToken(), listener);
+
+            assertEquals(List.of("EMOTION", "MEMORY"), new ArrayList<>(result.outputs().keySet()));
+            assertTrue(listener.finished.stream().allMatch(r -> r.status() == PlanScheduler.Status.COMPLETED));
+            assertTrue(listener.finished.stream().allMatch(r -> r.durationMs() < 300), "耗时不含排队时间");
+        } finally {
+            singleThread.shutdownNow();
+        }
+    }
+
+    private PlanScheduler scheduler(List<SpecializedAgent> agents, long timeoutMs) {
+        return new PlanScheduler(executor,
+                type -> agents.stream().filter(a -> a.getAgentType() == type).findFirst(),
+                timeoutMs);
+    }
+
+    private AgentContext context(AgentTask task) {
+        return AgentContext.builder()
+                .conversationId("c1")
+                .message("hello")
+                .sharedState(Map.of())
+                .build();
+    }
+
+    private static ExecutionPlan plan(AgentTask... tasks) {
+        return ExecutionPlan.builder()
+                .intent("test")
+                .executionMode(PlanExecutionMode.MIXED)
+                .requiredAgents(List.of(tasks))
+                .build();
+    }
+
+    private static AgentTask task(AgentType type, int priority) {
+        return AgentTask.builder().agentType(type).priority(priority).inputContext(Map.of()).build();
+    }
+
+    private static List<List<AgentType>> types(List<PlanScheduler.Wave> waves) {
+        return waves.stream()
+                .map(w -> w.tasks().stream().map(AgentTask::getAgentType).toList())
+                .toList();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitTrue(AtomicBoolean flag) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (!flag.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(flag.get(), "仍在运行的任务应被中断");
+    }
+
+    private static class RecordingListener implements PlanScheduler.Listener {
+
+        private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+        private final List<PlanScheduler.TaskResult> finished = new ArrayList<>();
+
+        @Override
+        public void onStarted(PlanScheduler.Wave wave, AgentTask task) {
+            started.add(task.getAgentType().name());
+        }
+
+        @Override
+        public void onFinished(PlanScheduler.TaskResult result) {
+            finished.add(result);
+        }
+    }
+
+    private abstract static class StubAgent implements SpecializedAgent {
+
+        private final AgentType type;
+        private final Function<AgentContext, Map<String, Object>> body;
+
+        private StubAgent(AgentType type, Function<AgentContext, Map<String, Object>> body) {
+            this.type = type;
+            this.body = body;
+        }
+
+        @Override
+        public AgentType getAgentType() {
+            return type;
+        }
+
+        @Override
+        public AgentOutput execute(AgentContext context) {
+            Map<String, Object> data = body.apply(context);
+            return AgentOutput.builder()
+                    .agentType(type)
+                    .blocked(data == null)
+                    .summary(data == null ? "blocked" : "ok")
+                    .data(data == null ? Map.of("code", "unsafe") : data)
+                    .build();
+        }
+    }
+
+    /**
+     * body 返回 null 表示拦截。
+     */
+    @AgentCapability(type = AgentType.SAFETY, required = true)
+    private static class SafetyStub extends StubAgent {
+        private SafetyStub(Function<AgentContext, Map<String, Object>> body) {
+            super(AgentType.SAFETY, body);
+        }
+    }
+
+    @AgentCapability(type = AgentType.EMOTION)
+    private static class EmotionStub extends StubAgent {
+        private EmotionStub(Function<AgentContext, Map<String, Object>> body) {
+            super(AgentType.EMOTION, body);
+        }
+    }
+
+    @AgentCapability(type = AgentType.MEMORY)
+    private static class MemoryStub extends StubAgent {
+        private MemoryStub(Function<AgentContext, Map<String, Object>> body) {
+            super(AgentType.MEMORY, body);
+        }
+    }
+
+    @AgentCapability(type = AgentType.PERSONA)
+    private static class PersonaStub extends StubAgent {
+        private PersonaStub(Function<AgentContext, Map<String, Object>> body) {
+            super(AgentType.PERSONA, body);
+        }
+    }
+}
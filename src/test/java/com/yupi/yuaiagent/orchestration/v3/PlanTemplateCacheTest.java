@@ -0,0 +1,131 @@
+package com.yupi.yuaiagent.orchestration.v3;
+
+import com.yupi.yuaiagent.orchestration.core.AgentType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlanTemplateCacheTest {
+
+    @Test
+    void ruleBasedPlanner_shouldPlanGreetingsAndEmotionSupportWithoutLlm() {
+        RuleBasedPlanner planner = new RuleBasedPlanner();
+
+        PlanSignature greeting = PlanSignature.of("  你好！", "p1", null);
+        assertEquals("CHITCHAT", greeting.intent());
+        ExecutionPlan chitchat = PlanTemplate.bind(planner.plan(greeting).orElseThrow(), "  你好！", "c1", "p1");
+        assertEquals(List.of(AgentType.SAFETY, AgentType.EMOTION), types(chitchat));
+        assertEquals("  你好！", chitchat.getRequiredAgents().get(0).getInputContext().get("message"));
+
+        String message = "我和女朋友吵架了，她不理我，我很焦虑";
+        PlanSignature conflict = PlanSignature.of(message, "p1", "s1");
+        assertEquals("CONFLICT_RESOLUTION", conflict.intent());
+        assertEquals(List.of("不理我", "吵架", "焦虑"), conflict.keywords());
+        ExecutionPlan support = PlanTemplate.bind(planner.plan(conflict).orElseThrow(), message, "c1", "p1");
+        assertEquals(List.of(AgentType.SAFETY, AgentType.EMOTION, AgentType.MEMORY, AgentType.PERSONA), types(support));
+        assertEquals(2, PlanScheduler.waves(support).size(), "Emotion / Memory / Persona 在同一波次并行");
+        assertEquals(Map.of("conversationId", "c1", "query", "不理我 吵架 焦虑"),
+                support.getRequiredAgents().get(2).getInputContext());
+        assertEquals("p1", support.getRequiredAgents().get(3).getInputContext().get("personaId"));
+
+        // 需要抽取参数的工具类意图和未识别的消息交给缓存 / LLM
+        assertTrue(planner.plan(PlanSignature.of("推荐北京的约会地点", "p1", null)).isEmpty());
+        assertTrue(planner.plan(PlanSignature.of("今天吃了一碗面", "p1", null)).isEmpty());
+    }
+
+    @Test
+    void signature_shouldMatchEmoOnlyAsStandaloneWord() {
+        assertEquals("EMOTION_SUPPORT", PlanSignature.of("今天好EMO啊", "p1", null).intent());
+        assertEquals(List.of("emo"), PlanSignature.of("有点 emo 了", "p1", null).keywords());
+
+        for (String message : List.of("帮我做个demo", "记在memo里", "发个emoji给她", "remove it")) {
+            PlanSignature signature = PlanSignature.of(message, "p1", null);
+            assertEquals("UNKNOWN", signature.intent(), message);
+            assertTrue(signature.keywords().isEmpty(), message);
+        }
+    }
+
+    @Test
+    void cache_shouldReuseKeywordTemplateAcrossMessagesAndBindPerRequest() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PlanTemplateCache cache = new PlanTemplateCache(100, Duration.ofMinutes(5), registry);
+        String first = "纪念日送什么礼物好";
+        PlanSignature signature = PlanSignature.of(first, "p1", "s1");
+        ExecutionPlan llmPlan = plan("GIFT_ADVICE",
+                task(AgentType.SAFETY, 1, Map.of("message", first)),
+                task(AgentType.TOOLS, 2, Map.of("toolName", "webSearch", "params", Map.of("query", "纪念日 礼物"))),
+                task(AgentType.PERSONA, 2, Map.of("personaId", "{personaId}")));
+
+        assertTrue(cache.put(llmPlan, signature, first, "c1", "p1"));
+
+        String second = "纪念日快到了，送什么礼物呢";
+        PlanSignature secondSignature = PlanSignature.of(second, "p1", "s1");
+        assertEquals(signature.key(), secondSignature.key());
+        ExecutionPlan hit = cache.get(secondSignature, second, "c2", "p1").orElseThrow();
+        assertEquals(second, hit.getRequiredAgents().get(0).getInputContext().get("message"));
+        assertEquals("p1", hit.getRequiredAgents().get(2).getInputContext().get("personaId"));
+        assertEquals(Map.of("query", "纪念日 礼物"), hit.getRequiredAgents().get(1).getInputContext().get("params"));
+
+        // 绑定结果不共享模板的可变对象
+        hit.getRequiredAgents().get(0).getInputContext().put("message", "changed");
+        ExecutionPlan again = cache.get(secondSignature, second, "c2", "p1").orElseThrow();
+        assertEquals(second, again.getRequiredAgents().get(0).getInputContext().get("message"));
+        assertNotSame(hit.getRequiredAgents(), again.getRequiredAgents());
+
+        // 人格 / 场景不同则不命中
+        assertTrue(cache.get(PlanSignature.of(second, "p2", "s1"), second, "c2", "p2").isEmpty());
+        assertEquals(2.0, registry.get("cache.gets").tag("cache", "v3_plan").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void cache_shouldOnlyReuseMessageSpecificParamsForTheSameMessage() {
+        PlanTemplateCache cache = new PlanTemplateCache(100, Duration.ofMinutes(5), null);
+        String beijing = "推荐北京的约会地点";
+        ExecutionPlan llmPlan = plan("DATE_PLANNING",
+                task(AgentType.SAFETY, 1, Map.of("message", beijing)),
+                task(AgentType.TOOLS, 2, Map.of("toolName", "searchDateLocations", "params", Map.of("city", "北京"))));
+
+        assertFalse(PlanTemplate.extract(llmPlan, PlanSignature.of(beijing, "p1", null), beijing, "c1", "p1").isPresent(),
+                "城市参数不在签名内，不能存为关键词模板");
+        assertTrue(cache.put(llmPlan, PlanSignature.of(beijing, "p1", null), beijing, "c1", "p1"));
+
+        Optional<ExecutionPlan> same = cache.get(PlanSignature.of(" 推荐北京的约会地点 ", "p1", null), " 推荐北京的约会地点 ", "c2", "p1");
+        assertTrue(same.isPresent());
+        assertEquals(Map.of("city", "北京"), same.get().getRequiredAgents().get(1).getInputContext().get("params"));
+
+        String shanghai = "推荐上海的约会地点";
+        assertTrue(cache.get(PlanSignature.of(shanghai, "p1", null), shanghai, "c2", "p1").isEmpty());
+    }
+
+    private static ExecutionPlan plan(String intent, AgentTask... tasks) {
+        return ExecutionPlan.builder()
+                .intent(intent)
+                .requiredAgents(new ArrayList<>(List.of(tasks)))
+                .executionMode(PlanExecutionMode.MIXED)
+                .estimatedTokens(300)
+                .build();
+    }
+
+    private static AgentTask task(AgentType type, int priority, Map<String, Object> inputContext) {
+        return AgentTask.builder()
+                .agentType(type)
+                .priority(priority)
+                .inputContext(new LinkedHashMap<>(inputContext))
+                .build();
+    }
+
+    private static List<AgentType> types(ExecutionPlan plan) {
+        return plan.getRequiredAgents().stream().map(AgentTask::getAgentType).toList();
+    }
+}
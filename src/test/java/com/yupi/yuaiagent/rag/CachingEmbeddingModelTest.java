@@ -0,0 +1,112 @@
+package com.yupi.yuaiagent.rag;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingEmbeddingModelTest {
+
+    static class CountingEmbeddingModel implements EmbeddingModel {
+
+        private final List<List<String>> requests = new ArrayList<>();
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            requests.add(List.copyOf(request.getInstructions()));
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                String text = request.getInstructions().get(i);
+                embeddings.add(new Embedding(new float[]{text.length(), text.hashCode()}, i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return 2;
+        }
+    }
+
+    @Test
+    void embed_shouldHitCacheOnlyForNfkcEquivalentText() {
+        CountingEmbeddingModel delegate = new CountingEmbeddingModel();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, "test:m1", 1 << 20,
+                Duration.ofMinutes(5), false, registry);
+
+        float[] first = model.embed("预算ＡＢＣ，１０００元");
+        float[] second = model.embed("预算ABC,1000元");
+        model.embed("预算abc,1000元");
+        model.embed(" 预算ABC,1000元");
+
+        assertEquals(3, delegate.requests.size(), "大小写 / 空白不同的文本不应共用缓存");
+        assertArrayEquals(first, second);
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "embedding").tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void embedDocuments_shouldBypassQueryCache() {
+        CountingEmbeddingModel delegate = new CountingEmbeddingModel();
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, "test:m1", 1 << 20,
+                Duration.ofMinutes(5), false, null);
+
+        model.embed(List.of(new Document("d1", "纪念日礼物", Map.of())), EmbeddingOptionsBuilder.builder().build(),
+                documents -> List.of(documents));
+        model.embed("纪念日礼物");
+
+        assertEquals(List.of(List.of("纪念日礼物"), List.of("纪念日礼物")), delegate.requests);
+    }
+
+    @Test
+    void embedBatch_shouldOnlyRequestMissesAndKeepOrder() {
+        CountingEmbeddingModel delegate = new CountingEmbeddingModel();
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, "test:m1", 1 << 20,
+                Duration.ofMinutes(5), true, null);
+
+        model.embed("预算");
+        List<float[]> vectors = model.embed(List.of("纪念日礼物", "预算", "纪念日礼物", "约会地点"));
+
+        assertEquals(List.of(List.of("预算"), List.of("纪念日礼物", "约会地点")), delegate.requests);
+        assertEquals(4, vectors.size());
+        assertEquals("预算".hashCode(), vectors.get(1)[1]);
+        assertArrayEquals(vectors.get(0), vectors.get(2));
+        assertEquals("约会地点".hashCode(), vectors.get(3)[1]);
+    }
+
+    @Test
+    void embed_shouldNotShareVectorsAcrossModels() {
+        CountingEmbeddingModel delegate = new CountingEmbeddingModel();
+        CachingEmbeddingModel modelA = new CachingEmbeddingModel(delegate, "test:a", 1 << 20,
+                Duration.ofMinutes(5), false, null);
+        CachingEmbeddingModel modelB = new CachingEmbeddingModel(delegate, "test:b", 1 << 20,
+                Duration.ofMinutes(5), false, null);
+
+        modelA.embed("你好");
+        modelB.embed("你好");
+        float[] cached = modelA.embed("你好");
+        cached[0] = -1;
+
+        assertEquals(2, delegate.requests.size());
+        assertTrue(modelA.embed("你好")[0] > 0, "缓存中的向量不应被调用方修改");
+    }
+}
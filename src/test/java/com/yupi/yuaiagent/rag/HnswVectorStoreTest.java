@@ -0,0 +1,270 @@
+package com.yupi.yuaiagent.rag;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswVectorStoreTest {
+
+    private static final int DIMENSIONS = 24;
+
+    /**
+     * 以文本 hashCode 为种子生成确定性向量，重启前后同一文本得到同一向量。
+     */
+    static class HashEmbeddingModel implements EmbeddingModel {
+
+        int calls;
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            calls++;
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(vectorOf(request.getInstructions().get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return DIMENSIONS;
+        }
+
+        static float[] vectorOf(String text) {
+            Random random = new Random(text.hashCode());
+            float[] vector = new float[DIMENSIONS];
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+            return vector;
+        }
+    }
+
+    private static Document doc(String id, String conversationId, String memoryType) {
+        return Document.builder()
+                .id(id)
+                .text("memory-" + id)
+                .metadata(Map.of("conversation_id", conversationId, "memory_type", memoryType))
+                .build();
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, na = 0, nb = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            na += a[i] * a[i];
+            nb += b[i] * b[i];
+        }
+        return dot / Math.sqrt(na * nb);
+    }
+
+    @Test
+    void similaritySearch_shouldMatchBruteForceRecall() {
+        HnswVectorStore store = new HnswVectorStore(new HashEmbeddingModel(), null, 16, 100, 64);
+        List<Document> docs = IntStream.range(0, 3000)
+                .mapToObj(i -> doc(String.valueOf(i), "c" + (i % 50), "conversation"))
+                .toList();
+        store.add(docs);
+
+        int hit = 0;
+        int total = 0;
+        for (int q = 0; q < 20; q++) {
+            String query = "query-" + q;
+            float[] queryVector = HashEmbeddingModel.vectorOf(query);
+            Set<String> expected = new HashSet<>(docs.stream()
+                    .sorted(Comparator.comparingDouble(
+                            (Document d) -> cosine(queryVector, HashEmbeddingModel.vectorOf(d.getText()))).reversed())
+                    .limit(10)
+                    .map(Document::getId)
+                    .toList());
+            List<Document> results = store.similaritySearch(SearchRequest.builder().query(query).topK(10).build());
+            assertEquals(10, results.size());
+            for (Document result : results) {
+                total++;
+                if (expected.contains(result.getId())) {
+                    hit++;
+                }
+            }
+        }
+        double recall = (double) hit / total;
+        assertTrue(recall >= 0.9, "HNSW recall@10 过低: " + recall);
+    }
+
+    @Test
+    void similaritySearch_shouldApplyMetadataFilterAndThreshold() {
+        HnswVectorStore store = new HnswVectorStore(new HashEmbeddingModel(), null, 8, 50, 16);
+        List<Document> docs = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            docs.add(doc("d" + i, i % 2 == 0 ? "c1" : "c2", i % 4 == 0 ? "summary" : "conversation"));
+        }
+        store.add(docs);
+
+        List<Document> c1 = store.similaritySearch(SearchRequest.builder()
+                .query("纪念日")
+                .topK(5)
+                .filterExpression("conversation_id == 'c1' && memory_type == 'conversation'")
+                .build());
+        assertEquals(5, c1.size());
+        assertTrue(c1.stream().allMatch(d -> "c1".equals(d.getMetadata().get("conversation_id"))
+                && "conversation".equals(d.getMetadata().get("memory_type"))));
+        assertTrue(c1.get(0).getScore() >= c1.get(4).getScore());
+        assertEquals(1.0 - c1.get(0).getScore(), (double) c1.get(0).getMetadata().get("distance"), 1e-6);
+
+        List<Document> summaries = store.similaritySearch(SearchRequest.builder()
+                .query("纪念日")
+                .topK(200)
+                .filterExpression("memory_type in ['summary']")
+                .build());
+        float[] queryVector = HashEmbeddingModel.vectorOf("纪念日");
+        long expectedSummaries = docs.stream()
+                .filter(d -> "summary".equals(d.getMetadata().get("memory_type")))
+                .filter(d -> cosine(queryVector, HashEmbeddingModel.vectorOf(d.getText())) >= 0)
+                .count();
+        assertEquals(expectedSummaries, summaries.size());
+        assertTrue(summaries.stream().allMatch(d -> "summary".equals(d.getMetadata().get("memory_type"))));
+
+        List<Document> strict = store.similaritySearch(SearchRequest.builder()
+                .query("纪念日")
+                .topK(10)
+                .similarityThreshold(0.99)
+                .build());
+        assertTrue(strict.isEmpty());
+    }
+
+    @Test
+    void reopen_shouldRestoreDocumentsAndDeletesWithoutReembedding(@TempDir Path dir) throws Exception {
+        HashEmbeddingModel model = new HashEmbeddingModel();
+        List<Document> before;
+        try (HnswVectorStore store = new HnswVectorStore(model, dir, 8, 50, 32)) {
+            store.add(IntStream.range(0, 200).mapToObj(i -> doc("a" + i, "c" + (i % 5), "conversation")).toList());
+            store.add(IntStream.range(0, 100).mapToObj(i -> doc("b" + i, "c9", "conversation")).toList());
+            store.delete(List.of("a0", "a1"));
+            store.delete(new FilterExpressionBuilder()
+                    .eq("conversation_id", "c9").build());
+            before = store.similaritySearch(SearchRequest.builder().query("约会").topK(8).build());
+            assertEquals(198, store.size());
+        }
+
+        HashEmbeddingModel reloadModel = new HashEmbeddingModel();
+        try (HnswVectorStore reopened = new HnswVectorStore(reloadModel, dir, 8, 50, 32)) {
+            assertEquals(198, reopened.size());
+            assertEquals(0, reloadModel.calls);
+            List<Document> after = reopened.similaritySearch(SearchRequest.builder().query("约会").topK(8).build());
+            assertEquals(before.stream().map(Document::getId).toList(), after.stream().map(Document::getId).toList());
+            assertTrue(reopened.similaritySearch(SearchRequest.builder()
+                    .query("约会")
+                    .topK(5)
+                    .filterExpression("conversation_id == 'c9'")
+                    .build()).isEmpty());
+
+            reopened.add(List.of(doc("a0", "c0", "conversation")));
+            assertEquals(199, reopened.size());
+        }
+    }
+
+    @Test
+    void mergeMetadata_shouldPatchInPlaceAndSurviveReopen(@TempDir Path dir) throws Exception {
+        try (HnswVectorStore store = new HnswVectorStore(new HashEmbeddingModel(), dir, 8, 50, 32)) {
+            store.add(List.of(doc("m1", "c1", "conversation"), doc("m2", "c1", "conversation")));
+            assertTrue(store.mergeMetadata("m1", Map.of("importance", 0.7, "conversation_id", "c2")));
+            assertFalse(store.mergeMetadata("missing", Map.of("importance", 0.7)));
+        }
+
+        try (HnswVectorStore reopened = new HnswVectorStore(new HashEmbeddingModel(), dir, 8, 50, 32)) {
+            List<Document> results = reopened.similaritySearch(SearchRequest.builder()
+                    .query("memory-m1")
+                    .topK(2)
+                    .similarityThresholdAll()
+                    .filterExpression("conversation_id == 'c1'")
+                    .build());
+            Document merged = results.stream().filter(d -> "m1".equals(d.getId())).findFirst().orElseThrow();
+            assertEquals(0.7, ((Number) merged.getMetadata().get("importance")).doubleValue(), 1e-9);
+            assertEquals("c1", merged.getMetadata().get("conversation_id"));
+        }
+    }
+
+    @Test
+    void reopen_shouldTruncateTornJournalTailSoLaterWritesSurvive(@TempDir Path dir) throws Exception {
+        try (HnswVectorStore store = new HnswVectorStore(new HashEmbeddingModel(), dir, 8, 50, 32)) {
+            store.add(IntStream.range(0, 10).mapToObj(i -> doc("a" + i, "c1", "conversation")).toList());
+        }
+        Path journal = dir.resolve("documents.jsonl");
+        Files.writeString(journal, "{\"op\":\"delete\",\"id\":\"a", StandardOpenOption.APPEND);
+
+        try (HnswVectorStore reopened = new HnswVectorStore(new HashEmbeddingModel(), dir, 8, 50, 32)) {
+            assertEquals(10, reopened.size());
+            reopened.add(List.of(doc("b1", "c2", "conversation")));
+            reopened.delete(List.of("a0"));
+        }
+
+        try (HnswVectorStore reopened = new HnswVectorStore(new HashEmbeddingModel(), dir, 8, 50, 32)) {
+            assertEquals(10, reopened.size());
+            assertTrue(reopened.containsConversation("c2"));
+            assertTrue(reopened.similaritySearch(SearchRequest.builder()
+                    .query("memory-a0")
+                    .topK(10)
+                    .similarityThresholdAll()
+                    .filterExpression("conversation_id == 'c1'")
+                    .build()).stream().noneMatch(d -> "a0".equals(d.getId())));
+        }
+    }
+
+    @Test
+    void reopen_shouldCompactDeletedDocumentsOutOfBothFiles(@TempDir Path dir) throws Exception {
+        try (HnswVectorStore store = new HnswVectorStore(new HashEmbeddingModel(), dir, 8, 50, 32, 10)) {
+            store.add(IntStream.range(0, 50).mapToObj(i -> doc("a" + i, "c" + (i % 2), "conversation")).toList());
+            store.delete(IntStream.range(0, 40).mapToObj(i -> "a" + i).toList());
+            store.mergeMetadata("a45", Map.of("importance", 0.9));
+        }
+
+        try (HnswVectorStore reopened = new HnswVectorStore(new HashEmbeddingModel(), dir, 8, 50, 32, 10)) {
+            assertEquals(10, reopened.size());
+            assertEquals(10, Files.readAllLines(dir.resolve("documents.jsonl")).size());
+            ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(dir.resolve("vectors.bin")), 0, 16)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(10, header.getInt(8));
+            reopened.add(List.of(doc("b1", "c1", "conversation")));
+        }
+
+        try (HnswVectorStore reopened = new HnswVectorStore(new HashEmbeddingModel(), dir, 8, 50, 32, 10)) {
+            assertEquals(11, reopened.size());
+            List<Document> results = reopened.similaritySearch(SearchRequest.builder()
+                    .query("memory-a45")
+                    .topK(1)
+                    .filterExpression("conversation_id == 'c1'")
+                    .build());
+            assertEquals("a45", results.get(0).getId());
+            assertEquals(0.9, ((Number) results.get(0).getMetadata().get("importance")).doubleValue(), 1e-9);
+            assertFalse(Files.exists(dir.resolve("vectors.bin.compact")));
+        }
+    }
+}
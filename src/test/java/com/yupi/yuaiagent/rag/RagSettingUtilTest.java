@@ -25,6 +25,7 @@ class RagSettingUtilTest {
         assertEquals("simple", RagSettingUtil.normalizeStoreType(null));
         assertEquals("simple", RagSettingUtil.normalizeStoreType("unknown"));
         assertEquals("pgvector", RagSettingUtil.normalizeStoreType("pgvector"));
+        assertEquals("hnsw", RagSettingUtil.normalizeStoreType("HNSW"));
     }
 }
 
@@ -53,5 +53,21 @@ class RagEvaluationEngineTest {
         assertEquals(0, report.hitCount());
         assertEquals(1, report.missCount());
     }
-}
 
+    @Test
+    void shouldMatchKeywordAcrossWhitespaceAndCaseDifferences() {
+        RagEvaluationEngine engine = new RagEvaluationEngine();
+        RagEvalRequest request = new RagEvalRequest(
+                List.of(new RagEvalCase("c1", "礼物预算", List.of("预算300", "MBTI"), null)),
+                5,
+                0.55d,
+                "ALL"
+        );
+
+        RagEvalReport report = engine.evaluate((query, topK, threshold, statusFilter) ->
+                        List.of(new Document("预算 300 以内可以参考对方的 mbti 类型挑礼物")),
+                request, 5, 20, 0.55d);
+
+        assertEquals(1, report.hitCount());
+    }
+}
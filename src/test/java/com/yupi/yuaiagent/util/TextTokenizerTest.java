@@ -0,0 +1,44 @@
+package com.yupi.yuaiagent.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextTokenizerTest {
+
+    @Test
+    void shouldSplitHanIntoBigramsAndKeepAsciiWords() {
+        assertEquals(List.of("预算", "300", "咖啡", "啡馆"), TextTokenizer.tokenize("预算300 咖啡馆"));
+        assertEquals(List.of("预算", "纪念", "念日"), TextTokenizer.tokenize("预算和纪念日"));
+        assertEquals(List.of("budget", "500", "花"), TextTokenizer.tokenize("Budget, 500！花"));
+        assertEquals(List.of(), TextTokenizer.tokenize("，。 "));
+    }
+
+    @Test
+    void shouldOnlySplitOnConnectorsBetweenWords() {
+        assertEquals(List.of("和好"), TextTokenizer.tokenize("和好"));
+        assertEquals(List.of("我们", "们和", "和好", "好了"), TextTokenizer.tokenize("我们和好了"));
+        assertEquals(List.of("及时", "时回", "回复"), TextTokenizer.tokenize("及时回复"));
+        assertEquals(List.of("与其", "其说"), TextTokenizer.tokenize("与其说"));
+        assertEquals(List.of("咖啡", "蛋糕"), TextTokenizer.tokenize("咖啡和蛋糕"));
+        assertEquals(List.of("coffee", "tea"), TextTokenizer.tokenize("coffee 和 tea"));
+    }
+
+    @Test
+    void shouldDeduplicateTokens() {
+        assertEquals(List.of("冷战", "战冷"), TextTokenizer.tokenize("冷战冷战"));
+    }
+
+    @Test
+    void shouldScoreHitRatioAgainstLoweredContent() {
+        List<String> tokens = TextTokenizer.tokenize("预算 咖啡馆");
+        assertEquals(1.0, TextTokenizer.hitRatio("约会预算是300，偏好安静咖啡馆", tokens));
+        assertEquals(1.0 / 3, TextTokenizer.hitRatio("去年提到预算5000", tokens));
+        assertTrue(TextTokenizer.containsAll("预算 300", TextTokenizer.tokenize("预算300")));
+        assertFalse(TextTokenizer.containsAll("预算500", TextTokenizer.tokenize("预算300")));
+    }
+}